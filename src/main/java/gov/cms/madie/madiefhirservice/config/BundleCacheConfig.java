@@ -0,0 +1,19 @@
+package gov.cms.madie.madiefhirservice.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Configuration
+public class BundleCacheConfig {
+  /**
+   * Upper bound on the heap held by the cached parsed bundles. Parsed sizes are estimated from the
+   * length of the bundle JSON, see {@code ParsedBundleCacheService}.
+   */
+  @Value("${madie.bundle-cache.max-heap-bytes}")
+  private long maxHeapBytes;
+
+  @Value("${madie.bundle-cache.ttl-millis}")
+  private long ttlMillis;
+}
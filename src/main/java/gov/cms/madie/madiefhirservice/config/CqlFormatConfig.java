@@ -0,0 +1,20 @@
+package gov.cms.madie.madiefhirservice.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Configuration
+public class CqlFormatConfig {
+  /** Number of formatted CQL libraries kept for repeat bundle requests. */
+  @Value("${madie.cql-format.cache-max-size}")
+  private long cacheMaxSize;
+
+  /**
+   * Whether calculation bundles carry the CQL as submitted instead of formatted. Calculation only
+   * uses the ELM, so formatting there only changes the CQL attachment and the ELM locators.
+   */
+  @Value("${madie.cql-format.skip-for-calculation}")
+  private boolean skipForCalculation;
+}
@@ -0,0 +1,40 @@
+package gov.cms.madie.madiefhirservice.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Getter
+@Configuration
+public class DateShiftConfig {
+  /** How test case JSON is rewritten when shifting dates. */
+  public enum Engine {
+    /** Full HAPI parse into the R4 object model and re-encode. */
+    HAPI,
+    /** Streams the JSON and rewrites only the date tokens. */
+    TOKEN
+  }
+
+  @Value("${madie.date-shift.engine}")
+  private Engine engine;
+
+  @Value("${madie.date-shift.bulk.max-concurrency-per-request}")
+  private int bulkMaxConcurrencyPerRequest;
+
+  @Value("${madie.date-shift.bulk.pool-size}")
+  private int bulkPoolSize;
+
+  /**
+   * Shared pool for bulk test case date shifting. Its size caps the number of test cases shifted at
+   * once across all bulk requests on this instance.
+   */
+  @Bean
+  public ExecutorService dateShiftExecutor() {
+    return Executors.newFixedThreadPool(bulkPoolSize, new CustomizableThreadFactory("date-shift-"));
+  }
+}
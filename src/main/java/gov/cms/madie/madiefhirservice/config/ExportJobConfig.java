@@ -0,0 +1,45 @@
+package gov.cms.madie.madiefhirservice.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Getter
+@Configuration
+public class ExportJobConfig {
+  @Value("${madie.export-jobs.pool-size}")
+  private int poolSize;
+
+  @Value("${madie.export-jobs.queue-capacity}")
+  private int queueCapacity;
+
+  /** Directory finished export archives are written to until they expire. */
+  @Value("${madie.export-jobs.spool-dir}")
+  private String spoolDir;
+
+  /** How long a finished job and its archive are kept. */
+  @Value("${madie.export-jobs.ttl-millis}")
+  private long ttlMillis;
+
+  /**
+   * Pool that runs export jobs. Jobs beyond the pool size wait in a queue of the configured
+   * capacity; once that is full, new jobs are rejected.
+   */
+  @Bean
+  public ExecutorService exportJobExecutor() {
+    return new ThreadPoolExecutor(
+        poolSize,
+        poolSize,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(queueCapacity),
+        new CustomizableThreadFactory("export-job-"));
+  }
+}
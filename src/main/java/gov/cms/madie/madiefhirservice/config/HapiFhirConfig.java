@@ -5,6 +5,8 @@ import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
 import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.IValidatorModule;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.FhirResourceHttpMessageConverter;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.common.hapi.validation.support.CommonCodeSystemsTerminologyService;
 import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
@@ -18,13 +20,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 import java.io.IOException;
+import java.util.List;
 
 @Slf4j
 @Configuration
 public class HapiFhirConfig {
 
+  /** NPM packages backing the QI-Core 4.1.1 validator, in load order. */
+  public static final List<String> QICORE_411_PACKAGES =
+      List.of(
+          "classpath:packages/hl7.fhir.us.qicore-4.1.1.tgz",
+          "classpath:packages/hl7.fhir.us.core-3.1.0.tgz",
+          "classpath:packages/hl7.fhir.xver-extensions-0.0.13.tgz");
+
   @Bean
   public FhirContext fhirContext() {
     return FhirContext.forR4();
@@ -46,10 +57,9 @@ public class HapiFhirConfig {
   public IValidationSupport validationSupportChain411(@Autowired FhirContext fhirContext)
       throws IOException {
     NpmPackageValidationSupport npmPackageSupport = new NpmPackageValidationSupport(fhirContext);
-    npmPackageSupport.loadPackageFromClasspath("classpath:packages/hl7.fhir.us.qicore-4.1.1.tgz");
-    npmPackageSupport.loadPackageFromClasspath("classpath:packages/hl7.fhir.us.core-3.1.0.tgz");
-    npmPackageSupport.loadPackageFromClasspath(
-        "classpath:packages/hl7.fhir.xver-extensions-0.0.13.tgz");
+    for (String npmPackage : QICORE_411_PACKAGES) {
+      npmPackageSupport.loadPackageFromClasspath(npmPackage);
+    }
 
     UnknownCodeSystemWarningValidationSupport unknownCodeSystemWarningValidationSupport =
         new UnknownCodeSystemWarningValidationSupport(fhirContext);
@@ -64,7 +74,9 @@ public class HapiFhirConfig {
         unknownCodeSystemWarningValidationSupport);
   }
 
+  // only the QI-Core catalog uses these packages, so they are loaded when it first needs them
   @Bean
+  @Lazy
   public IValidationSupport validationSupportChainQiCore600(
       @Autowired FhirContext fhirContextQiCoreStu600) throws IOException {
     NpmPackageValidationSupport npmPackageSupport =
@@ -104,4 +116,13 @@ public class HapiFhirConfig {
   public LiquidEngine liquidEngine() throws IOException {
     return new LiquidEngine(new SimpleWorkerContext.SimpleWorkerContextBuilder().build(), null);
   }
+
+  /**
+   * Lets controllers return R4 resources, which Spring MVC then picks up as a message converter.
+   */
+  @Bean
+  public FhirResourceHttpMessageConverter fhirResourceHttpMessageConverter(
+      FhirParserProvider parserProvider) {
+    return new FhirResourceHttpMessageConverter(parserProvider);
+  }
 }
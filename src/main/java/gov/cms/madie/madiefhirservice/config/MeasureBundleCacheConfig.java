@@ -0,0 +1,20 @@
+package gov.cms.madie.madiefhirservice.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Configuration
+public class MeasureBundleCacheConfig {
+  /** Upper bound on the total size of the encoded measure bundles kept for repeat requests. */
+  @Value("${madie.measure-bundle-cache.max-bytes}")
+  private long maxBytes;
+
+  /**
+   * How long an encoded bundle is reused. Bundles embed included libraries fetched at build time,
+   * so this also bounds how long a changed draft library can go unnoticed.
+   */
+  @Value("${madie.measure-bundle-cache.ttl-millis}")
+  private long ttlMillis;
+}
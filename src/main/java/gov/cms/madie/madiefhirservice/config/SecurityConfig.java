@@ -19,6 +19,9 @@ public class SecurityConfig {
     http.cors()
         .and()
         .authorizeHttpRequests()
+        // metrics expose internal load and timings, so unlike health and info they need a token
+        .requestMatchers("/actuator/prometheus")
+        .authenticated()
         .requestMatchers("/actuator/**")
         .permitAll()
         .and()
@@ -0,0 +1,42 @@
+package gov.cms.madie.madiefhirservice.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Getter
+@Configuration
+public class ValidationConfig {
+  @Value("${madie.validation.batch.max-size}")
+  private int batchMaxSize;
+
+  @Value("${madie.validation.batch.max-concurrency-per-request}")
+  private int batchMaxConcurrencyPerRequest;
+
+  @Value("${madie.validation.batch.item-timeout-millis}")
+  private long batchItemTimeoutMillis;
+
+  @Value("${madie.validation.batch.pool-size}")
+  private int batchPoolSize;
+
+  @Value("${madie.validation.cache.max-size}")
+  private long cacheMaxSize;
+
+  @Value("${madie.validation.cache.ttl-millis}")
+  private long cacheTtlMillis;
+
+  /**
+   * Shared pool for batch bundle validation. Its size caps the number of bundles validated at once
+   * across all batch requests on this instance.
+   */
+  @Bean
+  public ExecutorService bundleValidationExecutor() {
+    return Executors.newFixedThreadPool(
+        batchPoolSize, new CustomizableThreadFactory("bundle-validation-"));
+  }
+}
@@ -0,0 +1,29 @@
+package gov.cms.madie.madiefhirservice.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Getter
+@Configuration
+public class ZipConfig {
+  /** Threads that deflate archive entries; 0 uses one per available processor. */
+  @Value("${madie.zip.deflate-pool-size}")
+  private int deflatePoolSize;
+
+  /**
+   * Shared pool for deflating test case export archive entries. Its size caps the number of entries
+   * compressed at once across all test case exports on this instance.
+   */
+  @Bean
+  public ExecutorService zipDeflateExecutor() {
+    int poolSize =
+        deflatePoolSize > 0 ? deflatePoolSize : Runtime.getRuntime().availableProcessors();
+    return Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("zip-deflate-"));
+  }
+}
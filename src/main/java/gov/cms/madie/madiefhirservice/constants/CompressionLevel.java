@@ -0,0 +1,22 @@
+package gov.cms.madie.madiefhirservice.constants;
+
+import java.util.zip.Deflater;
+
+/** Deflate level for export archives, trading archive size against CPU time. */
+public enum CompressionLevel {
+  /** Fastest compression, for exports that are downloaded right away. */
+  FAST(Deflater.BEST_SPEED),
+  DEFAULT(Deflater.DEFAULT_COMPRESSION),
+  /** Smallest archives, for exports that are stored or sent on. */
+  SMALL(Deflater.BEST_COMPRESSION);
+
+  private final int level;
+
+  CompressionLevel(int level) {
+    this.level = level;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+}
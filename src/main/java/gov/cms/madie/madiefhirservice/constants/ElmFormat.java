@@ -0,0 +1,17 @@
+package gov.cms.madie.madiefhirservice.constants;
+
+/** Formats of compiled ELM that Library resources carry as content attachments. */
+public enum ElmFormat {
+  XML("application/elm+xml"),
+  JSON("application/elm+json");
+
+  private final String contentType;
+
+  ElmFormat(String contentType) {
+    this.contentType = contentType;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+}
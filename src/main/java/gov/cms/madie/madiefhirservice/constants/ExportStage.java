@@ -0,0 +1,13 @@
+package gov.cms.madie.madiefhirservice.constants;
+
+/** Milestones an export reports while it runs, in the order they are reached. */
+public enum ExportStage {
+  /** The measure and its included libraries are in the bundle. */
+  LIBRARIES_RESOLVED,
+  /** Human readable narratives are set on the measure and its library. */
+  NARRATIVES_RENDERED,
+  /** Test case bundles are built, reported once per test case. */
+  TEST_CASES_PROCESSED,
+  /** The export archive is built. */
+  PACKAGED
+}
@@ -0,0 +1,23 @@
+package gov.cms.madie.madiefhirservice.constants;
+
+import java.util.Locale;
+
+/** Timed stages of measure bundle and export generation. */
+public enum PipelineStage {
+  CQL_FORMAT,
+  MEASURE_TRANSLATION,
+  MODULE_DEFINITION,
+  /** Fetching one included library from the CQL library service. */
+  INCLUDE_RESOLUTION,
+  EFFECTIVE_DATA_REQUIREMENTS,
+  NARRATIVE_RENDERING,
+  /** Converting R5 resources from the translator to R4. */
+  VERSION_CONVERSION,
+  ENCODING,
+  PACKAGING;
+
+  /** Value of the stage tag on the stage timers. */
+  public String getTag() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+}
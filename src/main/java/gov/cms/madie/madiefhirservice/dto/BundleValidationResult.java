@@ -0,0 +1,16 @@
+package gov.cms.madie.madiefhirservice.dto;
+
+import gov.cms.madie.models.measure.HapiOperationOutcome;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BundleValidationResult {
+  private String testCaseId;
+  private HapiOperationOutcome outcome;
+}
@@ -0,0 +1,24 @@
+package gov.cms.madie.madiefhirservice.dto;
+
+import gov.cms.madie.models.measure.TestCase;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DateShiftResult {
+  private String testCaseId;
+  private Status status;
+  private String message;
+  private TestCase testCase;
+
+  public enum Status {
+    SHIFTED,
+    SKIPPED,
+    FAILED
+  }
+}
@@ -0,0 +1,48 @@
+package gov.cms.madie.madiefhirservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExportJobStatus {
+  private String jobId;
+  private Type type;
+  private State state;
+
+  /** Last stage the export completed, if any. */
+  private ExportStage stage;
+
+  private Integer testCasesProcessed;
+  private Integer testCasesTotal;
+  private String fileName;
+
+  /** Set for test case exports that left out test cases which could not be parsed. */
+  private Boolean partial;
+
+  private String error;
+  private Instant submittedAt;
+  private Instant completedAt;
+
+  public enum Type {
+    MEASURE,
+    TEST_CASES
+  }
+
+  public enum State {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+  }
+}
@@ -0,0 +1,25 @@
+package gov.cms.madie.madiefhirservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** The parts of a StructureDefinition element needed to render element trees and type pickers. */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class StructureDefinitionElement {
+  private String id;
+  private String path;
+  private List<String> types;
+  private String cardinality;
+  private String binding;
+  private String bindingStrength;
+  private boolean mustSupport;
+}
@@ -0,0 +1,18 @@
+package gov.cms.madie.madiefhirservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TestCaseExport {
+  private String fileName;
+  private byte[] content;
+
+  /** Set when some of the selected test cases could not be parsed and were left out. */
+  private boolean partial;
+}
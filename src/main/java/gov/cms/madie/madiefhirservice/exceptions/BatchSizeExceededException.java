@@ -0,0 +1,13 @@
+package gov.cms.madie.madiefhirservice.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.PAYLOAD_TOO_LARGE)
+public class BatchSizeExceededException extends RuntimeException {
+  private static final String MESSAGE = "Batch of %d items exceeds the maximum of %d";
+
+  public BatchSizeExceededException(int size, int maxSize) {
+    super(String.format(MESSAGE, size, maxSize));
+  }
+}
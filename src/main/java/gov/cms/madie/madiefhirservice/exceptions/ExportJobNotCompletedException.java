@@ -0,0 +1,13 @@
+package gov.cms.madie.madiefhirservice.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class ExportJobNotCompletedException extends RuntimeException {
+  private static final String MESSAGE = "Export job %s is %s, there is nothing to download";
+
+  public ExportJobNotCompletedException(String jobId, String state) {
+    super(String.format(MESSAGE, jobId, state));
+  }
+}
@@ -0,0 +1,13 @@
+package gov.cms.madie.madiefhirservice.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class ExportJobQueueFullException extends RuntimeException {
+  private static final String MESSAGE = "Export queue is full, please try again later";
+
+  public ExportJobQueueFullException(Throwable cause) {
+    super(MESSAGE, cause);
+  }
+}
@@ -0,0 +1,12 @@
+package gov.cms.madie.madiefhirservice.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidDateShiftException extends RuntimeException {
+
+  public InvalidDateShiftException(String message) {
+    super(message);
+  }
+}
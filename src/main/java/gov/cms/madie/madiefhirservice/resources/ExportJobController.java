@@ -0,0 +1,93 @@
+package gov.cms.madie.madiefhirservice.resources;
+
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
+import gov.cms.madie.madiefhirservice.dto.ExportJobStatus;
+import gov.cms.madie.madiefhirservice.services.ExportJobService;
+import gov.cms.madie.models.dto.ExportDTO;
+import gov.cms.madie.models.measure.Measure;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.security.Principal;
+
+@Slf4j
+@RestController
+@RequestMapping(path = "/fhir/export-jobs")
+@Tag(
+    name = "Export-Job-Controller",
+    description = "API for running measure and test case exports in the background")
+@RequiredArgsConstructor
+public class ExportJobController {
+
+  private final ExportJobService exportJobService;
+
+  @PostMapping(
+      path = "/measures",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<ExportJobStatus> submitMeasureExport(
+      Principal principal,
+      @RequestBody @Validated(Measure.ValidationSequence.class) Measure measure,
+      @RequestHeader("Authorization") String accessToken) {
+    return accepted(exportJobService.submitMeasureExport(measure, principal, accessToken));
+  }
+
+  @PostMapping(
+      path = "/test-cases",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<ExportJobStatus> submitTestCaseExport(
+      Principal principal,
+      @RequestBody ExportDTO exportDTO,
+      @RequestParam(name = "compression", defaultValue = "DEFAULT") CompressionLevel compression) {
+    return accepted(exportJobService.submitTestCaseExport(exportDTO, compression, principal));
+  }
+
+  @GetMapping(path = "/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ExportJobStatus getStatus(Principal principal, @PathVariable("jobId") String jobId) {
+    return exportJobService.getStatus(jobId, principal);
+  }
+
+  @GetMapping(path = "/{jobId}/download", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+  public ResponseEntity<Resource> download(
+      Principal principal, @PathVariable("jobId") String jobId) {
+    ExportJobService.ExportArtifact artifact = exportJobService.getArtifact(jobId, principal);
+    return ResponseEntity.ok()
+        .header(
+            HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=\"" + artifact.fileName() + "\"")
+        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+        .body(new FileSystemResource(artifact.path()));
+  }
+
+  @DeleteMapping(path = "/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ExportJobStatus cancel(Principal principal, @PathVariable("jobId") String jobId) {
+    return exportJobService.cancel(jobId, principal);
+  }
+
+  private ResponseEntity<ExportJobStatus> accepted(ExportJobStatus status) {
+    return ResponseEntity.accepted()
+        .location(
+            ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/fhir/export-jobs/{jobId}")
+                .buildAndExpand(status.getJobId())
+                .toUri())
+        .body(status);
+  }
+}
@@ -1,9 +1,10 @@
 package gov.cms.madie.madiefhirservice.resources;
 
-import ca.uhn.fhir.context.FhirContext;
-import gov.cms.madie.madiefhirservice.services.ExportService;
-import gov.cms.madie.madiefhirservice.services.MeasureBundleService;
+import gov.cms.madie.madiefhirservice.constants.ElmFormat;
+import gov.cms.madie.madiefhirservice.services.MeasureBundleCacheService;
+import gov.cms.madie.madiefhirservice.services.MeasureRequestCoalescer;
 import gov.cms.madie.madiefhirservice.utils.ExportFileNamesUtil;
+import gov.cms.madie.madiefhirservice.utils.PreparedJsonResponse;
 import gov.cms.madie.models.measure.Measure;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
@@ -11,6 +12,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.r4.model.Bundle;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -22,43 +24,63 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.Set;
+
 @Slf4j
 @Controller
 @RequestMapping(path = "/fhir/measures")
 @Tag(name = "Measure-Controller", description = "Measure resources HAPI FHIR API")
 public class MeasureBundleController {
-  @Autowired private MeasureBundleService measureBundleService;
-
-  @Autowired private ExportService exportService;
+  @Autowired private MeasureRequestCoalescer measureRequestCoalescer;
 
-  @Autowired private FhirContext fhirContext;
+  @Autowired private MeasureBundleCacheService measureBundleCacheService;
 
   @PutMapping(
       value = "/bundles",
       produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE},
       consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-  public ResponseEntity<String> getMeasureBundle(
+  public ResponseEntity<?> getMeasureBundle(
       HttpServletRequest request,
       @RequestBody @Validated(Measure.ValidationSequence.class) Measure measure,
       @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
       @RequestHeader("Authorization") String accessToken,
       @RequestParam(required = false, defaultValue = "calculation", name = "bundleType")
-          String bundleType) {
+          String bundleType,
+      @RequestParam(required = false, defaultValue = "true", name = "_pretty") boolean pretty,
+      @RequestParam(required = false, name = "excludeElm") Set<ElmFormat> excludeElm) {
+    Set<ElmFormat> excludedElmFormats = excludeElm == null ? Set.of() : excludeElm;
 
-    try {
+    if (accept != null
+        && accept.toUpperCase().contains(MediaType.APPLICATION_XML_VALUE.toUpperCase())) {
+      // XML is encoded by FhirResourceHttpMessageConverter, which applies _pretty
       Bundle bundle =
-          measureBundleService.createMeasureBundle(
-              measure, request.getUserPrincipal(), bundleType, accessToken);
+          createMeasureBundle(request, measure, bundleType, accessToken, excludedElmFormats);
+      return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body(bundle);
+    }
+    PreparedJsonResponse response =
+        measureBundleCacheService.getBundle(
+            measure,
+            request.getUserPrincipal(),
+            bundleType,
+            excludedElmFormats,
+            pretty,
+            () ->
+                createMeasureBundle(request, measure, bundleType, accessToken, excludedElmFormats));
+    return response.toResponseEntity(
+        acceptEncoding, ifNoneMatch, CacheControl.noCache().cachePrivate());
+  }
 
-      if (accept != null
-          && accept.toUpperCase().contains(MediaType.APPLICATION_XML_VALUE.toUpperCase())) {
-        return ResponseEntity.ok()
-            .contentType(MediaType.APPLICATION_XML)
-            .body(fhirContext.newXmlParser().setPrettyPrint(true).encodeResourceToString(bundle));
-      }
-      return ResponseEntity.ok()
-          .contentType(MediaType.APPLICATION_JSON)
-          .body(fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(bundle));
+  private Bundle createMeasureBundle(
+      HttpServletRequest request,
+      Measure measure,
+      String bundleType,
+      String accessToken,
+      Set<ElmFormat> excludedElmFormats) {
+    try {
+      return measureRequestCoalescer.createMeasureBundle(
+          measure, request.getUserPrincipal(), bundleType, accessToken, excludedElmFormats);
     } catch (Exception ex) {
       log.error(
           "An error occurred while creating measure bundle for measure [{}]", measure.getId(), ex);
@@ -84,6 +106,7 @@ public class MeasureBundleController {
             HttpHeaders.CONTENT_DISPOSITION,
             "attachment;filename=\"" + ExportFileNamesUtil.getExportFileName(measure) + ".zip\"")
         .contentType(MediaType.APPLICATION_OCTET_STREAM)
-        .body(exportService.createExport(measure, request.getUserPrincipal(), accessToken));
+        .body(
+            measureRequestCoalescer.createExport(measure, request.getUserPrincipal(), accessToken));
   }
 }
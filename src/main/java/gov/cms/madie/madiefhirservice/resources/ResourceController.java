@@ -1,35 +1,75 @@
 package gov.cms.madie.madiefhirservice.resources;
 
-import gov.cms.madie.madiefhirservice.dto.ResourceIdentifier;
-import gov.cms.madie.madiefhirservice.dto.StructureDefinitionDto;
-import gov.cms.madie.madiefhirservice.services.StructureDefinitionService;
+import gov.cms.madie.madiefhirservice.services.QiCoreCatalogService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
+import java.time.Duration;
 
 @Slf4j
 @RestController
-@RequestMapping(path = {"/qicore/6_0_0/resources", "/qicore/resources"})
+@RequestMapping(path = "/qicore")
 @AllArgsConstructor
 public class ResourceController {
 
-  private StructureDefinitionService structureDefinitionService;
+  // definitions only change with a deployment, and the ETag catches those
+  private static final CacheControl CACHE_CONTROL =
+      CacheControl.maxAge(Duration.ofHours(1)).cachePrivate();
+
+  private QiCoreCatalogService qiCoreCatalogService;
 
   @GetMapping(
-      value = "/structure-definitions/{structureDefinitionId}",
+      value = {
+        "/resources/structure-definitions/{structureDefinitionId}",
+        "/{version}/resources/structure-definitions/{structureDefinitionId}"
+      },
       produces = MediaType.APPLICATION_JSON_VALUE)
-  public StructureDefinitionDto getStructureDefinition(@PathVariable String structureDefinitionId) {
-    return structureDefinitionService.getStructureDefinitionById(structureDefinitionId);
+  public ResponseEntity<byte[]> getStructureDefinition(
+      @PathVariable(required = false) String version,
+      @PathVariable String structureDefinitionId,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    return qiCoreCatalogService
+        .getCatalog(version)
+        .getStructureDefinitionResponse(structureDefinitionId)
+        .toResponseEntity(acceptEncoding, CACHE_CONTROL);
   }
 
-  @GetMapping(value = "", produces = MediaType.APPLICATION_JSON_VALUE)
-  public List<ResourceIdentifier> getAllResources() {
-    return structureDefinitionService.getAllResources();
+  @GetMapping(
+      value = {
+        "/resources/structure-definitions/{structureDefinitionId}/elements",
+        "/{version}/resources/structure-definitions/{structureDefinitionId}/elements"
+      },
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<byte[]> getStructureDefinitionElements(
+      @PathVariable(required = false) String version,
+      @PathVariable String structureDefinitionId,
+      @RequestParam(name = "path", required = false) String pathPrefix,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    return qiCoreCatalogService
+        .getCatalog(version)
+        .getElementsResponse(structureDefinitionId, pathPrefix)
+        .toResponseEntity(acceptEncoding, CACHE_CONTROL);
+  }
+
+  @GetMapping(
+      value = {"/resources", "/{version}/resources"},
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<byte[]> getAllResources(
+      @PathVariable(required = false) String version,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    return qiCoreCatalogService
+        .getCatalog(version)
+        .getAllResourcesResponse()
+        .toResponseEntity(acceptEncoding, CACHE_CONTROL);
   }
 }
@@ -2,22 +2,20 @@ package gov.cms.madie.madiefhirservice.resources;
 
 import java.security.Principal;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
-import org.hl7.fhir.r4.model.Bundle;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
-import gov.cms.madie.madiefhirservice.services.TestCaseBundleService;
-import gov.cms.madie.madiefhirservice.utils.ExportFileNamesUtil;
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
+import gov.cms.madie.madiefhirservice.dto.TestCaseExport;
+import gov.cms.madie.madiefhirservice.services.ExportProgressListener;
+import gov.cms.madie.madiefhirservice.services.TestCaseExportService;
 import gov.cms.madie.models.dto.ExportDTO;
 import gov.cms.madie.models.measure.Measure;
 import gov.cms.madie.models.measure.TestCase;
@@ -34,62 +32,28 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class TestCaseBundleController {
 
-  private final TestCaseBundleService testCaseBundleService;
+  private final TestCaseExportService testCaseExportService;
 
   @PutMapping("/export-all")
   public ResponseEntity<byte[]> getTestCaseExportBundle(
-      Principal principal, @RequestBody ExportDTO exportDTO) {
+      Principal principal,
+      @RequestBody ExportDTO exportDTO,
+      @RequestParam(name = "compression", defaultValue = "DEFAULT") CompressionLevel compression) {
     Measure measure = exportDTO.getMeasure();
 
-    List<String> testCaseIds = exportDTO.getTestCaseIds();
     final String username = principal.getName();
     log.info(
         "User [{}] is attempting to export all test cases from Measure [{}]",
         username,
         measure.getId());
-    if (testCaseIds == null || testCaseIds.isEmpty()) {
-      throw new ResourceNotFoundException("test cases", "measure", measure.getId());
-    }
-
-    List<TestCase> testCases =
-        Optional.ofNullable(measure.getTestCases())
-            .orElseThrow(
-                () -> new ResourceNotFoundException("test cases", "measure", measure.getId()))
-            .stream()
-            .filter(tc -> testCaseIds.stream().anyMatch(id -> id.equals(tc.getId())))
-            .collect(Collectors.toList());
-
-    Map<String, Bundle> exportableTestCaseBundle =
-        testCaseBundleService.getTestCaseExportBundle(measure, testCases, exportDTO);
-    if (testCases.size() != exportableTestCaseBundle.size()) {
-      // remove the test cases that couldn't be parsed
-      testCases =
-          testCases.stream()
-              .filter(
-                  testCase ->
-                      exportableTestCaseBundle.keySet().stream()
-                          .anyMatch(s -> s.contains(testCase.getPatientId().toString())))
-              .collect(Collectors.toList());
-      return ResponseEntity.status(206)
-          .header(
-              HttpHeaders.CONTENT_DISPOSITION,
-              "attachment;filename=\""
-                  + ExportFileNamesUtil.getTestCaseExportZipName(measure)
-                  + ".zip\"")
-          .contentType(MediaType.APPLICATION_OCTET_STREAM)
-          .body(
-              testCaseBundleService.zipTestCaseContents(
-                  measure, exportableTestCaseBundle, testCases));
-    }
-    return ResponseEntity.ok()
+    List<TestCase> testCases = testCaseExportService.selectTestCases(exportDTO);
+    TestCaseExport export =
+        testCaseExportService.export(
+            exportDTO, testCases, compression, ExportProgressListener.NONE);
+    return ResponseEntity.status(export.isPartial() ? 206 : 200)
         .header(
-            HttpHeaders.CONTENT_DISPOSITION,
-            "attachment;filename=\""
-                + ExportFileNamesUtil.getTestCaseExportZipName(measure)
-                + ".zip\"")
+            HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=\"" + export.getFileName() + "\"")
         .contentType(MediaType.APPLICATION_OCTET_STREAM)
-        .body(
-            testCaseBundleService.zipTestCaseContents(
-                measure, exportableTestCaseBundle, testCases));
+        .body(export.getContent());
   }
 }
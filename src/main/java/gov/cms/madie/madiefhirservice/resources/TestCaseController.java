@@ -1,14 +1,21 @@
 package gov.cms.madie.madiefhirservice.resources;
 
+import gov.cms.madie.madiefhirservice.services.BulkDateShiftService;
 import gov.cms.madie.madiefhirservice.services.TestCaseDateShifterService;
+import gov.cms.madie.madiefhirservice.utils.DateShiftPlan;
 import gov.cms.madie.models.measure.TestCase;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.security.Principal;
+import java.time.LocalDate;
 import java.util.List;
 
 import static java.util.stream.Collectors.joining;
@@ -20,30 +27,85 @@ import static java.util.stream.Collectors.joining;
 @RequiredArgsConstructor
 public class TestCaseController {
   private final TestCaseDateShifterService testCaseDateShifterService;
+  private final BulkDateShiftService bulkDateShiftService;
 
   @PutMapping("/test-cases/shift-dates")
   public ResponseEntity<List<TestCase>> shiftTestCasesDates(
       Principal principal,
       @RequestBody List<TestCase> testCases,
-      @RequestParam(name = "shifted", defaultValue = "0") int shifted) {
+      @RequestParam(name = "shifted", defaultValue = "0") int shifted,
+      @RequestParam(name = "unit", defaultValue = "YEARS") DateShiftPlan.Granularity unit) {
     log.info(
-        "User [{}] requested date shift for test cases [{}] of [{}] years",
+        "User [{}] requested date shift for test cases [{}] of [{}] {}",
         principal.getName(),
         testCases.stream().map(TestCase::getId).collect(joining(", ")),
-        shifted);
-    return ResponseEntity.ok(testCaseDateShifterService.shiftDates(testCases, shifted));
+        shifted,
+        unit);
+    DateShiftPlan plan = DateShiftPlan.builder().amount(shifted).granularity(unit).build();
+    return ResponseEntity.ok(testCaseDateShifterService.shiftDates(testCases, plan));
+  }
+
+  @PutMapping("/test-cases/shift-dates/measurement-period")
+  public ResponseEntity<List<TestCase>> shiftTestCasesToMeasurementPeriod(
+      Principal principal,
+      @RequestBody List<TestCase> testCases,
+      @RequestParam(name = "fromPeriodStart") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate fromPeriodStart,
+      @RequestParam(name = "toPeriodStart") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate toPeriodStart,
+      @RequestParam(name = "clamp", defaultValue = "CLAMP") DateShiftPlan.ClampPolicy clamp,
+      @RequestParam(name = "leapDay", defaultValue = "PREVIOUS_DAY")
+          DateShiftPlan.LeapDayPolicy leapDay) {
+    DateShiftPlan plan =
+        DateShiftPlan.between(fromPeriodStart, toPeriodStart).toBuilder()
+            .clampPolicy(clamp)
+            .leapDayPolicy(leapDay)
+            .build();
+    log.info(
+        "User [{}] requested date shift for test cases [{}] from period [{}] to [{}] using {}",
+        principal.getName(),
+        testCases.stream().map(TestCase::getId).collect(joining(", ")),
+        fromPeriodStart,
+        toPeriodStart,
+        plan);
+    return ResponseEntity.ok(testCaseDateShifterService.shiftDates(testCases, plan));
+  }
+
+  @PutMapping(
+      path = "/test-cases/shift-dates/bulk",
+      consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> shiftTestCasesDatesBulk(
+      Principal principal,
+      HttpServletRequest request,
+      @RequestParam(name = "shifted", defaultValue = "0") int shifted,
+      @RequestParam(name = "unit", defaultValue = "YEARS") DateShiftPlan.Granularity unit) {
+    log.info("User [{}] requested bulk date shift of [{}] {}", principal.getName(), shifted, unit);
+    DateShiftPlan plan = DateShiftPlan.builder().amount(shifted).granularity(unit).build();
+    StreamingResponseBody body =
+        out -> {
+          int processed = bulkDateShiftService.shiftDates(request.getInputStream(), plan, out);
+          log.info(
+              "Bulk date shift for user [{}] processed [{}] test cases",
+              principal.getName(),
+              processed);
+        };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
   }
 
   @PutMapping("/test-case/shift-dates")
   public ResponseEntity<TestCase> shiftTestCaseDates(
       Principal principal,
       @RequestBody TestCase testCase,
-      @RequestParam(name = "shifted", defaultValue = "0") int shifted) {
+      @RequestParam(name = "shifted", defaultValue = "0") int shifted,
+      @RequestParam(name = "unit", defaultValue = "YEARS") DateShiftPlan.Granularity unit) {
     log.info(
-        "User [{}] requested date shift for test case [{}] of [{}] years",
+        "User [{}] requested date shift for test case [{}] of [{}] {}",
         principal.getName(),
         testCase.getId(),
-        shifted);
-    return ResponseEntity.ok(testCaseDateShifterService.shiftDates(testCase, shifted));
+        shifted,
+        unit);
+    DateShiftPlan plan = DateShiftPlan.builder().amount(shifted).granularity(unit).build();
+    return ResponseEntity.ok(testCaseDateShifterService.shiftDates(testCase, plan));
   }
 }
@@ -1,27 +1,42 @@
 package gov.cms.madie.madiefhirservice.resources;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.parser.IParser;
-import ca.uhn.fhir.parser.StrictErrorHandler;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.ValidationResult;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import gov.cms.madie.models.measure.HapiOperationOutcome;
-import gov.cms.madie.madiefhirservice.exceptions.HapiJsonException;
+import gov.cms.madie.madiefhirservice.services.BatchValidationService;
+import gov.cms.madie.madiefhirservice.services.ParsedBundleCacheService;
 import gov.cms.madie.madiefhirservice.services.ResourceValidationService;
+import gov.cms.madie.madiefhirservice.services.ResourceValidationService.BundleStructureOutcome;
+import gov.cms.madie.madiefhirservice.services.ValidationCacheService;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.FhirResourceJson;
+import gov.cms.madie.models.measure.TestCase;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.OperationOutcome;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
@@ -32,88 +47,122 @@ import org.springframework.web.bind.annotation.RestController;
 @AllArgsConstructor
 public class ValidationController {
 
-  private FhirContext fhirContext;
+  private FhirParserProvider parserProvider;
   private FhirValidator validator;
   private ResourceValidationService validationService;
-
-  private ObjectMapper mapper;
+  private BatchValidationService batchValidationService;
+  private ValidationCacheService validationCacheService;
+  private ParsedBundleCacheService parsedBundleCacheService;
 
   @PostMapping(
       path = "/bundles",
       consumes = MediaType.APPLICATION_JSON_VALUE,
       produces = MediaType.APPLICATION_JSON_VALUE)
-  public HapiOperationOutcome validateBundle(HttpEntity<String> request) {
-    IParser parser =
-        fhirContext
-            .newJsonParser()
-            .setParserErrorHandler(new StrictErrorHandler())
-            .setPrettyPrint(true);
+  public HapiOperationOutcome validateBundle(
+      HttpEntity<String> request,
+      @RequestParam(name = "_pretty", defaultValue = "false") boolean pretty) {
+    HapiOperationOutcome outcome =
+        validateBundleCached(request.getBody(), () -> request.getHeaders().getCacheControl());
+    // cached outcomes are shared, so pretty printing is applied to a copy
+    if (pretty && outcome.getOutcomeResponse() instanceof FhirResourceJson outcomeResponse) {
+      return HapiOperationOutcome.builder()
+          .code(outcome.getCode())
+          .message(outcome.getMessage())
+          .successful(outcome.isSuccessful())
+          .outcomeResponse(outcomeResponse.withPrettyPrint(true))
+          .build();
+    }
+    return outcome;
+  }
+
+  @PostMapping(
+      path = "/bundles/batch",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> validateBundles(
+      Principal principal,
+      @RequestBody List<TestCase> testCases,
+      @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+    log.info(
+        "User [{}] requested batch validation of [{}] test case bundles",
+        principal.getName(),
+        testCases.size());
+    batchValidationService.verifyBatchSize(testCases);
+    StreamingResponseBody body =
+        out ->
+            batchValidationService.validateBundles(
+                testCases, json -> validateBundleCached(json, () -> cacheControl), out);
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+  }
+
+  /**
+   * Returns the cached outcome for an unchanged bundle, otherwise validates it and caches the
+   * outcome. A <code>Cache-Control: no-cache</code> request header skips the lookup but still
+   * refreshes the cached outcome.
+   */
+  private HapiOperationOutcome validateBundleCached(
+      String bundleJson, Supplier<String> cacheControl) {
+    Optional<String> cacheKey = validationCacheService.cacheKey(bundleJson);
+    if (cacheKey.isPresent() && !isNoCache(cacheControl.get())) {
+      Optional<HapiOperationOutcome> cached = validationCacheService.get(cacheKey.get());
+      if (cached.isPresent()) {
+        return cached.get();
+      }
+    }
+    HapiOperationOutcome outcome = validateBundleJson(bundleJson);
+    cacheKey.ifPresent(key -> validationCacheService.put(key, outcome));
+    return outcome;
+  }
+
+  private boolean isNoCache(String cacheControl) {
+    return StringUtils.containsIgnoreCase(cacheControl, CacheControl.noCache().getHeaderValue());
+  }
 
+  private HapiOperationOutcome validateBundleJson(String bundleJson) {
     Bundle bundle;
 
     try {
-      bundle = parser.parseResource(Bundle.class, request.getBody());
+      bundle = parsedBundleCacheService.parse(bundleJson);
     } catch (DataFormatException | ClassCastException ex) {
-      return invalidErrorOutcome(
-          parser, "An error occurred while parsing the resource", ex.getMessage());
+      return invalidErrorOutcome("An error occurred while parsing the resource", ex.getMessage());
     }
 
     // only validate bundles
     if (!"BUNDLE".equalsIgnoreCase(bundle.fhirType())) {
       return invalidErrorOutcome(
-          parser,
           "\"Resource must have resourceType of 'Bundle'",
           "Resource must have resourceType of 'Bundle'");
     }
 
-    OperationOutcome requiredProfilesOutcome =
-        validationService.validateBundleResourcesProfiles(bundle);
-    OperationOutcome validIdsOutcome = validationService.validateBundleResourcesIdValid(bundle);
+    BundleStructureOutcome structureOutcome = validationService.validateBundleStructure(bundle);
 
     ValidationResult result = validator.validateWithResult(bundle);
-    try {
-      final OperationOutcome combinedOutcome =
-          validationService.combineOutcomes(
-              requiredProfilesOutcome,
-              validIdsOutcome,
-              (OperationOutcome) result.toOperationOutcome());
-      String outcomeString = parser.encodeResourceToString(combinedOutcome);
-      return HapiOperationOutcome.builder()
-          .code(
-              requiredProfilesOutcome.hasIssue() || validIdsOutcome.hasIssue()
-                  ? HttpStatus.BAD_REQUEST.value()
-                  : HttpStatus.OK.value())
-          .successful(validationService.isSuccessful(combinedOutcome))
-          .outcomeResponse(mapper.readValue(outcomeString, Object.class))
-          .build();
-    } catch (Exception ex) {
-      throw new HapiJsonException("An error occurred processing the validation results", ex);
-    }
+    final OperationOutcome outcome = structureOutcome.outcome();
+    outcome.getIssue().addAll(((OperationOutcome) result.toOperationOutcome()).getIssue());
+    return HapiOperationOutcome.builder()
+        .code(structureOutcome.invalid() ? HttpStatus.BAD_REQUEST.value() : HttpStatus.OK.value())
+        .successful(validationService.isSuccessful(outcome))
+        .outcomeResponse(new FhirResourceJson(parserProvider, outcome))
+        .build();
   }
 
-  private HapiOperationOutcome invalidErrorOutcome(
-      IParser parser, String message, String exceptionMessage) {
+  private HapiOperationOutcome invalidErrorOutcome(String message, String exceptionMessage) {
     OperationOutcome operationOutcome = new OperationOutcome();
     operationOutcome
         .addIssue()
         .setSeverity(OperationOutcome.IssueSeverity.ERROR)
         .setCode(OperationOutcome.IssueType.INVALID)
         .setDiagnostics(exceptionMessage);
-    return encodeOutcome(parser, HttpStatus.BAD_REQUEST.value(), false, message, operationOutcome);
+    return encodeOutcome(HttpStatus.BAD_REQUEST.value(), false, message, operationOutcome);
   }
 
   protected HapiOperationOutcome encodeOutcome(
-      IParser parser, int code, boolean successful, String message, OperationOutcome outcome) {
-    try {
-      String outcomeString = parser.encodeResourceToString(outcome);
-      return HapiOperationOutcome.builder()
-          .code(code)
-          .message(message)
-          .successful(successful)
-          .outcomeResponse(mapper.readValue(outcomeString, Object.class))
-          .build();
-    } catch (Exception ex) {
-      throw new HapiJsonException("An error occurred processing the validation results", ex);
-    }
+      int code, boolean successful, String message, OperationOutcome outcome) {
+    return HapiOperationOutcome.builder()
+        .code(code)
+        .message(message)
+        .successful(successful)
+        .outcomeResponse(new FhirResourceJson(parserProvider, outcome))
+        .build();
   }
 }
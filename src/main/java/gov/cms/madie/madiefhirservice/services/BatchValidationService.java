@@ -0,0 +1,164 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.madie.madiefhirservice.config.ValidationConfig;
+import gov.cms.madie.madiefhirservice.dto.BundleValidationResult;
+import gov.cms.madie.madiefhirservice.exceptions.BatchSizeExceededException;
+import gov.cms.madie.models.measure.HapiOperationOutcome;
+import gov.cms.madie.models.measure.TestCase;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchValidationService {
+  private static final long POLL_MILLIS = 50;
+
+  private final ValidationConfig validationConfig;
+  private final ExecutorService bundleValidationExecutor;
+  private final ObjectMapper mapper;
+
+  public void verifyBatchSize(List<TestCase> testCases) {
+    int maxSize = validationConfig.getBatchMaxSize();
+    if (testCases != null && testCases.size() > maxSize) {
+      throw new BatchSizeExceededException(testCases.size(), maxSize);
+    }
+  }
+
+  /**
+   * Validates the JSON bundle of each test case on the shared validation pool and writes one result
+   * per line (NDJSON) to the given stream in completion order. At most the configured number of
+   * bundles from this batch are in flight at once. The item timeout starts when a bundle's
+   * validation starts, not while it waits for a pool thread; a bundle that does not finish within
+   * it is reported with a 408 code and its validation is interrupted, although it keeps its slot
+   * until the validator actually returns. Bundles that have not started yet are skipped if writing
+   * the results fails.
+   *
+   * @param testCases test cases whose bundles are validated
+   * @param validator validates a single bundle JSON string
+   * @param out stream that receives the NDJSON results
+   */
+  public void validateBundles(
+      List<TestCase> testCases, Function<String, HapiOperationOutcome> validator, OutputStream out)
+      throws IOException {
+    if (testCases == null || testCases.isEmpty()) {
+      return;
+    }
+    Semaphore permits = new Semaphore(validationConfig.getBatchMaxConcurrencyPerRequest());
+    BlockingQueue<BundleValidationResult> completed = new LinkedBlockingQueue<>();
+    List<CompletableFuture<HapiOperationOutcome>> pending = new ArrayList<>();
+    int written = 0;
+    try {
+      while (written < testCases.size()) {
+        while (pending.size() < testCases.size() && permits.tryAcquire()) {
+          pending.add(submit(testCases.get(pending.size()), validator, permits, completed));
+        }
+        BundleValidationResult result = completed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (result != null) {
+          write(result, out);
+          written++;
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Batch validation was interrupted");
+    } finally {
+      pending.forEach(item -> item.cancel(false));
+    }
+  }
+
+  private CompletableFuture<HapiOperationOutcome> submit(
+      TestCase testCase,
+      Function<String, HapiOperationOutcome> validator,
+      Semaphore permits,
+      BlockingQueue<BundleValidationResult> completed) {
+    long timeoutMillis = validationConfig.getBatchItemTimeoutMillis();
+    HapiOperationOutcome timedOut =
+        failedOutcome(
+            HttpStatus.REQUEST_TIMEOUT,
+            String.format("Validation did not complete within %d ms", timeoutMillis));
+    CompletableFuture<HapiOperationOutcome> item = new CompletableFuture<>();
+    Future<?> task =
+        bundleValidationExecutor.submit(
+            () -> {
+              try {
+                if (!item.isDone()) {
+                  item.completeOnTimeout(timedOut, timeoutMillis, TimeUnit.MILLISECONDS);
+                  item.complete(validator.apply(testCase.getJson()));
+                }
+              } catch (RuntimeException ex) {
+                item.completeExceptionally(ex);
+              } finally {
+                permits.release();
+              }
+            });
+    item.whenComplete(
+        (outcome, ex) -> {
+          if (outcome == timedOut || item.isCancelled()) {
+            task.cancel(true);
+          }
+        });
+    publish(testCase, item, completed);
+    return item;
+  }
+
+  private void publish(
+      TestCase testCase,
+      CompletableFuture<HapiOperationOutcome> item,
+      BlockingQueue<BundleValidationResult> completed) {
+    item.handle(
+            (outcome, ex) -> {
+              if (ex instanceof CancellationException) {
+                return null;
+              } else if (ex != null) {
+                log.error("Error validating bundle for test case [{}]", testCase.getId(), ex);
+                return failedOutcome(
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    "An error occurred while validating the test case bundle");
+              }
+              return outcome;
+            })
+        .thenAccept(
+            outcome -> {
+              if (outcome != null) {
+                completed.add(
+                    BundleValidationResult.builder()
+                        .testCaseId(testCase.getId())
+                        .outcome(outcome)
+                        .build());
+              }
+            });
+  }
+
+  private void write(BundleValidationResult result, OutputStream out) throws IOException {
+    out.write(mapper.writeValueAsBytes(result));
+    out.write('\n');
+    out.flush();
+  }
+
+  private HapiOperationOutcome failedOutcome(HttpStatus status, String message) {
+    return HapiOperationOutcome.builder()
+        .code(status.value())
+        .message(message)
+        .successful(false)
+        .build();
+  }
+}
@@ -0,0 +1,111 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.madie.madiefhirservice.config.DateShiftConfig;
+import gov.cms.madie.madiefhirservice.dto.DateShiftResult;
+import gov.cms.madie.madiefhirservice.utils.DateShiftPlan;
+import gov.cms.madie.models.measure.TestCase;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkDateShiftService {
+  private final DateShiftConfig dateShiftConfig;
+  private final ExecutorService dateShiftExecutor;
+  private final TestCaseDateShifterService testCaseDateShifterService;
+  private final ObjectMapper mapper;
+
+  /**
+   * Reads test cases from the given stream, either as a JSON array or as NDJSON, shifts their dates
+   * on the shared date shift pool and writes one result per line (NDJSON) in input order. Only the
+   * configured number of test cases from this request are read ahead and in flight at once, so
+   * neither the input nor the output is held in memory as a whole.
+   *
+   * <p>A test case that cannot be mapped is reported as a FAILED line and the rest of the stream is
+   * still processed. Input that is no longer valid JSON is reported the same way, but nothing after
+   * it can be read.
+   *
+   * @param in stream of test cases
+   * @param plan how the dates are shifted
+   * @param out stream that receives the NDJSON results
+   * @return number of test cases processed
+   */
+  public int shiftDates(InputStream in, DateShiftPlan plan, OutputStream out) throws IOException {
+    int maxInFlight = dateShiftConfig.getBulkMaxConcurrencyPerRequest();
+    Deque<CompletableFuture<DateShiftResult>> inFlight = new ArrayDeque<>(maxInFlight);
+    int processed = 0;
+    try (MappingIterator<TestCase> testCases = mapper.readerFor(TestCase.class).readValues(in)) {
+      boolean readable = true;
+      while (readable) {
+        if (inFlight.size() == maxInFlight) {
+          write(inFlight.removeFirst(), out);
+          processed++;
+        }
+        int item = processed + inFlight.size() + 1;
+        try {
+          if (!testCases.hasNextValue()) {
+            break;
+          }
+          TestCase testCase = testCases.nextValue();
+          inFlight.addLast(
+              CompletableFuture.supplyAsync(
+                  () -> testCaseDateShifterService.shiftTestCaseDates(testCase, plan),
+                  dateShiftExecutor));
+        } catch (JsonParseException ex) {
+          inFlight.addLast(CompletableFuture.completedFuture(unreadable(item, ex)));
+          readable = false;
+        } catch (JsonProcessingException ex) {
+          // the reader skips the rest of the item, so the following ones can still be read
+          inFlight.addLast(CompletableFuture.completedFuture(unreadable(item, ex)));
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        write(inFlight.removeFirst(), out);
+        processed++;
+      }
+    } finally {
+      inFlight.forEach(future -> future.cancel(true));
+    }
+    return processed;
+  }
+
+  private DateShiftResult unreadable(int item, JsonProcessingException ex) {
+    log.warn("Unable to read test case [{}] of bulk date shift: {}", item, ex.getOriginalMessage());
+    return DateShiftResult.builder()
+        .status(DateShiftResult.Status.FAILED)
+        .message(
+            String.format("Test case [%d] could not be read: %s", item, ex.getOriginalMessage()))
+        .build();
+  }
+
+  private void write(CompletableFuture<DateShiftResult> future, OutputStream out)
+      throws IOException {
+    try {
+      out.write(mapper.writeValueAsBytes(future.get()));
+      out.write('\n');
+      out.flush();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Bulk date shift was interrupted");
+    } catch (ExecutionException ex) {
+      // shiftTestCaseDates reports its own failures, so only errors end up here
+      throw new IOException("Unable to shift test case dates", ex.getCause());
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gov.cms.madie.madiefhirservice.config.CqlFormatConfig;
+import gov.cms.madie.madiefhirservice.utils.HashUtil;
+import gov.cms.mat.cql.CqlFormatter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.security.Principal;
+
+/**
+ * Formats measure CQL. Formatting parses and pretty prints the whole library, and gives the same
+ * result for the same CQL, so formatted CQL is kept in a bounded cache keyed by the SHA-256 hash of
+ * the input. Formatting is timed by the bundle pipeline as the cql_format stage; cache hits and
+ * misses are in the cache metrics.
+ */
+@Service
+public class CqlFormatService {
+  public static final String CACHE_NAME = "formattedCql";
+
+  private final Cache<String, String> cache;
+
+  public CqlFormatService(CqlFormatConfig cqlFormatConfig, MeterRegistry meterRegistry) {
+    this.cache =
+        Caffeine.newBuilder().maximumSize(cqlFormatConfig.getCacheMaxSize()).recordStats().build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  /**
+   * Returns the formatted CQL, formatting it only if the same CQL was not formatted before.
+   *
+   * @param cql CQL to format
+   * @param principal user the CQL is formatted for
+   */
+  public String format(String cql, Principal principal) {
+    if (cql == null) {
+      return CqlFormatter.formatCql(null, principal);
+    }
+    return cache.get(HashUtil.sha256Hex(cql), key -> CqlFormatter.formatCql(cql, principal));
+  }
+}
@@ -0,0 +1,338 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import gov.cms.madie.madiefhirservice.config.ExportJobConfig;
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
+import gov.cms.madie.madiefhirservice.dto.ExportJobStatus;
+import gov.cms.madie.madiefhirservice.dto.ExportJobStatus.State;
+import gov.cms.madie.madiefhirservice.dto.ExportJobStatus.Type;
+import gov.cms.madie.madiefhirservice.dto.TestCaseExport;
+import gov.cms.madie.madiefhirservice.exceptions.ExportJobNotCompletedException;
+import gov.cms.madie.madiefhirservice.exceptions.ExportJobQueueFullException;
+import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.utils.ExportFileNamesUtil;
+import gov.cms.madie.models.dto.ExportDTO;
+import gov.cms.madie.models.measure.Measure;
+import gov.cms.madie.models.measure.TestCase;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs measure and test case exports in the background, so large exports do not hold a request
+ * thread or run into gateway timeouts. Jobs run on the export job pool and report their progress by
+ * stage. Finished archives are written to the spool directory and served from there until the job
+ * expires. Jobs are only visible to the user who submitted them.
+ *
+ * <p>Jobs are tracked in this instance's memory and their archives are spooled to its local disk,
+ * so status and download requests must reach the instance that accepted the job. Deployments with
+ * more than one instance need sticky routing for the export job endpoints; on any other instance a
+ * job is reported as not found, and jobs do not survive a restart.
+ *
+ * <p>Measure exports fetch libraries and translate CQL with the access token of the submitting
+ * request when the job runs, not when it is submitted. A job that is queued or runs for longer than
+ * the token is valid is rejected by those services, and fails with {@link #EXPIRED_TOKEN_ERROR}
+ * instead of the raw HTTP error. Test case exports do not call other services.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportJobService {
+  static final String EXPIRED_TOKEN_ERROR =
+      "The export was rejected as unauthorized, most likely because the access token it was"
+          + " submitted with expired before the job finished. Submit the export again.";
+
+  private final ExportJobConfig exportJobConfig;
+  private final ExecutorService exportJobExecutor;
+  private final ExportService exportService;
+  private final TestCaseExportService testCaseExportService;
+  // local to this instance, see the class documentation
+  private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+  /** Finished export archive of a job. */
+  public record ExportArtifact(String fileName, Path path) {}
+
+  /** Writes the archive of a job and tells whether the export is partial. */
+  @FunctionalInterface
+  private interface ExportWork {
+    boolean writeTo(ExportJob job, OutputStream out) throws IOException;
+  }
+
+  public ExportJobStatus submitMeasureExport(
+      Measure measure, Principal principal, String accessToken) {
+    return submit(
+        Type.MEASURE,
+        principal,
+        ExportFileNamesUtil.getExportFileName(measure) + ".zip",
+        (job, out) -> {
+          exportService.writeExport(measure, principal, accessToken, job, out);
+          return false;
+        });
+  }
+
+  /**
+   * Submits a test case export. The test cases are selected before the job is queued, so requests
+   * without test cases to export fail straight away.
+   */
+  public ExportJobStatus submitTestCaseExport(
+      ExportDTO exportDTO, CompressionLevel compressionLevel, Principal principal) {
+    List<TestCase> testCases = testCaseExportService.selectTestCases(exportDTO);
+    return submit(
+        Type.TEST_CASES,
+        principal,
+        ExportFileNamesUtil.getTestCaseExportZipName(exportDTO.getMeasure()) + ".zip",
+        (job, out) -> {
+          TestCaseExport export =
+              testCaseExportService.export(exportDTO, testCases, compressionLevel, job);
+          out.write(export.getContent());
+          return export.isPartial();
+        });
+  }
+
+  public ExportJobStatus getStatus(String jobId, Principal principal) {
+    return find(jobId, principal).toStatus();
+  }
+
+  /**
+   * Cancels a queued or running job. A job that already finished is discarded instead, together
+   * with its archive.
+   */
+  public ExportJobStatus cancel(String jobId, Principal principal) {
+    ExportJob job = find(jobId, principal);
+    if (!job.cancel() && jobs.remove(jobId, job)) {
+      deleteArtifact(job);
+    }
+    log.info("User [{}] cancelled export job [{}]", principal.getName(), jobId);
+    return job.toStatus();
+  }
+
+  /**
+   * @throws ExportJobNotCompletedException if the job has not completed successfully
+   */
+  public ExportArtifact getArtifact(String jobId, Principal principal) {
+    ExportJob job = find(jobId, principal);
+    Path artifact = job.getArtifact();
+    if (artifact == null) {
+      throw new ExportJobNotCompletedException(jobId, job.toStatus().getState().name());
+    }
+    return new ExportArtifact(job.fileName, artifact);
+  }
+
+  /** Drops finished jobs older than the configured TTL and deletes their archives. */
+  @Scheduled(fixedDelayString = "${madie.export-jobs.cleanup-interval-millis}")
+  public void removeExpiredJobs() {
+    Instant cutoff = Instant.now().minusMillis(exportJobConfig.getTtlMillis());
+    jobs.values()
+        .removeIf(
+            job -> {
+              if (!job.finishedBefore(cutoff)) {
+                return false;
+              }
+              deleteArtifact(job);
+              return true;
+            });
+  }
+
+  private ExportJobStatus submit(Type type, Principal principal, String fileName, ExportWork work) {
+    ExportJob job =
+        new ExportJob(UUID.randomUUID().toString(), type, principal.getName(), fileName);
+    jobs.put(job.id, job);
+    try {
+      job.setFuture(exportJobExecutor.submit(() -> run(job, work)));
+    } catch (RejectedExecutionException ex) {
+      jobs.remove(job.id);
+      throw new ExportJobQueueFullException(ex);
+    }
+    log.info("User [{}] submitted {} export job [{}]", job.owner, type, job.id);
+    return job.toStatus();
+  }
+
+  private void run(ExportJob job, ExportWork work) {
+    if (!job.start()) {
+      return;
+    }
+    Path file = null;
+    try {
+      Path spoolDir = Path.of(exportJobConfig.getSpoolDir());
+      Files.createDirectories(spoolDir);
+      file = spoolDir.resolve(job.id + ".zip");
+      boolean partial;
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+        partial = work.writeTo(job, out);
+      }
+      if (job.complete(file, partial)) {
+        log.info("Export job [{}] completed", job.id);
+        file = null;
+      }
+    } catch (Exception ex) {
+      // remove the partial archive before the failure becomes visible to status requests
+      deleteQuietly(file);
+      file = null;
+      if (job.fail(failureMessage(ex))) {
+        log.error("Export job [{}] failed", job.id, ex);
+      }
+    } finally {
+      // left over when the job was cancelled while it ran
+      deleteQuietly(file);
+    }
+  }
+
+  private static String failureMessage(Exception ex) {
+    for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof HttpClientErrorException.Unauthorized) {
+        return EXPIRED_TOKEN_ERROR;
+      }
+    }
+    return ex.getMessage();
+  }
+
+  private ExportJob find(String jobId, Principal principal) {
+    ExportJob job = jobs.get(jobId);
+    if (job == null || !job.owner.equals(principal.getName())) {
+      throw new ResourceNotFoundException("export job", principal.getName(), jobId);
+    }
+    return job;
+  }
+
+  private void deleteArtifact(ExportJob job) {
+    deleteQuietly(job.getArtifact());
+  }
+
+  private static void deleteQuietly(Path file) {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ex) {
+      log.warn("Unable to delete export archive {}", file, ex);
+    }
+  }
+
+  /** State of one job. Progress is reported on the job thread and read by request threads. */
+  private static final class ExportJob implements ExportProgressListener {
+    private final String id;
+    private final Type type;
+    private final String owner;
+    private final String fileName;
+    private final Instant submittedAt = Instant.now();
+
+    private State state = State.QUEUED;
+    private ExportStage stage;
+    private Integer testCasesProcessed;
+    private Integer testCasesTotal;
+    private Boolean partial;
+    private String error;
+    private Instant completedAt;
+    private Path artifact;
+    private Future<?> future;
+
+    private ExportJob(String id, Type type, String owner, String fileName) {
+      this.id = id;
+      this.type = type;
+      this.owner = owner;
+      this.fileName = fileName;
+    }
+
+    @Override
+    public synchronized void stageCompleted(ExportStage stage) {
+      this.stage = stage;
+    }
+
+    @Override
+    public synchronized void testCaseProcessed(int processed, int total) {
+      this.stage = ExportStage.TEST_CASES_PROCESSED;
+      this.testCasesProcessed = processed;
+      this.testCasesTotal = total;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+      this.future = future;
+      if (state == State.CANCELLED) {
+        future.cancel(true);
+      }
+    }
+
+    synchronized boolean start() {
+      if (state != State.QUEUED) {
+        return false;
+      }
+      state = State.RUNNING;
+      return true;
+    }
+
+    synchronized boolean complete(Path artifact, boolean partial) {
+      if (state != State.RUNNING) {
+        return false;
+      }
+      this.state = State.COMPLETED;
+      this.artifact = artifact;
+      this.partial = partial;
+      this.completedAt = Instant.now();
+      return true;
+    }
+
+    synchronized boolean fail(String error) {
+      if (state != State.RUNNING) {
+        return false;
+      }
+      this.state = State.FAILED;
+      this.error = error;
+      this.completedAt = Instant.now();
+      return true;
+    }
+
+    synchronized boolean cancel() {
+      if (state != State.QUEUED && state != State.RUNNING) {
+        return false;
+      }
+      state = State.CANCELLED;
+      completedAt = Instant.now();
+      if (future != null) {
+        future.cancel(true);
+      }
+      return true;
+    }
+
+    synchronized Path getArtifact() {
+      return artifact;
+    }
+
+    synchronized boolean finishedBefore(Instant cutoff) {
+      return completedAt != null && completedAt.isBefore(cutoff);
+    }
+
+    synchronized ExportJobStatus toStatus() {
+      return ExportJobStatus.builder()
+          .jobId(id)
+          .type(type)
+          .state(state)
+          .stage(stage)
+          .testCasesProcessed(testCasesProcessed)
+          .testCasesTotal(testCasesTotal)
+          .fileName(fileName)
+          .partial(partial)
+          .error(error)
+          .submittedAt(submittedAt)
+          .completedAt(completedAt)
+          .build();
+    }
+  }
+}
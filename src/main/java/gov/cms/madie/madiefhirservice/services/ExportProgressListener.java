@@ -0,0 +1,19 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
+
+/** Receives progress from a running export. Methods are called on the thread doing the export. */
+public interface ExportProgressListener {
+  /** Listener for callers that do not track progress. */
+  ExportProgressListener NONE = new ExportProgressListener() {};
+
+  default void stageCompleted(ExportStage stage) {}
+
+  /**
+   * Called after each test case is processed, whether or not it could be exported.
+   *
+   * @param processed test cases processed so far
+   * @param total test cases in the export
+   */
+  default void testCaseProcessed(int processed, int total) {}
+}
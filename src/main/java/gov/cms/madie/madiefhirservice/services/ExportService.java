@@ -1,17 +1,20 @@
 package gov.cms.madie.madiefhirservice.services;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.Principal;
+import java.util.Set;
 
 import org.hl7.fhir.r4.model.Bundle;
 import org.springframework.stereotype.Service;
 
-import gov.cms.madie.madiefhirservice.exceptions.InternalServerException;
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
+import gov.cms.madie.madiefhirservice.constants.PipelineStage;
 import gov.cms.madie.madiefhirservice.utils.BundleUtil;
 import gov.cms.madie.madiefhirservice.utils.ExportFileNamesUtil;
+import gov.cms.madie.madiefhirservice.utils.PackagingUtilityRegistry;
+import gov.cms.madie.madiefhirservice.utils.PipelineMetrics;
 import gov.cms.madie.models.measure.Measure;
-import gov.cms.madie.packaging.utils.PackagingUtility;
-import gov.cms.madie.packaging.utils.PackagingUtilityFactory;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -20,29 +23,67 @@ import lombok.extern.slf4j.Slf4j;
 @AllArgsConstructor
 public class ExportService {
 
+  // this service is already tied to FHIR, so exports are always packaged as QI-Core; the measure
+  // archive layout belongs to the packaging utility, which deflates its entries one by one
+  private static final String EXPORT_MODEL = "QI-Core v4.1.1";
+  private static final String PIPELINE = "measure_export";
+
   private final MeasureBundleService measureBundleService;
+  private final PackagingUtilityRegistry packagingUtilityRegistry;
+  private final PipelineMetrics pipelineMetrics;
 
   public byte[] createExport(Measure madieMeasure, Principal principal, String accessToken) {
-    String exportFileName = ExportFileNamesUtil.getExportFileName(madieMeasure);
-
-    Bundle bundle =
-        measureBundleService.createMeasureBundle(
-            madieMeasure, principal, BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT, accessToken);
-
-    PackagingUtility utility;
-    try {
-      // TODO.. this method is already tied to FHIR.  so.. just hardcoding for now
-      utility = PackagingUtilityFactory.getInstance("QI-Core v4.1.1");
-    } catch (InstantiationException
-        | IllegalAccessException
-        | IllegalArgumentException
-        | InvocationTargetException
-        | NoSuchMethodException
-        | SecurityException
-        | ClassNotFoundException e) {
-      throw new InternalServerException(
-          "Unexpected error while generating exports for measureID: " + madieMeasure.getId());
+    return createExport(madieMeasure, principal, accessToken, ExportProgressListener.NONE);
+  }
+
+  public byte[] createExport(
+      Measure madieMeasure,
+      Principal principal,
+      String accessToken,
+      ExportProgressListener progressListener) {
+    try (PipelineMetrics.Run run =
+        pipelineMetrics.start(
+            PIPELINE, BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT, madieMeasure.getId())) {
+      Bundle bundle = createExportBundle(madieMeasure, principal, accessToken, progressListener);
+      byte[] export =
+          pipelineMetrics.time(
+              PipelineStage.PACKAGING,
+              () ->
+                  packagingUtilityRegistry.getZipBundle(
+                      EXPORT_MODEL, bundle, ExportFileNamesUtil.getExportFileName(madieMeasure)));
+      pipelineMetrics.recordBundleSize(BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT, "zip", export.length);
+      progressListener.stageCompleted(ExportStage.PACKAGED);
+      return export;
     }
-    return utility.getZipBundle(bundle, exportFileName);
+  }
+
+  /**
+   * Creates the export archive of the measure like {@link #createExport} and writes it to the given
+   * stream. The archive is still built in memory and written once it is complete. The stream is not
+   * closed.
+   */
+  public void writeExport(
+      Measure madieMeasure,
+      Principal principal,
+      String accessToken,
+      ExportProgressListener progressListener,
+      OutputStream out)
+      throws IOException {
+    out.write(createExport(madieMeasure, principal, accessToken, progressListener));
+    out.flush();
+  }
+
+  private Bundle createExportBundle(
+      Measure madieMeasure,
+      Principal principal,
+      String accessToken,
+      ExportProgressListener progressListener) {
+    return measureBundleService.createMeasureBundle(
+        madieMeasure,
+        principal,
+        BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT,
+        accessToken,
+        Set.of(),
+        progressListener);
   }
 }
@@ -19,6 +19,7 @@ import org.hl7.fhir.r5.model.Enumerations.FHIRTypes;
 import org.hl7.fhir.r5.utils.LiquidEngine;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -375,7 +376,11 @@ public class HumanReadableService extends ResourceUtils {
     r5Library.setContent(
         r5Library.getContent().stream()
             .filter(content -> content.getContentType().equalsIgnoreCase("text/cql"))
-            .map(content -> content.setData(escapeStr(new String(content.getData())).getBytes()))
+            .map(
+                content ->
+                    content.setData(
+                        escapeStr(new String(content.getData(), StandardCharsets.UTF_8))
+                            .getBytes(StandardCharsets.UTF_8)))
             .collect(Collectors.toList()));
   }
 
@@ -1,10 +1,12 @@
 package gov.cms.madie.madiefhirservice.services;
 
+import gov.cms.madie.madiefhirservice.constants.PipelineStage;
 import gov.cms.madie.madiefhirservice.cql.LibraryCqlVisitor;
 import gov.cms.madie.madiefhirservice.cql.LibraryCqlVisitorFactory;
 import gov.cms.madie.madiefhirservice.exceptions.LibraryAttachmentNotFoundException;
 import gov.cms.madie.madiefhirservice.exceptions.MissingCqlException;
 import gov.cms.madie.madiefhirservice.utils.BundleUtil;
+import gov.cms.madie.madiefhirservice.utils.PipelineMetrics;
 import gov.cms.madie.models.library.CqlLibrary;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +18,7 @@ import org.hl7.fhir.r4.model.Narrative;
 import org.hl7.fhir.r4.model.Narrative.NarrativeStatus;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 @Service
@@ -27,6 +30,7 @@ public class LibraryService {
   private final LibraryTranslatorService libraryTranslatorService;
   private final LibraryCqlVisitorFactory libCqlVisitorFactory;
   private final HumanReadableService humanReadableService;
+  private final PipelineMetrics pipelineMetrics;
 
   public String getLibraryCql(String name, String version, final String accessToken) {
     CqlLibrary library = cqlLibraryService.getLibrary(name, version, accessToken);
@@ -46,7 +50,9 @@ public class LibraryService {
   public Library cqlLibraryToFhirLibrary(CqlLibrary cqlLibrary, final String bundleType) {
     Library library = libraryTranslatorService.convertToFhirLibrary(cqlLibrary);
     if (BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT.equals(bundleType)) {
-      library.setText(createLibraryNarrativeText(library));
+      library.setText(
+          pipelineMetrics.time(
+              PipelineStage.NARRATIVE_RENDERING, () -> createLibraryNarrativeText(library)));
     }
     return library;
   }
@@ -64,15 +70,24 @@ public class LibraryService {
     LibraryCqlVisitor visitor = libCqlVisitorFactory.visit(cql);
     for (Pair<String, String> libraryNameValuePair : visitor.getIncludedLibraries()) {
       CqlLibrary cqlLibrary =
-          cqlLibraryService.getLibrary(
-              libraryNameValuePair.getLeft(), libraryNameValuePair.getRight(), accessToken);
+          pipelineMetrics.time(
+              PipelineStage.INCLUDE_RESOLUTION,
+              () ->
+                  cqlLibraryService.getLibrary(
+                      libraryNameValuePair.getLeft(),
+                      libraryNameValuePair.getRight(),
+                      accessToken));
       Library library = cqlLibraryToFhirLibrary(cqlLibrary, bundleType);
       String key = library.getName() + library.getVersion();
       if (!libraryMap.containsKey(key)) {
         libraryMap.put(key, library);
       }
       Attachment attachment = findCqlAttachment(library);
-      getIncludedLibraries(new String(attachment.getData()), libraryMap, bundleType, accessToken);
+      getIncludedLibraries(
+          new String(attachment.getData(), StandardCharsets.UTF_8),
+          libraryMap,
+          bundleType,
+          accessToken);
     }
   }
 
@@ -1,5 +1,6 @@
 package gov.cms.madie.madiefhirservice.services;
 
+import gov.cms.madie.madiefhirservice.constants.ElmFormat;
 import gov.cms.madie.madiefhirservice.constants.UriConstants;
 import gov.cms.madie.madiefhirservice.cql.LibraryCqlVisitorFactory;
 import gov.cms.madie.madiefhirservice.utils.FhirResourceHelpers;
@@ -20,20 +21,22 @@ import org.hl7.fhir.r4.model.RelatedArtifact;
 import org.hl7.fhir.r4.model.Identifier.IdentifierUse;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Objects;
-import java.util.function.Predicate;
+import java.util.Set;
 
 @Slf4j
 @Service
 public class LibraryTranslatorService {
   public static final String CQL_CONTENT_TYPE = "text/cql";
-  public static final String JSON_ELM_CONTENT_TYPE = "application/elm+json";
-  public static final String XML_ELM_CONTENT_TYPE = "application/elm+xml";
+  public static final String JSON_ELM_CONTENT_TYPE = ElmFormat.JSON.getContentType();
+  public static final String XML_ELM_CONTENT_TYPE = ElmFormat.XML.getContentType();
   public static final String SYSTEM_CODE = "logic-library";
   public static final String UNKNOWN_VALUE = "UNKNOWN";
 
@@ -97,7 +100,7 @@ public class LibraryTranslatorService {
     if (attachment == null) {
       return null;
     }
-    return new String(attachment.getData());
+    return new String(attachment.getData(), StandardCharsets.UTF_8);
   }
 
   public Attachment findAttachmentOfContentType(Library library, String contentType) {
@@ -128,79 +131,77 @@ public class LibraryTranslatorService {
   private List<Attachment> createContent(String cql, String elmJson, String elmXml) {
     List<Attachment> attachments = new ArrayList<>(3);
     if (cql != null) {
-      attachments.add(createAttachment(CQL_CONTENT_TYPE, cql.getBytes()));
+      attachments.add(createAttachment(CQL_CONTENT_TYPE, cql.getBytes(StandardCharsets.UTF_8)));
     }
     if (elmXml != null) {
-      attachments.add(createAttachment(XML_ELM_CONTENT_TYPE, elmXml.getBytes()));
+      attachments.add(
+          createAttachment(XML_ELM_CONTENT_TYPE, elmXml.getBytes(StandardCharsets.UTF_8)));
     }
     if (elmJson != null) {
-      attachments.add(createAttachment(JSON_ELM_CONTENT_TYPE, elmJson.getBytes()));
+      attachments.add(
+          createAttachment(JSON_ELM_CONTENT_TYPE, elmJson.getBytes(StandardCharsets.UTF_8)));
     }
     return attachments;
   }
 
   private List<RelatedArtifact> distinctArtifacts(List<RelatedArtifact> artifacts) {
+    // FHIR elements do not override equals, so only repeats of the same instance are duplicates
+    Set<RelatedArtifact> seen = Collections.newSetFromMap(new IdentityHashMap<>());
     List<RelatedArtifact> result = new ArrayList<>(artifacts.size());
-    // Remove duplicates.
-    artifacts.forEach(
-        a -> {
-          if (result.stream().noneMatch(ar -> Objects.deepEquals(a, ar))) {
-            result.add(a);
-          }
-        });
+    for (RelatedArtifact artifact : artifacts) {
+      if (seen.add(artifact)) {
+        result.add(artifact);
+      }
+    }
     result.sort(Comparator.comparing(RelatedArtifact::getResource));
     return result;
   }
 
+  /**
+   * Keeps the first of each group of matching data requirements, in their original order. Two
+   * requirements match when they have the same type and either both have no code filter, or their
+   * first code filters have the same path and the same value set or the same first code.
+   */
   private List<DataRequirement> distinctDataRequirements(List<DataRequirement> reqs) {
+    Set<DataRequirementKey> seen = new HashSet<>();
     List<DataRequirement> result = new ArrayList<>(reqs.size());
-    // Remove duplicates.
     for (DataRequirement req : reqs) {
-      if (result.stream()
-          .noneMatch(r -> matchType(req.getType()).and(matchCodeFilter(req)).test(r))) {
+      List<DataRequirementKey> keys = dataRequirementKeys(req);
+      if (keys.stream().noneMatch(seen::contains)) {
         result.add(req);
+        seen.addAll(keys);
       }
     }
     return result;
   }
 
-  private Predicate<DataRequirement> matchType(String type) {
-    return d -> StringUtils.equals(d.getType(), type);
-  }
-
-  private Predicate<DataRequirement> matchCodeFilter(DataRequirement o) {
-    return d -> {
-      if ((CollectionUtils.isEmpty(d.getCodeFilter())
-          && CollectionUtils.isEmpty(o.getCodeFilter()))) {
-        // Match when both code filters are empty
-        return true;
-      } else if ((CollectionUtils.isEmpty(d.getCodeFilter())
-          || CollectionUtils.isEmpty(o.getCodeFilter()))) {
-        // No match if either code filter is empty
-        return false;
-      } else {
-        // Match on path AND (code or value set)
-        return StringUtils.equals(
-                d.getCodeFilter().get(0).getPath(), o.getCodeFilter().get(0).getPath())
-            && (hasMatchingValueSet(d, o) || hasMatchingCode(o, d));
-      }
-    };
+  /** The keys a requirement matches on; two requirements match when they share any key. */
+  private List<DataRequirementKey> dataRequirementKeys(DataRequirement req) {
+    if (CollectionUtils.isEmpty(req.getCodeFilter())) {
+      return List.of(new DataRequirementKey(KeyKind.TYPE, req.getType(), null, null));
+    }
+    DataRequirement.DataRequirementCodeFilterComponent filter = req.getCodeFilter().get(0);
+    List<DataRequirementKey> keys = new ArrayList<>(2);
+    if (filter.getValueSet() != null) {
+      keys.add(
+          new DataRequirementKey(
+              KeyKind.VALUE_SET, req.getType(), filter.getPath(), filter.getValueSet()));
+    }
+    if (CollectionUtils.isNotEmpty(filter.getCode())) {
+      keys.add(
+          new DataRequirementKey(
+              KeyKind.CODE, req.getType(), filter.getPath(), filter.getCode().get(0).getCode()));
+    }
+    return keys;
   }
 
-  private boolean hasMatchingCode(DataRequirement o, DataRequirement d) {
-    return (!CollectionUtils.isEmpty(d.getCodeFilter().get(0).getCode())
-            && !CollectionUtils.isEmpty(o.getCodeFilter().get(0).getCode()))
-        && StringUtils.equals(
-            d.getCodeFilter().get(0).getCode().get(0).getCode(),
-            o.getCodeFilter().get(0).getCode().get(0).getCode());
+  private enum KeyKind {
+    TYPE,
+    VALUE_SET,
+    CODE
   }
 
-  private boolean hasMatchingValueSet(DataRequirement d, DataRequirement o) {
-    return (d.getCodeFilter().get(0).getValueSet() != null
-            && o.getCodeFilter().get(0).getValueSet() != null)
-        && StringUtils.equals(
-            d.getCodeFilter().get(0).getValueSet(), o.getCodeFilter().get(0).getValueSet());
-  }
+  private record DataRequirementKey(KeyKind kind, String type, String path, String value) {}
 
   private CodeableConcept createType(String type, String code) {
     return new CodeableConcept().setCoding(Collections.singletonList(new Coding(type, code, null)));
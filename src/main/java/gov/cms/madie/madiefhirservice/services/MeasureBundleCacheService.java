@@ -0,0 +1,131 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gov.cms.madie.madiefhirservice.config.MeasureBundleCacheConfig;
+import gov.cms.madie.madiefhirservice.constants.ElmFormat;
+import gov.cms.madie.madiefhirservice.constants.PipelineStage;
+import gov.cms.madie.madiefhirservice.exceptions.InternalServerException;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.MeasureFingerprinter;
+import gov.cms.madie.madiefhirservice.utils.PipelineMetrics;
+import gov.cms.madie.madiefhirservice.utils.PreparedJsonResponse;
+import gov.cms.madie.models.measure.Measure;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hl7.fhir.r4.model.Bundle;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Keeps recently built measure bundles as encoded JSON, so repeated requests for an unchanged
+ * measure skip CQL formatting, translation and library lookups. Bundles are keyed by the caller, as
+ * libraries are fetched with the caller's access token, together with the measure fingerprint and
+ * the bundle options. Requests without a principal are never cached.
+ *
+ * <p>Bundles are built outside the cache and put into it afterwards, so a long build does not hold
+ * the cache's internal locks. Concurrent misses for the same key are not coalesced here: callers
+ * build through the {@link MeasureRequestCoalescer}, which already shares one build between them,
+ * so only the encoding is repeated.
+ */
+@Service
+public class MeasureBundleCacheService {
+  public static final String CACHE_NAME = "measureBundles";
+
+  private final FhirParserProvider parserProvider;
+  private final MeasureFingerprinter measureFingerprinter;
+  private final PipelineMetrics pipelineMetrics;
+  private final Cache<String, PreparedJsonResponse> cache;
+
+  public MeasureBundleCacheService(
+      FhirParserProvider parserProvider,
+      MeasureFingerprinter measureFingerprinter,
+      MeasureBundleCacheConfig measureBundleCacheConfig,
+      PipelineMetrics pipelineMetrics,
+      MeterRegistry meterRegistry) {
+    this.parserProvider = parserProvider;
+    this.measureFingerprinter = measureFingerprinter;
+    this.pipelineMetrics = pipelineMetrics;
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumWeight(measureBundleCacheConfig.getMaxBytes())
+            .weigher((String key, PreparedJsonResponse response) -> response.getSize())
+            .expireAfterWrite(Duration.ofMillis(measureBundleCacheConfig.getTtlMillis()))
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  /**
+   * Returns the encoded bundle for the measure and options, building it only if no bundle for the
+   * same caller, measure payload and options is cached.
+   *
+   * @param measure the measure the bundle is built from, fingerprinted for the cache key
+   * @param principal the caller whose access token the bundle is built with
+   * @param bundleType calculation or export
+   * @param excludedElmFormats ELM formats left out of the libraries
+   * @param prettyPrint whether the JSON is pretty printed
+   * @param bundleBuilder builds the bundle on a cache miss
+   */
+  public PreparedJsonResponse getBundle(
+      Measure measure,
+      Principal principal,
+      String bundleType,
+      Set<ElmFormat> excludedElmFormats,
+      boolean prettyPrint,
+      Supplier<Bundle> bundleBuilder) {
+    if (principal == null) {
+      return encode(bundleBuilder.get(), bundleType, prettyPrint);
+    }
+    String key = cacheKey(measure, principal, bundleType, excludedElmFormats, prettyPrint);
+    PreparedJsonResponse cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    PreparedJsonResponse response = encode(bundleBuilder.get(), bundleType, prettyPrint);
+    cache.put(key, response);
+    return response;
+  }
+
+  String cacheKey(
+      Measure measure,
+      Principal principal,
+      String bundleType,
+      Set<ElmFormat> excludedElmFormats,
+      boolean prettyPrint) {
+    return principal.getName()
+        + "|"
+        + measureFingerprinter.fingerprint(measure)
+        + "|"
+        + bundleType
+        + "|"
+        + new TreeSet<>(excludedElmFormats)
+        + "|"
+        + prettyPrint;
+  }
+
+  private PreparedJsonResponse encode(Bundle bundle, String bundleType, boolean prettyPrint) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    pipelineMetrics.run(
+        PipelineStage.ENCODING,
+        () -> {
+          try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            parserProvider.jsonParser(prettyPrint).encodeResourceToWriter(bundle, writer);
+          } catch (IOException ex) {
+            throw new InternalServerException("Unable to encode measure bundle", ex);
+          }
+        });
+    pipelineMetrics.recordBundleSize(bundleType, "json", out.size());
+    return PreparedJsonResponse.of(out.toByteArray());
+  }
+}
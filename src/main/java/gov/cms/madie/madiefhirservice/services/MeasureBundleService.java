@@ -1,17 +1,22 @@
 package gov.cms.madie.madiefhirservice.services;
 
+import gov.cms.madie.madiefhirservice.config.CqlFormatConfig;
+import gov.cms.madie.madiefhirservice.constants.ElmFormat;
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
+import gov.cms.madie.madiefhirservice.constants.PipelineStage;
 import gov.cms.madie.madiefhirservice.constants.UriConstants;
 import gov.cms.madie.madiefhirservice.dto.CqlLibraryDetails;
 import gov.cms.madie.madiefhirservice.utils.BundleUtil;
 import gov.cms.madie.madiefhirservice.utils.FhirResourceHelpers;
+import gov.cms.madie.madiefhirservice.utils.PipelineMetrics;
 import gov.cms.madie.madiefhirservice.utils.ResourceUtils;
 import gov.cms.madie.models.library.CqlLibrary;
 import gov.cms.madie.models.measure.Measure;
-import gov.cms.mat.cql.CqlFormatter;
 import java.security.Principal;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.apache.commons.collections4.CollectionUtils;
 import org.hl7.fhir.convertors.advisors.impl.BaseAdvisor_40_50;
 import org.hl7.fhir.convertors.conv40_50.VersionConvertor_40_50;
 import org.hl7.fhir.r4.model.Bundle;
@@ -33,24 +38,79 @@ import java.util.stream.Collectors;
 @Service
 @RequiredArgsConstructor
 public class MeasureBundleService {
+  private static final String PIPELINE = "measure_bundle";
+
   private final MeasureTranslatorService measureTranslatorService;
   private final LibraryTranslatorService libraryTranslatorService;
   private final LibraryService libraryService;
   private final ElmTranslatorClient elmTranslatorClient;
   private final HumanReadableService humanReadableService;
+  private final CqlFormatService cqlFormatService;
+  private final CqlFormatConfig cqlFormatConfig;
+  private final PipelineMetrics pipelineMetrics;
 
   /**
    * Creates measure bundle that contains measure, main library, and included libraries resources
    */
   public Bundle createMeasureBundle(
       Measure madieMeasure, Principal principal, String bundleType, String accessToken) {
+    return createMeasureBundle(madieMeasure, principal, bundleType, accessToken, Set.of());
+  }
+
+  /**
+   * Creates measure bundle that contains measure, main library, and included libraries resources,
+   * leaving the given ELM formats out of the library content. The ELM is usually the bulk of a
+   * bundle, and clients that only calculate measures from the CQL do not need it.
+   */
+  public Bundle createMeasureBundle(
+      Measure madieMeasure,
+      Principal principal,
+      String bundleType,
+      String accessToken,
+      Set<ElmFormat> excludedElmFormats) {
+    return createMeasureBundle(
+        madieMeasure,
+        principal,
+        bundleType,
+        accessToken,
+        excludedElmFormats,
+        ExportProgressListener.NONE);
+  }
+
+  /**
+   * Creates measure bundle as above, reporting to the listener once the libraries are resolved and,
+   * for export bundles, once the narratives are rendered.
+   */
+  public Bundle createMeasureBundle(
+      Measure madieMeasure,
+      Principal principal,
+      String bundleType,
+      String accessToken,
+      Set<ElmFormat> excludedElmFormats,
+      ExportProgressListener progressListener) {
     log.info(
         "Generating measure bundle of type [{}] for measure {}", bundleType, madieMeasure.getId());
-    madieMeasure.setCql(CqlFormatter.formatCql(madieMeasure.getCql(), principal));
+    try (PipelineMetrics.Run run =
+        pipelineMetrics.start(PIPELINE, bundleType, madieMeasure.getId())) {
+      return buildMeasureBundle(
+          formatCql(madieMeasure, principal, bundleType),
+          bundleType,
+          accessToken,
+          excludedElmFormats,
+          progressListener);
+    }
+  }
 
-    log.info("CQL formatting completed successfully for measure {}", madieMeasure.getId());
+  private Bundle buildMeasureBundle(
+      Measure madieMeasure,
+      String bundleType,
+      String accessToken,
+      Set<ElmFormat> excludedElmFormats,
+      ExportProgressListener progressListener) {
     org.hl7.fhir.r4.model.Measure measure =
-        measureTranslatorService.createFhirMeasureForMadieMeasure(madieMeasure);
+        pipelineMetrics.time(
+            PipelineStage.MEASURE_TRANSLATION,
+            () -> measureTranslatorService.createFhirMeasureForMadieMeasure(madieMeasure));
     Set<String> expressions = getExpressions(measure);
 
     log.info(
@@ -66,7 +126,9 @@ public class MeasureBundleService {
         createBundleComponentsForLibrariesOfMadieMeasure(
             expressions, madieMeasure, bundleType, accessToken);
     libraryEntryComponents.forEach(bundle::addEntry);
+    pipelineMetrics.recordLibraryCount(bundleType, libraryEntryComponents.size());
     log.info("Included library components created successfully {}", madieMeasure.getId());
+    progressListener.stageCompleted(ExportStage.LIBRARIES_RESOLVED);
 
     if (BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT.equals(bundleType)) {
       CqlLibraryDetails libraryDetails =
@@ -78,11 +140,18 @@ public class MeasureBundleService {
       // get effective DataRequirements
       log.info("Getting effective data requirements for measure: {}", measure.getId());
       org.hl7.fhir.r5.model.Library effectiveDataRequirements =
-          elmTranslatorClient.getEffectiveDataRequirements(libraryDetails, true, accessToken);
+          pipelineMetrics.time(
+              PipelineStage.EFFECTIVE_DATA_REQUIREMENTS,
+              () ->
+                  elmTranslatorClient.getEffectiveDataRequirements(
+                      libraryDetails, true, accessToken));
       // get human-readable for measure
       String humanReadable =
-          humanReadableService.generateMeasureHumanReadable(
-              madieMeasure, bundle, effectiveDataRequirements);
+          pipelineMetrics.time(
+              PipelineStage.NARRATIVE_RENDERING,
+              () ->
+                  humanReadableService.generateMeasureHumanReadable(
+                      madieMeasure, bundle, effectiveDataRequirements));
       // set narrative and effective DataRequirements to measure
       setNarrativeText(measure, humanReadable);
       addEffectiveDataRequirementsToMeasure(measure, effectiveDataRequirements);
@@ -90,12 +159,54 @@ public class MeasureBundleService {
       // set narrative to measure library
       var measureLibrary =
           (org.hl7.fhir.r4.model.Library) ResourceUtils.getResource(bundle, "Library");
-      String libraryHr = humanReadableService.generateLibraryHumanReadable(measureLibrary);
+      String libraryHr =
+          pipelineMetrics.time(
+              PipelineStage.NARRATIVE_RENDERING,
+              () -> humanReadableService.generateLibraryHumanReadable(measureLibrary));
       setNarrativeText(measureLibrary, libraryHr);
+      progressListener.stageCompleted(ExportStage.NARRATIVES_RENDERED);
+    }
+    if (CollectionUtils.isNotEmpty(excludedElmFormats)) {
+      removeLibraryContent(bundle, excludedElmFormats);
     }
     return bundle;
   }
 
+  /**
+   * Returns a copy of the measure with formatted CQL, leaving the caller's measure as it is.
+   * Calculation bundles keep the CQL as submitted if so configured.
+   */
+  private Measure formatCql(Measure madieMeasure, Principal principal, String bundleType) {
+    if (cqlFormatConfig.isSkipForCalculation()
+        && BundleUtil.MEASURE_BUNDLE_TYPE_CALCULATION.equals(bundleType)) {
+      log.info("CQL formatting skipped for calculation bundle of measure {}", madieMeasure.getId());
+      return madieMeasure;
+    }
+    Measure formatted =
+        madieMeasure.toBuilder()
+            .cql(
+                pipelineMetrics.time(
+                    PipelineStage.CQL_FORMAT,
+                    () -> cqlFormatService.format(madieMeasure.getCql(), principal)))
+            .build();
+    log.info("CQL formatting completed successfully for measure {}", madieMeasure.getId());
+    return formatted;
+  }
+
+  private void removeLibraryContent(Bundle bundle, Set<ElmFormat> excludedElmFormats) {
+    Set<String> contentTypes =
+        excludedElmFormats.stream().map(ElmFormat::getContentType).collect(Collectors.toSet());
+    bundle.getEntry().stream()
+        .map(Bundle.BundleEntryComponent::getResource)
+        .filter(Library.class::isInstance)
+        .map(Library.class::cast)
+        .forEach(
+            library ->
+                library
+                    .getContent()
+                    .removeIf(attachment -> contentTypes.contains(attachment.getContentType())));
+  }
+
   /**
    * Collects BundleEntryComponents for main measure library and included libraries
    *
@@ -146,7 +257,10 @@ public class MeasureBundleService {
             .build();
     Library library = libraryTranslatorService.convertToFhirLibrary(cqlLibrary);
     org.hl7.fhir.r5.model.Library r5moduleDefinition =
-        elmTranslatorClient.getModuleDefinitionLibrary(libraryDetails, false, accessToken);
+        pipelineMetrics.time(
+            PipelineStage.MODULE_DEFINITION,
+            () ->
+                elmTranslatorClient.getModuleDefinitionLibrary(libraryDetails, false, accessToken));
     updateLibraryDataRequirements(library, r5moduleDefinition);
     return library;
   }
@@ -184,7 +298,9 @@ public class MeasureBundleService {
     var versionConvertor_40_50 = new VersionConvertor_40_50(new BaseAdvisor_40_50());
     org.hl7.fhir.r4.model.Library r4EffectiveDataRequirements =
         (org.hl7.fhir.r4.model.Library)
-            versionConvertor_40_50.convertResource(effectiveDataRequirements);
+            pipelineMetrics.time(
+                PipelineStage.VERSION_CONVERSION,
+                () -> versionConvertor_40_50.convertResource(effectiveDataRequirements));
     // TODO: verify effective data requirement profile compliance:
     // http://hl7.org/fhir/us/cqfmeasures/StructureDefinition-module-definition-library-cqfm.html
     measure.addContained(r4EffectiveDataRequirements);
@@ -222,7 +338,9 @@ public class MeasureBundleService {
     var versionConvertor_40_50 = new VersionConvertor_40_50(new BaseAdvisor_40_50());
     org.hl7.fhir.r4.model.Library r4moduleDefinitionLibrary =
         (org.hl7.fhir.r4.model.Library)
-            versionConvertor_40_50.convertResource(r5moduleDefinitionLibrary);
+            pipelineMetrics.time(
+                PipelineStage.VERSION_CONVERSION,
+                () -> versionConvertor_40_50.convertResource(r5moduleDefinitionLibrary));
     library.setDataRequirement(r4moduleDefinitionLibrary.getDataRequirement());
   }
 }
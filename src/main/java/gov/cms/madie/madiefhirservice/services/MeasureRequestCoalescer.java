@@ -0,0 +1,81 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import gov.cms.madie.madiefhirservice.constants.ElmFormat;
+import gov.cms.madie.madiefhirservice.utils.MeasureFingerprinter;
+import gov.cms.madie.madiefhirservice.utils.SingleFlight;
+import gov.cms.madie.models.measure.Measure;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hl7.fhir.r4.model.Bundle;
+import org.springframework.stereotype.Service;
+
+import java.security.Principal;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Shares measure bundle and export builds between concurrent identical requests, which are common
+ * when a user or their jobs retry work on the same measure. Libraries are fetched and translated
+ * with the caller's access token, so a build is only shared between requests of the same user with
+ * a matching measure fingerprint and options. Requests without a principal are never shared.
+ */
+@Service
+public class MeasureRequestCoalescer {
+  public static final String BUNDLE_FLIGHT = "measureBundle";
+  public static final String EXPORT_FLIGHT = "measureExport";
+
+  private final MeasureBundleService measureBundleService;
+  private final ExportService exportService;
+  private final MeasureFingerprinter measureFingerprinter;
+  private final SingleFlight<String, Bundle> bundles;
+  private final SingleFlight<String, byte[]> exports;
+
+  public MeasureRequestCoalescer(
+      MeasureBundleService measureBundleService,
+      ExportService exportService,
+      MeasureFingerprinter measureFingerprinter,
+      MeterRegistry meterRegistry) {
+    this.measureBundleService = measureBundleService;
+    this.exportService = exportService;
+    this.measureFingerprinter = measureFingerprinter;
+    this.bundles = new SingleFlight<>(BUNDLE_FLIGHT, Bundle::copy, meterRegistry);
+    // export archives are handed straight to the response and never modified
+    this.exports = new SingleFlight<>(EXPORT_FLIGHT, UnaryOperator.identity(), meterRegistry);
+  }
+
+  /** See {@link MeasureBundleService#createMeasureBundle}. */
+  public Bundle createMeasureBundle(
+      Measure measure,
+      Principal principal,
+      String bundleType,
+      String accessToken,
+      Set<ElmFormat> excludedElmFormats) {
+    Supplier<Bundle> build =
+        () ->
+            measureBundleService.createMeasureBundle(
+                measure, principal, bundleType, accessToken, excludedElmFormats);
+    if (principal == null) {
+      return build.get();
+    }
+    String key =
+        principal.getName()
+            + "|"
+            + measureFingerprinter.fingerprint(measure)
+            + "|"
+            + bundleType
+            + "|"
+            + new TreeSet<>(excludedElmFormats);
+    return bundles.execute(key, build);
+  }
+
+  /** See {@link ExportService#createExport}. */
+  public byte[] createExport(Measure measure, Principal principal, String accessToken) {
+    Supplier<byte[]> build = () -> exportService.createExport(measure, principal, accessToken);
+    if (principal == null) {
+      return build.get();
+    }
+    return exports.execute(
+        principal.getName() + "|" + measureFingerprinter.fingerprint(measure), build);
+  }
+}
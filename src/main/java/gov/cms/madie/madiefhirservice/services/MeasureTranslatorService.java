@@ -43,6 +43,41 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class MeasureTranslatorService {
   public static final String UNKNOWN = "UNKNOWN";
+
+  // FHIR fragments that are the same for every measure, built once and copied into each result
+  private static final Meta MEASURE_META =
+      new Meta()
+          .addProfile(UriConstants.CqfMeasures.COMPUTABLE_MEASURE_PROFILE_URI)
+          .addProfile(UriConstants.CqfMeasures.PUBLISHABLE_MEASURE_PROFILE_URI)
+          .addProfile(UriConstants.CqfMeasures.EXECUTABLE_MEASURE_PROFILE_URI);
+  private static final Map<IdentifierType, CodeableConcept> IDENTIFIER_TYPES =
+      new EnumMap<>(IdentifierType.class);
+  private static final Map<PopulationType, CodeableConcept> POPULATION_CODES =
+      new EnumMap<>(PopulationType.class);
+  private static final Map<String, CodeableConcept> SCORING_CONCEPTS = new HashMap<>();
+
+  static {
+    for (IdentifierType identifierType : IdentifierType.values()) {
+      IDENTIFIER_TYPES.put(
+          identifierType,
+          buildCodeableConcept(
+              identifierType.getCode(),
+              UriConstants.CqfMeasures.CODE_SYSTEM_IDENTIFIER_TYPE_URI,
+              identifierType.getDisplay()));
+    }
+    for (PopulationType populationType : PopulationType.values()) {
+      POPULATION_CODES.put(
+          populationType,
+          buildCodeableConcept(
+              populationType.toCode(),
+              UriConstants.POPULATION_SYSTEM_URI,
+              populationType.getDisplay()));
+    }
+    for (MeasureScoring scoring : MeasureScoring.values()) {
+      SCORING_CONCEPTS.put(scoring.toString(), createScoringConcept(scoring.toString()));
+    }
+  }
+
   private final AppConfigService appConfigService;
 
   public org.hl7.fhir.r4.model.Measure createFhirMeasureForMadieMeasure(Measure madieMeasure) {
@@ -191,20 +226,12 @@ public class MeasureTranslatorService {
     identifier.setUse(use);
     identifier.setSystem(system);
     identifier.setValue(value);
-    identifier.setType(
-        buildCodeableConcept(
-            identifierType.getCode(),
-            UriConstants.CqfMeasures.CODE_SYSTEM_IDENTIFIER_TYPE_URI,
-            identifierType.getDisplay()));
+    identifier.setType(IDENTIFIER_TYPES.get(identifierType).copy());
     return identifier;
   }
 
   public Meta buildMeasureMeta() {
-    final Meta meta = new Meta();
-    meta.addProfile(UriConstants.CqfMeasures.COMPUTABLE_MEASURE_PROFILE_URI);
-    meta.addProfile(UriConstants.CqfMeasures.PUBLISHABLE_MEASURE_PROFILE_URI);
-    meta.addProfile(UriConstants.CqfMeasures.EXECUTABLE_MEASURE_PROFILE_URI);
-    return meta;
+    return MEASURE_META.copy();
   }
 
   public List<MeasureGroupComponent> buildGroups(List<Group> madieGroups) {
@@ -216,26 +243,28 @@ public class MeasureTranslatorService {
   }
 
   private CodeableConcept getScoringUnitCode(Object scoringUnit) {
-    if (scoringUnit == null) {
-      return null;
-    } else if (scoringUnit instanceof String) {
-      String scoringUnitStr = (String) scoringUnit;
+    if (scoringUnit instanceof String scoringUnitStr) {
       return scoringUnitStr.trim().isEmpty()
           ? null
           : new CodeableConcept(new Coding(null, scoringUnitStr, scoringUnitStr));
-    } else if (scoringUnit instanceof Map) {
-      Map<String, Object> scoringUnitObj = (Map) scoringUnit;
-      Map<String, Object> valueObj = (Map) scoringUnitObj.get("value");
+    } else if (scoringUnit instanceof Map<?, ?> scoringUnitObj) {
+      // units picked in the UI arrive as {"label": ..., "value": {"code": ..., "system": ...}}
+      Map<?, ?> valueObj =
+          scoringUnitObj.get("value") instanceof Map<?, ?> value ? value : Map.of();
       return new CodeableConcept(
           new Coding(
-              (String) valueObj.get("system"),
-              (String) valueObj.get("code"),
-              (String) scoringUnitObj.get("label")));
+              stringValue(valueObj, "system"),
+              stringValue(valueObj, "code"),
+              stringValue(scoringUnitObj, "label")));
     } else {
       return null;
     }
   }
 
+  private String stringValue(Map<?, ?> map, String key) {
+    return map.get(key) instanceof String value ? value : null;
+  }
+
   public MeasureGroupComponent buildGroup(Group madieGroup) {
     List<MeasureGroupPopulationComponent> measurePopulations = buildPopulations(madieGroup);
     measurePopulations.addAll(buildObservations(madieGroup));
@@ -322,16 +351,10 @@ public class MeasureTranslatorService {
         .filter(population -> StringUtils.isNotBlank(population.getDefinition()))
         .map(
             population -> {
-              String populationCode = population.getName().toCode();
-              String populationDisplay = population.getName().getDisplay();
               return (MeasureGroupPopulationComponent)
                   (new MeasureGroupPopulationComponent()
                           .setDescription(population.getDescription())
-                          .setCode(
-                              buildCodeableConcept(
-                                  populationCode,
-                                  UriConstants.POPULATION_SYSTEM_URI,
-                                  populationDisplay))
+                          .setCode(buildPopulationCode(population.getName()))
                           .setCriteria(
                               buildExpression("text/cql-identifier", population.getDefinition()))
                           .setId(population.getId()))
@@ -353,11 +376,7 @@ public class MeasureTranslatorService {
                   (MeasureGroupPopulationComponent)
                       (new MeasureGroupPopulationComponent()
                           .setDescription(measureObservation.getDescription())
-                          .setCode(
-                              buildCodeableConcept(
-                                  PopulationType.MEASURE_OBSERVATION.toCode(),
-                                  UriConstants.POPULATION_SYSTEM_URI,
-                                  PopulationType.MEASURE_OBSERVATION.getDisplay()))
+                          .setCode(buildPopulationCode(PopulationType.MEASURE_OBSERVATION))
                           .setCriteria(
                               buildExpression(
                                   "text/cql-identifier", measureObservation.getDefinition()))
@@ -404,10 +423,7 @@ public class MeasureTranslatorService {
                                     extension.set(
                                         new Extension(
                                             UriConstants.CqfMeasures.APPLIES_TO_URI,
-                                            buildCodeableConcept(
-                                                associationPopulation.toCode(),
-                                                UriConstants.POPULATION_SYSTEM_URI,
-                                                associationPopulation.getDisplay())));
+                                            buildPopulationCode(associationPopulation)));
                                     return extension.get();
                                   })
                               .collect(Collectors.toList());
@@ -476,6 +492,11 @@ public class MeasureTranslatorService {
     if (StringUtils.isEmpty(scoring)) {
       return null;
     }
+    CodeableConcept scoringConcept = SCORING_CONCEPTS.get(scoring);
+    return scoringConcept == null ? createScoringConcept(scoring) : scoringConcept.copy();
+  }
+
+  private static CodeableConcept createScoringConcept(String scoring) {
     String code = scoring.toLowerCase();
     if ("continuous variable".equals(code)) {
       code = "continuous-variable";
@@ -483,14 +504,18 @@ public class MeasureTranslatorService {
     return buildCodeableConcept(code, UriConstants.SCORING_SYSTEM_URI, scoring);
   }
 
-  private CodeableConcept buildCodeableConcept(String code, String system, String display) {
+  private CodeableConcept buildPopulationCode(PopulationType populationType) {
+    return POPULATION_CODES.get(populationType).copy();
+  }
+
+  private static CodeableConcept buildCodeableConcept(String code, String system, String display) {
     CodeableConcept codeableConcept = new CodeableConcept();
     codeableConcept.setCoding(new ArrayList<>());
     codeableConcept.getCoding().add(buildCoding(code, system, display));
     return codeableConcept;
   }
 
-  private Coding buildCoding(String code, String system, String display) {
+  private static Coding buildCoding(String code, String system, String display) {
     return new Coding().setCode(code).setSystem(system).setDisplay(display);
   }
 
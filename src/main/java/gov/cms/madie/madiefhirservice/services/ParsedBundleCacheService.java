@@ -0,0 +1,93 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gov.cms.madie.madiefhirservice.config.BundleCacheConfig;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.HashUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.Bundle;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Keeps recently parsed test case bundles keyed by a hash of their JSON, so shifting, validating
+ * and exporting the same test case parses it only once. Cached bundles are never handed out;
+ * callers always get their own deep copy, which is far cheaper than parsing and leaves them free to
+ * modify it.
+ *
+ * <p>The cache is bounded by the estimated heap size of the parsed bundles. A parsed HAPI bundle
+ * takes several times the memory of its JSON, so the weight of an entry is its JSON length times
+ * {@value #PARSED_BYTES_PER_JSON_CHAR}, a ratio measured on test case bundles.
+ */
+@Service
+public class ParsedBundleCacheService {
+  public static final String CACHE_NAME = "parsedBundles";
+  static final int PARSED_BYTES_PER_JSON_CHAR = 6;
+
+  private final FhirParserProvider parserProvider;
+  private final Cache<String, CachedBundle> cache;
+
+  public ParsedBundleCacheService(
+      FhirParserProvider parserProvider,
+      BundleCacheConfig bundleCacheConfig,
+      MeterRegistry meterRegistry) {
+    this.parserProvider = parserProvider;
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumWeight(bundleCacheConfig.getMaxHeapBytes())
+            .weigher((String key, CachedBundle cached) -> cached.weight())
+            .expireAfterAccess(Duration.ofMillis(bundleCacheConfig.getTtlMillis()))
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  /**
+   * Parses the bundle JSON with the shared strict JSON parser, or copies the bundle parsed from the
+   * same JSON earlier. Bundles that fail to parse are not cached.
+   *
+   * @param bundleJson the bundle JSON
+   * @return a bundle owned by the caller
+   * @throws DataFormatException if the JSON is not a valid Bundle
+   */
+  public Bundle parse(String bundleJson) {
+    if (StringUtils.isBlank(bundleJson)) {
+      throw new DataFormatException("Bundle JSON is empty");
+    }
+    String key = HashUtil.sha256Hex(bundleJson);
+    CachedBundle cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return cached.bundle().copy();
+    }
+    Bundle bundle = parserProvider.jsonParser().parseResource(Bundle.class, bundleJson);
+    cache.put(key, new CachedBundle(bundle.copy(), estimateWeight(bundleJson)));
+    return bundle;
+  }
+
+  /**
+   * Remembers a bundle as the parsed form of the given JSON, for results that are encoded here and
+   * sent back by clients in a later request. The bundle is copied, so the caller keeps ownership.
+   *
+   * @param bundleJson the JSON the bundle was encoded to
+   * @param bundle the bundle
+   */
+  public void put(String bundleJson, Bundle bundle) {
+    if (StringUtils.isNotBlank(bundleJson) && bundle != null) {
+      cache.put(
+          HashUtil.sha256Hex(bundleJson),
+          new CachedBundle(bundle.copy(), estimateWeight(bundleJson)));
+    }
+  }
+
+  private static int estimateWeight(String bundleJson) {
+    return (int)
+        Math.min(Integer.MAX_VALUE, (long) bundleJson.length() * PARSED_BYTES_PER_JSON_CHAR);
+  }
+
+  private record CachedBundle(Bundle bundle, int weight) {}
+}
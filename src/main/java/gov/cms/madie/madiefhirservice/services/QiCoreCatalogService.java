@@ -0,0 +1,77 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import ca.uhn.fhir.context.support.IValidationSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Structure definitions for every QI-Core version the service has packages for, keyed by the
+ * version as it appears in request paths, e.g. 6_0_0. A version's validation support chain and
+ * index are only created when the version is first asked for, and no more than the configured
+ * number of version catalogs are held at once.
+ *
+ * <p>The bound only applies to the catalogs, i.e. the structure definition indexes built here. The
+ * validation support chains holding the packages are singleton beans, so a chain stays in memory
+ * once it has been created, even after its catalog is evicted, and a reloaded catalog reuses it.
+ */
+@Slf4j
+@Service
+public class QiCoreCatalogService {
+  public static final String DEFAULT_VERSION = "6_0_0";
+
+  private final Map<String, ObjectProvider<IValidationSupport>> versionChains;
+  private final FhirParserProvider parserProvider;
+  private final ObjectMapper objectMapper;
+  private final Cache<String, StructureDefinitionService> catalogs;
+
+  public QiCoreCatalogService(
+      @Qualifier("validationSupportChain411")
+          ObjectProvider<IValidationSupport> validationSupportChain411,
+      @Qualifier("validationSupportChainQiCore600")
+          ObjectProvider<IValidationSupport> validationSupportChainQiCore600,
+      FhirParserProvider parserProvider,
+      ObjectMapper objectMapper,
+      @Value("${madie.qicore.catalog.max-versions}") int maxVersions) {
+    this.versionChains =
+        Map.of("4_1_1", validationSupportChain411, "6_0_0", validationSupportChainQiCore600);
+    this.parserProvider = parserProvider;
+    this.objectMapper = objectMapper;
+    this.catalogs = Caffeine.newBuilder().maximumSize(maxVersions).build();
+  }
+
+  public Set<String> getVersions() {
+    return new TreeSet<>(versionChains.keySet());
+  }
+
+  /**
+   * Returns the structure definitions of a QI-Core version, loading them on first use.
+   *
+   * @param version QI-Core version, e.g. 4_1_1, or null for the default version
+   * @throws ResourceNotFoundException if there are no packages for the version
+   */
+  public StructureDefinitionService getCatalog(String version) {
+    String key = version == null ? DEFAULT_VERSION : version;
+    ObjectProvider<IValidationSupport> chain = versionChains.get(key);
+    if (chain == null) {
+      throw new ResourceNotFoundException("QI-Core version", key);
+    }
+    return catalogs.get(
+        key,
+        v -> {
+          log.info("Loading QI-Core [{}] structure definition catalog", v);
+          return new StructureDefinitionService(chain.getObject(), parserProvider, objectMapper);
+        });
+  }
+}
@@ -2,13 +2,20 @@ package gov.cms.madie.madiefhirservice.services;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.FhirTerser;
 import ca.uhn.fhir.util.OperationOutcomeUtil;
-import lombok.AllArgsConstructor;
+import ca.uhn.fhir.util.bundle.BundleEntryParts;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseReference;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.springframework.stereotype.Service;
 
@@ -17,46 +24,29 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class ResourceValidationService {
+  private static final int PROFILE_URL_CACHE_SIZE = 1000;
 
-  private FhirContext fhirContext;
+  private final FhirContext fhirContext;
+
+  /** Profile URLs repeat across resources and bundles, so each distinct string is parsed once. */
+  private final Cache<String, Boolean> profileUrlValidity =
+      Caffeine.newBuilder().maximumSize(PROFILE_URL_CACHE_SIZE).build();
 
   public OperationOutcome validateBundleResourcesProfiles(IBaseBundle bundleResource) {
     List<IBaseResource> resources = BundleUtil.toListOfResources(fhirContext, bundleResource);
     OperationOutcome operationOutcome = new OperationOutcome();
     for (IBaseResource resource : resources) {
-      if (resource.getMeta().getProfile().isEmpty()) {
-        OperationOutcomeUtil.addIssue(
-            fhirContext,
-            operationOutcome,
-            OperationOutcome.IssueSeverity.WARNING.toCode(),
-            formatMissingMetaProfileMessage(resource),
-            null,
-            OperationOutcome.IssueType.INVALID.toCode());
-      } else {
-        resource
-            .getMeta()
-            .getProfile()
-            .forEach(
-                (p) -> {
-                  if (!isValidURL(p.getValueAsString())) {
-                    OperationOutcomeUtil.addIssue(
-                        fhirContext,
-                        operationOutcome,
-                        OperationOutcome.IssueSeverity.WARNING.toCode(),
-                        formatInvalidProfileMessage(resource),
-                        null,
-                        OperationOutcome.IssueType.INVALID.toCode());
-                  }
-                });
-      }
+      addProfileIssues(resource, operationOutcome);
     }
     return operationOutcome;
   }
@@ -67,31 +57,175 @@ public class ResourceValidationService {
     Set<String> duplicateIds = new HashSet<>();
     OperationOutcome operationOutcome = new OperationOutcome();
     for (IBaseResource resource : resources) {
-      final String resourceId = resource.getIdElement().getIdPart();
-      if (StringUtils.isBlank(resourceId)) {
+      addIdIssues(resource, existingIds, duplicateIds, operationOutcome);
+    }
+    return operationOutcome;
+  }
+
+  /**
+   * Issues found by {@link #validateBundleStructure}. The bundle is invalid when the profile or id
+   * checks raised an issue; fullUrl mismatches and unresolved references are only warnings and do
+   * not make it invalid.
+   */
+  public record BundleStructureOutcome(OperationOutcome outcome, boolean invalid) {}
+
+  /**
+   * Runs the profile, id, fullUrl and reference checks in a single walk over the bundle entries,
+   * adding every issue to one outcome. References are checked once all entries have been seen, so
+   * that a reference to a later entry resolves.
+   */
+  public BundleStructureOutcome validateBundleStructure(IBaseBundle bundleResource) {
+    OperationOutcome outcome = new OperationOutcome();
+    Set<String> existingIds = new HashSet<>();
+    Set<String> duplicateIds = new HashSet<>();
+    Set<String> entryKeys = new HashSet<>();
+    Map<IBaseResource, List<IBaseReference>> references = new LinkedHashMap<>();
+    Set<String> resourceTypes = fhirContext.getResourceTypes();
+    FhirTerser terser = fhirContext.newTerser();
+    boolean invalid = false;
+    for (BundleEntryParts entry : BundleUtil.toListOfEntries(fhirContext, bundleResource)) {
+      IBaseResource resource = entry.getResource();
+      if (resource == null) {
+        continue;
+      }
+      int issues = outcome.getIssue().size();
+      addProfileIssues(resource, outcome);
+      addIdIssues(resource, existingIds, duplicateIds, outcome);
+      invalid |= outcome.getIssue().size() > issues;
+      addFullUrlIssues(entry.getFullUrl(), resource, resourceTypes, outcome);
+      if (StringUtils.isNotBlank(entry.getFullUrl())) {
+        entryKeys.add(entry.getFullUrl());
+      }
+      if (StringUtils.isNotBlank(resource.getIdElement().getIdPart())) {
+        entryKeys.add(resource.fhirType() + "/" + resource.getIdElement().getIdPart());
+      }
+      references.put(
+          resource, terser.getAllPopulatedChildElementsOfType(resource, IBaseReference.class));
+    }
+    references.forEach(
+        (resource, resourceReferences) ->
+            addReferenceIssues(resource, resourceReferences, entryKeys, outcome));
+    return new BundleStructureOutcome(outcome, invalid);
+  }
+
+  private void addProfileIssues(IBaseResource resource, OperationOutcome operationOutcome) {
+    if (resource.getMeta().getProfile().isEmpty()) {
+      OperationOutcomeUtil.addIssue(
+          fhirContext,
+          operationOutcome,
+          OperationOutcome.IssueSeverity.WARNING.toCode(),
+          formatMissingMetaProfileMessage(resource),
+          null,
+          OperationOutcome.IssueType.INVALID.toCode());
+    } else {
+      resource
+          .getMeta()
+          .getProfile()
+          .forEach(
+              (p) -> {
+                if (!isValidURL(p.getValueAsString())) {
+                  OperationOutcomeUtil.addIssue(
+                      fhirContext,
+                      operationOutcome,
+                      OperationOutcome.IssueSeverity.WARNING.toCode(),
+                      formatInvalidProfileMessage(resource),
+                      null,
+                      OperationOutcome.IssueType.INVALID.toCode());
+                }
+              });
+    }
+  }
+
+  private void addIdIssues(
+      IBaseResource resource,
+      Set<String> existingIds,
+      Set<String> duplicateIds,
+      OperationOutcome operationOutcome) {
+    final String resourceId = resource.getIdElement().getIdPart();
+    if (StringUtils.isBlank(resourceId)) {
+      OperationOutcomeUtil.addIssue(
+          fhirContext,
+          operationOutcome,
+          OperationOutcome.IssueSeverity.ERROR.toCode(),
+          "All resources must have an Id",
+          null,
+          OperationOutcome.IssueType.INVALID.toCode());
+    } else {
+      if (existingIds.contains(resourceId) && !duplicateIds.contains(resourceId)) {
         OperationOutcomeUtil.addIssue(
             fhirContext,
             operationOutcome,
             OperationOutcome.IssueSeverity.ERROR.toCode(),
-            "All resources must have an Id",
+            formatUniqueIdViolationMessage(resourceId),
             null,
             OperationOutcome.IssueType.INVALID.toCode());
+        duplicateIds.add(resourceId);
       } else {
-        if (existingIds.contains(resourceId) && !duplicateIds.contains(resourceId)) {
-          OperationOutcomeUtil.addIssue(
-              fhirContext,
-              operationOutcome,
-              OperationOutcome.IssueSeverity.ERROR.toCode(),
-              formatUniqueIdViolationMessage(resourceId),
-              null,
-              OperationOutcome.IssueType.INVALID.toCode());
-          duplicateIds.add(resourceId);
-        } else {
-          existingIds.add(resourceId);
-        }
+        existingIds.add(resourceId);
+      }
+    }
+  }
+
+  /**
+   * Flags entries whose fullUrl clearly names a different type of resource, i.e. it ends in <code>
+   * [type]/[id]</code> with a known resource type that does not match the resource. Other fullUrl
+   * shapes (urn:uuid, URLs ending in a bare type) are left alone. Ids are not compared: the parser
+   * replaces the resource id with the id part of the fullUrl, so they always match.
+   */
+  private void addFullUrlIssues(
+      String fullUrl,
+      IBaseResource resource,
+      Set<String> resourceTypes,
+      OperationOutcome operationOutcome) {
+    if (StringUtils.isBlank(fullUrl)) {
+      return;
+    }
+    IdType fullUrlId = new IdType(fullUrl);
+    if (!fullUrlId.hasResourceType()
+        || !fullUrlId.hasIdPart()
+        || !resourceTypes.contains(fullUrlId.getResourceType())) {
+      return;
+    }
+    if (!fullUrlId.getResourceType().equals(resource.fhirType())) {
+      OperationOutcomeUtil.addIssue(
+          fhirContext,
+          operationOutcome,
+          OperationOutcome.IssueSeverity.WARNING.toCode(),
+          formatFullUrlMismatchMessage(fullUrl, resource),
+          null,
+          OperationOutcome.IssueType.INVALID.toCode());
+    }
+  }
+
+  /**
+   * Flags references to a <code>[type]/[id]</code> or urn: fullUrl that no entry in the bundle
+   * provides. Contained (#) and absolute references are left alone, as they may legitimately point
+   * outside the bundle.
+   */
+  private void addReferenceIssues(
+      IBaseResource resource,
+      List<IBaseReference> references,
+      Set<String> entryKeys,
+      OperationOutcome operationOutcome) {
+    for (IBaseReference reference : references) {
+      IIdType target = reference.getReferenceElement();
+      String value = target.getValue();
+      if (StringUtils.isBlank(value) || target.isLocal() || entryKeys.contains(value)) {
+        continue;
+      }
+      boolean resolvable =
+          value.startsWith("urn:")
+              || (!target.isAbsolute() && target.hasResourceType() && target.hasIdPart());
+      if (resolvable && !entryKeys.contains(target.getResourceType() + "/" + target.getIdPart())) {
+        OperationOutcomeUtil.addIssue(
+            fhirContext,
+            operationOutcome,
+            OperationOutcome.IssueSeverity.WARNING.toCode(),
+            formatUnresolvedReferenceMessage(resource, value),
+            null,
+            OperationOutcome.IssueType.INVALID.toCode());
       }
     }
-    return operationOutcome;
   }
 
   public boolean isSuccessful(OperationOutcome outcome) {
@@ -133,7 +267,26 @@ public class ResourceValidationService {
         resource.fhirType(), resource.getIdElement().getIdPart());
   }
 
+  private String formatFullUrlMismatchMessage(String fullUrl, IBaseResource resource) {
+    return String.format(
+        "Bundle entry fullUrl [%s] does not match resource of type [%s] with Id [%s]",
+        fullUrl, resource.fhirType(), resource.getIdElement().getIdPart());
+  }
+
+  private String formatUnresolvedReferenceMessage(IBaseResource resource, String reference) {
+    return String.format(
+        "Resource of type [%s] with Id [%s] references [%s], which is not in the bundle",
+        resource.fhirType(), resource.getIdElement().getIdPart(), reference);
+  }
+
   private boolean isValidURL(String url) {
+    if (url == null) {
+      return false;
+    }
+    return profileUrlValidity.get(url, this::parsesAsUrl);
+  }
+
+  private boolean parsesAsUrl(String url) {
     try {
       new URL(url).toURI();
       return true;
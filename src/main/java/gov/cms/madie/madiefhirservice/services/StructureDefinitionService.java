@@ -1,28 +1,51 @@
 package gov.cms.madie.madiefhirservice.services;
 
 import ca.uhn.fhir.context.support.IValidationSupport;
-import ca.uhn.fhir.parser.IParser;
-import ca.uhn.fhir.parser.StrictErrorHandler;
-import gov.cms.madie.madiefhirservice.constants.UriConstants;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import gov.cms.madie.madiefhirservice.dto.ResourceIdentifier;
 import gov.cms.madie.madiefhirservice.dto.StructureDefinitionDto;
+import gov.cms.madie.madiefhirservice.dto.StructureDefinitionElement;
+import gov.cms.madie.madiefhirservice.exceptions.InternalServerException;
 import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
-import lombok.AllArgsConstructor;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.PreparedJsonResponse;
+import gov.cms.madie.madiefhirservice.utils.StructureDefinitionIndex;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
-import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.ElementDefinition;
 import org.hl7.fhir.r4.model.StructureDefinition;
-import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Objects;
 
+/**
+ * Structure definitions of one QI-Core version. Instances are created and held by {@link
+ * QiCoreCatalogService}.
+ */
 @Slf4j
-@Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class StructureDefinitionService {
+  /** Bytes of prepared definition and element responses kept per QI-Core version. */
+  private static final long MAX_RESPONSE_BYTES = 32L * 1024 * 1024;
 
-  private IValidationSupport validationSupportChainQiCore600;
+  /** Extracted element lists kept per QI-Core version. */
+  private static final int MAX_ELEMENT_LISTS = 500;
+
+  private final IValidationSupport validationSupportChain;
+  private final FhirParserProvider parserProvider;
+  private final ObjectMapper objectMapper;
+
+  private volatile StructureDefinitionIndex index;
+  private volatile PreparedJsonResponse allResourcesResponse;
+  private final Cache<String, PreparedJsonResponse> definitionResponses = responseCache();
+  private final Cache<String, List<StructureDefinitionElement>> definitionElements =
+      Caffeine.newBuilder().maximumSize(MAX_ELEMENT_LISTS).build();
+  private final Cache<String, PreparedJsonResponse> elementResponses = responseCache();
 
   /**
    * Fetches the structure definition for the given resource
@@ -33,26 +56,70 @@ public class StructureDefinitionService {
    */
   public StructureDefinitionDto getStructureDefinitionById(String structureDefinitionId) {
     IBaseResource structureDefinition =
-        Objects.requireNonNull(validationSupportChainQiCore600.fetchAllStructureDefinitions())
-            .stream()
-            .filter(resource -> structureDefinitionId.equals(resource.getIdElement().getIdPart()))
-            .findFirst()
+        getIndex()
+            .findById(structureDefinitionId)
             .orElseThrow(
                 () -> new ResourceNotFoundException("StructureDefinition", structureDefinitionId));
 
     // Todo: enhance with model-info, or at least primary code path
 
-    IParser parser =
-        validationSupportChainQiCore600
-            .getFhirContext()
-            .newJsonParser()
-            .setParserErrorHandler(new StrictErrorHandler())
-            .setPrettyPrint(true);
+    // the definition is re-read into a tree when the DTO is serialized, so whitespace is wasted
     return StructureDefinitionDto.builder()
-        .definition(parser.encodeResourceToString(structureDefinition))
+        .definition(parserProvider.jsonParser().encodeResourceToString(structureDefinition))
         .build();
   }
 
+  /**
+   * The structure definition DTO for the given ID as response JSON. Definitions never change while
+   * the service runs, so each one is serialized only once while it stays in the bounded cache.
+   *
+   * @param structureDefinitionId ID of the structure definition
+   */
+  public PreparedJsonResponse getStructureDefinitionResponse(String structureDefinitionId) {
+    return definitionResponses.get(
+        structureDefinitionId, id -> prepare(getStructureDefinitionById(id)));
+  }
+
+  /** The {@link #getAllResources()} list as response JSON, serialized only once. */
+  public PreparedJsonResponse getAllResourcesResponse() {
+    PreparedJsonResponse current = allResourcesResponse;
+    if (current == null) {
+      current = prepare(getAllResources());
+      allResourcesResponse = current;
+    }
+    return current;
+  }
+
+  /**
+   * Returns the elements of the given structure definition, taken from its snapshot or, if it has
+   * none, its differential. Extracted elements are kept in a bounded cache.
+   *
+   * @param structureDefinitionId ID of the structure definition
+   * @param pathPrefix if set, only the element with this path and the elements below it
+   */
+  public List<StructureDefinitionElement> getElements(
+      String structureDefinitionId, String pathPrefix) {
+    List<StructureDefinitionElement> elements =
+        definitionElements.get(structureDefinitionId, this::extractElements);
+    if (StringUtils.isBlank(pathPrefix)) {
+      return elements;
+    }
+    return elements.stream()
+        .filter(
+            element ->
+                element.getPath().equals(pathPrefix)
+                    || element.getPath().startsWith(pathPrefix + "."))
+        .toList();
+  }
+
+  /** {@link #getElements(String, String)} as response JSON, unfiltered lists serialized once. */
+  public PreparedJsonResponse getElementsResponse(String structureDefinitionId, String pathPrefix) {
+    if (StringUtils.isBlank(pathPrefix)) {
+      return elementResponses.get(structureDefinitionId, id -> prepare(getElements(id, null)));
+    }
+    return prepare(getElements(structureDefinitionId, pathPrefix));
+  }
+
   /**
    * Return the ID, title, profile, category and type of all structure definitions that start with
    * QICore and have a kind of "resource"
@@ -60,26 +127,7 @@ public class StructureDefinitionService {
    * @return list of ResourceIdentifier, comprised of ID and title of the structure definitions
    */
   public List<ResourceIdentifier> getAllResources() {
-    return Objects.requireNonNull(validationSupportChainQiCore600.fetchAllStructureDefinitions())
-        .stream()
-        .filter(
-            resource ->
-                "resource".equals(((StructureDefinition) resource).getKind().toCode())
-                    && resource.getIdElement().getIdPart().startsWith("qicore"))
-        .map(
-            (resource) -> {
-              StructureDefinition structureDefinition = (StructureDefinition) resource;
-              return ResourceIdentifier.builder()
-                  .id(resource.getIdElement().getIdPart())
-                  .title(structureDefinition.getTitle())
-                  .type(structureDefinition.getType())
-                  .category(getCategoryByType(structureDefinition.getType()))
-                  // Todo: update profile URL if this method changes to return more than just
-                  // QI-Core resources
-                  .profile(structureDefinition.getUrl())
-                  .build();
-            })
-        .toList();
+    return getIndex().getQiCoreResources();
   }
 
   /**
@@ -90,17 +138,82 @@ public class StructureDefinitionService {
    * @return FHIR categorization, including top-level and sub-category, of the provided
    */
   public String getCategoryByType(String type) {
-    Extension extension =
-        Objects.requireNonNull(validationSupportChainQiCore600.fetchAllStructureDefinitions())
-            .stream()
-            .filter(resource -> type.equals(resource.getIdElement().getIdPart()))
-            .map(resource -> (StructureDefinition) resource)
-            .findFirst()
-            .map(
-                structureDefinition ->
-                    structureDefinition.getExtensionByUrl(
-                        UriConstants.FhirStructureDefinitions.CATEGORY_URI))
-            .orElse(null);
-    return extension == null ? null : extension.getValueAsPrimitive().getValueAsString();
+    return getIndex().getCategory(type);
+  }
+
+  /**
+   * The packages behind the validation support chain are loaded once and never change, so the index
+   * over their structure definitions is built once and shared by all requests.
+   */
+  StructureDefinitionIndex getIndex() {
+    StructureDefinitionIndex current = index;
+    if (current == null) {
+      synchronized (this) {
+        current = index;
+        if (current == null) {
+          current =
+              StructureDefinitionIndex.of(
+                  Objects.requireNonNull(validationSupportChain.fetchAllStructureDefinitions()));
+          log.info("Indexed [{}] structure definitions", current.size());
+          index = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  private List<StructureDefinitionElement> extractElements(String structureDefinitionId) {
+    StructureDefinition structureDefinition =
+        getIndex()
+            .findById(structureDefinitionId)
+            .orElseThrow(
+                () -> new ResourceNotFoundException("StructureDefinition", structureDefinitionId));
+    List<ElementDefinition> elements =
+        structureDefinition.hasSnapshot()
+            ? structureDefinition.getSnapshot().getElement()
+            : structureDefinition.getDifferential().getElement();
+    return elements.stream().map(this::toElement).toList();
+  }
+
+  private StructureDefinitionElement toElement(ElementDefinition element) {
+    StructureDefinitionElement.StructureDefinitionElementBuilder builder =
+        StructureDefinitionElement.builder()
+            .id(element.getId())
+            .path(element.getPath())
+            .types(
+                element.getType().stream()
+                    .map(ElementDefinition.TypeRefComponent::getCode)
+                    .toList())
+            .mustSupport(element.getMustSupport());
+    if (element.hasMin() || element.hasMax()) {
+      builder.cardinality(
+          (element.hasMin() ? element.getMin() : "")
+              + ".."
+              + StringUtils.defaultString(element.getMax()));
+    }
+    if (element.hasBinding()) {
+      builder
+          .binding(element.getBinding().getValueSet())
+          .bindingStrength(
+              element.getBinding().hasStrength()
+                  ? element.getBinding().getStrength().toCode()
+                  : null);
+    }
+    return builder.build();
+  }
+
+  private static Cache<String, PreparedJsonResponse> responseCache() {
+    return Caffeine.newBuilder()
+        .maximumWeight(MAX_RESPONSE_BYTES)
+        .weigher((String id, PreparedJsonResponse response) -> response.getSize())
+        .build();
+  }
+
+  private PreparedJsonResponse prepare(Object value) {
+    try {
+      return PreparedJsonResponse.of(objectMapper.writeValueAsBytes(value));
+    } catch (JsonProcessingException ex) {
+      throw new InternalServerException("Unable to serialize structure definitions", ex);
+    }
   }
 }
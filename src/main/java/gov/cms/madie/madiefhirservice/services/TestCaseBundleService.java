@@ -1,9 +1,8 @@
 package gov.cms.madie.madiefhirservice.services;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -14,11 +13,11 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -39,22 +38,22 @@ import org.hl7.fhir.r4.model.StringType;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.client.RestClientException;
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
-import ca.uhn.fhir.parser.StrictErrorHandler;
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
 import gov.cms.madie.madiefhirservice.constants.UriConstants;
 import gov.cms.madie.madiefhirservice.exceptions.BundleOperationException;
 import gov.cms.madie.madiefhirservice.exceptions.InternalServerException;
 import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
 import gov.cms.madie.madiefhirservice.utils.ExportFileNamesUtil;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
 import gov.cms.madie.madiefhirservice.utils.FhirResourceHelpers;
+import gov.cms.madie.madiefhirservice.utils.PackagingUtilityRegistry;
+import gov.cms.madie.madiefhirservice.utils.ParallelZipWriter;
 import gov.cms.madie.models.common.BundleType;
 import gov.cms.madie.models.dto.ExportDTO;
 import gov.cms.madie.models.measure.Measure;
 import gov.cms.madie.models.measure.TestCase;
-import gov.cms.madie.packaging.utils.PackagingUtility;
-import gov.cms.madie.packaging.utils.PackagingUtilityFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -62,22 +61,31 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 @RequiredArgsConstructor
 public class TestCaseBundleService {
+  private static final String QI_CORE_411 = "QI-Core v4.1.1";
 
-  private final FhirContext fhirContext;
+  private final FhirParserProvider parserProvider;
+  private final ParsedBundleCacheService parsedBundleCacheService;
+  private final ParallelZipWriter parallelZipWriter;
+  private final PackagingUtilityRegistry packagingUtilityRegistry;
 
   public Map<String, Bundle> getTestCaseExportBundle(
       Measure measure, List<TestCase> testCases, ExportDTO exportDTO) {
+    return getTestCaseExportBundle(measure, testCases, exportDTO, ExportProgressListener.NONE);
+  }
+
+  public Map<String, Bundle> getTestCaseExportBundle(
+      Measure measure,
+      List<TestCase> testCases,
+      ExportDTO exportDTO,
+      ExportProgressListener progressListener) {
     if (measure == null || testCases == null || testCases.isEmpty()) {
       throw new InternalServerException("Unable to find Measure and/or test case");
     }
 
-    IParser parser =
-        fhirContext
-            .newJsonParser()
-            .setParserErrorHandler(new StrictErrorHandler())
-            .setPrettyPrint(true);
+    IParser parser = parserProvider.jsonParser();
 
     Map<String, Bundle> testCaseBundle = new HashMap<>();
+    int processed = 0;
     for (TestCase testCase : testCases) {
       Bundle bundle;
       try {
@@ -85,12 +93,13 @@ public class TestCaseBundleService {
         if (testCase.getJson() == null || testCase.getJson().isEmpty()) {
           throw new DataFormatException("TestCase Json is empty");
         }
-        bundle = parser.parseResource(Bundle.class, testCase.getJson());
+        bundle = parsedBundleCacheService.parse(testCase.getJson());
       } catch (DataFormatException | ClassCastException ex) {
         log.error(
             "Unable to parse test case bundle resource for test case [{}] from Measure [{}]",
             testCase.getId(),
             measure.getId());
+        progressListener.testCaseProcessed(++processed, testCases.size());
         continue;
       }
 
@@ -99,7 +108,7 @@ public class TestCaseBundleService {
       if (exportDTO.getBundleType() != null) {
         BundleType bundleType = BundleType.valueOf(exportDTO.getBundleType().name());
         bundle = updateEntry(bundle, bundleType, parser, testCase.getPatientId().toString());
-        String json = parser.encodeResourceToString(bundle);
+        String json = parserProvider.jsonParser(true).encodeResourceToString(bundle);
         testCase.setJson(json);
       }
 
@@ -110,6 +119,7 @@ public class TestCaseBundleService {
               measureReport, String.valueOf(bundle.getType()));
       bundle.getEntry().add(bundleEntryComponent);
       testCaseBundle.put(fileName, bundle);
+      progressListener.testCaseProcessed(++processed, testCases.size());
     }
 
     // Don't return an empty zip file
@@ -368,7 +378,7 @@ public class TestCaseBundleService {
   }
 
   /**
-   * Combines the zip from Packaging Utility and a generated ReadMe file for the testcases
+   * Zips the test case bundles together with a generated ReadMe file for the testcases
    *
    * @param measure MADiE Measure
    * @param exportableTestCaseBundle Exportable TestCase bundles that includes measure report
@@ -377,49 +387,77 @@ public class TestCaseBundleService {
    */
   public byte[] zipTestCaseContents(
       Measure measure, Map<String, Bundle> exportableTestCaseBundle, List<TestCase> testCases) {
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-
-      PackagingUtility utility = PackagingUtilityFactory.getInstance(measure.getModel());
-      byte[] bytes = utility.getZipBundle(exportableTestCaseBundle, null);
-
-      try (ZipOutputStream zos = new ZipOutputStream(baos);
-          ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bytes))) {
-
-        // Add the README file to the zip
-        String readme = generateReadMe(testCases);
-        ZipEntry entry = new ZipEntry("README.txt");
-        entry.setSize(readme.length());
-        zos.putNextEntry(entry);
-        zos.write(readme.getBytes());
-        // Add the .madie metadata file
-        String metadata = generateMadieMetadataFile(testCases);
-        ZipEntry metaDataEntry = new ZipEntry(".madie");
-        entry.setSize(metadata.length());
-        zos.putNextEntry(metaDataEntry);
-        zos.write(metadata.getBytes());
-        // Add the TestCases back the zip
-        ZipEntry zipEntry = zis.getNextEntry();
-        while (zipEntry != null) {
-          zos.putNextEntry(zipEntry);
-          zos.write(zis.readAllBytes());
-          zipEntry = zis.getNextEntry();
-        }
-      }
-
-      // return after the zip streams are closed
-      return baos.toByteArray();
-    } catch (RestClientException
-        | IllegalArgumentException
-        | InstantiationException
-        | IllegalAccessException
-        | InvocationTargetException
-        | NoSuchMethodException
-        | SecurityException
-        | ClassNotFoundException
-        | IOException ex) {
+    return zipTestCaseContents(
+        measure, exportableTestCaseBundle, testCases, CompressionLevel.DEFAULT);
+  }
 
+  /**
+   * Zips the test case bundles together with a generated ReadMe file for the testcases, with the
+   * entries compressed in parallel at the given level. For QI-Core v4.1.1 measures each bundle
+   * becomes a pretty printed JSON entry named after its key, as that model's packaging utility
+   * names test case files, so every entry is deflated only once. Other models keep the layout of
+   * their packaging utility, whose archive is unpacked and deflated again.
+   *
+   * @param measure MADiE Measure
+   * @param exportableTestCaseBundle Exportable TestCase bundles that includes measure report
+   * @param testCases List of test cases to be exported, used to generate ReadMe
+   * @param compressionLevel deflate level for the zip entries
+   * @return zipped content
+   */
+  public byte[] zipTestCaseContents(
+      Measure measure,
+      Map<String, Bundle> exportableTestCaseBundle,
+      List<TestCase> testCases,
+      CompressionLevel compressionLevel) {
+    try {
+      List<ParallelZipWriter.Entry> entries = new ArrayList<>();
+      // Add the README and .madie metadata files to the zip
+      entries.add(
+          ParallelZipWriter.Entry.of(
+              "README.txt", generateReadMe(testCases).getBytes(StandardCharsets.UTF_8)));
+      entries.add(
+          ParallelZipWriter.Entry.of(
+              ".madie", generateMadieMetadataFile(testCases).getBytes(StandardCharsets.UTF_8)));
+      if (QI_CORE_411.equals(measure.getModel())) {
+        addTestCaseEntries(exportableTestCaseBundle, entries);
+      } else {
+        addPackagedTestCaseEntries(measure.getModel(), exportableTestCaseBundle, entries);
+      }
+      return parallelZipWriter.write(entries, compressionLevel);
+    } catch (RestClientException | IllegalArgumentException | IOException ex) {
       log.error("An error occurred while bundling testcases for measure {}", measure.getId(), ex);
       throw new BundleOperationException("Measure", measure.getId(), ex);
     }
   }
+
+  /** Adds the TestCases, in file name order so the archive does not depend on map order. */
+  private void addTestCaseEntries(
+      Map<String, Bundle> exportableTestCaseBundle, List<ParallelZipWriter.Entry> entries) {
+    IParser parser = parserProvider.jsonParser(true);
+    new TreeMap<>(exportableTestCaseBundle)
+        .forEach(
+            (fileName, bundle) ->
+                entries.add(
+                    ParallelZipWriter.Entry.of(
+                        fileName + ".json",
+                        parser.encodeResourceToString(bundle).getBytes(StandardCharsets.UTF_8))));
+  }
+
+  /** Adds the TestCases as the packaging utility of the model lays them out. */
+  private void addPackagedTestCaseEntries(
+      String model,
+      Map<String, Bundle> exportableTestCaseBundle,
+      List<ParallelZipWriter.Entry> entries)
+      throws IOException {
+    byte[] bytes = packagingUtilityRegistry.getZipBundle(model, exportableTestCaseBundle, null);
+    try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+      ZipEntry zipEntry = zis.getNextEntry();
+      while (zipEntry != null) {
+        entries.add(
+            new ParallelZipWriter.Entry(
+                zipEntry.getName(), zis.readAllBytes(), zipEntry.getTime()));
+        zipEntry = zis.getNextEntry();
+      }
+    }
+  }
 }
@@ -1,25 +1,24 @@
 package gov.cms.madie.madiefhirservice.services;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
-import ca.uhn.fhir.parser.StrictErrorHandler;
+import gov.cms.madie.madiefhirservice.config.DateShiftConfig;
+import gov.cms.madie.madiefhirservice.dto.DateShiftResult;
+import gov.cms.madie.madiefhirservice.utils.DatePathIndex;
+import gov.cms.madie.madiefhirservice.utils.DateShiftPlan;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.JsonDateShifter;
 import gov.cms.madie.models.measure.TestCase;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.r4.model.Base;
 import org.hl7.fhir.r4.model.BaseDateTimeType;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Property;
 import org.springframework.stereotype.Service;
 
-import java.lang.reflect.Field;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
 import java.util.*;
 
 @Slf4j
@@ -27,13 +26,21 @@ import java.util.*;
 @AllArgsConstructor
 public class TestCaseDateShifterService {
 
-  private FhirContext fhirContext;
+  private FhirParserProvider parserProvider;
+  private DatePathIndex datePathIndex;
+  private DateShiftConfig dateShiftConfig;
+  private JsonDateShifter jsonDateShifter;
+  private ParsedBundleCacheService parsedBundleCacheService;
 
   public TestCase shiftDates(TestCase testCase, int shiftBy) {
+    return shiftDates(testCase, DateShiftPlan.ofYears(shiftBy));
+  }
+
+  public TestCase shiftDates(TestCase testCase, DateShiftPlan plan) {
     if (testCase == null) {
       return null;
     }
-    List<TestCase> shiftedTestCases = shiftDates(List.of(testCase), shiftBy);
+    List<TestCase> shiftedTestCases = shiftDates(List.of(testCase), plan);
     if (CollectionUtils.isNotEmpty(shiftedTestCases) && shiftedTestCases.size() == 1) {
       return shiftedTestCases.get(0);
     }
@@ -41,6 +48,10 @@ public class TestCaseDateShifterService {
   }
 
   public List<TestCase> shiftDates(List<TestCase> testCases, int shiftBy) {
+    return shiftDates(testCases, DateShiftPlan.ofYears(shiftBy));
+  }
+
+  public List<TestCase> shiftDates(List<TestCase> testCases, DateShiftPlan plan) {
     if (CollectionUtils.isEmpty(testCases)) {
       return Collections.emptyList();
     }
@@ -49,16 +60,7 @@ public class TestCaseDateShifterService {
     IParser parser = getIParser();
     for (TestCase testCase : new ArrayList<>(testCases)) {
       try {
-        if (StringUtils.isBlank(testCase.getJson())) {
-          throw new DataFormatException("Empty test case");
-        }
-        // convert test case json to bundle
-        Bundle bundle = parser.parseResource(Bundle.class, testCase.getJson());
-        // update the test case dates
-        bundle.getEntry().forEach(entry -> shiftDates(entry.getResource(), shiftBy));
-        // convert the updated bundle to string and assign back to test case.
-        String json = parser.encodeResourceToString(bundle);
-        testCase.setJson(json);
+        shiftDates(testCase, plan, parser);
         shiftedTestCases.add(testCase);
       } catch (DataFormatException dfe) {
         log.info("skipping the test case with id [{}] as it is empty or invalid", testCase.getId());
@@ -67,50 +69,79 @@ public class TestCaseDateShifterService {
     return shiftedTestCases;
   }
 
+  public DateShiftResult shiftTestCaseDates(TestCase testCase, int shiftBy) {
+    return shiftTestCaseDates(testCase, DateShiftPlan.ofYears(shiftBy));
+  }
+
+  /**
+   * Shifts the dates of a single test case and reports the outcome instead of dropping test cases
+   * that cannot be shifted. Safe to call concurrently, each thread uses its own parser.
+   *
+   * @param testCase test case whose JSON bundle is shifted in place
+   * @param plan how the dates are shifted
+   * @return SHIFTED with the updated test case, SKIPPED for an empty or invalid bundle, otherwise
+   *     FAILED
+   */
+  public DateShiftResult shiftTestCaseDates(TestCase testCase, DateShiftPlan plan) {
+    DateShiftResult.DateShiftResultBuilder result =
+        DateShiftResult.builder().testCaseId(testCase.getId());
+    try {
+      shiftDates(testCase, plan, getIParser());
+      return result.status(DateShiftResult.Status.SHIFTED).testCase(testCase).build();
+    } catch (DataFormatException dfe) {
+      log.info("skipping the test case with id [{}] as it is empty or invalid", testCase.getId());
+      return result.status(DateShiftResult.Status.SKIPPED).message(dfe.getMessage()).build();
+    } catch (RuntimeException ex) {
+      log.error("Error shifting dates for test case [{}]", testCase.getId(), ex);
+      return result
+          .status(DateShiftResult.Status.FAILED)
+          .message("An error occurred while shifting the test case dates")
+          .build();
+    }
+  }
+
+  private void shiftDates(TestCase testCase, DateShiftPlan plan, IParser parser) {
+    if (StringUtils.isBlank(testCase.getJson())) {
+      throw new DataFormatException("Empty test case");
+    }
+    // the token engine only implements the default year shift
+    if (dateShiftConfig.getEngine() == DateShiftConfig.Engine.TOKEN && plan.isYearShift()) {
+      testCase.setJson(jsonDateShifter.shiftDates(testCase.getJson(), plan.getAmount()));
+      return;
+    }
+    // convert test case json to bundle
+    Bundle bundle = parsedBundleCacheService.parse(testCase.getJson());
+    // update the test case dates
+    bundle.getEntry().forEach(entry -> shiftDates(entry.getResource(), plan));
+    // convert the updated bundle to string and assign back to test case.
+    String json = parser.encodeResourceToString(bundle);
+    testCase.setJson(json);
+    // the shifted test case usually comes straight back to be validated
+    parsedBundleCacheService.put(json, bundle);
+  }
+
   void shiftDates(Base baseResource, int shiftBy) {
-    List<Field> fields = new LinkedList<>();
-    getAllFields(fields, baseResource.getClass());
-    for (Field field : fields) {
-      Property property = baseResource.getNamedProperty(field.getName());
+    shiftDates(baseResource, DateShiftPlan.ofYears(shiftBy));
+  }
+
+  void shiftDates(Base baseResource, DateShiftPlan plan) {
+    for (String path : datePathIndex.getDatePaths(baseResource.getClass())) {
+      Property property = baseResource.getNamedProperty(path);
       if (property != null) {
-        List<Base> values = property.getValues();
-        for (Base value : values) {
+        for (Base value : property.getValues()) {
           if (value.isPrimitive()) {
             if (value.isDateTime()) {
-              BaseDateTimeType dateType = (BaseDateTimeType) value;
-              // HAPI will build partial objects when given partial data, like only an extension.
-              // Verify the target date value is non-null.
-              if (dateType.getValue() != null) {
-                Instant date = dateType.getValue().toInstant();
-                ZonedDateTime shifted = date.atZone(ZoneId.of("UTC")).plusYears(shiftBy);
-                if (shifted.getYear() > 9999) {
-                  dateType.setValue(DateUtils.setYears(dateType.getValue(), 9999));
-                } else if (shifted.getYear() < 1900) {
-                  dateType.setValue(DateUtils.setYears(dateType.getValue(), 1900));
-                } else {
-                  dateType.add(1, shiftBy);
-                }
-              }
+              plan.apply((BaseDateTimeType) value);
             }
           } else {
-            shiftDates(value, shiftBy);
+            shiftDates(value, plan);
           }
         }
       }
     }
   }
 
-  private static void getAllFields(List<Field> fields, Class<?> type) {
-    fields.addAll(List.of(type.getDeclaredFields()));
-    if (type.getSuperclass() != null) {
-      getAllFields(fields, type.getSuperclass());
-    }
-  }
-
   IParser getIParser() {
-    return fhirContext
-        .newJsonParser()
-        .setParserErrorHandler(new StrictErrorHandler())
-        .setPrettyPrint(true);
+    return parserProvider.jsonParser();
   }
 }
@@ -0,0 +1,78 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
+import gov.cms.madie.madiefhirservice.dto.TestCaseExport;
+import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.utils.ExportFileNamesUtil;
+import gov.cms.madie.models.dto.ExportDTO;
+import gov.cms.madie.models.measure.Measure;
+import gov.cms.madie.models.measure.TestCase;
+import lombok.RequiredArgsConstructor;
+import org.hl7.fhir.r4.model.Bundle;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class TestCaseExportService {
+  private final TestCaseBundleService testCaseBundleService;
+
+  /**
+   * Picks the test cases to export from the measure.
+   *
+   * @throws ResourceNotFoundException if no test cases were requested or the measure has none
+   */
+  public List<TestCase> selectTestCases(ExportDTO exportDTO) {
+    Measure measure = exportDTO.getMeasure();
+    List<String> testCaseIds = exportDTO.getTestCaseIds();
+    if (testCaseIds == null || testCaseIds.isEmpty()) {
+      throw new ResourceNotFoundException("test cases", "measure", measure.getId());
+    }
+
+    return Optional.ofNullable(measure.getTestCases())
+        .orElseThrow(() -> new ResourceNotFoundException("test cases", "measure", measure.getId()))
+        .stream()
+        .filter(tc -> testCaseIds.stream().anyMatch(id -> id.equals(tc.getId())))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Zips the test case bundles, together with a ReadMe and the MADiE metadata file. Test cases that
+   * cannot be parsed are left out and the export is marked as partial.
+   */
+  public TestCaseExport export(
+      ExportDTO exportDTO,
+      List<TestCase> testCases,
+      CompressionLevel compressionLevel,
+      ExportProgressListener progressListener) {
+    Measure measure = exportDTO.getMeasure();
+    Map<String, Bundle> exportableTestCaseBundle =
+        testCaseBundleService.getTestCaseExportBundle(
+            measure, testCases, exportDTO, progressListener);
+    boolean partial = testCases.size() != exportableTestCaseBundle.size();
+    if (partial) {
+      // remove the test cases that couldn't be parsed
+      testCases =
+          testCases.stream()
+              .filter(
+                  testCase ->
+                      exportableTestCaseBundle.keySet().stream()
+                          .anyMatch(s -> s.contains(testCase.getPatientId().toString())))
+              .collect(Collectors.toList());
+    }
+    byte[] content =
+        testCaseBundleService.zipTestCaseContents(
+            measure, exportableTestCaseBundle, testCases, compressionLevel);
+    progressListener.stageCompleted(ExportStage.PACKAGED);
+    return TestCaseExport.builder()
+        .fileName(ExportFileNamesUtil.getTestCaseExportZipName(measure) + ".zip")
+        .content(content)
+        .partial(partial)
+        .build();
+  }
+}
@@ -0,0 +1,119 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import ca.uhn.fhir.util.VersionUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import gov.cms.madie.madiefhirservice.config.HapiFhirConfig;
+import gov.cms.madie.madiefhirservice.config.ValidationConfig;
+import gov.cms.madie.madiefhirservice.utils.HashUtil;
+import gov.cms.madie.models.measure.HapiOperationOutcome;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Caches bundle validation outcomes keyed by a canonical hash of the bundle JSON together with the
+ * HAPI version and validation packages, so unchanged test cases are not re-validated.
+ */
+@Slf4j
+@Service
+public class ValidationCacheService {
+  public static final String CACHE_NAME = "validationResults";
+
+  private final Cache<String, HapiOperationOutcome> cache;
+  private final ObjectReader reader;
+  private final String validatorVersion;
+
+  public ValidationCacheService(
+      ValidationConfig validationConfig, ObjectMapper mapper, MeterRegistry meterRegistry) {
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(validationConfig.getCacheMaxSize())
+            .expireAfterWrite(Duration.ofMillis(validationConfig.getCacheTtlMillis()))
+            .recordStats()
+            .build();
+    // keep decimals exactly as written; FHIR treats 1.5 and 1.50 as different precisions
+    this.reader =
+        mapper
+            .reader()
+            .with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+            .with(JsonNodeFactory.withExactBigDecimals(true));
+    this.validatorVersion =
+        VersionUtil.getVersion() + "|" + String.join("|", HapiFhirConfig.QICORE_411_PACKAGES);
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  /**
+   * Builds the cache key for a bundle. Keys ignore whitespace and object member order, and change
+   * whenever the validator version or its packages change.
+   *
+   * @param bundleJson the bundle JSON as submitted
+   * @return the key, or empty if the body is blank or not JSON (such bundles are not cached)
+   */
+  public Optional<String> cacheKey(String bundleJson) {
+    if (StringUtils.isBlank(bundleJson)) {
+      return Optional.empty();
+    }
+    try {
+      MessageDigest digest = HashUtil.sha256();
+      digest.update(validatorVersion.getBytes(StandardCharsets.UTF_8));
+      update(digest, reader.readTree(bundleJson));
+      return Optional.of(HexFormat.of().formatHex(digest.digest()));
+    } catch (IOException ex) {
+      log.debug("Unable to compute validation cache key: {}", ex.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  public Optional<HapiOperationOutcome> get(String cacheKey) {
+    return Optional.ofNullable(cache.getIfPresent(cacheKey));
+  }
+
+  public void put(String cacheKey, HapiOperationOutcome outcome) {
+    cache.put(cacheKey, outcome);
+  }
+
+  private void update(MessageDigest digest, JsonNode node) {
+    if (node.isObject()) {
+      List<Map.Entry<String, JsonNode>> fields = new ArrayList<>();
+      node.fields().forEachRemaining(fields::add);
+      Collections.sort(fields, Map.Entry.comparingByKey());
+      digest.update((byte) '{');
+      for (Map.Entry<String, JsonNode> field : fields) {
+        digest.update(TextNode.valueOf(field.getKey()).toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        update(digest, field.getValue());
+        digest.update((byte) ',');
+      }
+      digest.update((byte) '}');
+    } else if (node.isArray()) {
+      digest.update((byte) '[');
+      for (JsonNode element : node) {
+        update(digest, element);
+        digest.update((byte) ',');
+      }
+      digest.update((byte) ']');
+    } else {
+      digest.update(node.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeChildPrimitiveDatatypeDefinition;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.r4.model.BaseDateTimeType;
+import org.springframework.stereotype.Component;
+
+import javax.lang.model.SourceVersion;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-type index of the child elements that can hold a date, dateTime or instant value, either
+ * directly or somewhere below them. Built once per element type from the HAPI runtime definitions,
+ * so walkers only visit children that can actually contain dates.
+ */
+@Component
+@RequiredArgsConstructor
+public class DatePathIndex {
+  private static final String CHOICE_SUFFIX = "[x]";
+
+  private final FhirContext fhirContext;
+  private final Map<Class<? extends IBase>, List<String>> datePaths = new ConcurrentHashMap<>();
+
+  /**
+   * @param type concrete FHIR element or resource type
+   * @return names of the children that may hold dates, usable with Base.getNamedProperty
+   */
+  public List<String> getDatePaths(Class<? extends IBase> type) {
+    return datePaths.computeIfAbsent(type, this::compile);
+  }
+
+  private List<String> compile(Class<? extends IBase> type) {
+    BaseRuntimeElementDefinition<?> definition = fhirContext.getElementDefinition(type);
+    if (!(definition instanceof BaseRuntimeElementCompositeDefinition<?> composite)) {
+      return List.of();
+    }
+    return composite.getChildren().stream()
+        .filter(this::mayHoldDates)
+        .map(child -> StringUtils.removeEnd(child.getElementName(), CHOICE_SUFFIX))
+        // elements named after Java keywords (Encounter.class, Task.for) were never reached by
+        // the reflective field walk this replaces, so they stay excluded to keep output unchanged
+        .filter(name -> !SourceVersion.isKeyword(name))
+        .toList();
+  }
+
+  private boolean mayHoldDates(BaseRuntimeChildDefinition child) {
+    // only non-date primitives can be ruled out; any composite may carry dates in extensions
+    return !(child instanceof RuntimeChildPrimitiveDatatypeDefinition primitive)
+        || BaseDateTimeType.class.isAssignableFrom(primitive.getDatatype());
+  }
+}
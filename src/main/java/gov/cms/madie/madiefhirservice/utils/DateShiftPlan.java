@@ -0,0 +1,157 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.exceptions.InvalidDateShiftException;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.r4.model.BaseDateTimeType;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * How test case dates are shifted: by how much, at which calendar granularity, what happens to
+ * values that would leave the supported year range and where Feb 29 goes when the target year has
+ * none. Everything that does not depend on the shifted value is worked out when the plan is built,
+ * so a single plan can be applied to any number of test cases.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class DateShiftPlan {
+  public static final int MIN_YEAR = 1900;
+  public static final int MAX_YEAR = 9999;
+
+  public enum Granularity {
+    YEARS(Calendar.YEAR, ChronoUnit.YEARS),
+    MONTHS(Calendar.MONTH, ChronoUnit.MONTHS),
+    DAYS(Calendar.DAY_OF_MONTH, ChronoUnit.DAYS);
+
+    private final int calendarField;
+    private final ChronoUnit unit;
+
+    Granularity(int calendarField, ChronoUnit unit) {
+      this.calendarField = calendarField;
+      this.unit = unit;
+    }
+  }
+
+  public enum ClampPolicy {
+    /** Values that would end up before 1900 or after 9999 get that year, keeping the rest. */
+    CLAMP,
+    /** Values are shifted wherever they end up. */
+    NONE
+  }
+
+  public enum LeapDayPolicy {
+    /** Feb 29 becomes Feb 28 in a year without one, as Calendar arithmetic does. */
+    PREVIOUS_DAY,
+    /** Feb 29 becomes Mar 1 in a year without one. */
+    NEXT_DAY
+  }
+
+  private final int amount;
+  private final Granularity granularity;
+  private final ClampPolicy clampPolicy;
+  private final LeapDayPolicy leapDayPolicy;
+
+  // values at or after the upper bound, or before the lower bound, leave the year range once
+  // shifted
+  @ToString.Exclude @EqualsAndHashCode.Exclude private final long lowerBoundMillis;
+  @ToString.Exclude @EqualsAndHashCode.Exclude private final long upperBoundMillis;
+  @ToString.Exclude @EqualsAndHashCode.Exclude private final boolean leapDayAdjusted;
+
+  @Builder(toBuilder = true)
+  private DateShiftPlan(
+      int amount, Granularity granularity, ClampPolicy clampPolicy, LeapDayPolicy leapDayPolicy) {
+    this.amount = amount;
+    this.granularity = Objects.requireNonNullElse(granularity, Granularity.YEARS);
+    this.clampPolicy = Objects.requireNonNullElse(clampPolicy, ClampPolicy.CLAMP);
+    this.leapDayPolicy = Objects.requireNonNullElse(leapDayPolicy, LeapDayPolicy.PREVIOUS_DAY);
+    this.lowerBoundMillis = boundMillis(MIN_YEAR, amount, this.granularity.unit);
+    this.upperBoundMillis = boundMillis(MAX_YEAR + 1, amount, this.granularity.unit);
+    // day shifts never move Feb 29 onto a date that does not exist
+    this.leapDayAdjusted =
+        this.leapDayPolicy == LeapDayPolicy.NEXT_DAY && this.granularity != Granularity.DAYS;
+  }
+
+  /** The whole-year shift with clamping that test case date shifting has always used. */
+  public static DateShiftPlan ofYears(int years) {
+    return DateShiftPlan.builder().amount(years).build();
+  }
+
+  /**
+   * Plan that moves the start of one measurement period onto the start of another, using the
+   * coarsest granularity that does so exactly.
+   */
+  public static DateShiftPlan between(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new InvalidDateShiftException("Both measurement period start dates are required");
+    }
+    for (Granularity granularity : Granularity.values()) {
+      long amount = granularity.unit.between(from, to);
+      // between() stops short of a whole unit that ends on a clipped day, like Feb 29 to Feb 28
+      long nextAmount = amount + Long.signum(to.compareTo(from));
+      if (from.plus(amount, granularity.unit).equals(to)) {
+        return of(amount, granularity);
+      } else if (from.plus(nextAmount, granularity.unit).equals(to)) {
+        return of(nextAmount, granularity);
+      }
+    }
+    throw new IllegalStateException("Day granularity always matches");
+  }
+
+  private static DateShiftPlan of(long amount, Granularity granularity) {
+    if (amount < Integer.MIN_VALUE || amount > Integer.MAX_VALUE) {
+      throw new InvalidDateShiftException("Date shift between periods is too large");
+    }
+    return DateShiftPlan.builder().amount((int) amount).granularity(granularity).build();
+  }
+
+  /** True for a whole-year shift with the default clamp and leap day policies. */
+  public boolean isYearShift() {
+    return granularity == Granularity.YEARS
+        && clampPolicy == ClampPolicy.CLAMP
+        && leapDayPolicy == LeapDayPolicy.PREVIOUS_DAY;
+  }
+
+  public void apply(BaseDateTimeType dateType) {
+    Date value = dateType.getValue();
+    // HAPI will build partial objects when given partial data, like only an extension.
+    if (value == null) {
+      return;
+    }
+    if (clampPolicy == ClampPolicy.CLAMP && value.getTime() >= upperBoundMillis) {
+      dateType.setValue(DateUtils.setYears(value, MAX_YEAR));
+    } else if (clampPolicy == ClampPolicy.CLAMP && value.getTime() < lowerBoundMillis) {
+      dateType.setValue(DateUtils.setYears(value, MIN_YEAR));
+    } else {
+      boolean leapDay =
+          leapDayAdjusted && dateType.getMonth() == Calendar.FEBRUARY && dateType.getDay() == 29;
+      dateType.add(granularity.calendarField, amount);
+      if (leapDay && dateType.getDay() == 28) {
+        dateType.add(Calendar.DAY_OF_MONTH, 1);
+      }
+    }
+  }
+
+  private static long boundMillis(int year, int amount, ChronoUnit unit) {
+    try {
+      return LocalDate.of(year, 1, 1)
+          .atStartOfDay(ZoneOffset.UTC)
+          .minus(amount, unit)
+          .toInstant()
+          .toEpochMilli();
+    } catch (DateTimeException | ArithmeticException ex) {
+      // beyond what java.time can represent, so every value is on the same side of the bound
+      return amount > 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.StrictErrorHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out reusable HAPI parsers for the application FHIR context. HAPI parsers are not thread
+ * safe, so each thread gets its own instance per profile. Parsers returned from here are shared by
+ * every caller on the thread and must not be reconfigured.
+ *
+ * <p>Two profiles are provided: compact output for internal round-trips, where nobody reads the
+ * encoded text, and pretty printed output for payloads returned to users.
+ */
+@Component
+public class FhirParserProvider {
+  private final ThreadLocal<IParser> jsonParser;
+  private final ThreadLocal<IParser> prettyJsonParser;
+  private final ThreadLocal<IParser> xmlParser;
+  private final ThreadLocal<IParser> prettyXmlParser;
+
+  public FhirParserProvider(FhirContext fhirContext) {
+    this.jsonParser = ThreadLocal.withInitial(() -> strictJsonParser(fhirContext, false));
+    this.prettyJsonParser = ThreadLocal.withInitial(() -> strictJsonParser(fhirContext, true));
+    this.xmlParser = ThreadLocal.withInitial(() -> fhirContext.newXmlParser());
+    this.prettyXmlParser =
+        ThreadLocal.withInitial(() -> fhirContext.newXmlParser().setPrettyPrint(true));
+  }
+
+  /** Strict JSON parser with compact output, for internal parse/encode round-trips. */
+  public IParser jsonParser() {
+    return jsonParser.get();
+  }
+
+  /** Strict JSON parser for external output, pretty printed unless compact output is requested. */
+  public IParser jsonParser(boolean prettyPrint) {
+    return prettyPrint ? prettyJsonParser.get() : jsonParser.get();
+  }
+
+  public IParser xmlParser(boolean prettyPrint) {
+    return prettyPrint ? prettyXmlParser.get() : xmlParser.get();
+  }
+
+  private static IParser strictJsonParser(FhirContext fhirContext, boolean prettyPrint) {
+    return fhirContext
+        .newJsonParser()
+        .setParserErrorHandler(new StrictErrorHandler())
+        .setPrettyPrint(prettyPrint);
+  }
+}
@@ -0,0 +1,92 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Resource;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes R4 FHIR resources as JSON or XML with the shared HAPI parsers, so controllers
+ * can return resources instead of encoding them to Strings first. Resources are encoded straight
+ * onto the response stream.
+ *
+ * <p>JSON measure bundles do not go through this converter: they are encoded once into a {@link
+ * PreparedJsonResponse}, which the bundle cache, ETags and gzip need as bytes, so they are held in
+ * memory in full. Only XML measure bundles are streamed.
+ *
+ * <p>Output is pretty printed unless the request has the FHIR {@code _pretty=false} parameter.
+ */
+public class FhirResourceHttpMessageConverter extends AbstractHttpMessageConverter<IBaseResource> {
+  public static final String PRETTY_PARAMETER = "_pretty";
+  public static final MediaType FHIR_JSON = MediaType.valueOf("application/fhir+json");
+  public static final MediaType FHIR_XML = MediaType.valueOf("application/fhir+xml");
+
+  private final FhirParserProvider parserProvider;
+
+  public FhirResourceHttpMessageConverter(FhirParserProvider parserProvider) {
+    super(
+        StandardCharsets.UTF_8,
+        MediaType.APPLICATION_JSON,
+        FHIR_JSON,
+        MediaType.APPLICATION_XML,
+        FHIR_XML);
+    this.parserProvider = parserProvider;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    // the shared parsers are bound to the R4 context
+    return Resource.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  protected IBaseResource readInternal(
+      Class<? extends IBaseResource> clazz, HttpInputMessage inputMessage) throws IOException {
+    IParser parser =
+        isXml(inputMessage.getHeaders().getContentType())
+            ? parserProvider.xmlParser(false)
+            : parserProvider.jsonParser();
+    return parser.parseResource(
+        clazz, new InputStreamReader(inputMessage.getBody(), StandardCharsets.UTF_8));
+  }
+
+  @Override
+  protected void writeInternal(IBaseResource resource, HttpOutputMessage outputMessage)
+      throws IOException {
+    boolean prettyPrint = isPrettyPrintRequested();
+    IParser parser =
+        isXml(outputMessage.getHeaders().getContentType())
+            ? parserProvider.xmlParser(prettyPrint)
+            : parserProvider.jsonParser(prettyPrint);
+    Writer writer = new OutputStreamWriter(outputMessage.getBody(), StandardCharsets.UTF_8);
+    parser.encodeResourceToWriter(resource, writer);
+    writer.flush();
+  }
+
+  private boolean isXml(MediaType mediaType) {
+    return mediaType != null
+        && (MediaType.APPLICATION_XML.isCompatibleWith(mediaType)
+            || FHIR_XML.isCompatibleWith(mediaType));
+  }
+
+  private boolean isPrettyPrintRequested() {
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes instanceof ServletRequestAttributes servletAttributes) {
+      return !"false"
+          .equalsIgnoreCase(servletAttributes.getRequest().getParameter(PRETTY_PARAMETER));
+    }
+    return true;
+  }
+}
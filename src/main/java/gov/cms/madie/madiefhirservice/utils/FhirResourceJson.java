@@ -0,0 +1,65 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.Getter;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.IOException;
+
+/**
+ * Embeds a FHIR resource in a Jackson-serialized response. The resource is encoded by HAPI when the
+ * enclosing object is written and emitted as a raw JSON value, so it is never converted to a
+ * generic Map tree.
+ */
+@Getter
+public class FhirResourceJson extends JsonSerializable.Base {
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final FhirParserProvider parserProvider;
+  private final IBaseResource resource;
+  private final boolean prettyPrint;
+
+  public FhirResourceJson(FhirParserProvider parserProvider, IBaseResource resource) {
+    this(parserProvider, resource, false);
+  }
+
+  public FhirResourceJson(
+      FhirParserProvider parserProvider, IBaseResource resource, boolean prettyPrint) {
+    this.parserProvider = parserProvider;
+    this.resource = resource;
+    this.prettyPrint = prettyPrint;
+  }
+
+  public FhirResourceJson withPrettyPrint(boolean prettyPrint) {
+    return prettyPrint == this.prettyPrint
+        ? this
+        : new FhirResourceJson(parserProvider, resource, prettyPrint);
+  }
+
+  @Override
+  public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+    String json = parserProvider.jsonParser(prettyPrint).encodeResourceToString(resource);
+    if (gen instanceof TokenBuffer) {
+      // buffered tokens may be read back as a tree, so replay the tokens instead of a raw value
+      try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+        parser.nextToken();
+        gen.copyCurrentStructure(parser);
+      }
+    } else {
+      gen.writeRawValue(json);
+    }
+  }
+
+  @Override
+  public void serializeWithType(
+      JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+      throws IOException {
+    serialize(gen, serializers);
+  }
+}
@@ -0,0 +1,30 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/** SHA-256 hashing for cache keys, fingerprints and ETags. */
+public class HashUtil {
+
+  /** A new SHA-256 digest, for content that is hashed in parts or streamed. */
+  public static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /** The SHA-256 hash of the bytes. */
+  public static byte[] sha256(byte[] content) {
+    return sha256().digest(content);
+  }
+
+  /** The hex encoded SHA-256 hash of the UTF-8 encoded text. */
+  public static String sha256Hex(String content) {
+    return HexFormat.of().formatHex(sha256(content.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,305 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeChildChoiceDefinition;
+import ca.uhn.fhir.context.RuntimeChildContainedResources;
+import ca.uhn.fhir.context.RuntimeChildDirectResource;
+import ca.uhn.fhir.context.RuntimeChildExtension;
+import ca.uhn.fhir.context.RuntimePrimitiveDatatypeDefinition;
+import ca.uhn.fhir.parser.DataFormatException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.BaseDateTimeType;
+import org.hl7.fhir.r4.model.Extension;
+import org.springframework.stereotype.Component;
+
+import javax.lang.model.SourceVersion;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Year;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shifts the dates of a test case bundle by streaming its JSON, without building the HAPI object
+ * model. The FHIR type model decides which properties hold date, dateTime or instant values; only
+ * those tokens are rewritten and everything else is copied through as is.
+ *
+ * <p>Follows the same rules as the object model shifter: only the resources in the entries of the
+ * top level bundle are shifted, extensions on primitives are left alone, and years are clamped to
+ * 1900..9999. Unlike the strict HAPI parser it does not validate anything but the shifted dates.
+ */
+@Component
+public class JsonDateShifter {
+  private static final String RESOURCE_TYPE = "resourceType";
+  private static final String CHOICE_SUFFIX = "[x]";
+  private static final int MIN_YEAR = 1900;
+  private static final int MAX_YEAR = 9999;
+  private static final Pattern DATE =
+      Pattern.compile(
+          "(\\d{4})(?:-(\\d{2})(?:-(\\d{2})"
+              + "(?:(T\\d{2}:\\d{2}:\\d{2})(?:\\.(\\d+))?(Z|[+-]\\d{2}:\\d{2}))?)?)?");
+
+  private enum Kind {
+    DATE,
+    COMPOSITE,
+    RESOURCE
+  }
+
+  private record Child(Kind kind, Function<String, Child> children) {}
+
+  private static final Child DATE_CHILD = new Child(Kind.DATE, name -> null);
+
+  private final FhirContext fhirContext;
+  private final ObjectMapper mapper;
+  private final JsonFactory jsonFactory;
+  private final Map<BaseRuntimeElementCompositeDefinition<?>, Child> composites =
+      new ConcurrentHashMap<>();
+  private final Map<BaseRuntimeElementCompositeDefinition<?>, Map<String, Child>> compiled =
+      new ConcurrentHashMap<>();
+  private final Child resourceChild;
+  private final Child rootBundle;
+
+  public JsonDateShifter(FhirContext fhirContext) {
+    this.fhirContext = fhirContext;
+    // decimals are copied from their text, but buffered objects must not lose trailing zeros either
+    this.mapper =
+        JsonMapper.builder()
+            .nodeFactory(JsonNodeFactory.withExactBigDecimals(true))
+            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+            .build();
+    this.jsonFactory = mapper.getFactory();
+    this.resourceChild = new Child(Kind.RESOURCE, name -> null);
+    Child entry = new Child(Kind.COMPOSITE, name -> "resource".equals(name) ? resourceChild : null);
+    this.rootBundle = new Child(Kind.COMPOSITE, name -> "entry".equals(name) ? entry : null);
+  }
+
+  /**
+   * @param json test case bundle JSON
+   * @param shiftBy number of years to shift by
+   * @return compact JSON of the bundle with its entry resource dates shifted
+   * @throws DataFormatException if the JSON is malformed, is not a Bundle or holds an invalid date
+   */
+  public String shiftDates(String json, int shiftBy) {
+    if (StringUtils.isBlank(json)) {
+      throw new DataFormatException("Empty test case");
+    }
+    StringWriter writer = new StringWriter(json.length());
+    try (JsonParser parser = jsonFactory.createParser(json);
+        JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new DataFormatException("Test case JSON is not a Bundle");
+      }
+      writeResource(parser, generator, shiftBy, true);
+      if (parser.nextToken() != null) {
+        throw new DataFormatException("Unexpected content after the test case Bundle");
+      }
+    } catch (JsonProcessingException ex) {
+      throw new DataFormatException("Invalid test case JSON: " + ex.getOriginalMessage(), ex);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return writer.toString();
+  }
+
+  /** Shifts the year of a FHIR date, dateTime or instant value the way Calendar.add would. */
+  static String shiftDate(String value, int shiftBy) {
+    Matcher matcher = DATE.matcher(value);
+    if (!matcher.matches()) {
+      throw new DataFormatException("Invalid date value [" + value + "]");
+    }
+    long shifted = Long.parseLong(matcher.group(1)) + shiftBy;
+    int year = (int) Math.max(MIN_YEAR, Math.min(MAX_YEAR, shifted));
+    String month = matcher.group(2);
+    String day = matcher.group(3);
+    StringBuilder result = new StringBuilder(value.length()).append(year);
+    if (month != null) {
+      if (day != null && "02".equals(month) && "29".equals(day) && !Year.isLeap(year)) {
+        // adding years lands on Feb 28, while clamping the year rolls over to Mar 1
+        boolean clamped = shifted != year;
+        month = clamped ? "03" : month;
+        day = clamped ? "01" : "28";
+      }
+      result.append('-').append(month);
+      if (day != null) {
+        result.append('-').append(day);
+      }
+    }
+    if (matcher.group(4) != null) {
+      result.append(matcher.group(4));
+      String fraction = matcher.group(5);
+      if (fraction != null) {
+        // the shifted value has millisecond precision
+        result.append('.').append(StringUtils.left(StringUtils.rightPad(fraction, 3, '0'), 3));
+      }
+      result.append(matcher.group(6));
+    }
+    return result.toString();
+  }
+
+  private void writeResource(JsonParser parser, JsonGenerator generator, int shiftBy, boolean root)
+      throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == JsonToken.FIELD_NAME && RESOURCE_TYPE.equals(parser.currentName())) {
+      parser.nextToken();
+      String resourceType = parser.getText();
+      generator.writeStartObject();
+      generator.writeFieldName(RESOURCE_TYPE);
+      generator.writeString(resourceType);
+      writeFields(parser, generator, resourceChild(resourceType, root), shiftBy);
+      return;
+    }
+    // resourceType is not the first property, so buffer the resource until it is known
+    ObjectNode resource = mapper.createObjectNode();
+    for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+      String name = parser.currentName();
+      parser.nextToken();
+      resource.set(name, mapper.readTree(parser));
+    }
+    try (JsonParser buffered = resource.traverse(mapper)) {
+      buffered.nextToken();
+      generator.writeStartObject();
+      writeFields(
+          buffered,
+          generator,
+          resourceChild(resource.path(RESOURCE_TYPE).asText(null), root),
+          shiftBy);
+    }
+  }
+
+  private Child resourceChild(String resourceType, boolean root) {
+    if (resourceType == null) {
+      throw new DataFormatException("Resource is missing its resourceType");
+    }
+    if (root && !"Bundle".equals(resourceType)) {
+      throw new DataFormatException("Test case JSON is a " + resourceType + ", not a Bundle");
+    }
+    return root ? rootBundle : composite(fhirContext.getResourceDefinition(resourceType));
+  }
+
+  private void writeFields(JsonParser parser, JsonGenerator generator, Child child, int shiftBy)
+      throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.currentName();
+      generator.writeFieldName(name);
+      parser.nextToken();
+      writeValue(parser, generator, child.children().apply(name), shiftBy);
+    }
+    generator.writeEndObject();
+  }
+
+  private void writeValue(JsonParser parser, JsonGenerator generator, Child child, int shiftBy)
+      throws IOException {
+    JsonToken token = parser.currentToken();
+    if (child == null) {
+      copy(parser, generator);
+    } else if (token == JsonToken.START_ARRAY) {
+      generator.writeStartArray();
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        writeValue(parser, generator, child, shiftBy);
+      }
+      generator.writeEndArray();
+    } else if (child.kind() == Kind.DATE && token == JsonToken.VALUE_STRING) {
+      generator.writeString(shiftDate(parser.getText(), shiftBy));
+    } else if (child.kind() == Kind.RESOURCE && token == JsonToken.START_OBJECT) {
+      writeResource(parser, generator, shiftBy, false);
+    } else if (child.kind() == Kind.COMPOSITE && token == JsonToken.START_OBJECT) {
+      generator.writeStartObject();
+      writeFields(parser, generator, child, shiftBy);
+    } else {
+      copy(parser, generator);
+    }
+  }
+
+  private void copy(JsonParser parser, JsonGenerator generator) throws IOException {
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.START_OBJECT) {
+      generator.writeStartObject();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        generator.writeFieldName(parser.currentName());
+        parser.nextToken();
+        copy(parser, generator);
+      }
+      generator.writeEndObject();
+    } else if (token == JsonToken.START_ARRAY) {
+      generator.writeStartArray();
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        copy(parser, generator);
+      }
+      generator.writeEndArray();
+    } else if (token.isNumeric()) {
+      // written from the source text, so decimals such as 1.50 keep their precision
+      generator.writeNumber(parser.getText());
+    } else {
+      generator.copyCurrentEvent(parser);
+    }
+  }
+
+  private Child composite(BaseRuntimeElementCompositeDefinition<?> definition) {
+    // children are compiled on first use, as the type graph is recursive
+    return composites.computeIfAbsent(
+        definition,
+        type ->
+            new Child(
+                Kind.COMPOSITE, name -> compiled.computeIfAbsent(type, this::compile).get(name)));
+  }
+
+  /**
+   * Maps the JSON property names of a type to the children that may hold dates. Elements named
+   * after Java keywords are skipped, matching the object model shifter.
+   */
+  private Map<String, Child> compile(BaseRuntimeElementCompositeDefinition<?> definition) {
+    Map<String, Child> compiled = new HashMap<>();
+    for (BaseRuntimeChildDefinition child : definition.getChildren()) {
+      String name = child.getElementName();
+      if (SourceVersion.isKeyword(StringUtils.removeEnd(name, CHOICE_SUFFIX))) {
+        continue;
+      }
+      if (child instanceof RuntimeChildExtension) {
+        compiled.put(name, composite(extensionDefinition()));
+      } else if (child instanceof RuntimeChildContainedResources
+          || child instanceof RuntimeChildDirectResource) {
+        compiled.put(name, resourceChild);
+      } else if (child instanceof RuntimeChildChoiceDefinition) {
+        for (String choice : child.getValidChildNames()) {
+          put(compiled, choice, child.getChildByName(choice));
+        }
+      } else {
+        put(compiled, name, child.getChildByName(name));
+      }
+    }
+    return compiled;
+  }
+
+  private void put(
+      Map<String, Child> compiled, String name, BaseRuntimeElementDefinition<?> definition) {
+    if (definition instanceof RuntimePrimitiveDatatypeDefinition primitive
+        && BaseDateTimeType.class.isAssignableFrom(primitive.getImplementingClass())) {
+      compiled.put(name, DATE_CHILD);
+    } else if (definition instanceof BaseRuntimeElementCompositeDefinition<?> composite) {
+      compiled.put(name, composite(composite));
+    }
+  }
+
+  private BaseRuntimeElementCompositeDefinition<?> extensionDefinition() {
+    return (BaseRuntimeElementCompositeDefinition<?>)
+        fhirContext.getElementDefinition(Extension.class);
+  }
+}
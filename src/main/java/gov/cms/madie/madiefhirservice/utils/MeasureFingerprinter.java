@@ -0,0 +1,50 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import gov.cms.madie.madiefhirservice.exceptions.InternalServerException;
+import gov.cms.madie.models.measure.Measure;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Fingerprints the parts of a MADiE measure that FHIR measure bundles and exports are built from:
+ * its CQL, ELM, groups, metadata and last modified time. Two measures with the same fingerprint
+ * produce the same bundle.
+ */
+@Component
+public class MeasureFingerprinter {
+  private final ObjectWriter writer;
+
+  public MeasureFingerprinter(ObjectMapper objectMapper) {
+    // map entry order must not depend on how the client happened to send the measure
+    this.writer =
+        objectMapper
+            .copy()
+            .addMixIn(Measure.class, MeasureFingerprintMixIn.class)
+            .writer()
+            .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+  }
+
+  /** Returns the hex encoded SHA-256 fingerprint of the measure. */
+  public String fingerprint(Measure measure) {
+    MessageDigest digest = HashUtil.sha256();
+    try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+      writer.writeValue(out, measure);
+    } catch (IOException ex) {
+      throw new InternalServerException("Unable to fingerprint measure " + measure.getId(), ex);
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /** Test cases are not part of the measure bundle, so editing them keeps the fingerprint. */
+  @JsonIgnoreProperties({"testCases"})
+  private abstract static class MeasureFingerprintMixIn {}
+}
@@ -0,0 +1,72 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.packaging.utils.PackagingUtility;
+import gov.cms.madie.packaging.utils.PackagingUtilityFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Packaging utilities of the supported models, keyed by model name. The factory looks utilities up
+ * and constructs them reflectively, so each utility is created once and reused for every export.
+ * Utilities for the configured models are created on startup, and a configured model that has no
+ * packaging utility keeps the service from starting. Utilities for any other model the factory
+ * supports are created on first use.
+ *
+ * <p>One instance per model is shared by all exports, including concurrent ones. This relies on the
+ * utilities keeping no state between calls: they take everything they need as arguments and create
+ * their FHIR parsers per call.
+ */
+@Slf4j
+@Component
+public class PackagingUtilityRegistry {
+  private final Map<String, PackagingUtility> utilities = new ConcurrentHashMap<>();
+
+  public PackagingUtilityRegistry(@Value("${madie.packaging.models}") List<String> models) {
+    for (String model : models) {
+      try {
+        utilities.put(model, createUtility(model));
+      } catch (IllegalArgumentException ex) {
+        throw new IllegalStateException(
+            "Unable to create packaging utility for model " + model, ex);
+      }
+    }
+    log.info("Packaging utilities available for models {}", utilities.keySet());
+  }
+
+  /**
+   * Packages the export bundle into a zip archive.
+   *
+   * @param model MADiE model of the measure, e.g. QI-Core v4.1.1
+   * @param exportBundle bundle, or map of bundles, to package
+   * @param exportFileName base name of the files in the archive, if the model uses one
+   * @throws IllegalArgumentException if the model is not supported
+   */
+  public byte[] getZipBundle(String model, Object exportBundle, String exportFileName) {
+    return getUtility(model).getZipBundle(exportBundle, exportFileName);
+  }
+
+  private PackagingUtility getUtility(String model) {
+    if (model == null) {
+      throw new IllegalArgumentException("No packaging utility for model null");
+    }
+    return utilities.computeIfAbsent(model, PackagingUtilityRegistry::createUtility);
+  }
+
+  private static PackagingUtility createUtility(String model) {
+    PackagingUtility utility;
+    try {
+      utility = PackagingUtilityFactory.getInstance(model);
+    } catch (ReflectiveOperationException | IllegalArgumentException | SecurityException ex) {
+      throw new IllegalArgumentException("No packaging utility for model " + model, ex);
+    }
+    if (utility == null) {
+      throw new IllegalArgumentException("No packaging utility for model " + model);
+    }
+    return utility;
+  }
+}
@@ -0,0 +1,203 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes zip archives with the entries deflated in parallel on the shared zip pool. Zip entries are
+ * compressed independently of each other, so each entry is deflated as its own task and the archive
+ * is then assembled in the order the entries were given. The output only depends on the entries and
+ * the compression level, not on how the tasks were scheduled.
+ *
+ * <p>Archives that need Zip64, with more than 65535 entries or more than 4 GB of data, are written
+ * sequentially with {@link ZipOutputStream} instead.
+ */
+@Component
+public class ParallelZipWriter {
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int VERSION = 20;
+  private static final int UTF8_NAMES_FLAG = 0x0800;
+  private static final int MAX_ENTRIES = 0xFFFF;
+  private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+  private final Executor zipDeflateExecutor;
+
+  public ParallelZipWriter(Executor zipDeflateExecutor) {
+    this.zipDeflateExecutor = zipDeflateExecutor;
+  }
+
+  /** File to add to an archive. */
+  public record Entry(String name, byte[] content, long lastModifiedMillis) {
+    public static Entry of(String name, byte[] content) {
+      return new Entry(name, content, System.currentTimeMillis());
+    }
+  }
+
+  private record CompressedEntry(Entry entry, int method, long crc, byte[] data) {}
+
+  /**
+   * Builds an archive of the given entries, in the given order.
+   *
+   * @param entries files to add
+   * @param compressionLevel deflate level for every entry
+   * @return the zip archive
+   */
+  public byte[] write(List<Entry> entries, CompressionLevel compressionLevel) throws IOException {
+    long totalSize = entries.stream().mapToLong(entry -> entry.content().length).sum();
+    if (entries.size() > MAX_ENTRIES || totalSize >= MAX_SIZE) {
+      return writeSequentially(entries, compressionLevel);
+    }
+
+    List<CompletableFuture<CompressedEntry>> compressed = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      compressed.add(
+          CompletableFuture.supplyAsync(
+              () -> compress(entry, compressionLevel.getLevel()), zipDeflateExecutor));
+    }
+
+    ByteArrayOutputStream archive = new ByteArrayOutputStream((int) (totalSize / 4) + 1024);
+    ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream(entries.size() * 128);
+    try {
+      for (CompletableFuture<CompressedEntry> future : compressed) {
+        CompressedEntry entry = future.get();
+        long offset = archive.size();
+        if (offset + entry.data().length >= MAX_SIZE) {
+          return writeSequentially(entries, compressionLevel);
+        }
+        writeHeader(archive, entry, -1);
+        archive.write(entry.data());
+        writeHeader(centralDirectory, entry, offset);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing archive entries");
+    } catch (ExecutionException ex) {
+      throw new IOException("Unable to compress archive entry", ex.getCause());
+    } finally {
+      compressed.forEach(future -> future.cancel(true));
+    }
+
+    int centralDirectoryOffset = archive.size();
+    centralDirectory.writeTo(archive);
+    writeInt(archive, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+    writeShort(archive, 0); // this disk
+    writeShort(archive, 0); // disk with the central directory
+    writeShort(archive, entries.size());
+    writeShort(archive, entries.size());
+    writeInt(archive, centralDirectory.size());
+    writeInt(archive, centralDirectoryOffset);
+    writeShort(archive, 0); // comment length
+    return archive.toByteArray();
+  }
+
+  private static CompressedEntry compress(Entry entry, int level) {
+    byte[] content = entry.content();
+    CRC32 crc = new CRC32();
+    crc.update(content);
+
+    Deflater deflater = new Deflater(level, true);
+    try {
+      deflater.setInput(content);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      // keep content that does not compress as it is, as ZipOutputStream users would
+      if (out.size() >= content.length) {
+        return new CompressedEntry(entry, ZipEntry.STORED, crc.getValue(), content);
+      }
+      return new CompressedEntry(entry, ZipEntry.DEFLATED, crc.getValue(), out.toByteArray());
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /** Writes the local header of the entry, or its central directory header if given an offset. */
+  private static void writeHeader(ByteArrayOutputStream out, CompressedEntry entry, long offset) {
+    boolean central = offset >= 0;
+    byte[] name = entry.entry().name().getBytes(StandardCharsets.UTF_8);
+    writeInt(out, central ? CENTRAL_HEADER_SIGNATURE : LOCAL_HEADER_SIGNATURE);
+    if (central) {
+      writeShort(out, VERSION); // version made by
+    }
+    writeShort(out, VERSION); // version needed to extract
+    writeShort(out, UTF8_NAMES_FLAG);
+    writeShort(out, entry.method());
+    writeInt(out, dosTime(entry.entry().lastModifiedMillis()));
+    writeInt(out, (int) entry.crc());
+    writeInt(out, entry.data().length);
+    writeInt(out, entry.entry().content().length);
+    writeShort(out, name.length);
+    writeShort(out, 0); // extra field length
+    if (central) {
+      writeShort(out, 0); // comment length
+      writeShort(out, 0); // disk number
+      writeShort(out, 0); // internal attributes
+      writeInt(out, 0); // external attributes
+      writeInt(out, (int) offset);
+    }
+    out.writeBytes(name);
+  }
+
+  private static byte[] writeSequentially(List<Entry> entries, CompressionLevel compressionLevel)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(out)) {
+      zip.setLevel(compressionLevel.getLevel());
+      for (Entry entry : entries) {
+        ZipEntry zipEntry = new ZipEntry(entry.name());
+        zipEntry.setTime(entry.lastModifiedMillis());
+        zip.putNextEntry(zipEntry);
+        zip.write(entry.content());
+        zip.closeEntry();
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /** MS-DOS date in the high and time in the low 16 bits, in local time as zip tools expect. */
+  private static int dosTime(long millis) {
+    LocalDateTime time =
+        LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    if (time.getYear() < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (time.getYear() - 1980) << 25
+        | time.getMonthValue() << 21
+        | time.getDayOfMonth() << 16
+        | time.getHour() << 11
+        | time.getMinute() << 5
+        | time.getSecond() >> 1;
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write(value & 0xFF);
+    out.write((value >>> 8) & 0xFF);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    writeShort(out, value & 0xFFFF);
+    writeShort(out, (value >>> 16) & 0xFFFF);
+  }
+}
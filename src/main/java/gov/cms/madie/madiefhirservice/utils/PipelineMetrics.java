@@ -0,0 +1,189 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.constants.PipelineStage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times the stages of measure bundle and export generation. Every stage is recorded as {@value
+ * #STAGE_METER}, tagged with the stage. A pipeline run, such as building one measure bundle, is
+ * recorded as {@value #PIPELINE_METER} and collects the time of the stages that ran on its thread
+ * meanwhile. Runs slower than the configured threshold are logged with that breakdown.
+ *
+ * <p>Bundle sizes and library counts are recorded as distribution summaries, tagged with the bundle
+ * type. The bundle type comes from the request, so any type other than calculation or export is
+ * tagged as other to keep the number of series bounded.
+ */
+@Slf4j
+@Component
+public class PipelineMetrics {
+  public static final String STAGE_METER = "madie.pipeline.stage";
+  public static final String PIPELINE_METER = "madie.pipeline";
+  public static final String BUNDLE_SIZE_METER = "madie.bundle.size";
+  public static final String BUNDLE_LIBRARIES_METER = "madie.bundle.libraries";
+  static final String OTHER_BUNDLE_TYPE = "other";
+
+  private final MeterRegistry meterRegistry;
+  private final long slowThresholdNanos;
+  private final Map<PipelineStage, Timer> stageTimers = new EnumMap<>(PipelineStage.class);
+  private final ThreadLocal<Run> currentRun = new ThreadLocal<>();
+
+  public PipelineMetrics(
+      MeterRegistry meterRegistry,
+      @Value("${madie.pipeline-metrics.slow-threshold-millis}") long slowThresholdMillis) {
+    this.meterRegistry = meterRegistry;
+    this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    for (PipelineStage stage : PipelineStage.values()) {
+      stageTimers.put(
+          stage,
+          Timer.builder(STAGE_METER)
+              .description("Time spent in one stage of bundle or export generation")
+              .tag("stage", stage.getTag())
+              .register(meterRegistry));
+    }
+  }
+
+  /**
+   * Starts a pipeline run on the current thread. Close the run on the same thread once the pipeline
+   * is done, e.g. with try-with-resources. Runs may be nested; stages count towards the innermost
+   * one.
+   *
+   * @param pipeline name of the pipeline, e.g. measure_bundle
+   * @param bundleType bundle type the pipeline builds
+   * @param subject what the pipeline runs for, e.g. the measure ID, for the slow run log
+   */
+  public Run start(String pipeline, String bundleType, String subject) {
+    Run run = new Run(pipeline, bundleType, subject, currentRun.get());
+    currentRun.set(run);
+    return run;
+  }
+
+  /** Runs one stage and records its time. */
+  public <T> T time(PipelineStage stage, Supplier<T> work) {
+    long start = System.nanoTime();
+    try {
+      return work.get();
+    } finally {
+      record(stage, System.nanoTime() - start);
+    }
+  }
+
+  /** Runs one stage and records its time. */
+  public void run(PipelineStage stage, Runnable work) {
+    time(
+        stage,
+        () -> {
+          work.run();
+          return null;
+        });
+  }
+
+  /**
+   * Records the size of a bundle or export archive.
+   *
+   * @param bundleType calculation or export
+   * @param format encoding of the bundle, e.g. json or zip
+   * @param bytes encoded size
+   */
+  public void recordBundleSize(String bundleType, String format, long bytes) {
+    DistributionSummary.builder(BUNDLE_SIZE_METER)
+        .description("Encoded size of measure bundles and export archives")
+        .baseUnit("bytes")
+        .tag("bundle_type", bundleTypeTag(bundleType))
+        .tag("format", format)
+        .register(meterRegistry)
+        .record(bytes);
+  }
+
+  /** Records the number of libraries in a measure bundle, including the measure library. */
+  public void recordLibraryCount(String bundleType, int libraries) {
+    DistributionSummary.builder(BUNDLE_LIBRARIES_METER)
+        .description("Libraries in measure bundles")
+        .tag("bundle_type", bundleTypeTag(bundleType))
+        .register(meterRegistry)
+        .record(libraries);
+    Run run = currentRun.get();
+    if (run != null) {
+      run.libraries = libraries;
+    }
+  }
+
+  /** Records the time of a stage that was timed by the caller, e.g. one that throws IOException. */
+  public void record(PipelineStage stage, long nanos) {
+    stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    Run run = currentRun.get();
+    if (run != null) {
+      run.stageNanos.merge(stage, nanos, Long::sum);
+    }
+  }
+
+  private static String bundleTypeTag(String bundleType) {
+    if (BundleUtil.MEASURE_BUNDLE_TYPE_CALCULATION.equals(bundleType)
+        || BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT.equals(bundleType)) {
+      return bundleType;
+    }
+    return OTHER_BUNDLE_TYPE;
+  }
+
+  /** One pipeline run, used by a single thread. */
+  public final class Run implements AutoCloseable {
+    private final String pipeline;
+    private final String bundleType;
+    private final String subject;
+    private final Run parent;
+    private final long start = System.nanoTime();
+    private final Map<PipelineStage, Long> stageNanos = new EnumMap<>(PipelineStage.class);
+    private Integer libraries;
+
+    private Run(String pipeline, String bundleType, String subject, Run parent) {
+      this.pipeline = pipeline;
+      this.bundleType = bundleType;
+      this.subject = subject;
+      this.parent = parent;
+    }
+
+    @Override
+    public void close() {
+      long nanos = System.nanoTime() - start;
+      if (parent == null) {
+        currentRun.remove();
+      } else {
+        currentRun.set(parent);
+      }
+      Timer.builder(PIPELINE_METER)
+          .description("Time spent generating a measure bundle or export")
+          .tag("pipeline", pipeline)
+          .tag("bundle_type", bundleTypeTag(bundleType))
+          .register(meterRegistry)
+          .record(nanos, TimeUnit.NANOSECONDS);
+      if (nanos >= slowThresholdNanos) {
+        log.warn(
+            "Slow {} of type [{}] for {} took {} ms, libraries: {}, stages: {}",
+            pipeline,
+            bundleType,
+            subject,
+            TimeUnit.NANOSECONDS.toMillis(nanos),
+            libraries,
+            breakdown());
+      }
+    }
+
+    private String breakdown() {
+      StringJoiner joiner = new StringJoiner(", ", "[", "]");
+      stageNanos.forEach(
+          (stage, nanos) ->
+              joiner.add(stage.getTag() + "=" + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms"));
+      return joiner.toString();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON response body for content that does not change while the service runs, encoded once and
+ * served as is. Larger bodies are also gzip compressed up front for clients that accept it. Each
+ * encoding has its own strong ETag, so conditional requests can be answered with 304 Not Modified.
+ */
+public final class PreparedJsonResponse {
+  static final int GZIP_MIN_BYTES = 1024;
+
+  private final byte[] body;
+  private final byte[] gzipBody;
+  private final String eTag;
+
+  private PreparedJsonResponse(byte[] body) {
+    this.body = body;
+    this.gzipBody = body.length >= GZIP_MIN_BYTES ? gzip(body) : null;
+    this.eTag = "\"" + hash(body) + "\"";
+  }
+
+  public static PreparedJsonResponse of(byte[] body) {
+    return new PreparedJsonResponse(body.clone());
+  }
+
+  public String getETag() {
+    return eTag;
+  }
+
+  /** Bytes held for this response, counting the gzip variant if there is one. */
+  public int getSize() {
+    return body.length + (gzipBody == null ? 0 : gzipBody.length);
+  }
+
+  /**
+   * Builds the response for a request, compressed if the client accepts gzip.
+   *
+   * @param acceptEncoding the Accept-Encoding request header, may be null
+   * @param cacheControl Cache-Control directives for the response
+   */
+  public ResponseEntity<byte[]> toResponseEntity(String acceptEncoding, CacheControl cacheControl) {
+    return toResponseEntity(acceptEncoding, null, cacheControl);
+  }
+
+  /**
+   * Builds the response for a request, or an empty 304 Not Modified if the client already has the
+   * variant it would get. For methods other than GET and HEAD, where Spring MVC does not evaluate
+   * If-None-Match itself.
+   *
+   * @param acceptEncoding the Accept-Encoding request header, may be null
+   * @param ifNoneMatch the If-None-Match request header, may be null
+   * @param cacheControl Cache-Control directives for the response
+   */
+  public ResponseEntity<byte[]> toResponseEntity(
+      String acceptEncoding, String ifNoneMatch, CacheControl cacheControl) {
+    boolean gzipped = gzipBody != null && acceptsGzip(acceptEncoding);
+    String variantETag = gzipped ? eTag.substring(0, eTag.length() - 1) + "-gzip\"" : eTag;
+    HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl(cacheControl);
+    headers.setETag(variantETag);
+    if (gzipBody != null) {
+      headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+    }
+    if (matches(ifNoneMatch, variantETag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+    }
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    if (gzipped) {
+      headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+    return ResponseEntity.ok().headers(headers).body(gzipped ? gzipBody : body);
+  }
+
+  private static boolean matches(String ifNoneMatch, String variantETag) {
+    if (StringUtils.isBlank(ifNoneMatch)) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      String candidate = StringUtils.removeStart(tag.trim(), "W/");
+      if ("*".equals(candidate) || variantETag.equals(candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (StringUtils.isBlank(acceptEncoding)) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim();
+      if ("gzip".equalsIgnoreCase(name) || "*".equals(name)) {
+        return parts.length < 2 || !parts[1].trim().matches("(?i)q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  private static byte[] gzip(byte[] body) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(body);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return out.toByteArray();
+  }
+
+  private static String hash(byte[] body) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(HashUtil.sha256(body));
+  }
+}
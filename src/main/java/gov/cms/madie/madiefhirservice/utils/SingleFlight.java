@@ -0,0 +1,137 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.exceptions.InternalServerException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Lets concurrent callers asking for the same key share one computation. The first caller runs it
+ * on its own thread, and callers arriving while it is in progress wait for its result instead of
+ * repeating the work. Nothing is kept once the computation finishes.
+ *
+ * <p>Each waiting caller gets its own copy of the result, made with the given copy function, so
+ * mutable results can be shared safely. Failures are shared too, except when the first caller was
+ * interrupted or cancelled: the computation was then abandoned rather than failed, so one of the
+ * waiting callers runs it again.
+ *
+ * <p>Calls are counted in the {@code singleflight.calls} meter, tagged with the flight name and
+ * whether the call ran the computation or was coalesced into another.
+ *
+ * @param <K> key type
+ * @param <V> result type
+ */
+public final class SingleFlight<K, V> {
+  public static final String METER_NAME = "singleflight.calls";
+
+  private final Map<K, Flight<V>> flights = new ConcurrentHashMap<>();
+  private final UnaryOperator<V> copier;
+  private final Counter executed;
+  private final Counter coalesced;
+
+  public SingleFlight(String name, UnaryOperator<V> copier, MeterRegistry meterRegistry) {
+    this.copier = copier;
+    this.executed = counter(meterRegistry, name, "executed");
+    this.coalesced = counter(meterRegistry, name, "coalesced");
+  }
+
+  /**
+   * Returns the result for the key, running the computation unless the same key is already being
+   * computed.
+   *
+   * @param key identifies identical requests
+   * @param computation computes the result, on the calling thread
+   */
+  public V execute(K key, Supplier<V> computation) {
+    boolean waited = false;
+    while (true) {
+      Flight<V> candidate = new Flight<>();
+      Flight<V> flight =
+          flights.compute(
+              key,
+              (k, current) -> {
+                if (current == null) {
+                  return candidate;
+                }
+                current.followers++;
+                return current;
+              });
+      if (flight == candidate) {
+        if (!waited) {
+          executed.increment();
+        }
+        return lead(key, flight, computation);
+      }
+      if (!waited) {
+        coalesced.increment();
+        waited = true;
+      }
+      try {
+        return copier.apply(flight.result.get());
+      } catch (CancellationException ex) {
+        // the caller running the computation gave up; try again, most likely as the new leader
+      } catch (ExecutionException ex) {
+        throw rethrow(ex.getCause());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InternalServerException("Interrupted while waiting for " + key, ex);
+      }
+    }
+  }
+
+  /** Number of keys currently being computed. */
+  public int inFlight() {
+    return flights.size();
+  }
+
+  private V lead(K key, Flight<V> flight, Supplier<V> computation) {
+    V value;
+    try {
+      value = computation.get();
+    } catch (RuntimeException | Error ex) {
+      flights.remove(key, flight);
+      if (Thread.currentThread().isInterrupted() || ex instanceof CancellationException) {
+        flight.result.cancel(false);
+      } else {
+        flight.result.completeExceptionally(ex);
+      }
+      throw ex;
+    }
+    // no caller can join once the flight is removed, so the follower count is final
+    flights.remove(key, flight);
+    // followers copy from a snapshot, as this caller is free to modify the value it gets back
+    flight.result.complete(flight.followers == 0 ? value : copier.apply(value));
+    return value;
+  }
+
+  private static RuntimeException rethrow(Throwable cause) {
+    if (cause instanceof RuntimeException runtimeException) {
+      return runtimeException;
+    }
+    if (cause instanceof Error error) {
+      throw error;
+    }
+    return new InternalServerException(cause.getMessage(), cause);
+  }
+
+  private static Counter counter(MeterRegistry meterRegistry, String name, String result) {
+    return Counter.builder(METER_NAME)
+        .description("Calls that ran a computation or were coalesced into one already running")
+        .tag("name", name)
+        .tag("result", result)
+        .register(meterRegistry);
+  }
+
+  private static final class Flight<V> {
+    private final CompletableFuture<V> result = new CompletableFuture<>();
+    // only changed inside ConcurrentHashMap.compute for the flight's key
+    private volatile int followers;
+  }
+}
@@ -0,0 +1,114 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.constants.UriConstants;
+import gov.cms.madie.madiefhirservice.dto.ResourceIdentifier;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.StructureDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable lookup tables over a set of structure definitions, built once so requests do not scan
+ * and re-derive them from the full list. Where several definitions share an ID the first one wins,
+ * as it did with the linear scans this replaces.
+ */
+public final class StructureDefinitionIndex {
+  private final Map<String, StructureDefinition> byId;
+  private final Map<String, List<StructureDefinition>> byType;
+  private final Map<String, String> categoryByType;
+  private final List<ResourceIdentifier> qiCoreResources;
+
+  private StructureDefinitionIndex(Collection<? extends IBaseResource> resources) {
+    Map<String, StructureDefinition> ids = new LinkedHashMap<>();
+    Map<String, List<StructureDefinition>> types = new HashMap<>();
+    for (IBaseResource resource : resources) {
+      String id = resource.getIdElement().getIdPart();
+      if (resource instanceof StructureDefinition structureDefinition && id != null) {
+        ids.putIfAbsent(id, structureDefinition);
+        if (structureDefinition.hasType()) {
+          types
+              .computeIfAbsent(structureDefinition.getType(), type -> new ArrayList<>())
+              .add(structureDefinition);
+        }
+      }
+    }
+
+    // the category of a type lives on its base definition, whose ID is the type name
+    Map<String, String> categories = new HashMap<>();
+    ids.forEach(
+        (id, structureDefinition) -> {
+          Extension extension =
+              structureDefinition.getExtensionByUrl(
+                  UriConstants.FhirStructureDefinitions.CATEGORY_URI);
+          if (extension != null && extension.getValueAsPrimitive() != null) {
+            categories.put(id, extension.getValueAsPrimitive().getValueAsString());
+          }
+        });
+
+    List<ResourceIdentifier> resourceIdentifiers = new ArrayList<>();
+    for (IBaseResource resource : resources) {
+      if (resource instanceof StructureDefinition structureDefinition
+          && structureDefinition.getKind() == StructureDefinition.StructureDefinitionKind.RESOURCE
+          && resource.getIdElement().getIdPart() != null
+          && resource.getIdElement().getIdPart().startsWith("qicore")) {
+        resourceIdentifiers.add(
+            ResourceIdentifier.builder()
+                .id(resource.getIdElement().getIdPart())
+                .title(structureDefinition.getTitle())
+                .type(structureDefinition.getType())
+                .category(
+                    structureDefinition.getType() == null
+                        ? null
+                        : categories.get(structureDefinition.getType()))
+                // Todo: update profile URL if this index changes to return more than just
+                // QI-Core resources
+                .profile(structureDefinition.getUrl())
+                .build());
+      }
+    }
+
+    this.byId = Map.copyOf(ids);
+    Map<String, List<StructureDefinition>> immutableTypes = new HashMap<>();
+    types.forEach((type, definitions) -> immutableTypes.put(type, List.copyOf(definitions)));
+    this.byType = Map.copyOf(immutableTypes);
+    this.categoryByType = Map.copyOf(categories);
+    this.qiCoreResources = List.copyOf(resourceIdentifiers);
+  }
+
+  public static StructureDefinitionIndex of(Collection<? extends IBaseResource> resources) {
+    return new StructureDefinitionIndex(resources);
+  }
+
+  public Optional<StructureDefinition> findById(String id) {
+    return id == null ? Optional.empty() : Optional.ofNullable(byId.get(id));
+  }
+
+  /** All structure definitions, base and profiles, that constrain the given type. */
+  public List<StructureDefinition> findByType(String type) {
+    return type == null ? List.of() : byType.getOrDefault(type, List.of());
+  }
+
+  /** FHIR category of the given type, e.g. Base.Individuals, or null if it has none. */
+  public String getCategory(String type) {
+    return type == null ? null : categoryByType.get(type);
+  }
+
+  /**
+   * The QI-Core resource profiles, in the order the definitions were supplied. The list and the
+   * identifiers in it are shared between callers and must not be modified.
+   */
+  public List<ResourceIdentifier> getQiCoreResources() {
+    return qiCoreResources;
+  }
+
+  public int size() {
+    return byId.size();
+  }
+}
@@ -0,0 +1,119 @@
+package gov.cms.madie.madiefhirservice.benchmarks;
+
+import gov.cms.madie.madiefhirservice.dto.MadieFeatureFlag;
+import gov.cms.madie.madiefhirservice.services.AppConfigService;
+import gov.cms.madie.madiefhirservice.services.MeasureTranslatorService;
+import gov.cms.madie.madiefhirservice.utils.MeasureTestHelper;
+import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
+import gov.cms.madie.models.measure.Group;
+import gov.cms.madie.models.measure.Measure;
+import gov.cms.madie.models.measure.MeasureScoring;
+import gov.cms.madie.models.measure.PopulationType;
+import gov.cms.madie.models.measure.ReviewMetaData;
+import gov.cms.madie.models.measure.Stratification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translation throughput of {@link MeasureTranslatorService} per measure shape, built from the test
+ * measure fixtures. Not run by the test suite; run it from the IDE or after {@code mvn
+ * test-compile} with the test classpath:
+ *
+ * <pre>java -cp target/test-classes:target/classes:&lt;test classpath&gt; \
+ *     gov.cms.madie.madiefhirservice.benchmarks.MeasureTranslatorBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeasureTranslatorBenchmark implements ResourceFileUtil {
+  @Param({"proportion", "ratio", "cv", "multiGroupStratified"})
+  private String shape;
+
+  private MeasureTranslatorService measureTranslatorService;
+  private Measure measure;
+
+  @Setup
+  public void setUp() throws Exception {
+    AppConfigService appConfigService =
+        new AppConfigService(null, null) {
+          @Override
+          public boolean isFlagEnabled(MadieFeatureFlag flag) {
+            return false;
+          }
+        };
+    measureTranslatorService = new MeasureTranslatorService(appConfigService);
+    measure = createMeasure(shape);
+  }
+
+  @Benchmark
+  public org.hl7.fhir.r4.model.Measure translate() {
+    return measureTranslatorService.createFhirMeasureForMadieMeasure(measure);
+  }
+
+  private Measure createMeasure(String shape) throws Exception {
+    return switch (shape) {
+      case "proportion" -> withScoring(read("madie_ratio_measure.json"), MeasureScoring.PROPORTION);
+      case "ratio" -> read("madie_ratio_measure.json");
+      case "cv" -> read("madie_cv_measure.json");
+      case "multiGroupStratified" -> withStratifications(read("madie_measure.json"));
+      default -> throw new IllegalArgumentException("Unknown measure shape " + shape);
+    };
+  }
+
+  private Measure read(String fixture) throws Exception {
+    Measure measure =
+        MeasureTestHelper.createMadieMeasureFromJson(
+            getStringFromTestResource("/measures/" + fixture));
+    if (measure.getReviewMetaData() == null) {
+      measure.setReviewMetaData(ReviewMetaData.builder().build());
+    }
+    return measure;
+  }
+
+  private static Measure withScoring(Measure measure, MeasureScoring scoring) {
+    measure.getGroups().forEach(group -> group.setScoring(scoring.toString()));
+    return measure;
+  }
+
+  private static Measure withStratifications(Measure measure) {
+    for (Group group : measure.getGroups()) {
+      List<Stratification> stratifications = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        stratifications.add(
+            Stratification.builder()
+                .id("strat-" + i)
+                .description("Stratification " + i)
+                .cqlDefinition("Stratification " + i)
+                .associations(new ArrayList<>(List.of(PopulationType.INITIAL_POPULATION)))
+                .build());
+      }
+      group.setStratifications(stratifications);
+    }
+    return measure;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(MeasureTranslatorBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
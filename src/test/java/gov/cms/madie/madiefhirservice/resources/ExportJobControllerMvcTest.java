@@ -0,0 +1,112 @@
+package gov.cms.madie.madiefhirservice.resources;
+
+import gov.cms.madie.madiefhirservice.dto.ExportJobStatus;
+import gov.cms.madie.madiefhirservice.exceptions.ExportJobNotCompletedException;
+import gov.cms.madie.madiefhirservice.services.ExportJobService;
+import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
+import gov.cms.madie.models.measure.Measure;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+
+import static org.hamcrest.Matchers.endsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest({ExportJobController.class})
+class ExportJobControllerMvcTest implements ResourceFileUtil {
+  private static final String TEST_USER_ID = "john_doe";
+  private static final String JOB_ID = "3d1f0c9e-job";
+
+  @MockBean private ExportJobService exportJobService;
+
+  @Autowired private MockMvc mockMvc;
+
+  @Test
+  void submitMeasureExportReturnsAcceptedJob() throws Exception {
+    when(exportJobService.submitMeasureExport(
+            any(Measure.class), any(Principal.class), eq("test-okta")))
+        .thenReturn(
+            ExportJobStatus.builder()
+                .jobId(JOB_ID)
+                .type(ExportJobStatus.Type.MEASURE)
+                .state(ExportJobStatus.State.QUEUED)
+                .build());
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/fhir/export-jobs/measures")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.AUTHORIZATION, "test-okta")
+                .content(getStringFromTestResource("/measures/madie_measure.json"))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string(HttpHeaders.LOCATION, endsWith("/fhir/export-jobs/" + JOB_ID)))
+        .andExpect(jsonPath("$.jobId").value(JOB_ID))
+        .andExpect(jsonPath("$.state").value("QUEUED"));
+  }
+
+  @Test
+  void downloadStreamsArchive(@TempDir Path spoolDir) throws Exception {
+    Path archive = Files.write(spoolDir.resolve(JOB_ID + ".zip"), "zip".getBytes());
+    when(exportJobService.getArtifact(eq(JOB_ID), any(Principal.class)))
+        .thenReturn(new ExportJobService.ExportArtifact("export.zip", archive));
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get("/fhir/export-jobs/" + JOB_ID + "/download")
+                .with(user(TEST_USER_ID))
+                .header(HttpHeaders.AUTHORIZATION, "test-okta"))
+        .andExpect(status().isOk())
+        .andExpect(
+            header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=\"export.zip\""))
+        .andExpect(content().bytes("zip".getBytes()));
+  }
+
+  @Test
+  void downloadOfUnfinishedJobIsConflict() throws Exception {
+    when(exportJobService.getArtifact(eq(JOB_ID), any(Principal.class)))
+        .thenThrow(new ExportJobNotCompletedException(JOB_ID, "RUNNING"));
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get("/fhir/export-jobs/" + JOB_ID + "/download")
+                .with(user(TEST_USER_ID))
+                .header(HttpHeaders.AUTHORIZATION, "test-okta"))
+        .andExpect(status().isConflict());
+  }
+
+  @Test
+  void cancelReturnsJobStatus() throws Exception {
+    when(exportJobService.cancel(eq(JOB_ID), any(Principal.class)))
+        .thenReturn(
+            ExportJobStatus.builder().jobId(JOB_ID).state(ExportJobStatus.State.CANCELLED).build());
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.delete("/fhir/export-jobs/" + JOB_ID)
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.AUTHORIZATION, "test-okta"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.state").value("CANCELLED"));
+  }
+}
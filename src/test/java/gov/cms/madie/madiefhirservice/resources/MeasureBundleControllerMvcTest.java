@@ -2,31 +2,49 @@ package gov.cms.madie.madiefhirservice.resources;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import gov.cms.madie.madiefhirservice.constants.ElmFormat;
 import gov.cms.madie.madiefhirservice.services.ExportService;
+import gov.cms.madie.madiefhirservice.services.MeasureBundleCacheService;
 import gov.cms.madie.madiefhirservice.services.MeasureBundleService;
+import gov.cms.madie.madiefhirservice.services.MeasureRequestCoalescer;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.FhirResourceHttpMessageConverter;
+import gov.cms.madie.madiefhirservice.utils.MeasureFingerprinter;
 import gov.cms.madie.madiefhirservice.utils.MeasureTestHelper;
+import gov.cms.madie.madiefhirservice.utils.PreparedJsonResponse;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.models.measure.Measure;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -38,6 +56,12 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest({MeasureBundleController.class})
+@Import({
+  FhirResourceHttpMessageConverter.class,
+  MeasureRequestCoalescer.class,
+  MeasureFingerprinter.class,
+  SimpleMeterRegistry.class
+})
 public class MeasureBundleControllerMvcTest implements ResourceFileUtil {
   private static final String TEST_USER_ID = "john_doe";
 
@@ -45,22 +69,41 @@ public class MeasureBundleControllerMvcTest implements ResourceFileUtil {
 
   @MockBean private ExportService exportService;
 
-  @MockBean private FhirContext fhirContext;
+  @MockBean private FhirParserProvider parserProvider;
+
+  @MockBean private MeasureBundleCacheService measureBundleCacheService;
 
   @Autowired private MockMvc mockMvc;
 
   @Mock MethodOutcome methodOutcome;
   @Mock IIdType iidType;
 
+  @BeforeEach
+  void setUp() {
+    // behave as a cache miss: build the bundle and encode it
+    when(measureBundleCacheService.getBundle(
+            any(Measure.class), any(), anyString(), anySet(), anyBoolean(), any()))
+        .thenAnswer(
+            invocation -> {
+              boolean pretty = invocation.getArgument(4);
+              Supplier<Bundle> bundleBuilder = invocation.getArgument(5);
+              return PreparedJsonResponse.of(
+                  parserProvider
+                      .jsonParser(pretty)
+                      .encodeResourceToString(bundleBuilder.get())
+                      .getBytes(StandardCharsets.UTF_8));
+            });
+  }
+
   @Test
   public void testGetMeasureBundle() throws Exception {
     String madieMeasureJson = getStringFromTestResource("/measures/madie_measure.json");
     Bundle testBundle = MeasureTestHelper.createTestMeasureBundle();
 
     when(measureBundleService.createMeasureBundle(
-            any(Measure.class), any(Principal.class), anyString(), anyString()))
+            any(Measure.class), any(Principal.class), anyString(), anyString(), anySet()))
         .thenReturn(testBundle);
-    when(fhirContext.newJsonParser()).thenReturn(FhirContext.forR4().newJsonParser());
+    when(parserProvider.jsonParser(true)).thenReturn(FhirContext.forR4().newJsonParser());
 
     mockMvc
         .perform(
@@ -76,7 +119,8 @@ public class MeasureBundleControllerMvcTest implements ResourceFileUtil {
         .andExpect(jsonPath("$.entry[0].resource.name").value("TestCMS0001"))
         .andExpect(jsonPath("$.entry[0].resource.version").value("0.0.001"));
     verify(measureBundleService, times(1))
-        .createMeasureBundle(any(Measure.class), any(Principal.class), anyString(), anyString());
+        .createMeasureBundle(
+            any(Measure.class), any(Principal.class), anyString(), anyString(), anySet());
   }
 
   @Test
@@ -85,9 +129,9 @@ public class MeasureBundleControllerMvcTest implements ResourceFileUtil {
     Bundle testBundle = MeasureTestHelper.createTestMeasureBundle();
 
     when(measureBundleService.createMeasureBundle(
-            any(Measure.class), any(Principal.class), anyString(), anyString()))
+            any(Measure.class), any(Principal.class), anyString(), anyString(), anySet()))
         .thenReturn(testBundle);
-    when(fhirContext.newXmlParser()).thenReturn(FhirContext.forR4().newXmlParser());
+    when(parserProvider.xmlParser(true)).thenReturn(FhirContext.forR4().newXmlParser());
 
     mockMvc
         .perform(
@@ -101,7 +145,121 @@ public class MeasureBundleControllerMvcTest implements ResourceFileUtil {
         .andExpect(status().isOk())
         .andExpect(content().contentType(MediaType.APPLICATION_XML));
     verify(measureBundleService, times(1))
-        .createMeasureBundle(any(Measure.class), any(Principal.class), anyString(), anyString());
+        .createMeasureBundle(
+            any(Measure.class), any(Principal.class), anyString(), anyString(), anySet());
+  }
+
+  @Test
+  public void testGetMeasureBundleCompactWhenPrettyIsFalse() throws Exception {
+    String madieMeasureJson = getStringFromTestResource("/measures/madie_measure.json");
+    Bundle testBundle = MeasureTestHelper.createTestMeasureBundle();
+    when(measureBundleService.createMeasureBundle(
+            any(Measure.class), any(Principal.class), anyString(), anyString(), anySet()))
+        .thenReturn(testBundle);
+    when(parserProvider.jsonParser(false)).thenReturn(FhirContext.forR4().newJsonParser());
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/measures/bundles")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.AUTHORIZATION, "test-okta")
+                .param("_pretty", "false")
+                .content(madieMeasureJson)
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+        .andExpect(
+            content()
+                .string(FhirContext.forR4().newJsonParser().encodeResourceToString(testBundle)));
+  }
+
+  @Test
+  public void testGetMeasureBundlePassesExcludedElmFormats() throws Exception {
+    String madieMeasureJson = getStringFromTestResource("/measures/madie_measure.json");
+    when(measureBundleService.createMeasureBundle(
+            any(Measure.class), any(Principal.class), anyString(), anyString(), anySet()))
+        .thenReturn(MeasureTestHelper.createTestMeasureBundle());
+    when(parserProvider.jsonParser(true)).thenReturn(FhirContext.forR4().newJsonParser());
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/measures/bundles")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.AUTHORIZATION, "test-okta")
+                .param("excludeElm", "XML", "JSON")
+                .content(madieMeasureJson)
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk());
+    verify(measureBundleService, times(1))
+        .createMeasureBundle(
+            any(Measure.class),
+            any(Principal.class),
+            eq("calculation"),
+            anyString(),
+            eq(Set.of(ElmFormat.XML, ElmFormat.JSON)));
+  }
+
+  @Test
+  public void testGetMeasureBundleNotModified() throws Exception {
+    String madieMeasureJson = getStringFromTestResource("/measures/madie_measure.json");
+    PreparedJsonResponse cached =
+        PreparedJsonResponse.of(
+            FhirContext.forR4()
+                .newJsonParser()
+                .encodeResourceToString(MeasureTestHelper.createTestMeasureBundle())
+                .getBytes(StandardCharsets.UTF_8));
+    when(measureBundleCacheService.getBundle(
+            any(Measure.class), any(), anyString(), anySet(), anyBoolean(), any()))
+        .thenReturn(cached);
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/measures/bundles")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.AUTHORIZATION, "test-okta")
+                .header(HttpHeaders.IF_NONE_MATCH, cached.getETag())
+                .content(madieMeasureJson)
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, cached.getETag()))
+        .andExpect(content().string(""));
+    verify(measureBundleService, never())
+        .createMeasureBundle(
+            any(Measure.class), any(Principal.class), anyString(), anyString(), anySet());
+  }
+
+  @Test
+  public void testGetMeasureBundleSendsETag() throws Exception {
+    String madieMeasureJson = getStringFromTestResource("/measures/madie_measure.json");
+    when(measureBundleService.createMeasureBundle(
+            any(Measure.class), any(Principal.class), anyString(), anyString(), anySet()))
+        .thenReturn(MeasureTestHelper.createTestMeasureBundle());
+    when(parserProvider.jsonParser(true)).thenReturn(FhirContext.forR4().newJsonParser());
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/measures/bundles")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.AUTHORIZATION, "test-okta")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"stale\"")
+                .content(madieMeasureJson)
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(header().exists(HttpHeaders.ETAG))
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+        .andExpect(jsonPath("$.resourceType").value("Bundle"));
+    verify(measureBundleCacheService, times(1))
+        .getBundle(
+            any(Measure.class),
+            argThat(principal -> TEST_USER_ID.equals(principal.getName())),
+            eq("calculation"),
+            eq(Set.of()),
+            eq(true),
+            any());
   }
 
   @Test
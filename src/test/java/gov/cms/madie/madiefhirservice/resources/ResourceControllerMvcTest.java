@@ -2,19 +2,33 @@ package gov.cms.madie.madiefhirservice.resources;
 
 import gov.cms.madie.madiefhirservice.dto.ResourceIdentifier;
 import gov.cms.madie.madiefhirservice.dto.StructureDefinitionDto;
+import gov.cms.madie.madiefhirservice.dto.StructureDefinitionElement;
 import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.services.QiCoreCatalogService;
 import gov.cms.madie.madiefhirservice.services.StructureDefinitionService;
+import gov.cms.madie.madiefhirservice.utils.PreparedJsonResponse;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
@@ -22,6 +36,8 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -29,21 +45,32 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 public class ResourceControllerMvcTest implements ResourceFileUtil {
   private static final String TEST_USER_ID = "john_doe";
 
+  @MockBean private QiCoreCatalogService qiCoreCatalogService;
   @MockBean private StructureDefinitionService structureDefinitionService;
   @Autowired private MockMvc mockMvc;
+  @Autowired private ObjectMapper objectMapper;
+
+  @BeforeEach
+  void setUp() {
+    when(qiCoreCatalogService.getCatalog(any())).thenReturn(structureDefinitionService);
+  }
 
   @Test
   void testThatGetAllResourcesReturnsListOfResourceIdentifiers() throws Exception {
     // given
-    when(structureDefinitionService.getAllResources())
+    when(structureDefinitionService.getAllResourcesResponse())
         .thenReturn(
-            List.of(
-                ResourceIdentifier.builder().id("qicore-careplan").title("QICore CarePlan").build(),
-                ResourceIdentifier.builder().id("qicore-device").title("QICore Device").build(),
-                ResourceIdentifier.builder()
-                    .id("qicore-practitioner")
-                    .title("QICore Practitioner")
-                    .build()));
+            prepared(
+                List.of(
+                    ResourceIdentifier.builder()
+                        .id("qicore-careplan")
+                        .title("QICore CarePlan")
+                        .build(),
+                    ResourceIdentifier.builder().id("qicore-device").title("QICore Device").build(),
+                    ResourceIdentifier.builder()
+                        .id("qicore-practitioner")
+                        .title("QICore Practitioner")
+                        .build())));
 
     // when
     mockMvc
@@ -57,13 +84,13 @@ public class ResourceControllerMvcTest implements ResourceFileUtil {
         .andExpect(jsonPath("$.[0].title").value("QICore CarePlan"));
 
     // then
-    verify(structureDefinitionService, times(1)).getAllResources();
+    verify(structureDefinitionService, times(1)).getAllResourcesResponse();
   }
 
   @Test
   void testThatGetStructureDefinitionReturns404NotFound() throws Exception {
     // given
-    when(structureDefinitionService.getStructureDefinitionById(anyString()))
+    when(structureDefinitionService.getStructureDefinitionResponse(anyString()))
         .thenThrow(new ResourceNotFoundException("StructureDefinition", "fake"));
 
     // when
@@ -76,7 +103,7 @@ public class ResourceControllerMvcTest implements ResourceFileUtil {
         .andExpect(status().isNotFound());
 
     // then
-    verify(structureDefinitionService, times(1)).getStructureDefinitionById(eq("qicore-fake"));
+    verify(structureDefinitionService, times(1)).getStructureDefinitionResponse(eq("qicore-fake"));
   }
 
   @Test
@@ -92,7 +119,8 @@ public class ResourceControllerMvcTest implements ResourceFileUtil {
                     + "        \"kind\": \"resource\"\n"
                     + "}")
             .build();
-    when(structureDefinitionService.getStructureDefinitionById(anyString())).thenReturn(dto);
+    when(structureDefinitionService.getStructureDefinitionResponse(anyString()))
+        .thenReturn(prepared(dto));
 
     // when
     mockMvc
@@ -108,6 +136,128 @@ public class ResourceControllerMvcTest implements ResourceFileUtil {
         .andExpect(jsonPath("$.definition.kind").value("resource"));
 
     // then
-    verify(structureDefinitionService, times(1)).getStructureDefinitionById(eq("qicore-patient"));
+    verify(structureDefinitionService, times(1))
+        .getStructureDefinitionResponse(eq("qicore-patient"));
+  }
+
+  @Test
+  void testThatGetStructureDefinitionReturns304ForMatchingETag() throws Exception {
+    // given
+    PreparedJsonResponse response =
+        prepared(
+            StructureDefinitionDto.builder().definition("{\"id\":\"qicore-patient\"}").build());
+    when(structureDefinitionService.getStructureDefinitionResponse(anyString()))
+        .thenReturn(response);
+
+    // when / then
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get("/qicore/resources/structure-definitions/qicore-patient")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.IF_NONE_MATCH, response.getETag()))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, response.getETag()))
+        .andExpect(content().bytes(new byte[0]));
+  }
+
+  @Test
+  void testThatGetAllResourcesServesGzipWhenAccepted() throws Exception {
+    // given
+    List<ResourceIdentifier> resources = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      resources.add(
+          ResourceIdentifier.builder().id("qicore-" + i).title("QICore Resource " + i).build());
+    }
+    when(structureDefinitionService.getAllResourcesResponse()).thenReturn(prepared(resources));
+
+    // when
+    MvcResult result =
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.get("/qicore/resources")
+                    .with(user(TEST_USER_ID))
+                    .with(csrf())
+                    .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600, private"))
+            .andReturn();
+
+    // then
+    byte[] body =
+        new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))
+            .readAllBytes();
+    assertThat(body, is(equalTo(objectMapper.writeValueAsBytes(resources))));
+  }
+
+  private PreparedJsonResponse prepared(Object value) throws Exception {
+    return PreparedJsonResponse.of(objectMapper.writeValueAsBytes(value));
+  }
+
+  @Test
+  void testThatGetAllResourcesUsesRequestedVersion() throws Exception {
+    // given
+    when(structureDefinitionService.getAllResourcesResponse())
+        .thenReturn(prepared(List.of(ResourceIdentifier.builder().id("qicore-patient").build())));
+
+    // when
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get("/qicore/4_1_1/resources")
+                .with(user(TEST_USER_ID))
+                .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.[0].id").value("qicore-patient"));
+
+    // then
+    verify(qiCoreCatalogService).getCatalog(eq("4_1_1"));
+  }
+
+  @Test
+  void testThatGetAllResourcesReturns404ForUnknownVersion() throws Exception {
+    // given
+    when(qiCoreCatalogService.getCatalog(eq("9_9_9")))
+        .thenThrow(new ResourceNotFoundException("QI-Core version", "9_9_9"));
+
+    // when / then
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get("/qicore/9_9_9/resources")
+                .with(user(TEST_USER_ID))
+                .with(csrf()))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void testThatGetStructureDefinitionElementsPassesPathFilter() throws Exception {
+    // given
+    when(structureDefinitionService.getElementsResponse(eq("qicore-patient"), eq("Patient.name")))
+        .thenReturn(
+            prepared(
+                List.of(
+                    StructureDefinitionElement.builder()
+                        .path("Patient.name")
+                        .types(List.of("HumanName"))
+                        .cardinality("1..*")
+                        .mustSupport(true)
+                        .build())));
+
+    // when / then
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.get(
+                    "/qicore/6_0_0/resources/structure-definitions/qicore-patient/elements")
+                .param("path", "Patient.name")
+                .with(user(TEST_USER_ID))
+                .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(header().exists(HttpHeaders.ETAG))
+        .andExpect(jsonPath("$.[0].path").value("Patient.name"))
+        .andExpect(jsonPath("$.[0].types[0]").value("HumanName"))
+        .andExpect(jsonPath("$.[0].cardinality").value("1..*"))
+        .andExpect(jsonPath("$.[0].mustSupport").value(true))
+        .andExpect(jsonPath("$.[0].binding").doesNotExist());
+    verify(qiCoreCatalogService).getCatalog(eq("6_0_0"));
   }
 }
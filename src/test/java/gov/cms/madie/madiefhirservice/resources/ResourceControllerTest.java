@@ -3,12 +3,18 @@ package gov.cms.madie.madiefhirservice.resources;
 import gov.cms.madie.madiefhirservice.dto.ResourceIdentifier;
 import gov.cms.madie.madiefhirservice.dto.StructureDefinitionDto;
 import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.services.QiCoreCatalogService;
 import gov.cms.madie.madiefhirservice.services.StructureDefinitionService;
+import gov.cms.madie.madiefhirservice.utils.PreparedJsonResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
 
 import java.util.List;
 
@@ -23,24 +29,31 @@ import static org.mockito.Mockito.when;
 @ExtendWith(MockitoExtension.class)
 class ResourceControllerTest {
 
+  @Mock private QiCoreCatalogService qiCoreCatalogService;
   @Mock private StructureDefinitionService structureDefinitionService;
   @InjectMocks private ResourceController resourceController;
 
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
   @Test
-  void testThatGetAllResourcesReturnsListOfResourceIdentifiers() {
+  void testThatGetAllResourcesReturnsListOfResourceIdentifiers() throws Exception {
     // given
-    when(structureDefinitionService.getAllResources())
-        .thenReturn(
-            List.of(
-                ResourceIdentifier.builder().id("qicore-careplan").title("QICore CarePlan").build(),
-                ResourceIdentifier.builder().id("qicore-device").title("QICore Device").build(),
-                ResourceIdentifier.builder()
-                    .id("qicore-practitioner")
-                    .title("QICore Practitioner")
-                    .build()));
+    List<ResourceIdentifier> resources =
+        List.of(
+            ResourceIdentifier.builder().id("qicore-careplan").title("QICore CarePlan").build(),
+            ResourceIdentifier.builder().id("qicore-device").title("QICore Device").build(),
+            ResourceIdentifier.builder()
+                .id("qicore-practitioner")
+                .title("QICore Practitioner")
+                .build());
+    when(qiCoreCatalogService.getCatalog(null)).thenReturn(structureDefinitionService);
+    when(structureDefinitionService.getAllResourcesResponse())
+        .thenReturn(PreparedJsonResponse.of(objectMapper.writeValueAsBytes(resources)));
 
     // when
-    List<ResourceIdentifier> output = resourceController.getAllResources();
+    ResponseEntity<byte[]> response = resourceController.getAllResources(null, null);
+    List<ResourceIdentifier> output =
+        objectMapper.readValue(response.getBody(), new TypeReference<>() {});
 
     // then
     assertThat(output, is(notNullValue()));
@@ -54,16 +67,18 @@ class ResourceControllerTest {
   @Test
   void testThatGetStructureDefinitionThrowsNotFound() {
     // given
-    when(structureDefinitionService.getStructureDefinitionById(anyString()))
+    when(qiCoreCatalogService.getCatalog("6_0_0")).thenReturn(structureDefinitionService);
+    when(structureDefinitionService.getStructureDefinitionResponse(anyString()))
         .thenThrow(new ResourceNotFoundException("StructureDefinition", "fake"));
 
     // when / then
     assertThrows(
-        ResourceNotFoundException.class, () -> resourceController.getStructureDefinition("fake"));
+        ResourceNotFoundException.class,
+        () -> resourceController.getStructureDefinition("6_0_0", "fake", null));
   }
 
   @Test
-  void testThatGetStructureDefinitionReturnsDefinitionDto() {
+  void testThatGetStructureDefinitionReturnsDefinitionDto() throws Exception {
     // given
     StructureDefinitionDto dto =
         StructureDefinitionDto.builder()
@@ -75,14 +90,18 @@ class ResourceControllerTest {
                     + "        \"kind\": \"resource\"\n"
                     + "}")
             .build();
-    when(structureDefinitionService.getStructureDefinitionById(anyString())).thenReturn(dto);
+    when(qiCoreCatalogService.getCatalog("4_1_1")).thenReturn(structureDefinitionService);
+    when(structureDefinitionService.getStructureDefinitionResponse(anyString()))
+        .thenReturn(PreparedJsonResponse.of(objectMapper.writeValueAsBytes(dto)));
 
     // when
-    StructureDefinitionDto output = resourceController.getStructureDefinition("qicore-patient");
+    ResponseEntity<byte[]> output =
+        resourceController.getStructureDefinition("4_1_1", "qicore-patient", null);
 
     // then
     assertThat(output, is(notNullValue()));
-    assertThat(output.getDefinition(), is(notNullValue()));
-    assertThat(output.getDefinition().contains("\"id\": \"qicore-patient\""), is(true));
+    assertThat(output.getHeaders().getETag(), is(notNullValue()));
+    JsonNode definition = objectMapper.readTree(output.getBody()).get("definition");
+    assertThat(definition.get("id").asText(), is(equalTo("qicore-patient")));
   }
 }
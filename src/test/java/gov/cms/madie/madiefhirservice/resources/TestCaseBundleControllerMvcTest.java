@@ -3,7 +3,10 @@ package gov.cms.madie.madiefhirservice.resources;
 import ca.uhn.fhir.context.FhirContext;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
+import gov.cms.madie.madiefhirservice.services.ExportProgressListener;
 import gov.cms.madie.madiefhirservice.services.TestCaseBundleService;
+import gov.cms.madie.madiefhirservice.services.TestCaseExportService;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.models.common.BundleType;
 import gov.cms.madie.models.dto.ExportDTO;
@@ -14,6 +17,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
@@ -23,12 +27,14 @@ import java.util.*;
 
 import static java.util.Arrays.asList;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest({TestCaseBundleController.class})
+@Import(TestCaseExportService.class)
 class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
 
   private static final String TEST_USER_ID = "john_doe";
@@ -72,7 +78,10 @@ class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
     testCaseBundleMap.put(
         dto.getMeasure().getTestCases().get(1).getPatientId().toString(), testCaseBundle);
     when(testCaseBundleService.getTestCaseExportBundle(
-            any(Measure.class), any(List.class), any(ExportDTO.class)))
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class)))
         .thenReturn(testCaseBundleMap);
     mockMvc
         .perform(
@@ -84,7 +93,54 @@ class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
                 .contentType(MediaType.APPLICATION_JSON_VALUE))
         .andExpect(status().isOk());
     verify(testCaseBundleService, times(1))
-        .getTestCaseExportBundle(any(Measure.class), any(List.class), any(ExportDTO.class));
+        .getTestCaseExportBundle(
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class));
+  }
+
+  @Test
+  void getTestCaseExportBundleUsesRequestedCompression() throws Exception {
+    Map<String, Bundle> testCaseBundleMap = new HashMap<>();
+    testCaseBundleMap.put(
+        dto.getMeasure().getTestCases().get(0).getPatientId().toString(), testCaseBundle);
+    testCaseBundleMap.put(
+        dto.getMeasure().getTestCases().get(1).getPatientId().toString(), testCaseBundle);
+    when(testCaseBundleService.getTestCaseExportBundle(
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class)))
+        .thenReturn(testCaseBundleMap);
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/test-cases/export-all")
+                .param("compression", "FAST")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.AUTHORIZATION, "test-okta")
+                .content(mapper.writeValueAsString(dto))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk());
+    verify(testCaseBundleService, times(1))
+        .zipTestCaseContents(
+            any(Measure.class), eq(testCaseBundleMap), any(List.class), eq(CompressionLevel.FAST));
+  }
+
+  @Test
+  void getTestCaseExportBundleRejectsUnknownCompression() throws Exception {
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/test-cases/export-all")
+                .param("compression", "TINY")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .header(HttpHeaders.AUTHORIZATION, "test-okta")
+                .content(mapper.writeValueAsString(dto))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isBadRequest());
+    verifyNoInteractions(testCaseBundleService);
   }
 
   @Test
@@ -99,7 +155,10 @@ class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
     testCaseBundleMap.put(
         dto.getMeasure().getTestCases().get(1).getPatientId().toString(), testCaseBundle);
     when(testCaseBundleService.getTestCaseExportBundle(
-            any(Measure.class), any(List.class), any(ExportDTO.class)))
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class)))
         .thenReturn(testCaseBundleMap);
     mockMvc
         .perform(
@@ -111,7 +170,11 @@ class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
                 .contentType(MediaType.APPLICATION_JSON_VALUE))
         .andExpect(status().isOk());
     verify(testCaseBundleService, times(1))
-        .getTestCaseExportBundle(any(Measure.class), any(List.class), any(ExportDTO.class));
+        .getTestCaseExportBundle(
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class));
   }
 
   @Test
@@ -127,7 +190,10 @@ class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
     testCaseBundleMap.put(
         dto.getMeasure().getTestCases().get(1).getPatientId().toString(), testCaseBundle);
     when(testCaseBundleService.getTestCaseExportBundle(
-            any(Measure.class), any(List.class), any(ExportDTO.class)))
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class)))
         .thenReturn(testCaseBundleMap);
     mockMvc
         .perform(
@@ -139,7 +205,11 @@ class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
                 .contentType(MediaType.APPLICATION_JSON_VALUE))
         .andExpect(status().isOk());
     verify(testCaseBundleService, times(1))
-        .getTestCaseExportBundle(any(Measure.class), any(List.class), any(ExportDTO.class));
+        .getTestCaseExportBundle(
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class));
   }
 
   @Test
@@ -185,7 +255,10 @@ class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
     testCaseBundleMap.put(
         dto.getMeasure().getTestCases().get(0).getPatientId().toString(), testCaseBundle);
     when(testCaseBundleService.getTestCaseExportBundle(
-            any(Measure.class), any(List.class), any(ExportDTO.class)))
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class)))
         .thenReturn(testCaseBundleMap);
     mockMvc
         .perform(
@@ -197,6 +270,10 @@ class TestCaseBundleControllerMvcTest implements ResourceFileUtil {
                 .contentType(MediaType.APPLICATION_JSON_VALUE))
         .andExpect(status().is(206));
     verify(testCaseBundleService, times(1))
-        .getTestCaseExportBundle(any(Measure.class), any(List.class), any(ExportDTO.class));
+        .getTestCaseExportBundle(
+            any(Measure.class),
+            any(List.class),
+            any(ExportDTO.class),
+            any(ExportProgressListener.class));
   }
 }
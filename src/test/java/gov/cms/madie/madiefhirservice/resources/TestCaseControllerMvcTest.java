@@ -0,0 +1,141 @@
+package gov.cms.madie.madiefhirservice.resources;
+
+import gov.cms.madie.madiefhirservice.services.BulkDateShiftService;
+import gov.cms.madie.madiefhirservice.services.TestCaseDateShifterService;
+import gov.cms.madie.madiefhirservice.utils.DateShiftPlan;
+import gov.cms.madie.models.measure.TestCase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest({TestCaseController.class})
+class TestCaseControllerMvcTest {
+  private static final String TEST_USER_ID = "john_doe";
+
+  @MockBean private TestCaseDateShifterService testCaseDateShifterService;
+
+  @MockBean private BulkDateShiftService bulkDateShiftService;
+
+  @Autowired private MockMvc mockMvc;
+
+  @Test
+  void testBulkDateShiftStreamsNdjson() throws Exception {
+    final String body = "{\"id\": \"tc-1\", \"json\": \"{}\"}\n";
+    final String line = "{\"testCaseId\":\"tc-1\",\"status\":\"SHIFTED\"}\n";
+    doAnswer(
+            invocation -> {
+              InputStream in = invocation.getArgument(0);
+              assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8), is(equalTo(body)));
+              OutputStream out = invocation.getArgument(2);
+              out.write(line.getBytes());
+              return 1;
+            })
+        .when(bulkDateShiftService)
+        .shiftDates(any(), eq(DateShiftPlan.ofYears(5)), any());
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.put("/fhir/test-cases/shift-dates/bulk")
+                    .with(user(TEST_USER_ID))
+                    .with(csrf())
+                    .param("shifted", "5")
+                    .content(body)
+                    .contentType(MediaType.APPLICATION_NDJSON_VALUE))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+        .andExpect(content().string(line));
+  }
+
+  @Test
+  void testShiftToMeasurementPeriodUsesCoarsestExactUnit() throws Exception {
+    DateShiftPlan plan =
+        DateShiftPlan.builder()
+            .amount(3)
+            .granularity(DateShiftPlan.Granularity.MONTHS)
+            .leapDayPolicy(DateShiftPlan.LeapDayPolicy.NEXT_DAY)
+            .build();
+    when(testCaseDateShifterService.shiftDates(anyList(), eq(plan)))
+        .thenReturn(List.of(TestCase.builder().id("tc-1").build()));
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/test-cases/shift-dates/measurement-period")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .param("fromPeriodStart", "2024-01-01")
+                .param("toPeriodStart", "2024-04-01")
+                .param("leapDay", "NEXT_DAY")
+                .content("[{\"id\": \"tc-1\"}]")
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].id").value("tc-1"));
+  }
+
+  @Test
+  void testShiftToMeasurementPeriodRejectsInvalidDates() throws Exception {
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/test-cases/shift-dates/measurement-period")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .param("fromPeriodStart", "2024-01-01")
+                .param("toPeriodStart", "01/01/2025")
+                .content("[]")
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isBadRequest());
+    verifyNoInteractions(testCaseDateShifterService);
+  }
+
+  @Test
+  void testShiftDatesByDays() throws Exception {
+    DateShiftPlan plan =
+        DateShiftPlan.builder().amount(-10).granularity(DateShiftPlan.Granularity.DAYS).build();
+    when(testCaseDateShifterService.shiftDates(any(TestCase.class), eq(plan)))
+        .thenReturn(TestCase.builder().id("tc-1").build());
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.put("/fhir/test-case/shift-dates")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .param("shifted", "-10")
+                .param("unit", "DAYS")
+                .content("{\"id\": \"tc-1\"}")
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.id").value("tc-1"));
+  }
+}
@@ -1,7 +1,10 @@
 package gov.cms.madie.madiefhirservice.resources;
 
 import ca.uhn.fhir.context.FhirContext;
+import gov.cms.madie.madiefhirservice.services.BatchValidationService;
 import gov.cms.madie.madiefhirservice.services.ResourceValidationService;
+import gov.cms.madie.madiefhirservice.services.ResourceValidationService.BundleStructureOutcome;
+import gov.cms.madie.madiefhirservice.services.ValidationCacheService;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.r4.model.OperationOutcome;
@@ -13,16 +16,25 @@ import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.OutputStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest({ValidationController.class})
@@ -35,6 +47,10 @@ class ValidationControllerMvcTest implements ResourceFileUtil {
 
   @MockBean private ResourceValidationService validationService;
 
+  @MockBean private BatchValidationService batchValidationService;
+
+  @MockBean private ValidationCacheService validationCacheService;
+
   @Autowired private MockMvc mockMvc;
 
   @Test
@@ -76,11 +92,8 @@ class ValidationControllerMvcTest implements ResourceFileUtil {
   @Test
   void testUnsuccessfulOutcomeReturnedForInvalidEncounter() throws Exception {
     String tc1Json = getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json");
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.combineOutcomes(any(), any(), any())).thenReturn(new OperationOutcome());
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(new OperationOutcome(), false));
 
     mockMvc
         .perform(
@@ -101,12 +114,8 @@ class ValidationControllerMvcTest implements ResourceFileUtil {
     String tc1Json = getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json");
     OperationOutcome operationOutcomeWithIssues = new OperationOutcome();
     operationOutcomeWithIssues.addIssue().setSeverity(OperationOutcome.IssueSeverity.WARNING);
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(operationOutcomeWithIssues);
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.combineOutcomes(any(), any(), any()))
-        .thenReturn(operationOutcomeWithIssues);
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(operationOutcomeWithIssues, true));
     when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(true);
 
     mockMvc
@@ -126,11 +135,8 @@ class ValidationControllerMvcTest implements ResourceFileUtil {
   @Test
   void testSuccessfulOutcomeReturnedForValidTestCaseJson() throws Exception {
     String tc1Json = getStringFromTestResource("/testCaseBundles/validTestCase.json");
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.combineOutcomes(any(), any(), any())).thenReturn(new OperationOutcome());
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(new OperationOutcome(), false));
     when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(true);
 
     mockMvc
@@ -144,24 +150,37 @@ class ValidationControllerMvcTest implements ResourceFileUtil {
             (result) -> assertThat(result.getResponse().getContentAsString(), is(notNullValue())))
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.code").value(200))
-        .andExpect(jsonPath("$.successful").value(true));
+        .andExpect(jsonPath("$.successful").value(true))
+        .andExpect(jsonPath("$.outcomeResponse.resourceType").value("OperationOutcome"));
+  }
+
+  @Test
+  void testOutcomeResponseIsPrettyPrintedOnRequest() throws Exception {
+    final String testCaseJson = "{\"resourceType\": \"Patient\" }";
+
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/fhir/validations/bundles")
+                .with(user(TEST_USER_ID))
+                .with(csrf())
+                .param("_pretty", "true")
+                .content(testCaseJson)
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.code").value(400))
+        .andExpect(jsonPath("$.outcomeResponse.resourceType").value("OperationOutcome"))
+        .andExpect(jsonPath("$.outcomeResponse.issue[0].severity").value("error"))
+        .andExpect(content().string(containsString("\n")));
   }
 
   @Test
   void testUnsuccessfulOutcomeReturnedForMissingProfileValidTestCaseJson() throws Exception {
     String tc1Json = getStringFromTestResource("/testCaseBundles/validTestCase.json");
-    OperationOutcome profileWarningOutcome = new OperationOutcome();
-    profileWarningOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.WARNING);
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(profileWarningOutcome);
-    OperationOutcome invalidIdErrorOutcome = new OperationOutcome();
-    invalidIdErrorOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR);
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(invalidIdErrorOutcome);
-    OperationOutcome combinedOutcome = new OperationOutcome();
-    combinedOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR);
-    combinedOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.WARNING);
-    when(validationService.combineOutcomes(any(), any(), any())).thenReturn(combinedOutcome);
+    OperationOutcome structureOutcome = new OperationOutcome();
+    structureOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.WARNING);
+    structureOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR);
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(structureOutcome, true));
     when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(false);
 
     mockMvc
@@ -175,6 +194,38 @@ class ValidationControllerMvcTest implements ResourceFileUtil {
             (result) -> assertThat(result.getResponse().getContentAsString(), is(notNullValue())))
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.code").value(400))
-        .andExpect(jsonPath("$.successful").value(false));
+        .andExpect(jsonPath("$.successful").value(false))
+        .andExpect(jsonPath("$.outcomeResponse.issue[0].severity").value("warning"))
+        .andExpect(jsonPath("$.outcomeResponse.issue[1].severity").value("error"));
+  }
+
+  @Test
+  void testBatchValidationStreamsNdjson() throws Exception {
+    final String line = "{\"testCaseId\":\"tc-1\",\"outcome\":{\"code\":200}}\n";
+    doAnswer(
+            invocation -> {
+              OutputStream out = invocation.getArgument(2);
+              out.write(line.getBytes());
+              return null;
+            })
+        .when(batchValidationService)
+        .validateBundles(anyList(), any(), any());
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.post("/fhir/validations/bundles/batch")
+                    .with(user(TEST_USER_ID))
+                    .with(csrf())
+                    .content("[{\"id\": \"tc-1\", \"json\": \"{}\"}]")
+                    .contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+        .andExpect(content().string(line));
   }
 }
@@ -1,17 +1,20 @@
 package gov.cms.madie.madiefhirservice.resources;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.parser.IParserErrorHandler;
 import ca.uhn.fhir.parser.JsonParser;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.ValidationResult;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import gov.cms.madie.madiefhirservice.exceptions.HapiJsonException;
+import gov.cms.madie.madiefhirservice.exceptions.BatchSizeExceededException;
+import gov.cms.madie.madiefhirservice.services.BatchValidationService;
+import gov.cms.madie.madiefhirservice.services.ParsedBundleCacheService;
 import gov.cms.madie.madiefhirservice.services.ResourceValidationService;
+import gov.cms.madie.madiefhirservice.services.ResourceValidationService.BundleStructureOutcome;
+import gov.cms.madie.madiefhirservice.services.ValidationCacheService;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.FhirResourceJson;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.models.measure.HapiOperationOutcome;
+import gov.cms.madie.models.measure.TestCase;
 import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -26,10 +29,16 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.ByteArrayOutputStream;
+import java.security.Principal;
+import java.util.List;
+import java.util.Optional;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -37,46 +46,51 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class ValidationControllerTest implements ResourceFileUtil {
 
-  @Mock FhirContext fhirContext;
+  @Mock FhirParserProvider parserProvider;
 
   @Mock ValidationSupportChain validationSupportChain;
 
   @Mock ResourceValidationService validationService;
 
+  @Mock BatchValidationService batchValidationService;
+
+  @Mock ValidationCacheService validationCacheService;
+
+  @Mock ParsedBundleCacheService parsedBundleCacheService;
+
   @Mock FhirValidator fhirValidator;
 
   @Mock HttpEntity<String> entity;
 
   @Mock JsonParser parser;
 
-  @Mock ObjectMapper mapper;
-
   @InjectMocks private ValidationController validationController;
 
   @BeforeEach
   void beforeEach() {
-    Mockito.lenient().when(fhirContext.newJsonParser()).thenReturn(parser);
+    Mockito.lenient().when(parserProvider.jsonParser()).thenReturn(parser);
     Mockito.lenient()
-        .when(parser.setParserErrorHandler(any(IParserErrorHandler.class)))
-        .thenReturn(parser);
-    Mockito.lenient().when(parser.setPrettyPrint(anyBoolean())).thenReturn(parser);
+        .when(parsedBundleCacheService.parse(anyString()))
+        .thenAnswer(
+            invocation -> parser.parseResource(Bundle.class, (String) invocation.getArgument(0)));
   }
 
   @Test
-  void testValidationControllerReturnsOutcomeForBadBundleType() throws JsonProcessingException {
+  void testValidationControllerReturnsOutcomeForBadBundleType() {
     when(parser.parseResource(any(Class.class), anyString())).thenReturn(new Patient());
-    when(parser.encodeResourceToString(any(OperationOutcome.class))).thenReturn("{}");
-    when(mapper.readValue(anyString(), any(Class.class))).thenReturn(new HashMap<String, Object>());
 
     when(entity.getBody()).thenReturn("{\"resourceType\": \"Patient\" }");
-    HapiOperationOutcome output = validationController.validateBundle(entity);
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
     assertThat(output, is(notNullValue()));
     assertThat(output.getCode(), is(equalTo(HttpStatus.BAD_REQUEST.value())));
     assertThat(output.isSuccessful(), is(false));
@@ -86,10 +100,9 @@ class ValidationControllerTest implements ResourceFileUtil {
   void testValidationControllerReturnsOutcomeForDataFormatException() {
     when(parser.parseResource(any(Class.class), anyString()))
         .thenThrow(new DataFormatException("BAD JSON, BAD!"));
-    when(parser.encodeResourceToString(any(OperationOutcome.class))).thenReturn("{}");
 
     when(entity.getBody()).thenReturn("{\"foo\": \"foo2\" }");
-    HapiOperationOutcome output = validationController.validateBundle(entity);
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
     assertThat(output, is(notNullValue()));
     assertThat(output.getCode(), is(equalTo(HttpStatus.BAD_REQUEST.value())));
     assertThat(output.isSuccessful(), is(false));
@@ -99,97 +112,79 @@ class ValidationControllerTest implements ResourceFileUtil {
   void testValidationControllerReturnsOutcomeForClassCastException() {
     when(parser.parseResource(any(Class.class), anyString()))
         .thenThrow(new ClassCastException("wrong resource type!"));
-    when(parser.encodeResourceToString(any(OperationOutcome.class))).thenReturn("{}");
 
     when(entity.getBody()).thenReturn("{\"foo\": \"foo2\" }");
-    HapiOperationOutcome output = validationController.validateBundle(entity);
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
     assertThat(output, is(notNullValue()));
     assertThat(output.getCode(), is(equalTo(HttpStatus.BAD_REQUEST.value())));
     assertThat(output.isSuccessful(), is(false));
   }
 
   @Test
-  void testValidationControllerReturnsExceptionForProcessingError() throws JsonProcessingException {
+  void testValidationControllerReturnsOperationOutcomeForParsingError() {
     when(parser.parseResource(any(Class.class), anyString()))
         .thenThrow(new ClassCastException("wrong resource type!"));
-    //    when(parser.encodeResourceToString(any(OperationOutcome.class))).thenThrow(new
-    // RuntimeException("OH NO!"));
-    when(parser.encodeResourceToString(any(OperationOutcome.class))).thenReturn("{}");
-    when(mapper.readValue(anyString(), any(Class.class)))
-        .thenThrow(new RuntimeException("JsonProcessingException!!"));
 
     when(entity.getBody()).thenReturn("{\"foo\": \"foo2\" }");
-    assertThrows(HapiJsonException.class, () -> validationController.validateBundle(entity));
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
+    assertThat(output.getOutcomeResponse() instanceof FhirResourceJson, is(true));
+    OperationOutcome outcomeResponse =
+        (OperationOutcome) ((FhirResourceJson) output.getOutcomeResponse()).getResource();
+    assertThat(
+        outcomeResponse.getIssueFirstRep().getDiagnostics(), is(equalTo("wrong resource type!")));
   }
 
   @Test
   void testValidationControllerReturnsOutcomeForMissingProfile() {
     when(parser.parseResource(any(Class.class), anyString())).thenReturn(new Bundle());
-    when(parser.encodeResourceToString(any(OperationOutcome.class))).thenReturn("{}");
     when(entity.getBody()).thenReturn("{\"foo\": \"foo2\" }");
 
     OperationOutcome operationOutcomeWithIssues = new OperationOutcome();
     operationOutcomeWithIssues.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR);
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(operationOutcomeWithIssues);
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(operationOutcomeWithIssues, true));
 
     ValidationResult result = Mockito.mock(ValidationResult.class);
     when(result.toOperationOutcome()).thenReturn(new OperationOutcome());
     when(fhirValidator.validateWithResult(any(IBaseResource.class))).thenReturn(result);
-    when(validationService.combineOutcomes(any(), any(), any()))
-        .thenReturn(operationOutcomeWithIssues);
     when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(false);
 
-    HapiOperationOutcome output = validationController.validateBundle(entity);
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
     assertThat(output, is(notNullValue()));
     assertThat(output.getCode(), is(equalTo(HttpStatus.BAD_REQUEST.value())));
     assertThat(output.isSuccessful(), is(false));
   }
 
   @Test
-  void testValidationControllerReturnsExceptionForErrorProcessingOutput()
-      throws JsonProcessingException {
+  void testValidationControllerReturnsExceptionForErrorProcessingOutput() {
     String tc1Json = getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json");
     when(parser.parseResource(any(Class.class), anyString())).thenReturn(new Bundle());
     when(entity.getBody()).thenReturn(tc1Json);
     ValidationResult result = Mockito.mock(ValidationResult.class);
-    Map<String, Object> mockOutcome = new HashMap<>();
-    mockOutcome.put("resourceType", "OperationOutcome");
-    when(mapper.readValue(anyString(), any(Class.class)))
-        .thenThrow(new RuntimeException("JsonProcessingException"));
-
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
+    when(validationService.isSuccessful(any(OperationOutcome.class)))
+        .thenThrow(new RuntimeException("Unable to process outcome"));
+
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(new OperationOutcome(), false));
     OperationOutcome outcome = new OperationOutcome();
     outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR);
     outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.WARNING);
     when(result.toOperationOutcome()).thenReturn(outcome);
-    when(result.isSuccessful()).thenReturn(false);
     when(fhirValidator.validateWithResult(any(IBaseResource.class))).thenReturn(result);
-    when(parser.encodeResourceToString(any(OperationOutcome.class)))
-        .thenReturn("{ \"resourceType\": \"OperationOutcome\" }");
-    assertThrows(HapiJsonException.class, () -> validationController.validateBundle(entity));
+    RuntimeException ex =
+        assertThrows(
+            RuntimeException.class, () -> validationController.validateBundle(entity, false));
+    assertThat(ex.getMessage(), is(equalTo("Unable to process outcome")));
   }
 
   @Test
-  void testValidationControllerReturnsOutcomeWithIssues() throws JsonProcessingException {
+  void testValidationControllerReturnsOutcomeWithIssues() {
     String tc1Json = getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json");
     when(parser.parseResource(any(Class.class), anyString())).thenReturn(new Bundle());
     when(entity.getBody()).thenReturn(tc1Json);
 
-    Map<String, Object> mockOutcome = new HashMap<>();
-    mockOutcome.put("resourceType", "OperationOutcome");
-    when(mapper.readValue(anyString(), any(Class.class))).thenReturn(mockOutcome);
-
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-
-    when(parser.encodeResourceToString(any(OperationOutcome.class)))
-        .thenReturn("{ \"resourceType\": \"OperationOutcome\" }");
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(new OperationOutcome(), false));
 
     ValidationResult result = Mockito.mock(ValidationResult.class);
     when(result.toOperationOutcome()).thenReturn(new OperationOutcome());
@@ -198,94 +193,73 @@ class ValidationControllerTest implements ResourceFileUtil {
     outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR);
     outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.WARNING);
     when(result.toOperationOutcome()).thenReturn(outcome);
-    when(validationService.combineOutcomes(any(), any(), any())).thenReturn(outcome);
     when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(false);
 
-    HapiOperationOutcome output = validationController.validateBundle(entity);
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
     assertThat(output, is(notNullValue()));
     assertThat(output.getCode(), is(equalTo(HttpStatus.OK.value())));
     assertThat(output.isSuccessful(), is(false));
-    assertThat(output.getOutcomeResponse() instanceof Map, is(true));
-    Map outcomeResponse = (Map) output.getOutcomeResponse();
-    Object resourceType = outcomeResponse.get("resourceType");
-    assertThat(resourceType, is(equalTo("OperationOutcome")));
+    assertThat(output.getOutcomeResponse() instanceof FhirResourceJson, is(true));
+    FhirResourceJson outcomeResponse = (FhirResourceJson) output.getOutcomeResponse();
+    assertThat(outcomeResponse.getResource().fhirType(), is(equalTo("OperationOutcome")));
+    assertThat(((OperationOutcome) outcomeResponse.getResource()).getIssue().size(), is(2));
   }
 
   @Test
-  void testValidationControllerReturnsOutcomeWithUniqueIdIssues() throws JsonProcessingException {
+  void testValidationControllerReturnsOutcomeWithUniqueIdIssues() {
     String tc1Json = getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json");
     when(parser.parseResource(any(Class.class), anyString())).thenReturn(new Bundle());
     when(entity.getBody()).thenReturn(tc1Json);
 
-    Map<String, Object> mockOutcome = new HashMap<>();
-    mockOutcome.put("resourceType", "OperationOutcome");
-    when(mapper.readValue(anyString(), any(Class.class))).thenReturn(mockOutcome);
-
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
     OperationOutcome errorOutcome = new OperationOutcome();
     errorOutcome
         .addIssue()
         .setDiagnostics(
             "All resources in bundle must have unique ID regardless of type. Multiple resources detected with ID 1234")
         .setSeverity(OperationOutcome.IssueSeverity.ERROR);
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(errorOutcome);
-    when(parser.encodeResourceToString(any(OperationOutcome.class)))
-        .thenReturn("{ \"resourceType\": \"OperationOutcome\" }");
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(errorOutcome, true));
 
     ValidationResult result = Mockito.mock(ValidationResult.class);
     when(result.toOperationOutcome()).thenReturn(new OperationOutcome());
     when(fhirValidator.validateWithResult(any(IBaseResource.class))).thenReturn(result);
 
-    when(validationService.combineOutcomes(any(), any(), any())).thenReturn(errorOutcome);
     when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(false);
 
-    HapiOperationOutcome output = validationController.validateBundle(entity);
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
     assertThat(output, is(notNullValue()));
     assertThat(output.getCode(), is(equalTo(HttpStatus.BAD_REQUEST.value())));
-    assertThat(output.getOutcomeResponse() instanceof Map, is(true));
-    Map outcomeResponse = (Map) output.getOutcomeResponse();
-    Object resourceType = outcomeResponse.get("resourceType");
-    assertThat(resourceType, is(equalTo("OperationOutcome")));
+    assertThat(output.getOutcomeResponse() instanceof FhirResourceJson, is(true));
+    FhirResourceJson outcomeResponse = (FhirResourceJson) output.getOutcomeResponse();
+    assertThat(outcomeResponse.getResource().fhirType(), is(equalTo("OperationOutcome")));
   }
 
   @Test
-  void testValidationControllerReturnsOutcomeWithInvalidIdIssues() throws JsonProcessingException {
+  void testValidationControllerReturnsOutcomeWithInvalidIdIssues() {
     String tc1Json = getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json");
     when(parser.parseResource(any(Class.class), anyString())).thenReturn(new Bundle());
     when(entity.getBody()).thenReturn(tc1Json);
 
-    Map<String, Object> mockOutcome = new HashMap<>();
-    mockOutcome.put("resourceType", "OperationOutcome");
-    when(mapper.readValue(anyString(), any(Class.class))).thenReturn(mockOutcome);
-
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
     OperationOutcome errorOutcome = new OperationOutcome();
     errorOutcome
         .addIssue()
         .setDiagnostics("All resources must have an Id")
         .setSeverity(OperationOutcome.IssueSeverity.ERROR);
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(errorOutcome);
-    when(parser.encodeResourceToString(any(OperationOutcome.class)))
-        .thenReturn("{ \"resourceType\": \"OperationOutcome\" }");
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(errorOutcome, true));
 
     ValidationResult result = Mockito.mock(ValidationResult.class);
     when(result.toOperationOutcome()).thenReturn(new OperationOutcome());
     when(fhirValidator.validateWithResult(any(IBaseResource.class))).thenReturn(result);
 
-    when(validationService.combineOutcomes(any(), any(), any())).thenReturn(errorOutcome);
     when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(false);
 
-    HapiOperationOutcome output = validationController.validateBundle(entity);
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
     assertThat(output, is(notNullValue()));
     assertThat(output.getCode(), is(equalTo(HttpStatus.BAD_REQUEST.value())));
-    assertThat(output.getOutcomeResponse() instanceof Map, is(true));
-    Map outcomeResponse = (Map) output.getOutcomeResponse();
-    Object resourceType = outcomeResponse.get("resourceType");
-    assertThat(resourceType, is(equalTo("OperationOutcome")));
+    assertThat(output.getOutcomeResponse() instanceof FhirResourceJson, is(true));
+    FhirResourceJson outcomeResponse = (FhirResourceJson) output.getOutcomeResponse();
+    assertThat(outcomeResponse.getResource().fhirType(), is(equalTo("OperationOutcome")));
   }
 
   @Test
@@ -295,21 +269,98 @@ class ValidationControllerTest implements ResourceFileUtil {
     when(entity.getBody()).thenReturn(tc1Json);
     ValidationResult result = Mockito.mock(ValidationResult.class);
 
-    when(validationService.validateBundleResourcesProfiles(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.validateBundleResourcesIdValid(any(IBaseBundle.class)))
-        .thenReturn(new OperationOutcome());
-    when(validationService.combineOutcomes(any(), any(), any())).thenReturn(new OperationOutcome());
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(new OperationOutcome(), false));
     when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(true);
     OperationOutcome outcome = new OperationOutcome();
     outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.INFORMATION);
     when(result.toOperationOutcome()).thenReturn(outcome);
     when(fhirValidator.validateWithResult(any(IBaseResource.class))).thenReturn(result);
-    when(parser.encodeResourceToString(any(OperationOutcome.class)))
-        .thenReturn("{ \"resourceType\": \"OperationOutcome\" }");
-    HapiOperationOutcome output = validationController.validateBundle(entity);
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
     assertThat(output, is(notNullValue()));
     assertThat(output.getCode(), is(equalTo(HttpStatus.OK.value())));
     assertThat(output.isSuccessful(), is(true));
   }
+
+  @Test
+  void testValidationControllerReturnsOkForStructureWarningsThatAreNotInvalid() {
+    String tc1Json = getStringFromTestResource("/testCaseBundles/validTestCase.json");
+    when(parser.parseResource(any(Class.class), anyString())).thenReturn(new Bundle());
+    when(entity.getBody()).thenReturn(tc1Json);
+
+    OperationOutcome warningOutcome = new OperationOutcome();
+    warningOutcome
+        .addIssue()
+        .setDiagnostics("Bundle entry fullUrl [Encounter/1] does not match resource")
+        .setSeverity(OperationOutcome.IssueSeverity.WARNING);
+    when(validationService.validateBundleStructure(any(IBaseBundle.class)))
+        .thenReturn(new BundleStructureOutcome(warningOutcome, false));
+    ValidationResult result = Mockito.mock(ValidationResult.class);
+    when(result.toOperationOutcome()).thenReturn(new OperationOutcome());
+    when(fhirValidator.validateWithResult(any(IBaseResource.class))).thenReturn(result);
+    when(validationService.isSuccessful(any(OperationOutcome.class))).thenReturn(true);
+
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
+    assertThat(output.getCode(), is(equalTo(HttpStatus.OK.value())));
+    assertThat(output.isSuccessful(), is(true));
+  }
+
+  @Test
+  void testValidateBundlesStreamsBatchResults() throws Exception {
+    Principal principal = Mockito.mock(Principal.class);
+    when(principal.getName()).thenReturn("test.user");
+    List<TestCase> testCases = List.of(TestCase.builder().id("tc-1").json("{}").build());
+
+    ResponseEntity<StreamingResponseBody> response =
+        validationController.validateBundles(principal, testCases, null);
+    assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+    assertThat(response.getHeaders().getContentType(), is(equalTo(MediaType.APPLICATION_NDJSON)));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    response.getBody().writeTo(out);
+    verify(batchValidationService).validateBundles(eq(testCases), any(), eq(out));
+  }
+
+  @Test
+  void testValidateBundlesRejectsOversizedBatch() {
+    Principal principal = Mockito.mock(Principal.class);
+    when(principal.getName()).thenReturn("test.user");
+    List<TestCase> testCases = List.of(TestCase.builder().id("tc-1").json("{}").build());
+    doThrow(new BatchSizeExceededException(1, 0))
+        .when(batchValidationService)
+        .verifyBatchSize(testCases);
+
+    assertThrows(
+        BatchSizeExceededException.class,
+        () -> validationController.validateBundles(principal, testCases, null));
+  }
+
+  @Test
+  void testValidationControllerReturnsCachedOutcomeForUnchangedBundle() {
+    HapiOperationOutcome cachedOutcome =
+        HapiOperationOutcome.builder().code(HttpStatus.OK.value()).successful(true).build();
+    when(entity.getBody()).thenReturn("{\"resourceType\": \"Bundle\" }");
+    when(entity.getHeaders()).thenReturn(new HttpHeaders());
+    when(validationCacheService.cacheKey(anyString())).thenReturn(Optional.of("key"));
+    when(validationCacheService.get("key")).thenReturn(Optional.of(cachedOutcome));
+
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
+    assertThat(output, is(cachedOutcome));
+    verify(parserProvider, never()).jsonParser();
+  }
+
+  @Test
+  void testValidationControllerBypassesCacheForNoCacheHeader() {
+    when(parser.parseResource(any(Class.class), anyString())).thenReturn(new Patient());
+    when(entity.getBody()).thenReturn("{\"resourceType\": \"Patient\" }");
+    HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl("no-cache");
+    when(entity.getHeaders()).thenReturn(headers);
+    when(validationCacheService.cacheKey(anyString())).thenReturn(Optional.of("key"));
+
+    HapiOperationOutcome output = validationController.validateBundle(entity, false);
+    assertThat(output.getCode(), is(equalTo(HttpStatus.BAD_REQUEST.value())));
+    verify(validationCacheService, never()).get(anyString());
+    verify(validationCacheService).put("key", output);
+  }
 }
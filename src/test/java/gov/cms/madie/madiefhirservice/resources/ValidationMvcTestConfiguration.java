@@ -4,6 +4,10 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.IValidatorModule;
+import gov.cms.madie.madiefhirservice.config.BundleCacheConfig;
+import gov.cms.madie.madiefhirservice.services.ParsedBundleCacheService;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.hl7.fhir.common.hapi.validation.support.CommonCodeSystemsTerminologyService;
 import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.NpmPackageValidationSupport;
@@ -12,12 +16,14 @@ import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Profile;
 
 import java.io.IOException;
 
 @Configuration
 @Profile("MvcTest")
+@Import(BundleCacheConfig.class)
 public class ValidationMvcTestConfiguration {
 
   @Bean
@@ -25,6 +31,19 @@ public class ValidationMvcTestConfiguration {
     return FhirContext.forR4();
   }
 
+  @Bean
+  public FhirParserProvider fhirParserProvider(@Autowired FhirContext fhirContext) {
+    return new FhirParserProvider(fhirContext);
+  }
+
+  @Bean
+  public ParsedBundleCacheService parsedBundleCacheService(
+      @Autowired FhirParserProvider fhirParserProvider,
+      @Autowired BundleCacheConfig bundleCacheConfig) {
+    return new ParsedBundleCacheService(
+        fhirParserProvider, bundleCacheConfig, new SimpleMeterRegistry());
+  }
+
   @Bean
   public ValidationSupportChain validationSupportChain411(@Autowired FhirContext fhirContext)
       throws IOException {
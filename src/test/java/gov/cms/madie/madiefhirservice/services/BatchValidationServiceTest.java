@@ -0,0 +1,216 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.madie.madiefhirservice.config.ValidationConfig;
+import gov.cms.madie.madiefhirservice.exceptions.BatchSizeExceededException;
+import gov.cms.madie.models.measure.HapiOperationOutcome;
+import gov.cms.madie.models.measure.TestCase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BatchValidationServiceTest {
+
+  @Mock private ValidationConfig validationConfig;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private ExecutorService executor;
+  private BatchValidationService batchValidationService;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    batchValidationService = new BatchValidationService(validationConfig, executor, mapper);
+    lenient().when(validationConfig.getBatchMaxConcurrencyPerRequest()).thenReturn(2);
+    lenient().when(validationConfig.getBatchItemTimeoutMillis()).thenReturn(5000L);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void verifyBatchSizeThrowsWhenBatchTooLarge() {
+    when(validationConfig.getBatchMaxSize()).thenReturn(2);
+    List<TestCase> testCases = testCases(3);
+    assertThrows(
+        BatchSizeExceededException.class, () -> batchValidationService.verifyBatchSize(testCases));
+  }
+
+  @Test
+  void verifyBatchSizeAllowsBatchAtLimit() {
+    when(validationConfig.getBatchMaxSize()).thenReturn(3);
+    batchValidationService.verifyBatchSize(testCases(3));
+  }
+
+  @Test
+  void validateBundlesWritesOneLinePerTestCase() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    batchValidationService.validateBundles(testCases(5), json -> outcome(200, json), out);
+
+    List<JsonNode> lines = readLines(out);
+    assertThat(lines.size(), is(equalTo(5)));
+    assertThat(
+        lines.stream().map(line -> line.get("testCaseId").asText()).collect(Collectors.toList()),
+        containsInAnyOrder("tc-0", "tc-1", "tc-2", "tc-3", "tc-4"));
+    lines.forEach(
+        line ->
+            assertThat(
+                line.at("/outcome/message").asText(),
+                is(equalTo("{\"id\":\"" + line.get("testCaseId").asText() + "\"}"))));
+  }
+
+  @Test
+  void validateBundlesWritesNothingForEmptyBatch() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    batchValidationService.validateBundles(List.of(), json -> outcome(200, json), out);
+    assertThat(out.size(), is(equalTo(0)));
+  }
+
+  @Test
+  void validateBundlesHonoursPerRequestConcurrency() throws Exception {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    // the first validations wait for each other, so the limit is reached before any finishes
+    CountDownLatch limitReached = new CountDownLatch(2);
+    Function<String, HapiOperationOutcome> validator =
+        json -> {
+          maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+          limitReached.countDown();
+          await(limitReached);
+          inFlight.decrementAndGet();
+          return outcome(200, json);
+        };
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    batchValidationService.validateBundles(testCases(10), validator, out);
+
+    assertThat(readLines(out).size(), is(equalTo(10)));
+    assertThat(maxInFlight.get(), is(equalTo(2)));
+  }
+
+  @Test
+  void validateBundlesReportsTimeoutAndFailurePerItem() throws Exception {
+    when(validationConfig.getBatchItemTimeoutMillis()).thenReturn(100L);
+    Function<String, HapiOperationOutcome> validator =
+        json -> {
+          if (json.contains("tc-0")) {
+            // blocks until the timeout interrupts it
+            await(new CountDownLatch(1));
+          } else if (json.contains("tc-1")) {
+            throw new IllegalStateException("boom");
+          }
+          return outcome(200, json);
+        };
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    batchValidationService.validateBundles(testCases(3), validator, out);
+
+    Map<String, Integer> codes =
+        readLines(out).stream()
+            .collect(
+                Collectors.toMap(
+                    line -> line.get("testCaseId").asText(),
+                    line -> line.at("/outcome/code").asInt()));
+    assertThat(codes.get("tc-0"), is(equalTo(408)));
+    assertThat(codes.get("tc-1"), is(equalTo(500)));
+    assertThat(codes.get("tc-2"), is(equalTo(200)));
+  }
+
+  @Test
+  void validateBundlesStartsItemTimeoutWhenValidationStarts() throws Exception {
+    ExecutorService singleThread = Executors.newSingleThreadExecutor();
+    try {
+      when(validationConfig.getBatchItemTimeoutMillis()).thenReturn(100L);
+      BatchValidationService service =
+          new BatchValidationService(validationConfig, singleThread, mapper);
+      // hold the only pool thread for three item timeouts, so the bundles wait in its queue
+      CountDownLatch neverReleased = new CountDownLatch(1);
+      singleThread.submit(() -> neverReleased.await(300, TimeUnit.MILLISECONDS));
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      service.validateBundles(testCases(3), json -> outcome(200, json), out);
+
+      readLines(out)
+          .forEach(line -> assertThat(line.at("/outcome/code").asInt(), is(equalTo(200))));
+    } finally {
+      singleThread.shutdownNow();
+    }
+  }
+
+  @Test
+  void validateBundlesInterruptsTimedOutValidation() throws Exception {
+    when(validationConfig.getBatchItemTimeoutMillis()).thenReturn(50L);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    Function<String, HapiOperationOutcome> validator =
+        json -> {
+          try {
+            new CountDownLatch(1).await();
+          } catch (InterruptedException ex) {
+            interrupted.countDown();
+          }
+          return outcome(200, json);
+        };
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    batchValidationService.validateBundles(testCases(1), validator, out);
+
+    assertThat(readLines(out).get(0).at("/outcome/code").asInt(), is(equalTo(408)));
+    assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+  }
+
+  private List<TestCase> testCases(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> TestCase.builder().id("tc-" + i).json("{\"id\":\"tc-" + i + "\"}").build())
+        .collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  private HapiOperationOutcome outcome(int code, String message) {
+    return HapiOperationOutcome.builder().code(code).message(message).successful(true).build();
+  }
+
+  private List<JsonNode> readLines(ByteArrayOutputStream out) throws Exception {
+    List<JsonNode> lines = new ArrayList<>();
+    for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+      lines.add(mapper.readTree(line));
+    }
+    return lines;
+  }
+
+  /** Waits for the latch, giving up after a while so that a broken test does not hang. */
+  private void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
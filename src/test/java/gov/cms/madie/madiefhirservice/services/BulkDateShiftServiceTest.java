@@ -0,0 +1,237 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.madie.madiefhirservice.config.DateShiftConfig;
+import gov.cms.madie.madiefhirservice.dto.DateShiftResult;
+import gov.cms.madie.madiefhirservice.utils.DateShiftPlan;
+import gov.cms.madie.models.measure.TestCase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BulkDateShiftServiceTest {
+
+  @Mock private DateShiftConfig dateShiftConfig;
+  @Mock private TestCaseDateShifterService testCaseDateShifterService;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private ExecutorService executor;
+  private BulkDateShiftService bulkDateShiftService;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    bulkDateShiftService =
+        new BulkDateShiftService(dateShiftConfig, executor, testCaseDateShifterService, mapper);
+    lenient().when(dateShiftConfig.getBulkMaxConcurrencyPerRequest()).thenReturn(2);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void shiftDatesReadsJsonArray() throws Exception {
+    when(testCaseDateShifterService.shiftTestCaseDates(
+            any(TestCase.class), eq(DateShiftPlan.ofYears(2))))
+        .thenAnswer(invocation -> shifted(invocation.getArgument(0)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    int processed =
+        bulkDateShiftService.shiftDates(
+            input("[{\"id\": \"tc-1\", \"json\": \"{}\"}, {\"id\": \"tc-2\", \"json\": \"{}\"}]"),
+            DateShiftPlan.ofYears(2),
+            out);
+
+    assertThat(processed, is(equalTo(2)));
+    assertThat(testCaseIds(out), contains("tc-1", "tc-2"));
+  }
+
+  @Test
+  void shiftDatesReadsNdjson() throws Exception {
+    when(testCaseDateShifterService.shiftTestCaseDates(
+            any(TestCase.class), eq(DateShiftPlan.ofYears(-1))))
+        .thenAnswer(invocation -> shifted(invocation.getArgument(0)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    bulkDateShiftService.shiftDates(
+        input("{\"id\": \"tc-1\", \"json\": \"{}\"}\n{\"id\": \"tc-2\", \"json\": \"{}\"}\n"),
+        DateShiftPlan.ofYears(-1),
+        out);
+
+    List<JsonNode> lines = readLines(out);
+    assertThat(lines.size(), is(equalTo(2)));
+    assertThat(lines.get(1).get("status").asText(), is(equalTo("SHIFTED")));
+    assertThat(lines.get(1).at("/testCase/id").asText(), is(equalTo("tc-2")));
+  }
+
+  @Test
+  void shiftDatesWritesResultsInInputOrder() throws Exception {
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+    List<CountDownLatch> finished = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      finished.add(new CountDownLatch(1));
+    }
+    when(testCaseDateShifterService.shiftTestCaseDates(
+            any(TestCase.class), any(DateShiftPlan.class)))
+        .thenAnswer(
+            invocation -> {
+              TestCase testCase = invocation.getArgument(0);
+              int id = Integer.parseInt(testCase.getId());
+              maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+              // each even test case only finishes after the one following it
+              if (id % 2 == 0) {
+                assertThat(finished.get(id + 1).await(5, TimeUnit.SECONDS), is(true));
+              }
+              active.decrementAndGet();
+              finished.get(id).countDown();
+              return shifted(testCase);
+            });
+    StringBuilder ndjson = new StringBuilder();
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      ndjson.append("{\"id\": \"").append(i).append("\"}\n");
+      ids.add(String.valueOf(i));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    bulkDateShiftService.shiftDates(input(ndjson.toString()), DateShiftPlan.ofYears(1), out);
+
+    assertThat(testCaseIds(out), is(equalTo(ids)));
+    assertThat(maxActive.get(), is(lessThanOrEqualTo(2)));
+  }
+
+  @Test
+  void shiftDatesReportsEachItemStatus() throws Exception {
+    when(testCaseDateShifterService.shiftTestCaseDates(
+            any(TestCase.class), any(DateShiftPlan.class)))
+        .thenAnswer(
+            invocation -> {
+              TestCase testCase = invocation.getArgument(0);
+              return switch (testCase.getId()) {
+                case "ok" -> shifted(testCase);
+                case "empty" -> result(testCase, DateShiftResult.Status.SKIPPED);
+                default -> result(testCase, DateShiftResult.Status.FAILED);
+              };
+            });
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    bulkDateShiftService.shiftDates(
+        input("[{\"id\": \"ok\"}, {\"id\": \"empty\"}, {\"id\": \"bad\"}]"),
+        DateShiftPlan.ofYears(1),
+        out);
+
+    List<String> statuses = readLines(out).stream().map(n -> n.get("status").asText()).toList();
+    assertThat(statuses, contains("SHIFTED", "SKIPPED", "FAILED"));
+  }
+
+  @Test
+  void shiftDatesReportsItemsThatCannotBeMappedAndContinues() throws Exception {
+    when(testCaseDateShifterService.shiftTestCaseDates(
+            any(TestCase.class), any(DateShiftPlan.class)))
+        .thenAnswer(invocation -> shifted(invocation.getArgument(0)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    int processed =
+        bulkDateShiftService.shiftDates(
+            input("[{\"id\": \"tc-1\"}, {\"id\": {\"nested\": 1}}, {\"id\": \"tc-3\"}]"),
+            DateShiftPlan.ofYears(1),
+            out);
+
+    List<JsonNode> lines = readLines(out);
+    assertThat(processed, is(equalTo(3)));
+    assertThat(
+        lines.stream().map(n -> n.get("status").asText()).toList(),
+        contains("SHIFTED", "FAILED", "SHIFTED"));
+    assertThat(lines.get(1).get("message").asText(), startsWith("Test case [2] could not be read"));
+    assertThat(lines.get(2).at("/testCase/id").asText(), is(equalTo("tc-3")));
+  }
+
+  @Test
+  void shiftDatesReportsMalformedJsonAndStops() throws Exception {
+    when(testCaseDateShifterService.shiftTestCaseDates(
+            any(TestCase.class), any(DateShiftPlan.class)))
+        .thenAnswer(invocation -> shifted(invocation.getArgument(0)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    int processed =
+        bulkDateShiftService.shiftDates(
+            input("{\"id\": \"tc-1\"}\n{\"id\": tc-2}\n{\"id\": \"tc-3\"}\n"),
+            DateShiftPlan.ofYears(1),
+            out);
+
+    List<JsonNode> lines = readLines(out);
+    assertThat(processed, is(equalTo(2)));
+    assertThat(
+        lines.stream().map(n -> n.get("status").asText()).toList(), contains("SHIFTED", "FAILED"));
+  }
+
+  @Test
+  void shiftDatesHandlesEmptyInput() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertThat(
+        bulkDateShiftService.shiftDates(input("[]"), DateShiftPlan.ofYears(1), out),
+        is(equalTo(0)));
+    assertThat(out.size(), is(equalTo(0)));
+  }
+
+  private DateShiftResult shifted(TestCase testCase) {
+    return DateShiftResult.builder()
+        .testCaseId(testCase.getId())
+        .status(DateShiftResult.Status.SHIFTED)
+        .testCase(testCase)
+        .build();
+  }
+
+  private DateShiftResult result(TestCase testCase, DateShiftResult.Status status) {
+    return DateShiftResult.builder().testCaseId(testCase.getId()).status(status).build();
+  }
+
+  private InputStream input(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private List<String> testCaseIds(ByteArrayOutputStream out) throws Exception {
+    return readLines(out).stream().map(n -> n.get("testCaseId").asText()).toList();
+  }
+
+  private List<JsonNode> readLines(ByteArrayOutputStream out) throws Exception {
+    List<JsonNode> lines = new ArrayList<>();
+    for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+      if (!line.isBlank()) {
+        lines.add(mapper.readTree(line));
+      }
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,66 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import gov.cms.madie.madiefhirservice.config.CqlFormatConfig;
+import gov.cms.mat.cql.CqlFormatter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.security.Principal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CqlFormatServiceTest {
+  @Mock private CqlFormatConfig cqlFormatConfig;
+
+  private final Principal principal = () -> "john_doe";
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private CqlFormatService cqlFormatService;
+
+  @BeforeEach
+  void setUp() {
+    when(cqlFormatConfig.getCacheMaxSize()).thenReturn(10L);
+    cqlFormatService = new CqlFormatService(cqlFormatConfig, meterRegistry);
+  }
+
+  @Test
+  void formatsEachCqlOnce() {
+    try (MockedStatic<CqlFormatter> formatter = Mockito.mockStatic(CqlFormatter.class)) {
+      formatter
+          .when(() -> CqlFormatter.formatCql(any(), any()))
+          .thenAnswer(invocation -> "formatted " + invocation.getArgument(0));
+
+      assertThat(cqlFormatService.format("library A", principal), is("formatted library A"));
+      assertThat(cqlFormatService.format("library A", principal), is("formatted library A"));
+      assertThat(cqlFormatService.format("library B", principal), is("formatted library B"));
+
+      formatter.verify(() -> CqlFormatter.formatCql("library A", principal), times(1));
+      formatter.verify(() -> CqlFormatter.formatCql("library B", principal), times(1));
+    }
+  }
+
+  @Test
+  void doesNotCacheFailedFormatting() {
+    try (MockedStatic<CqlFormatter> formatter = Mockito.mockStatic(CqlFormatter.class)) {
+      formatter
+          .when(() -> CqlFormatter.formatCql(any(), any()))
+          .thenThrow(new IllegalStateException("parse error"))
+          .thenReturn("formatted");
+
+      assertThrows(
+          IllegalStateException.class, () -> cqlFormatService.format("library A", principal));
+      assertThat(cqlFormatService.format("library A", principal), is("formatted"));
+    }
+  }
+}
@@ -0,0 +1,338 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import gov.cms.madie.madiefhirservice.config.ExportJobConfig;
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
+import gov.cms.madie.madiefhirservice.dto.ExportJobStatus;
+import gov.cms.madie.madiefhirservice.dto.ExportJobStatus.State;
+import gov.cms.madie.madiefhirservice.dto.TestCaseExport;
+import gov.cms.madie.madiefhirservice.exceptions.CqlElmTranslationServiceException;
+import gov.cms.madie.madiefhirservice.exceptions.ExportJobNotCompletedException;
+import gov.cms.madie.madiefhirservice.exceptions.ExportJobQueueFullException;
+import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.utils.ExportFileNamesUtil;
+import gov.cms.madie.models.common.Version;
+import gov.cms.madie.models.dto.ExportDTO;
+import gov.cms.madie.models.measure.Measure;
+import gov.cms.madie.models.measure.TestCase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExportJobServiceTest {
+  @Mock private ExportJobConfig exportJobConfig;
+  @Mock private ExportService exportService;
+  @Mock private TestCaseExportService testCaseExportService;
+
+  @TempDir Path spoolDir;
+
+  private ExecutorService executor;
+  private final List<Future<?>> submittedJobs = new CopyOnWriteArrayList<>();
+  private ExportJobService exportJobService;
+  private Measure measure;
+  private final Principal principal = () -> "john_doe";
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(exportJobConfig.getSpoolDir()).thenReturn(spoolDir.toString());
+    executor =
+        new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1)) {
+          @Override
+          public Future<?> submit(Runnable task) {
+            Future<?> future = super.submit(task);
+            submittedJobs.add(future);
+            return future;
+          }
+        };
+    exportJobService =
+        new ExportJobService(exportJobConfig, executor, exportService, testCaseExportService);
+    measure =
+        Measure.builder()
+            .id("measure-1")
+            .ecqmTitle("ExportTest")
+            .version(new Version(1, 0, 0))
+            .model("QI-Core v4.1.1")
+            .build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void measureExportJobCompletesWithArchiveOnDisk() throws Exception {
+    doAnswer(
+            invocation -> {
+              ExportProgressListener listener = invocation.getArgument(3);
+              listener.stageCompleted(ExportStage.LIBRARIES_RESOLVED);
+              listener.stageCompleted(ExportStage.NARRATIVES_RENDERED);
+              invocation.getArgument(4, OutputStream.class).write("zip".getBytes());
+              listener.stageCompleted(ExportStage.PACKAGED);
+              return null;
+            })
+        .when(exportService)
+        .writeExport(
+            eq(measure),
+            eq(principal),
+            eq("token"),
+            any(ExportProgressListener.class),
+            any(OutputStream.class));
+
+    ExportJobStatus submitted = exportJobService.submitMeasureExport(measure, principal, "token");
+    ExportJobStatus finished = awaitFinished(submitted.getJobId());
+
+    assertThat(finished.getState(), is(equalTo(State.COMPLETED)));
+    assertThat(finished.getStage(), is(equalTo(ExportStage.PACKAGED)));
+    assertThat(
+        finished.getFileName(),
+        is(equalTo(ExportFileNamesUtil.getExportFileName(measure) + ".zip")));
+    ExportJobService.ExportArtifact artifact =
+        exportJobService.getArtifact(submitted.getJobId(), principal);
+    assertThat(Files.readAllBytes(artifact.path()), is(equalTo("zip".getBytes())));
+    assertThat(artifact.path().getParent(), is(equalTo(spoolDir)));
+  }
+
+  @Test
+  void testCaseExportJobReportsTestCaseProgress() throws Exception {
+    ExportDTO exportDTO = ExportDTO.builder().measure(measure).build();
+    List<TestCase> testCases = List.of(new TestCase(), new TestCase());
+    when(testCaseExportService.selectTestCases(exportDTO)).thenReturn(testCases);
+    when(testCaseExportService.export(
+            eq(exportDTO),
+            eq(testCases),
+            eq(CompressionLevel.FAST),
+            any(ExportProgressListener.class)))
+        .thenAnswer(
+            invocation -> {
+              ExportProgressListener listener = invocation.getArgument(3);
+              listener.testCaseProcessed(1, 2);
+              listener.testCaseProcessed(2, 2);
+              return TestCaseExport.builder().content("zip".getBytes()).partial(true).build();
+            });
+
+    ExportJobStatus submitted =
+        exportJobService.submitTestCaseExport(exportDTO, CompressionLevel.FAST, principal);
+    ExportJobStatus finished = awaitFinished(submitted.getJobId());
+
+    assertThat(finished.getState(), is(equalTo(State.COMPLETED)));
+    assertThat(finished.getStage(), is(equalTo(ExportStage.TEST_CASES_PROCESSED)));
+    assertThat(finished.getTestCasesProcessed(), is(equalTo(2)));
+    assertThat(finished.getTestCasesTotal(), is(equalTo(2)));
+    assertThat(finished.getPartial(), is(true));
+  }
+
+  @Test
+  void testCaseExportWithoutTestCasesFailsOnSubmit() {
+    ExportDTO exportDTO = ExportDTO.builder().measure(measure).build();
+    when(testCaseExportService.selectTestCases(exportDTO))
+        .thenThrow(new ResourceNotFoundException("test cases", "measure", measure.getId()));
+
+    assertThrows(
+        ResourceNotFoundException.class,
+        () ->
+            exportJobService.submitTestCaseExport(exportDTO, CompressionLevel.DEFAULT, principal));
+  }
+
+  @Test
+  void failedJobReportsErrorAndHasNothingToDownload() throws Exception {
+    doThrow(new IllegalStateException("translation failed"))
+        .when(exportService)
+        .writeExport(
+            any(Measure.class),
+            any(Principal.class),
+            anyString(),
+            any(ExportProgressListener.class),
+            any(OutputStream.class));
+
+    String jobId = exportJobService.submitMeasureExport(measure, principal, "token").getJobId();
+    ExportJobStatus finished = awaitFinished(jobId);
+
+    assertThat(finished.getState(), is(equalTo(State.FAILED)));
+    assertThat(finished.getError(), is(equalTo("translation failed")));
+    assertThrows(
+        ExportJobNotCompletedException.class, () -> exportJobService.getArtifact(jobId, principal));
+    try (var files = Files.list(spoolDir)) {
+      assertThat(files.count(), is(0L));
+    }
+  }
+
+  @Test
+  void jobRejectedAsUnauthorizedReportsExpiredToken() throws Exception {
+    doThrow(
+            new CqlElmTranslationServiceException(
+                "translation failed",
+                HttpClientErrorException.create(
+                    HttpStatus.UNAUTHORIZED, "Unauthorized", null, null, null)))
+        .when(exportService)
+        .writeExport(
+            any(Measure.class),
+            any(Principal.class),
+            anyString(),
+            any(ExportProgressListener.class),
+            any(OutputStream.class));
+
+    String jobId = exportJobService.submitMeasureExport(measure, principal, "token").getJobId();
+    ExportJobStatus finished = awaitFinished(jobId);
+
+    assertThat(finished.getState(), is(equalTo(State.FAILED)));
+    assertThat(finished.getError(), is(equalTo(ExportJobService.EXPIRED_TOKEN_ERROR)));
+  }
+
+  @Test
+  void runningJobCanBeCancelled() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              try {
+                new CountDownLatch(1).await();
+              } catch (InterruptedException ex) {
+                interrupted.countDown();
+                throw ex;
+              }
+              return null;
+            })
+        .when(exportService)
+        .writeExport(
+            any(Measure.class),
+            any(Principal.class),
+            anyString(),
+            any(ExportProgressListener.class),
+            any(OutputStream.class));
+    String jobId = exportJobService.submitMeasureExport(measure, principal, "token").getJobId();
+    started.await(5, TimeUnit.SECONDS);
+
+    ExportJobStatus cancelled = exportJobService.cancel(jobId, principal);
+
+    assertThat(cancelled.getState(), is(equalTo(State.CANCELLED)));
+    assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(exportJobService.getStatus(jobId, principal).getState(), is(State.CANCELLED));
+    assertThrows(
+        ExportJobNotCompletedException.class, () -> exportJobService.getArtifact(jobId, principal));
+  }
+
+  @Test
+  void submitFailsWhenQueueIsFull() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return null;
+            })
+        .when(exportService)
+        .writeExport(
+            any(Measure.class),
+            any(Principal.class),
+            anyString(),
+            any(ExportProgressListener.class),
+            any(OutputStream.class));
+    // one running and one queued job fill the pool
+    exportJobService.submitMeasureExport(measure, principal, "token");
+    started.await(5, TimeUnit.SECONDS);
+    exportJobService.submitMeasureExport(measure, principal, "token");
+
+    assertThrows(
+        ExportJobQueueFullException.class,
+        () -> exportJobService.submitMeasureExport(measure, principal, "token"));
+    release.countDown();
+  }
+
+  @Test
+  void jobsAreOnlyVisibleToTheirOwner() throws Exception {
+    doAnswer(
+            invocation -> {
+              invocation.getArgument(4, OutputStream.class).write("zip".getBytes());
+              return null;
+            })
+        .when(exportService)
+        .writeExport(
+            any(Measure.class),
+            any(Principal.class),
+            anyString(),
+            any(ExportProgressListener.class),
+            any(OutputStream.class));
+    String jobId = exportJobService.submitMeasureExport(measure, principal, "token").getJobId();
+    awaitFinished(jobId);
+    Principal otherUser = () -> "jane_doe";
+
+    assertThrows(
+        ResourceNotFoundException.class, () -> exportJobService.getStatus(jobId, otherUser));
+    assertThrows(ResourceNotFoundException.class, () -> exportJobService.cancel(jobId, otherUser));
+  }
+
+  @Test
+  void expiredJobsAreRemovedWithTheirArchives() throws Exception {
+    doAnswer(
+            invocation -> {
+              invocation.getArgument(4, OutputStream.class).write("zip".getBytes());
+              return null;
+            })
+        .when(exportService)
+        .writeExport(
+            any(Measure.class),
+            any(Principal.class),
+            anyString(),
+            any(ExportProgressListener.class),
+            any(OutputStream.class));
+    String jobId = exportJobService.submitMeasureExport(measure, principal, "token").getJobId();
+    awaitFinished(jobId);
+    Path artifact = exportJobService.getArtifact(jobId, principal).path();
+
+    when(exportJobConfig.getTtlMillis()).thenReturn(60000L);
+    exportJobService.removeExpiredJobs();
+    assertThat(Files.exists(artifact), is(true));
+
+    when(exportJobConfig.getTtlMillis()).thenReturn(-1L);
+    exportJobService.removeExpiredJobs();
+    assertThat(Files.exists(artifact), is(false));
+    assertThrows(
+        ResourceNotFoundException.class, () -> exportJobService.getStatus(jobId, principal));
+  }
+
+  /** Waits for the submitted jobs to run, which they only do after updating their state. */
+  private ExportJobStatus awaitFinished(String jobId) throws Exception {
+    for (Future<?> job : submittedJobs) {
+      job.get(5, TimeUnit.SECONDS);
+    }
+    ExportJobStatus status = exportJobService.getStatus(jobId, principal);
+    assertThat(status.getCompletedAt(), is(notNullValue()));
+    return status;
+  }
+}
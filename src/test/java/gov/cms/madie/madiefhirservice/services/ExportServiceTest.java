@@ -5,35 +5,40 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.Principal;
 import java.time.Instant;
 
 import org.hl7.fhir.r4.model.Bundle;
-import org.junit.jupiter.api.AfterAll;
-import org.junit.jupiter.api.BeforeAll;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.MockedStatic;
-import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import ca.uhn.fhir.context.FhirContext;
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
 import gov.cms.madie.madiefhirservice.exceptions.InternalServerException;
+import gov.cms.madie.madiefhirservice.utils.BundleUtil;
+import gov.cms.madie.madiefhirservice.utils.ExportFileNamesUtil;
 import gov.cms.madie.madiefhirservice.utils.MeasureTestHelper;
+import gov.cms.madie.madiefhirservice.utils.PackagingUtilityRegistry;
+import gov.cms.madie.madiefhirservice.utils.PipelineMetrics;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.models.common.Version;
 import gov.cms.madie.models.measure.Measure;
-import gov.cms.madie.packaging.utils.PackagingUtilityFactory;
-import gov.cms.madie.packaging.utils.qicore411.PackagingUtilityImpl;
 
 @ExtendWith(MockitoExtension.class)
 class ExportServiceTest implements ResourceFileUtil {
@@ -41,23 +46,16 @@ class ExportServiceTest implements ResourceFileUtil {
   @Mock private FhirContext fhirContext;
   @Mock private HumanReadableService humanReadableService;
   @Mock private MeasureBundleService measureBundleService;
+  @Mock private PackagingUtilityRegistry packagingUtilityRegistry;
 
   @InjectMocks private ExportService exportService;
 
+  @Spy
+  private PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry(), 10000);
+
   private Measure madieMeasure;
 
   private Principal principal;
-  private static MockedStatic<PackagingUtilityFactory> factory;
-
-  @BeforeAll
-  public static void staticSetup() {
-    factory = Mockito.mockStatic(PackagingUtilityFactory.class);
-  }
-
-  @AfterAll
-  public static void close() {
-    factory.close();
-  }
 
   @BeforeEach
   public void setUp() {
@@ -88,25 +86,69 @@ class ExportServiceTest implements ResourceFileUtil {
     Bundle testBundle = MeasureTestHelper.createTestMeasureBundle();
 
     when(measureBundleService.createMeasureBundle(
-            any(Measure.class), any(Principal.class), anyString(), anyString()))
+            any(Measure.class),
+            any(Principal.class),
+            anyString(),
+            anyString(),
+            anySet(),
+            any(ExportProgressListener.class)))
         .thenReturn(testBundle);
-    PackagingUtilityImpl utility = Mockito.mock(PackagingUtilityImpl.class);
-
-    factory.when(() -> PackagingUtilityFactory.getInstance("QI-Core v4.1.1")).thenReturn(utility);
     doReturn("THis is a test".getBytes())
-        .when(utility)
-        .getZipBundle(any(Bundle.class), any(String.class));
+        .when(packagingUtilityRegistry)
+        .getZipBundle(eq("QI-Core v4.1.1"), any(Bundle.class), any(String.class));
 
     byte[] result = exportService.createExport(madieMeasure, principal, "Bearer TOKEN");
 
     assertThat(result, is(equalTo("THis is a test".getBytes())));
   }
 
+  @Test
+  void testCreateExportReportsProgress() {
+    ExportProgressListener progressListener = mock(ExportProgressListener.class);
+    when(measureBundleService.createMeasureBundle(
+            any(Measure.class),
+            any(Principal.class),
+            eq(BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT),
+            anyString(),
+            anySet(),
+            eq(progressListener)))
+        .thenReturn(MeasureTestHelper.createTestMeasureBundle());
+    doReturn("zip".getBytes())
+        .when(packagingUtilityRegistry)
+        .getZipBundle(eq("QI-Core v4.1.1"), any(Bundle.class), any(String.class));
+
+    exportService.createExport(madieMeasure, principal, "Bearer TOKEN", progressListener);
+
+    verify(progressListener).stageCompleted(ExportStage.PACKAGED);
+  }
+
+  @Test
+  void testWriteExportWritesArchiveToStream() throws IOException {
+    ExportProgressListener progressListener = mock(ExportProgressListener.class);
+    Bundle testBundle = MeasureTestHelper.createTestMeasureBundle();
+    when(measureBundleService.createMeasureBundle(
+            any(Measure.class),
+            any(Principal.class),
+            eq(BundleUtil.MEASURE_BUNDLE_TYPE_EXPORT),
+            anyString(),
+            anySet(),
+            eq(progressListener)))
+        .thenReturn(testBundle);
+    when(packagingUtilityRegistry.getZipBundle(
+            "QI-Core v4.1.1", testBundle, ExportFileNamesUtil.getExportFileName(madieMeasure)))
+        .thenReturn("zip".getBytes());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    exportService.writeExport(madieMeasure, principal, "Bearer TOKEN", progressListener, out);
+
+    assertThat(out.toByteArray(), is(equalTo("zip".getBytes())));
+    verify(progressListener).stageCompleted(ExportStage.PACKAGED);
+  }
+
   @Test
   void testGenerateExportsWhenWritingFileToZipFailed() throws IOException {
 
-    factory
-        .when(() -> PackagingUtilityFactory.getInstance("QI-Core v4.1.1"))
+    when(packagingUtilityRegistry.getZipBundle(eq("QI-Core v4.1.1"), any(), anyString()))
         .thenThrow(
             new InternalServerException(
                 "Unexpected error while generating exports for measureID: xyz-p13r-13ert"));
@@ -4,17 +4,20 @@ import gov.cms.madie.madiefhirservice.cql.LibraryCqlVisitorFactory;
 import gov.cms.madie.madiefhirservice.exceptions.*;
 import gov.cms.madie.madiefhirservice.utils.BundleUtil;
 import gov.cms.madie.madiefhirservice.utils.LibraryHelper;
+import gov.cms.madie.madiefhirservice.utils.PipelineMetrics;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.models.common.Version;
 import gov.cms.madie.models.library.CqlLibrary;
 import org.hl7.fhir.r4.model.Attachment;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Library;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.HashMap;
@@ -37,6 +40,9 @@ class LibraryServiceTest implements LibraryHelper, ResourceFileUtil {
 
   @InjectMocks private LibraryService libraryService;
 
+  @Spy
+  private PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry(), 10000);
+
   @Mock private CqlLibraryService cqlLibraryService;
   @Mock private LibraryTranslatorService libraryTranslatorService;
   @Mock private LibraryCqlVisitorFactory libCqlVisitorFactory;
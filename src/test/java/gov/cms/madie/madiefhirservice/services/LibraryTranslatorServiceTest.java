@@ -1,13 +1,18 @@
 package gov.cms.madie.madiefhirservice.services;
 
+import gov.cms.madie.madiefhirservice.cql.LibraryCqlVisitor;
 import gov.cms.madie.madiefhirservice.cql.LibraryCqlVisitorFactory;
 import gov.cms.madie.madiefhirservice.utils.LibraryHelper;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.models.library.CqlLibrary;
 import gov.cms.madie.models.common.Version;
+import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.Attachment;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DataRequirement;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.RelatedArtifact;
 import org.hl7.fhir.r4.model.Identifier.IdentifierUse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,10 +27,15 @@ import static org.mockito.ArgumentMatchers.anyString;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -94,6 +104,24 @@ public class LibraryTranslatorServiceTest implements ResourceFileUtil, LibraryHe
     assertThat(library.getExtension().size(), is(equalTo(2)));
   }
 
+  @Test
+  public void testConvertToFhirLibraryRoundTripsNonAsciiContentAsUtf8() {
+    var visitor = new LibraryCqlVisitorFactory().visit(exm1234Cql);
+    when(libCqlVisitorFactory.visit(anyString())).thenReturn(visitor);
+    cqlLibrary.setCql(exm1234Cql + "\n// Überprüfung – ≥ 18 años");
+
+    Library library = libraryTranslatorService.convertToFhirLibrary(cqlLibrary);
+    Attachment cqlAttachment =
+        libraryTranslatorService.findAttachmentOfContentType(
+            library, LibraryTranslatorService.CQL_CONTENT_TYPE);
+
+    assertThat(
+        cqlAttachment.getData(), is(equalTo(cqlLibrary.getCql().getBytes(StandardCharsets.UTF_8))));
+    assertThat(
+        libraryTranslatorService.attachmentToString(cqlAttachment),
+        is(equalTo(cqlLibrary.getCql())));
+  }
+
   @Test
   public void testConvertToCqlLibrary() {
     Library library = new Library();
@@ -192,4 +220,122 @@ public class LibraryTranslatorServiceTest implements ResourceFileUtil, LibraryHe
     assertThat(output.getContentType(), is(equalTo(LibraryTranslatorService.CQL_CONTENT_TYPE)));
     assertThat(output.getData(), is(equalTo("Attachment2".getBytes())));
   }
+
+  @Test
+  public void testConvertToFhirLibraryDeduplicatesLikePairwiseComparison() {
+    for (String path :
+        List.of(
+            "/test-cql/EXM124v7QICore4.cql",
+            "/test-cql/EXM124v7QICore5.cql",
+            "/test-cql/cv_populations.cql",
+            "/includes/FHIRHelpers.cql",
+            "/includes/GlobalCommonFunctions.cql")) {
+      String cql = getStringFromTestResource(path);
+      var visitor = new LibraryCqlVisitorFactory().visit(cql);
+      when(libCqlVisitorFactory.visit(anyString())).thenReturn(visitor);
+
+      Library library = libraryTranslatorService.convertToFhirLibrary(createCqlLibrary(cql));
+
+      assertThat(
+          path,
+          library.getDataRequirement(),
+          is(equalTo(pairwiseDistinctDataRequirements(visitor.getDataRequirements()))));
+      assertThat(
+          path,
+          library.getRelatedArtifact(),
+          is(equalTo(pairwiseDistinctArtifacts(visitor.getRelatedArtifacts()))));
+    }
+  }
+
+  @Test
+  public void testConvertToFhirLibraryDeduplicatesDataRequirementEdgeCases() {
+    RelatedArtifact artifact = new RelatedArtifact().setResource("http://example.org/vs");
+    List<DataRequirement> reqs =
+        List.of(
+            new DataRequirement().setType("Encounter"),
+            new DataRequirement().setType("Encounter"),
+            dataRequirement("Encounter", "type", "vs1", null),
+            dataRequirement("Encounter", "type", "vs1", "code1"),
+            dataRequirement("Encounter", "type", null, "code1"),
+            dataRequirement("Encounter", "type", "vs2", "code2"),
+            dataRequirement("Encounter", "type", "vs1", "code2"),
+            dataRequirement("Encounter", "class", "vs1", null),
+            dataRequirement("Condition", "type", "vs1", null),
+            dataRequirement("Condition", "type", null, null),
+            dataRequirement("Condition", "type", null, null),
+            dataRequirement("Condition", null, null, ""),
+            dataRequirement("Condition", null, null, ""),
+            dataRequirement(null, "code", "vs1", null),
+            dataRequirement(null, "code", "vs1", null));
+    var visitor = mock(LibraryCqlVisitor.class);
+    when(visitor.getDataRequirements()).thenReturn(reqs);
+    when(visitor.getRelatedArtifacts())
+        .thenReturn(
+            List.of(
+                artifact,
+                new RelatedArtifact().setResource("http://example.org/cs"),
+                artifact,
+                new RelatedArtifact().setResource("http://example.org/vs")));
+    when(libCqlVisitorFactory.visit(anyString())).thenReturn(visitor);
+
+    Library library = libraryTranslatorService.convertToFhirLibrary(cqlLibrary);
+
+    assertThat(library.getDataRequirement(), is(equalTo(pairwiseDistinctDataRequirements(reqs))));
+    assertThat(library.getDataRequirement().size(), is(equalTo(10)));
+    assertThat(
+        library.getRelatedArtifact(),
+        is(equalTo(pairwiseDistinctArtifacts(visitor.getRelatedArtifacts()))));
+    assertThat(library.getRelatedArtifact().size(), is(equalTo(3)));
+  }
+
+  private DataRequirement dataRequirement(String type, String path, String valueSet, String code) {
+    var filter = new DataRequirement.DataRequirementCodeFilterComponent().setPath(path);
+    filter.setValueSet(valueSet);
+    if (code != null) {
+      filter.addCode(new Coding().setCode(code.isEmpty() ? null : code));
+    }
+    return new DataRequirement().setType(type).setCodeFilter(List.of(filter));
+  }
+
+  /** The pairwise deduplication the service used before it switched to lookup keys. */
+  private List<DataRequirement> pairwiseDistinctDataRequirements(List<DataRequirement> reqs) {
+    List<DataRequirement> result = new ArrayList<>();
+    for (DataRequirement req : reqs) {
+      if (result.stream()
+          .noneMatch(
+              r -> StringUtils.equals(r.getType(), req.getType()) && codeFiltersMatch(r, req))) {
+        result.add(req);
+      }
+    }
+    return result;
+  }
+
+  private boolean codeFiltersMatch(DataRequirement d, DataRequirement o) {
+    if (d.getCodeFilter().isEmpty() || o.getCodeFilter().isEmpty()) {
+      return d.getCodeFilter().isEmpty() && o.getCodeFilter().isEmpty();
+    }
+    var df = d.getCodeFilter().get(0);
+    var of = o.getCodeFilter().get(0);
+    boolean valueSetMatch =
+        df.getValueSet() != null
+            && of.getValueSet() != null
+            && StringUtils.equals(df.getValueSet(), of.getValueSet());
+    boolean codeMatch =
+        !df.getCode().isEmpty()
+            && !of.getCode().isEmpty()
+            && StringUtils.equals(df.getCode().get(0).getCode(), of.getCode().get(0).getCode());
+    return StringUtils.equals(df.getPath(), of.getPath()) && (valueSetMatch || codeMatch);
+  }
+
+  private List<RelatedArtifact> pairwiseDistinctArtifacts(List<RelatedArtifact> artifacts) {
+    List<RelatedArtifact> result = new ArrayList<>();
+    artifacts.forEach(
+        a -> {
+          if (result.stream().noneMatch(ar -> Objects.deepEquals(a, ar))) {
+            result.add(a);
+          }
+        });
+    result.sort(Comparator.comparing(RelatedArtifact::getResource));
+    return result;
+  }
 }
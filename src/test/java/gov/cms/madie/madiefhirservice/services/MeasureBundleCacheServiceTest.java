@@ -0,0 +1,191 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import gov.cms.madie.madiefhirservice.config.MeasureBundleCacheConfig;
+import gov.cms.madie.madiefhirservice.constants.ElmFormat;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.MeasureFingerprinter;
+import gov.cms.madie.madiefhirservice.utils.MeasureTestHelper;
+import gov.cms.madie.madiefhirservice.utils.PipelineMetrics;
+import gov.cms.madie.madiefhirservice.utils.PreparedJsonResponse;
+import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
+import gov.cms.madie.models.measure.Measure;
+import gov.cms.madie.models.measure.TestCase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.CacheControl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MeasureBundleCacheServiceTest implements ResourceFileUtil {
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+  private static final Principal USER = () -> "user";
+
+  @Mock private MeasureBundleCacheConfig measureBundleCacheConfig;
+
+  private MeasureBundleCacheService measureBundleCacheService;
+  private Measure measure;
+  private AtomicInteger builds;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    when(measureBundleCacheConfig.getMaxBytes()).thenReturn(10_000_000L);
+    when(measureBundleCacheConfig.getTtlMillis()).thenReturn(60000L);
+    measureBundleCacheService =
+        new MeasureBundleCacheService(
+            new FhirParserProvider(FHIR_CONTEXT),
+            new MeasureFingerprinter(new ObjectMapper().registerModule(new JavaTimeModule())),
+            measureBundleCacheConfig,
+            new PipelineMetrics(new SimpleMeterRegistry(), 10000),
+            new SimpleMeterRegistry());
+    measure =
+        MeasureTestHelper.createMadieMeasureFromJson(
+            getStringFromTestResource("/measures/madie_measure.json"));
+    builds = new AtomicInteger();
+  }
+
+  @Test
+  void getBundleReusesBundleForUnchangedMeasure() {
+    PreparedJsonResponse first =
+        measureBundleCacheService.getBundle(
+            measure, USER, "calculation", Set.of(), true, builder());
+    PreparedJsonResponse second =
+        measureBundleCacheService.getBundle(
+            measure, USER, "calculation", Set.of(), true, builder());
+
+    assertThat(second, is(sameInstance(first)));
+    assertThat(builds.get(), is(equalTo(1)));
+    String body =
+        new String(
+            first.toResponseEntity(null, CacheControl.empty()).getBody(), StandardCharsets.UTF_8);
+    assertThat(
+        body,
+        is(
+            equalTo(
+                FHIR_CONTEXT
+                    .newJsonParser()
+                    .setPrettyPrint(true)
+                    .encodeResourceToString(MeasureTestHelper.createTestMeasureBundle()))));
+  }
+
+  @Test
+  void getBundleRebuildsWhenMeasureChanges() {
+    PreparedJsonResponse first =
+        measureBundleCacheService.getBundle(
+            measure, USER, "calculation", Set.of(), true, builder());
+    measure.setCql(measure.getCql() + "\ndefine \"Extra\": true");
+    measureBundleCacheService.getBundle(measure, USER, "calculation", Set.of(), true, builder());
+    measure.setLastModifiedAt(Instant.now());
+    PreparedJsonResponse third =
+        measureBundleCacheService.getBundle(
+            measure, USER, "calculation", Set.of(), true, builder());
+
+    assertThat(third, is(not(sameInstance(first))));
+    assertThat(builds.get(), is(equalTo(3)));
+  }
+
+  @Test
+  void cacheKeyIncludesBundleOptions() {
+    String key = measureBundleCacheService.cacheKey(measure, USER, "calculation", Set.of(), true);
+
+    assertThat(
+        measureBundleCacheService.cacheKey(measure, USER, "calculation", Set.of(), true),
+        is(equalTo(key)));
+    assertThat(
+        measureBundleCacheService.cacheKey(measure, USER, "export", Set.of(), true), is(not(key)));
+    assertThat(
+        measureBundleCacheService.cacheKey(
+            measure, USER, "calculation", Set.of(ElmFormat.XML), true),
+        is(not(key)));
+    assertThat(
+        measureBundleCacheService.cacheKey(measure, USER, "calculation", Set.of(), false),
+        is(not(key)));
+    assertThat(
+        measureBundleCacheService.cacheKey(measure, () -> "other", "calculation", Set.of(), true),
+        is(not(key)));
+    assertThat(
+        measureBundleCacheService.cacheKey(
+            measure, USER, "calculation", Set.of(ElmFormat.XML, ElmFormat.JSON), true),
+        is(
+            equalTo(
+                measureBundleCacheService.cacheKey(
+                    measure, USER, "calculation", Set.of(ElmFormat.JSON, ElmFormat.XML), true))));
+  }
+
+  @Test
+  void getBundleDoesNotShareBundlesBetweenUsers() {
+    PreparedJsonResponse first =
+        measureBundleCacheService.getBundle(
+            measure, USER, "calculation", Set.of(), true, builder());
+    PreparedJsonResponse second =
+        measureBundleCacheService.getBundle(
+            measure, () -> "other", "calculation", Set.of(), true, builder());
+
+    assertThat(second, is(not(sameInstance(first))));
+    assertThat(builds.get(), is(equalTo(2)));
+  }
+
+  @Test
+  void getBundleWithoutPrincipalIsNotCached() {
+    measureBundleCacheService.getBundle(measure, null, "calculation", Set.of(), true, builder());
+    measureBundleCacheService.getBundle(measure, null, "calculation", Set.of(), true, builder());
+
+    assertThat(builds.get(), is(equalTo(2)));
+  }
+
+  @Test
+  void cacheKeyIgnoresTestCases() {
+    String key = measureBundleCacheService.cacheKey(measure, USER, "calculation", Set.of(), true);
+    measure.setTestCases(List.of(TestCase.builder().id("tc1").json("{}").build()));
+
+    assertThat(
+        measureBundleCacheService.cacheKey(measure, USER, "calculation", Set.of(), true),
+        is(equalTo(key)));
+  }
+
+  @Test
+  void getBundleDoesNotCacheFailures() {
+    Supplier<Bundle> failing =
+        () -> {
+          builds.incrementAndGet();
+          throw new IllegalStateException("translation failed");
+        };
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            measureBundleCacheService.getBundle(
+                measure, USER, "calculation", Set.of(), true, failing));
+
+    measureBundleCacheService.getBundle(measure, USER, "calculation", Set.of(), true, builder());
+    assertThat(builds.get(), is(equalTo(2)));
+  }
+
+  private Supplier<Bundle> builder() {
+    return () -> {
+      builds.incrementAndGet();
+      return MeasureTestHelper.createTestMeasureBundle();
+    };
+  }
+}
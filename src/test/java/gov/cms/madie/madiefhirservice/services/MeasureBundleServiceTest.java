@@ -2,27 +2,38 @@ package gov.cms.madie.madiefhirservice.services;
 
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import gov.cms.madie.madiefhirservice.config.CqlFormatConfig;
+import gov.cms.madie.madiefhirservice.constants.ElmFormat;
+import gov.cms.madie.madiefhirservice.constants.ExportStage;
 import gov.cms.madie.madiefhirservice.constants.UriConstants;
 import gov.cms.madie.madiefhirservice.dto.CqlLibraryDetails;
 import gov.cms.madie.madiefhirservice.exceptions.CqlLibraryNotFoundException;
 import gov.cms.madie.madiefhirservice.utils.BundleUtil;
 import gov.cms.madie.madiefhirservice.utils.MeasureTestHelper;
+import gov.cms.madie.madiefhirservice.utils.PipelineMetrics;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.models.library.CqlLibrary;
 import gov.cms.madie.models.measure.Measure;
 import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Attachment;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Library;
 import org.junit.jupiter.api.Assertions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -32,20 +43,29 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class MeasureBundleServiceTest implements ResourceFileUtil {
   @InjectMocks private MeasureBundleService measureBundleService;
 
+  @Spy
+  private PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry(), 10000);
+
   @Mock private MeasureTranslatorService measureTranslatorService;
   @Mock private LibraryTranslatorService libraryTranslatorService;
   @Mock private LibraryService libraryService;
   @Mock private HumanReadableService humanReadableService;
   @Mock private ElmTranslatorClient elmTranslatorClient;
+  @Mock private CqlFormatService cqlFormatService;
+  @Mock private CqlFormatConfig cqlFormatConfig;
   @Mock MethodOutcome methodOutcome;
   @Mock IIdType iidType;
 
@@ -73,6 +93,45 @@ public class MeasureBundleServiceTest implements ResourceFileUtil {
             getStringFromTestResource("/humanReadable/effective-data-requirements.json"));
     effectiveDataRequirements.setId("effective-data-requirements");
     humanReadable = getStringFromTestResource("/humanReadable/humanReadable_test");
+    lenient()
+        .when(cqlFormatService.format(any(), any()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+  }
+
+  @Test
+  public void testCreateMeasureBundleFormatsCopyOfMeasure() {
+    String cql = madieMeasure.getCql();
+    when(cqlFormatService.format(eq(cql), any())).thenReturn("formatted cql");
+    when(measureTranslatorService.createFhirMeasureForMadieMeasure(any(Measure.class)))
+        .thenReturn(measure);
+    when(libraryTranslatorService.convertToFhirLibrary(any(CqlLibrary.class))).thenReturn(library);
+    when(elmTranslatorClient.getModuleDefinitionLibrary(
+            any(CqlLibraryDetails.class), anyBoolean(), anyString()))
+        .thenReturn(effectiveDataRequirements);
+
+    measureBundleService.createMeasureBundle(
+        madieMeasure, mock(Principal.class), BundleUtil.MEASURE_BUNDLE_TYPE_CALCULATION, "token");
+
+    ArgumentCaptor<Measure> translated = ArgumentCaptor.forClass(Measure.class);
+    verify(measureTranslatorService).createFhirMeasureForMadieMeasure(translated.capture());
+    assertThat(translated.getValue().getCql(), is(equalTo("formatted cql")));
+    assertThat(madieMeasure.getCql(), is(equalTo(cql)));
+  }
+
+  @Test
+  public void testCreateCalculationBundleSkipsFormattingWhenConfigured() {
+    when(cqlFormatConfig.isSkipForCalculation()).thenReturn(true);
+    when(measureTranslatorService.createFhirMeasureForMadieMeasure(madieMeasure))
+        .thenReturn(measure);
+    when(libraryTranslatorService.convertToFhirLibrary(any(CqlLibrary.class))).thenReturn(library);
+    when(elmTranslatorClient.getModuleDefinitionLibrary(
+            any(CqlLibraryDetails.class), anyBoolean(), anyString()))
+        .thenReturn(effectiveDataRequirements);
+
+    measureBundleService.createMeasureBundle(
+        madieMeasure, mock(Principal.class), BundleUtil.MEASURE_BUNDLE_TYPE_CALCULATION, "token");
+
+    verify(cqlFormatService, never()).format(any(), any());
   }
 
   @Test
@@ -129,6 +188,73 @@ public class MeasureBundleServiceTest implements ResourceFileUtil {
     assertThat(libraryEntryRequest.getMethod(), is(equalTo(Bundle.HTTPVerb.POST)));
   }
 
+  @Test
+  public void testCreateMeasureBundleReportsLibrariesResolved() {
+    when(measureTranslatorService.createFhirMeasureForMadieMeasure(madieMeasure))
+        .thenReturn(measure);
+    when(libraryTranslatorService.convertToFhirLibrary(any(CqlLibrary.class))).thenReturn(library);
+    when(elmTranslatorClient.getModuleDefinitionLibrary(
+            any(CqlLibraryDetails.class), anyBoolean(), anyString()))
+        .thenReturn(effectiveDataRequirements);
+    ExportProgressListener progressListener = mock(ExportProgressListener.class);
+
+    measureBundleService.createMeasureBundle(
+        madieMeasure,
+        mock(Principal.class),
+        BundleUtil.MEASURE_BUNDLE_TYPE_CALCULATION,
+        "token",
+        Set.of(),
+        progressListener);
+
+    verify(progressListener).stageCompleted(ExportStage.LIBRARIES_RESOLVED);
+    // calculation bundles have no narratives
+    verify(progressListener, never()).stageCompleted(ExportStage.NARRATIVES_RENDERED);
+  }
+
+  @Test
+  public void testCreateMeasureBundleLeavesOutExcludedElm() {
+    when(measureTranslatorService.createFhirMeasureForMadieMeasure(madieMeasure))
+        .thenReturn(measure);
+    library.addContent(
+        new Attachment()
+            .setContentType(LibraryTranslatorService.JSON_ELM_CONTENT_TYPE)
+            .setData("{}".getBytes(StandardCharsets.UTF_8)));
+    Library includedLibrary = new Library();
+    includedLibrary.addContent(
+        new Attachment().setContentType(LibraryTranslatorService.CQL_CONTENT_TYPE));
+    includedLibrary.addContent(
+        new Attachment().setContentType(LibraryTranslatorService.JSON_ELM_CONTENT_TYPE));
+    when(libraryTranslatorService.convertToFhirLibrary(any(CqlLibrary.class))).thenReturn(library);
+    when(elmTranslatorClient.getModuleDefinitionLibrary(
+            any(CqlLibraryDetails.class), anyBoolean(), anyString()))
+        .thenReturn(effectiveDataRequirements);
+    doAnswer(
+            invocation -> {
+              Map<String, Library> includedLibraries = invocation.getArgument(1);
+              includedLibraries.put("test", includedLibrary);
+              return null;
+            })
+        .when(libraryService)
+        .getIncludedLibraries(anyString(), anyMap(), anyString(), anyString());
+
+    Bundle bundle =
+        measureBundleService.createMeasureBundle(
+            madieMeasure,
+            mock(Principal.class),
+            BundleUtil.MEASURE_BUNDLE_TYPE_CALCULATION,
+            "token",
+            Set.of(ElmFormat.JSON));
+
+    Library measureLibrary = (Library) bundle.getEntry().get(1).getResource();
+    assertThat(
+        measureLibrary.getContent().stream().map(Attachment::getContentType).toList(),
+        is(equalTo(List.of("text/cql", "text/elm+xml"))));
+    Library bundledIncludedLibrary = (Library) bundle.getEntry().get(2).getResource();
+    assertThat(
+        bundledIncludedLibrary.getContent().stream().map(Attachment::getContentType).toList(),
+        is(equalTo(List.of(LibraryTranslatorService.CQL_CONTENT_TYPE))));
+  }
+
   @Test
   public void testCreateMeasureBundleWhenIncludedLibraryNotFound() {
     when(measureTranslatorService.createFhirMeasureForMadieMeasure(madieMeasure))
@@ -0,0 +1,86 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import gov.cms.madie.madiefhirservice.utils.MeasureFingerprinter;
+import gov.cms.madie.models.measure.Measure;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.Principal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MeasureRequestCoalescerTest {
+  private final MeasureBundleService measureBundleService = mock(MeasureBundleService.class);
+  private final ExportService exportService = mock(ExportService.class);
+  private final MeasureFingerprinter measureFingerprinter = mock(MeasureFingerprinter.class);
+  private final Measure measure = Measure.builder().id("m1").build();
+
+  private MeasureRequestCoalescer coalescer;
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    coalescer =
+        new MeasureRequestCoalescer(
+            measureBundleService, exportService, measureFingerprinter, new SimpleMeterRegistry());
+    executor = Executors.newSingleThreadExecutor();
+    when(measureFingerprinter.fingerprint(measure)).thenReturn("fingerprint");
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void createExportDoesNotShareBuildsBetweenUsers() throws Exception {
+    Principal alice = () -> "alice";
+    Principal bob = () -> "bob";
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(exportService.createExport(eq(measure), eq(alice), any()))
+        .thenAnswer(
+            invocation -> {
+              started.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return new byte[] {1};
+            });
+    when(exportService.createExport(eq(measure), eq(bob), any())).thenReturn(new byte[] {2});
+
+    Future<byte[]> aliceExport =
+        executor.submit(() -> coalescer.createExport(measure, alice, "alice-token"));
+    started.await(5, TimeUnit.SECONDS);
+    // bob must not wait on, or receive, the export built with alice's token
+    byte[] bobExport = coalescer.createExport(measure, bob, "bob-token");
+    release.countDown();
+
+    assertThat(bobExport[0], is(equalTo((byte) 2)));
+    assertThat(aliceExport.get(5, TimeUnit.SECONDS)[0], is(equalTo((byte) 1)));
+    verify(exportService).createExport(measure, bob, "bob-token");
+  }
+
+  @Test
+  void createExportWithoutPrincipalIsNotCoalesced() {
+    when(exportService.createExport(measure, null, "token")).thenReturn(new byte[] {1});
+
+    coalescer.createExport(measure, null, "token");
+    coalescer.createExport(measure, null, "token");
+
+    verify(exportService, times(2)).createExport(measure, null, "token");
+  }
+}
@@ -37,6 +37,7 @@ import java.sql.Date;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.DateFormatUtils;
 import org.hl7.fhir.r4.model.CodeableConcept;
@@ -948,6 +949,12 @@ public class MeasureTranslatorServiceTest implements ResourceFileUtil {
         output.hasProfile(UriConstants.CqfMeasures.EXECUTABLE_MEASURE_PROFILE_URI), is(true));
   }
 
+  @Test
+  void testBuildMeasureMetaReturnsIndependentCopies() {
+    measureTranslatorService.buildMeasureMeta().getProfile().clear();
+    assertThat(measureTranslatorService.buildMeasureMeta().getProfile().size(), is(equalTo(3)));
+  }
+
   @Test
   public void testBuildMeasureIdentifiersReturnsEmptyListForNullMeasure() {
     final Measure madieMeasure = null;
@@ -1166,6 +1173,36 @@ public class MeasureTranslatorServiceTest implements ResourceFileUtil {
     assertEquals("continuous-variable", codeConcept.getCoding().get(0).getCode());
   }
 
+  @Test
+  public void testBuildScoringConceptReturnsIndependentCopies() {
+    CodeableConcept first = measureTranslatorService.buildScoringConcept("Proportion");
+    first.getCodingFirstRep().setCode("changed");
+    CodeableConcept second = measureTranslatorService.buildScoringConcept("Proportion");
+    assertEquals("proportion", second.getCoding().get(0).getCode());
+    assertEquals("Proportion", second.getCoding().get(0).getDisplay());
+    assertEquals(UriConstants.SCORING_SYSTEM_URI, second.getCoding().get(0).getSystem());
+    assertEquals(
+        "custom",
+        measureTranslatorService.buildScoringConcept("Custom").getCoding().get(0).getCode());
+  }
+
+  @Test
+  public void testBuildGroupIgnoresScoringUnitWithoutValue() {
+    Group group =
+        Group.builder()
+            .scoring(MeasureScoring.PROPORTION.toString())
+            .populationBasis("boolean")
+            .populations(List.of())
+            .scoringUnit(Map.of("label", "kg kilogram", "value", "kg"))
+            .build();
+    MeasureGroupComponent groupComponent = measureTranslatorService.buildGroup(group);
+    CodeableConcept scoringUnit =
+        (CodeableConcept)
+            groupComponent.getExtensionByUrl(UriConstants.CqfMeasures.SCORING_UNIT_URI).getValue();
+    assertThat(scoringUnit.getCoding().get(0).getDisplay(), is(equalTo("kg kilogram")));
+    assertNull(scoringUnit.getCoding().get(0).getCode());
+  }
+
   @Test
   public void testCreateFhirMeasureForDraftMadieMeasure() {
     madieMeasure.getMeasureMetaData().setDraft(true);
@@ -0,0 +1,119 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+import gov.cms.madie.madiefhirservice.config.BundleCacheConfig;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ParsedBundleCacheServiceTest implements ResourceFileUtil {
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+  @Mock private BundleCacheConfig bundleCacheConfig;
+
+  private FhirParserProvider parserProvider;
+  private IParser parser;
+  private ParsedBundleCacheService parsedBundleCacheService;
+
+  @BeforeEach
+  void setUp() {
+    when(bundleCacheConfig.getMaxHeapBytes()).thenReturn(60_000_000L);
+    when(bundleCacheConfig.getTtlMillis()).thenReturn(60000L);
+    parserProvider = spy(new FhirParserProvider(FHIR_CONTEXT));
+    parser = FHIR_CONTEXT.newJsonParser();
+    parsedBundleCacheService =
+        new ParsedBundleCacheService(parserProvider, bundleCacheConfig, new SimpleMeterRegistry());
+  }
+
+  @Test
+  void parseReusesEarlierParseOfSameJson() {
+    String json = getStringFromTestResource("/testCaseBundles/validTestCase.json");
+
+    Bundle first = parsedBundleCacheService.parse(json);
+    Bundle second = parsedBundleCacheService.parse(json);
+
+    assertThat(second, is(not(sameInstance(first))));
+    assertThat(
+        parser.encodeResourceToString(second), is(equalTo(parser.encodeResourceToString(first))));
+    verify(parserProvider, times(1)).jsonParser();
+  }
+
+  @Test
+  void parseHandsOutCopiesCallersCanModify() {
+    String json = getStringFromTestResource("/testCaseBundles/validTestCase.json");
+    String expected = parser.encodeResourceToString(parser.parseResource(Bundle.class, json));
+
+    parsedBundleCacheService.parse(json).getEntry().clear();
+    Bundle modified = parsedBundleCacheService.parse(json);
+    modified.getEntryFirstRep().setResource(new Patient());
+
+    assertThat(
+        parser.encodeResourceToString(parsedBundleCacheService.parse(json)), is(equalTo(expected)));
+  }
+
+  @Test
+  void cachedCopiesMatchFreshParses() {
+    List<String> bundles =
+        List.of(
+            getStringFromTestResource("/testCaseBundles/validTestCase.json"),
+            getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json"),
+            getStringFromTestResource("/bundles/export_test.json"));
+    for (String json : bundles) {
+      String expected = parser.encodeResourceToString(parser.parseResource(Bundle.class, json));
+      parsedBundleCacheService.parse(json);
+      assertThat(
+          parser.encodeResourceToString(parsedBundleCacheService.parse(json)),
+          is(equalTo(expected)));
+    }
+  }
+
+  @Test
+  void putMakesEncodedBundleAvailable() {
+    Bundle bundle =
+        parser.parseResource(
+            Bundle.class, getStringFromTestResource("/testCaseBundles/validTestCase.json"));
+    String encoded = parserProvider.jsonParser().encodeResourceToString(bundle);
+    parsedBundleCacheService.put(encoded, bundle);
+    bundle.getEntry().clear();
+
+    Bundle cached = parsedBundleCacheService.parse(encoded);
+
+    assertThat(
+        parser.encodeResourceToString(cached),
+        is(equalTo(parser.encodeResourceToString(parser.parseResource(Bundle.class, encoded)))));
+    // once for the encode above, never for the parse
+    verify(parserProvider, times(1)).jsonParser();
+  }
+
+  @Test
+  void parseDoesNotCacheFailures() {
+    String json = "{\"resourceType\": \"Patient\"}";
+    assertThrows(DataFormatException.class, () -> parsedBundleCacheService.parse(json));
+    assertThrows(DataFormatException.class, () -> parsedBundleCacheService.parse(json));
+    verify(parserProvider, times(2)).jsonParser();
+    assertThrows(DataFormatException.class, () -> parsedBundleCacheService.parse(" "));
+  }
+}
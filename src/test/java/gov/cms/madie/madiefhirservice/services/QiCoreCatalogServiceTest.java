@@ -0,0 +1,85 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QiCoreCatalogServiceTest {
+
+  @Mock private ObjectProvider<IValidationSupport> chain411Provider;
+  @Mock private ObjectProvider<IValidationSupport> chainQiCore600Provider;
+  @Mock private IValidationSupport validationSupportChain411;
+
+  private QiCoreCatalogService qiCoreCatalogService;
+
+  @BeforeEach
+  void setUp() {
+    qiCoreCatalogService =
+        new QiCoreCatalogService(
+            chain411Provider,
+            chainQiCore600Provider,
+            new FhirParserProvider(FhirContext.forR4()),
+            new ObjectMapper(),
+            2);
+  }
+
+  @Test
+  void getVersionsListsEveryPackagedVersion() {
+    assertThat(qiCoreCatalogService.getVersions(), contains("4_1_1", "6_0_0"));
+  }
+
+  @Test
+  void getCatalogLoadsVersionOnFirstUseOnly() {
+    StructureDefinition patient = new StructureDefinition();
+    patient.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
+    patient.setId("qicore-patient");
+    when(chain411Provider.getObject()).thenReturn(validationSupportChain411);
+    when(validationSupportChain411.fetchAllStructureDefinitions()).thenReturn(List.of(patient));
+
+    StructureDefinitionService catalog = qiCoreCatalogService.getCatalog("4_1_1");
+
+    assertThat(qiCoreCatalogService.getCatalog("4_1_1"), is(sameInstance(catalog)));
+    assertThat(catalog.getAllResources().get(0).getId(), is(equalTo("qicore-patient")));
+    verify(chain411Provider, times(1)).getObject();
+    verify(chainQiCore600Provider, never()).getObject();
+  }
+
+  @Test
+  void getCatalogDefaultsToQiCore6() {
+    when(chainQiCore600Provider.getObject()).thenReturn(validationSupportChain411);
+
+    assertThat(
+        qiCoreCatalogService.getCatalog(null),
+        is(sameInstance(qiCoreCatalogService.getCatalog("6_0_0"))));
+  }
+
+  @Test
+  void getCatalogRejectsUnknownVersion() {
+    assertThrows(ResourceNotFoundException.class, () -> qiCoreCatalogService.getCatalog("9_9_9"));
+    verify(chain411Provider, never()).getObject();
+    verify(chainQiCore600Provider, never()).getObject();
+  }
+}
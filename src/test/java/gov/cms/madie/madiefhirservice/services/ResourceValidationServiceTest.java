@@ -3,12 +3,15 @@ package gov.cms.madie.madiefhirservice.services;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.util.BundleUtil;
 import gov.cms.madie.madiefhirservice.constants.UriConstants;
+import gov.cms.madie.madiefhirservice.services.ResourceValidationService.BundleStructureOutcome;
+import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.Procedure;
+import org.hl7.fhir.r4.model.Reference;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -17,17 +20,21 @@ import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 
 @ExtendWith(MockitoExtension.class)
-class ResourceValidationServiceTest {
+class ResourceValidationServiceTest implements ResourceFileUtil {
 
   @Spy FhirContext fhirContext;
 
@@ -203,4 +210,164 @@ class ResourceValidationServiceTest {
       assertEquals(output.getIssueFirstRep().getDiagnostics(), "All resources must have an Id");
     }
   }
+
+  @Test
+  void testValidateBundleStructureMatchesSeparateChecks() {
+    Patient patient = new Patient();
+    patient.setId("1111");
+    Encounter encounter = new Encounter();
+    encounter.setId("1111");
+    encounter.getMeta().addProfile("invalidURL");
+    Procedure procedure = new Procedure();
+    procedure.getMeta().addProfile(UriConstants.QiCore.PATIENT_PROFILE_URI);
+    Bundle bundle = new Bundle();
+    bundle.addEntry().setResource(patient);
+    bundle.addEntry().setResource(encounter);
+    bundle.addEntry().setResource(procedure);
+    ResourceValidationService service = new ResourceValidationService(FhirContext.forR4());
+
+    OperationOutcome expected =
+        service.combineOutcomes(
+            service.validateBundleResourcesProfiles(bundle),
+            service.validateBundleResourcesIdValid(bundle));
+    BundleStructureOutcome output = service.validateBundleStructure(bundle);
+
+    assertThat(output.invalid(), is(true));
+    assertThat(output.outcome().getIssue().size(), is(equalTo(4)));
+    assertThat(
+        diagnostics(output.outcome()),
+        containsInAnyOrder(diagnostics(expected).toArray(String[]::new)));
+  }
+
+  @Test
+  void testValidateBundleStructureMatchesSeparateChecksForTestCaseBundle() {
+    FhirContext r4Context = FhirContext.forR4();
+    Bundle bundle =
+        r4Context
+            .newJsonParser()
+            .parseResource(
+                Bundle.class,
+                getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json"));
+    ResourceValidationService service = new ResourceValidationService(r4Context);
+
+    OperationOutcome expected =
+        service.combineOutcomes(
+            service.validateBundleResourcesProfiles(bundle),
+            service.validateBundleResourcesIdValid(bundle));
+
+    List<String> expectedDiagnostics = new ArrayList<>(diagnostics(expected));
+    expectedDiagnostics.add(
+        "warning:Resource of type [Encounter] with Id [null] references [Patient/1], "
+            + "which is not in the bundle");
+    expectedDiagnostics.add(
+        "warning:Resource of type [Encounter] with Id [null] references "
+            + "[Practitioner/30164], which is not in the bundle");
+
+    assertThat(
+        diagnostics(service.validateBundleStructure(bundle).outcome()),
+        containsInAnyOrder(expectedDiagnostics.toArray(String[]::new)));
+  }
+
+  @Test
+  void testValidateBundleStructureFlagsUnresolvedReferences() {
+    Patient patient = new Patient();
+    patient.setId("patient-1");
+    patient.getMeta().addProfile(UriConstants.QiCore.PATIENT_PROFILE_URI);
+    Encounter encounter = new Encounter();
+    encounter.setId("encounter-1");
+    encounter.getMeta().addProfile(UriConstants.QiCore.PATIENT_PROFILE_URI);
+    encounter.setSubject(new Reference("Patient/patient-1"));
+    encounter.addParticipant().setIndividual(new Reference("Practitioner/missing"));
+    encounter.addReasonReference(new Reference("urn:uuid:procedure-1"));
+    encounter.addReasonReference(new Reference("urn:uuid:missing"));
+    encounter.addAccount(new Reference("#contained"));
+    encounter.addAccount(new Reference("https://example.com/fhir/Account/1"));
+    Procedure procedure = new Procedure();
+    procedure.setId("procedure-1");
+    procedure.getMeta().addProfile(UriConstants.QiCore.PATIENT_PROFILE_URI);
+    procedure.setEncounter(new Reference("Encounter/encounter-1"));
+    Bundle bundle = new Bundle();
+    bundle.addEntry().setResource(encounter);
+    bundle.addEntry().setFullUrl("https://madie.cms.gov/Patient/patient-1").setResource(patient);
+    bundle.addEntry().setFullUrl("urn:uuid:procedure-1").setResource(procedure);
+    ResourceValidationService service = new ResourceValidationService(FhirContext.forR4());
+
+    BundleStructureOutcome output = service.validateBundleStructure(bundle);
+
+    assertThat(output.invalid(), is(false));
+    assertThat(
+        diagnostics(output.outcome()),
+        is(
+            equalTo(
+                List.of(
+                    "warning:Resource of type [Encounter] with Id [encounter-1] references "
+                        + "[Practitioner/missing], which is not in the bundle",
+                    "warning:Resource of type [Encounter] with Id [encounter-1] references "
+                        + "[urn:uuid:missing], which is not in the bundle"))));
+  }
+
+  @Test
+  void testValidateBundleStructureFlagsMismatchedFullUrl() {
+    Patient patient = new Patient();
+    patient.setId("patient-1");
+    patient.getMeta().addProfile(UriConstants.QiCore.PATIENT_PROFILE_URI);
+    Encounter encounter = new Encounter();
+    encounter.setId("encounter-1");
+    encounter.getMeta().addProfile(UriConstants.QiCore.PATIENT_PROFILE_URI);
+    Procedure procedure = new Procedure();
+    procedure.setId("procedure-1");
+    procedure.getMeta().addProfile(UriConstants.QiCore.PATIENT_PROFILE_URI);
+    Bundle bundle = new Bundle();
+    bundle.addEntry().setFullUrl("https://madie.cms.gov/Patient/patient-1").setResource(patient);
+    bundle.addEntry().setFullUrl("http://local/Encounter").setResource(encounter);
+    bundle
+        .addEntry()
+        .setFullUrl("https://madie.cms.gov/Encounter/procedure-1")
+        .setResource(procedure);
+    ResourceValidationService service = new ResourceValidationService(FhirContext.forR4());
+
+    BundleStructureOutcome output = service.validateBundleStructure(bundle);
+
+    assertThat(output.invalid(), is(false));
+    assertThat(
+        diagnostics(output.outcome()),
+        is(
+            equalTo(
+                List.of(
+                    "warning:Bundle entry fullUrl [https://madie.cms.gov/Encounter/procedure-1] "
+                        + "does not match resource of type [Procedure] with Id [procedure-1]"))));
+  }
+
+  @Test
+  void testValidateBundleStructureFlagsMismatchedFullUrlInParsedJson() {
+    String json =
+        "{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":["
+            + "{\"fullUrl\":\"https://madie.cms.gov/Patient/patient-1\","
+            + "\"resource\":{\"resourceType\":\"Patient\",\"id\":\"patient-1\","
+            + "\"meta\":{\"profile\":[\""
+            + UriConstants.QiCore.PATIENT_PROFILE_URI
+            + "\"]}}},"
+            + "{\"fullUrl\":\"https://madie.cms.gov/Encounter/procedure-1\","
+            + "\"resource\":{\"resourceType\":\"Procedure\",\"id\":\"procedure-1\","
+            + "\"meta\":{\"profile\":[\""
+            + UriConstants.QiCore.PATIENT_PROFILE_URI
+            + "\"]}}}]}";
+    FhirContext r4Context = FhirContext.forR4();
+    Bundle bundle = r4Context.newJsonParser().parseResource(Bundle.class, json);
+    ResourceValidationService service = new ResourceValidationService(r4Context);
+
+    BundleStructureOutcome output = service.validateBundleStructure(bundle);
+
+    assertThat(output.invalid(), is(false));
+    assertThat(output.outcome().getIssue().size(), is(equalTo(1)));
+    assertThat(
+        output.outcome().getIssueFirstRep().getDiagnostics(),
+        startsWith("Bundle entry fullUrl [https://madie.cms.gov/Encounter/procedure-1]"));
+  }
+
+  private List<String> diagnostics(OperationOutcome outcome) {
+    return outcome.getIssue().stream()
+        .map(issue -> issue.getSeverity().toCode() + ":" + issue.getDiagnostics())
+        .collect(Collectors.toList());
+  }
 }
@@ -5,7 +5,14 @@ import ca.uhn.fhir.context.support.IValidationSupport;
 import gov.cms.madie.madiefhirservice.constants.UriConstants;
 import gov.cms.madie.madiefhirservice.dto.ResourceIdentifier;
 import gov.cms.madie.madiefhirservice.dto.StructureDefinitionDto;
+import gov.cms.madie.madiefhirservice.dto.StructureDefinitionElement;
 import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
+import gov.cms.madie.madiefhirservice.utils.PreparedJsonResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.CacheControl;
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.Enumerations;
 import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.StringType;
 import org.hl7.fhir.r4.model.StructureDefinition;
@@ -23,21 +30,26 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class StructureDefinitionServiceTest {
 
-  @Spy private FhirContext fhirContextQiCoreStu600;
-  @Mock private IValidationSupport validationSupportChainQiCore600;
+  @Mock private IValidationSupport validationSupportChain;
+  @Spy private FhirParserProvider parserProvider = new FhirParserProvider(FhirContext.forR4());
+  @Spy private ObjectMapper objectMapper = new ObjectMapper();
 
   @InjectMocks private StructureDefinitionService structureDefinitionService;
 
   @Test
   void testGetStructureDefinitionByIdThrowsNotFoundForNoDefinitions() {
     // given
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions()).thenReturn(List.of());
+    when(validationSupportChain.fetchAllStructureDefinitions()).thenReturn(List.of());
 
     // when / then
     assertThrows(
@@ -56,8 +68,7 @@ class StructureDefinitionServiceTest {
     def3.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
     def3.setTitle("US Core Practitioner Profile");
     def3.setId("us-core-practitioner");
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions())
-        .thenReturn(List.of(def1, def3));
+    when(validationSupportChain.fetchAllStructureDefinitions()).thenReturn(List.of(def1, def3));
 
     // when / then
     assertThrows(
@@ -80,9 +91,8 @@ class StructureDefinitionServiceTest {
     def3.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
     def3.setTitle("US Core Practitioner Profile");
     def3.setId("us-core-practitioner");
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions())
+    when(validationSupportChain.fetchAllStructureDefinitions())
         .thenReturn(List.of(def1, def2, def3));
-    when(validationSupportChainQiCore600.getFhirContext()).thenReturn(fhirContextQiCoreStu600);
 
     // when
     StructureDefinitionDto output =
@@ -91,10 +101,10 @@ class StructureDefinitionServiceTest {
     // then
     assertThat(output, is(notNullValue()));
     assertThat(output.getDefinition(), is(notNullValue()));
-    assertThat(output.getDefinition().contains("\"id\": \"qicore-patient\""), is(true));
-    assertThat(output.getDefinition().contains("\"kind\": \"resource\""), is(true));
+    assertThat(output.getDefinition().contains("\"id\":\"qicore-patient\""), is(true));
+    assertThat(output.getDefinition().contains("\"kind\":\"resource\""), is(true));
     assertThat(
-        output.getDefinition().contains("\"resourceType\": \"StructureDefinition\""), is(true));
+        output.getDefinition().contains("\"resourceType\":\"StructureDefinition\""), is(true));
   }
 
   @Test
@@ -112,9 +122,8 @@ class StructureDefinitionServiceTest {
     def3.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
     def3.setTitle("US Core Practitioner Profile");
     def3.setId("us-core-practitioner");
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions())
+    when(validationSupportChain.fetchAllStructureDefinitions())
         .thenReturn(List.of(def1, def2, def3));
-    when(validationSupportChainQiCore600.getFhirContext()).thenReturn(fhirContextQiCoreStu600);
 
     // when
     StructureDefinitionDto output =
@@ -123,10 +132,10 @@ class StructureDefinitionServiceTest {
     // then
     assertThat(output, is(notNullValue()));
     assertThat(output.getDefinition(), is(notNullValue()));
-    assertThat(output.getDefinition().contains("\"id\": \"qicore-keyelement\""), is(true));
-    assertThat(output.getDefinition().contains("\"kind\": \"complex-type\""), is(true));
+    assertThat(output.getDefinition().contains("\"id\":\"qicore-keyelement\""), is(true));
+    assertThat(output.getDefinition().contains("\"kind\":\"complex-type\""), is(true));
     assertThat(
-        output.getDefinition().contains("\"resourceType\": \"StructureDefinition\""), is(true));
+        output.getDefinition().contains("\"resourceType\":\"StructureDefinition\""), is(true));
   }
 
   @Test
@@ -161,7 +170,7 @@ class StructureDefinitionServiceTest {
             new Extension(
                 UriConstants.FhirStructureDefinitions.CATEGORY_URI,
                 new StringType("Base.Individuals"))));
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions())
+    when(validationSupportChain.fetchAllStructureDefinitions())
         .thenReturn(List.of(def1, def2, def3, def4));
 
     // when
@@ -211,7 +220,7 @@ class StructureDefinitionServiceTest {
             new Extension(
                 UriConstants.FhirStructureDefinitions.CATEGORY_URI,
                 new StringType("Base.Individuals"))));
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions())
+    when(validationSupportChain.fetchAllStructureDefinitions())
         .thenReturn(List.of(def1, def2, def3, def4));
 
     // when
@@ -248,7 +257,7 @@ class StructureDefinitionServiceTest {
     def4.setType("Patient");
     def4.setId("Patient");
     def4.setUrl("http://hl7.org/fhir/StructureDefinition/Patient");
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions())
+    when(validationSupportChain.fetchAllStructureDefinitions())
         .thenReturn(List.of(def1, def2, def3, def4));
 
     // when
@@ -286,7 +295,7 @@ class StructureDefinitionServiceTest {
     def4.setId("Patient");
     def4.setUrl("http://hl7.org/fhir/StructureDefinition/Patient");
     def4.setExtension(List.of(new Extension("RANDOM.URL", new StringType("NOT_A_CATEGORY"))));
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions())
+    when(validationSupportChain.fetchAllStructureDefinitions())
         .thenReturn(List.of(def1, def2, def3, def4));
 
     // when
@@ -328,7 +337,7 @@ class StructureDefinitionServiceTest {
             new Extension(
                 UriConstants.FhirStructureDefinitions.CATEGORY_URI,
                 new StringType("Base.Individuals"))));
-    when(validationSupportChainQiCore600.fetchAllStructureDefinitions())
+    when(validationSupportChain.fetchAllStructureDefinitions())
         .thenReturn(List.of(def1, def2, def3, def4));
 
     // when
@@ -337,4 +346,155 @@ class StructureDefinitionServiceTest {
     // then
     assertThat(output, is(equalTo("Base.Individuals")));
   }
+
+  @Test
+  void testStructureDefinitionsAreIndexedOnce() {
+    // given
+    StructureDefinition def1 = new StructureDefinition();
+    def1.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
+    def1.setTitle("QICore Patient");
+    def1.setType("Patient");
+    def1.setId("qicore-patient");
+    StructureDefinition def2 = new StructureDefinition();
+    def2.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
+    def2.setType("Patient");
+    def2.setId("Patient");
+    def2.setExtension(
+        List.of(
+            new Extension(
+                UriConstants.FhirStructureDefinitions.CATEGORY_URI,
+                new StringType("Base.Individuals"))));
+    when(validationSupportChain.fetchAllStructureDefinitions()).thenReturn(List.of(def1, def2));
+
+    // when
+    List<ResourceIdentifier> first = structureDefinitionService.getAllResources();
+    List<ResourceIdentifier> second = structureDefinitionService.getAllResources();
+    String category = structureDefinitionService.getCategoryByType("Patient");
+
+    // then
+    assertThat(second, is(equalTo(first)));
+    assertThat(first.size(), is(equalTo(1)));
+    assertThat(category, is(equalTo("Base.Individuals")));
+    verify(validationSupportChain, times(1)).fetchAllStructureDefinitions();
+  }
+
+  @Test
+  void testGetStructureDefinitionResponseIsSerializedOnce() throws Exception {
+    // given
+    StructureDefinition def1 = new StructureDefinition();
+    def1.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
+    def1.setTitle("QICore Patient");
+    def1.setId("qicore-patient");
+    when(validationSupportChain.fetchAllStructureDefinitions()).thenReturn(List.of(def1));
+
+    // when
+    PreparedJsonResponse first =
+        structureDefinitionService.getStructureDefinitionResponse("qicore-patient");
+    PreparedJsonResponse second =
+        structureDefinitionService.getStructureDefinitionResponse("qicore-patient");
+
+    // then
+    assertThat(second, is(sameInstance(first)));
+    byte[] body = first.toResponseEntity(null, CacheControl.noCache()).getBody();
+    assertThat(
+        body,
+        is(
+            equalTo(
+                objectMapper.writeValueAsBytes(
+                    structureDefinitionService.getStructureDefinitionById("qicore-patient")))));
+  }
+
+  @Test
+  void testGetAllResourcesResponseIsSerializedOnce() throws Exception {
+    // given
+    StructureDefinition def1 = new StructureDefinition();
+    def1.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
+    def1.setTitle("QICore Patient");
+    def1.setType("Patient");
+    def1.setId("qicore-patient");
+    when(validationSupportChain.fetchAllStructureDefinitions()).thenReturn(List.of(def1));
+
+    // when
+    PreparedJsonResponse first = structureDefinitionService.getAllResourcesResponse();
+
+    // then
+    assertThat(structureDefinitionService.getAllResourcesResponse(), is(sameInstance(first)));
+    assertThat(
+        first.toResponseEntity(null, CacheControl.noCache()).getBody(),
+        is(equalTo(objectMapper.writeValueAsBytes(structureDefinitionService.getAllResources()))));
+    verify(objectMapper, times(2)).writeValueAsBytes(any());
+  }
+
+  @Test
+  void testGetElementsProjectsSnapshotElementsOnce() {
+    // given
+    StructureDefinition def1 = new StructureDefinition();
+    def1.setId("qicore-patient");
+    def1.getSnapshot().addElement().setPath("Patient").setMin(0).setMax("*");
+    ElementDefinition name = def1.getSnapshot().addElement();
+    name.setPath("Patient.name").setMin(1).setMax("*").setMustSupport(true);
+    name.addType().setCode("HumanName");
+    def1.getSnapshot().addElement().setPath("Patient.name.family").addType().setCode("string");
+    def1.getSnapshot()
+        .addElement()
+        .setPath("Patient.gender")
+        .setMin(1)
+        .setMax("1")
+        .getBinding()
+        .setStrength(Enumerations.BindingStrength.REQUIRED)
+        .setValueSet("http://hl7.org/fhir/ValueSet/administrative-gender");
+    def1.getDifferential().addElement().setPath("Patient.ignored");
+    when(validationSupportChain.fetchAllStructureDefinitions()).thenReturn(List.of(def1));
+
+    // when
+    List<StructureDefinitionElement> elements =
+        structureDefinitionService.getElements("qicore-patient", null);
+
+    // then
+    assertThat(
+        elements.stream().map(StructureDefinitionElement::getPath).toList(),
+        is(equalTo(List.of("Patient", "Patient.name", "Patient.name.family", "Patient.gender"))));
+    assertThat(elements.get(0).getCardinality(), is(equalTo("0..*")));
+    assertThat(elements.get(1).getTypes(), is(equalTo(List.of("HumanName"))));
+    assertThat(elements.get(1).isMustSupport(), is(true));
+    assertThat(elements.get(2).getCardinality(), is(nullValue()));
+    assertThat(
+        elements.get(3).getBinding(),
+        is(equalTo("http://hl7.org/fhir/ValueSet/administrative-gender")));
+    assertThat(elements.get(3).getBindingStrength(), is(equalTo("required")));
+    assertThat(
+        structureDefinitionService.getElements("qicore-patient", null), is(sameInstance(elements)));
+    assertThat(
+        structureDefinitionService.getElementsResponse("qicore-patient", null),
+        is(sameInstance(structureDefinitionService.getElementsResponse("qicore-patient", ""))));
+  }
+
+  @Test
+  void testGetElementsFiltersByPathPrefix() {
+    // given
+    StructureDefinition def1 = new StructureDefinition();
+    def1.setId("qicore-patient");
+    def1.getDifferential().addElement().setPath("Patient");
+    def1.getDifferential().addElement().setPath("Patient.name");
+    def1.getDifferential().addElement().setPath("Patient.name.given");
+    def1.getDifferential().addElement().setPath("Patient.nameSuffix");
+    when(validationSupportChain.fetchAllStructureDefinitions()).thenReturn(List.of(def1));
+
+    // when
+    List<StructureDefinitionElement> elements =
+        structureDefinitionService.getElements("qicore-patient", "Patient.name");
+
+    // then
+    assertThat(
+        elements.stream().map(StructureDefinitionElement::getPath).toList(),
+        is(equalTo(List.of("Patient.name", "Patient.name.given"))));
+  }
+
+  @Test
+  void testGetElementsThrowsNotFoundForUnknownDefinition() {
+    when(validationSupportChain.fetchAllStructureDefinitions()).thenReturn(List.of());
+    assertThrows(
+        ResourceNotFoundException.class,
+        () -> structureDefinitionService.getElementsResponse("qicore-unknown", null));
+  }
 }
@@ -6,15 +6,12 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.isNull;
-import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -22,6 +19,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import gov.cms.madie.models.dto.ExportDTO;
 import org.apache.commons.io.FilenameUtils;
@@ -30,13 +28,11 @@ import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.MeasureReport;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.Reference;
-import org.junit.jupiter.api.AfterAll;
-import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
-import org.mockito.MockedStatic;
+import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -50,14 +46,15 @@ import ca.uhn.fhir.parser.StrictErrorHandler;
 import gov.cms.madie.madiefhirservice.constants.UriConstants;
 import gov.cms.madie.madiefhirservice.exceptions.InternalServerException;
 import gov.cms.madie.madiefhirservice.exceptions.ResourceNotFoundException;
+import gov.cms.madie.madiefhirservice.utils.FhirParserProvider;
 import gov.cms.madie.madiefhirservice.utils.FhirResourceHelpers;
 import gov.cms.madie.madiefhirservice.utils.MeasureTestHelper;
+import gov.cms.madie.madiefhirservice.utils.PackagingUtilityRegistry;
+import gov.cms.madie.madiefhirservice.utils.ParallelZipWriter;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.models.common.BundleType;
 import gov.cms.madie.models.measure.Measure;
 import gov.cms.madie.models.measure.TestCase;
-import gov.cms.madie.packaging.utils.PackagingUtilityFactory;
-import gov.cms.madie.packaging.utils.qicore411.PackagingUtilityImpl;
 
 @ExtendWith(MockitoExtension.class)
 class TestCaseBundleServiceTest implements ResourceFileUtil {
@@ -66,28 +63,32 @@ class TestCaseBundleServiceTest implements ResourceFileUtil {
 
   @Spy private FhirContext fhirContext;
 
+  @Spy private FhirParserProvider fhirParserProvider = new FhirParserProvider(FhirContext.forR4());
+
   @Spy private FhirResourceHelpers fhirResourceHelpers;
 
+  @Mock private ParsedBundleCacheService parsedBundleCacheService;
+
+  @Spy private ParallelZipWriter parallelZipWriter = new ParallelZipWriter(Runnable::run);
+
+  @Mock private PackagingUtilityRegistry packagingUtilityRegistry;
+
   private Measure madieMeasure;
 
   private TestCase testCase;
 
   private ExportDTO exportDTO;
   private IParser parser;
-  private static MockedStatic<PackagingUtilityFactory> factory;
-
-  @BeforeAll
-  public static void staticSetup() {
-    factory = Mockito.mockStatic(PackagingUtilityFactory.class);
-  }
-
-  @AfterAll
-  public static void close() {
-    factory.close();
-  }
 
   @BeforeEach
   public void setUp() throws JsonProcessingException {
+    Mockito.lenient()
+        .when(parsedBundleCacheService.parse(anyString()))
+        .thenAnswer(
+            invocation ->
+                fhirParserProvider
+                    .jsonParser()
+                    .parseResource(Bundle.class, (String) invocation.getArgument(0)));
     parser =
         fhirContext
             .newJsonParser()
@@ -174,10 +175,6 @@ class TestCaseBundleServiceTest implements ResourceFileUtil {
   @Test
   void zipTestCaseContentsTest() throws IOException {
 
-    PackagingUtilityImpl utility = Mockito.mock(PackagingUtilityImpl.class);
-
-    factory.when(() -> PackagingUtilityFactory.getInstance("QI-Core v4.1.1")).thenReturn(utility);
-    doReturn("THis is a test".getBytes()).when(utility).getZipBundle(any(), isNull());
     IParser parser =
         fhirContext
             .newJsonParser()
@@ -194,9 +191,12 @@ class TestCaseBundleServiceTest implements ResourceFileUtil {
             madieMeasure, exportableTestCaseBundle, testCaseList);
     assertNotNull(results);
     Map<String, String> zipContents = getZipContents(results);
-    assertEquals(2, zipContents.size());
+    assertEquals(3, zipContents.size());
     assertTrue(zipContents.containsKey("README.txt"));
     assertTrue(zipContents.containsKey(".madie"));
+    assertEquals(
+        parser.parseResource(Bundle.class, zipContents.get("Test.json")).getEntry().size(),
+        bundle.getEntry().size());
   }
 
   @Test
@@ -394,13 +394,7 @@ class TestCaseBundleServiceTest implements ResourceFileUtil {
 
   //  @Disabled
   @Test
-  void zipTestCaseContents()
-      throws IOException,
-          ClassNotFoundException,
-          InvocationTargetException,
-          InstantiationException,
-          IllegalAccessException,
-          NoSuchMethodException {
+  void zipTestCaseContents() throws IOException {
 
     Map<String, Bundle> testCaseBundleMap = new HashMap<>();
     testCaseBundleMap.put(
@@ -414,9 +408,6 @@ class TestCaseBundleServiceTest implements ResourceFileUtil {
             .newJsonParser()
             .parseResource(Bundle.class, madieMeasure.getTestCases().get(1).getJson()));
 
-    factory
-        .when(() -> PackagingUtilityFactory.getInstance(anyString()))
-        .thenReturn(new PackagingUtilityImpl());
     byte[] result =
         testCaseBundleService.zipTestCaseContents(
             madieMeasure, testCaseBundleMap, madieMeasure.getTestCases());
@@ -429,6 +420,35 @@ class TestCaseBundleServiceTest implements ResourceFileUtil {
     assertTrue(zipContents.containsKey(".madie"));
   }
 
+  @Test
+  void zipTestCaseContentsUsesPackagingUtilityLayoutForOtherModels() throws IOException {
+    madieMeasure.setModel("QI-Core v6.0.0");
+    Map<String, Bundle> testCaseBundleMap = new HashMap<>();
+    testCaseBundleMap.put(
+        "test1",
+        FhirContext.forR4()
+            .newJsonParser()
+            .parseResource(Bundle.class, madieMeasure.getTestCases().get(0).getJson()));
+    ByteArrayOutputStream packaged = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(packaged)) {
+      zip.putNextEntry(new ZipEntry("test1/test1-bundle.json"));
+      zip.write("{}".getBytes());
+      zip.closeEntry();
+    }
+    when(packagingUtilityRegistry.getZipBundle("QI-Core v6.0.0", testCaseBundleMap, null))
+        .thenReturn(packaged.toByteArray());
+
+    byte[] result =
+        testCaseBundleService.zipTestCaseContents(
+            madieMeasure, testCaseBundleMap, madieMeasure.getTestCases());
+
+    Map<String, String> zipContents = getZipContents(result);
+    assertEquals(3, zipContents.size());
+    assertEquals("{}", zipContents.get("test1-bundle.json"));
+    assertTrue(zipContents.containsKey("README.txt"));
+    assertTrue(zipContents.containsKey(".madie"));
+  }
+
   private Map<String, String> getZipContents(byte[] inputBytes) throws IOException {
     Map<String, String> zipContents = new HashMap<>();
     try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(inputBytes))) {
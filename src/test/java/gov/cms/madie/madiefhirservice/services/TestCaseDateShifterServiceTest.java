@@ -3,6 +3,9 @@ package gov.cms.madie.madiefhirservice.services;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import gov.cms.madie.madiefhirservice.dto.DateShiftResult;
+import gov.cms.madie.madiefhirservice.utils.DateShiftPlan;
+import gov.cms.madie.madiefhirservice.utils.JsonDateShifter;
 import gov.cms.madie.madiefhirservice.utils.MeasureTestHelper;
 import gov.cms.madie.madiefhirservice.utils.ResourceFileUtil;
 import gov.cms.madie.madiefhirservice.utils.ResourceUtils;
@@ -17,6 +20,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.lang.reflect.Field;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -32,6 +36,8 @@ public class TestCaseDateShifterServiceTest implements ResourceFileUtil {
   @Autowired FhirContext fhirContext;
 
   @Autowired TestCaseDateShifterService testCaseDateShifterService;
+
+  @Autowired JsonDateShifter jsonDateShifter;
   private Measure measure;
   private Bundle testCaseBundle;
   private IParser fhirParser;
@@ -280,4 +286,184 @@ public class TestCaseDateShifterServiceTest implements ResourceFileUtil {
     testCaseDateShifterService.shiftDates(patient, shiftBy);
     assertEquals(DateUtils.setYears(originalBirthDate, 1900), patient.getBirthDate());
   }
+
+  @Test
+  void shiftTestCaseDatesReportsShiftedTestCase() {
+    TestCase testCase = measure.getTestCases().get(0);
+    DateShiftResult result = testCaseDateShifterService.shiftTestCaseDates(testCase, 1);
+    assertEquals(DateShiftResult.Status.SHIFTED, result.getStatus());
+    assertEquals(testCase.getId(), result.getTestCaseId());
+    Patient patient =
+        (Patient)
+            ResourceUtils.getResource(
+                fhirParser.parseResource(Bundle.class, result.getTestCase().getJson()), "Patient");
+    Patient original = (Patient) ResourceUtils.getResource(testCaseBundle, "Patient");
+    assertEquals(DateUtils.addYears(original.getBirthDate(), 1), patient.getBirthDate());
+  }
+
+  @Test
+  void shiftTestCaseDatesReportsSkippedTestCase() {
+    TestCase testCase = TestCase.builder().id("empty").json(" ").build();
+    DateShiftResult result = testCaseDateShifterService.shiftTestCaseDates(testCase, 1);
+    assertEquals(DateShiftResult.Status.SKIPPED, result.getStatus());
+    assertNull(result.getTestCase());
+
+    testCase = TestCase.builder().id("invalid").json("{\"resourceType\": \"Patient\"}").build();
+    assertEquals(
+        DateShiftResult.Status.SKIPPED,
+        testCaseDateShifterService.shiftTestCaseDates(testCase, 1).getStatus());
+  }
+
+  @Test
+  void shiftsTestCaseByDaysWithPlan() {
+    TestCase testCase = measure.getTestCases().get(0);
+    DateShiftPlan plan =
+        DateShiftPlan.builder().amount(-45).granularity(DateShiftPlan.Granularity.DAYS).build();
+    DateShiftResult result = testCaseDateShifterService.shiftTestCaseDates(testCase, plan);
+    assertEquals(DateShiftResult.Status.SHIFTED, result.getStatus());
+    Bundle shifted = fhirParser.parseResource(Bundle.class, result.getTestCase().getJson());
+    Encounter encounter = (Encounter) ResourceUtils.getResource(shifted, "Encounter");
+    Encounter original = (Encounter) ResourceUtils.getResource(testCaseBundle, "Encounter");
+    assertEquals(
+        DateUtils.addDays(original.getPeriod().getStart(), -45), encounter.getPeriod().getStart());
+  }
+
+  @Test
+  void shiftsBundleResourcesByMonthsWithPlan() {
+    Patient patient = (Patient) ResourceUtils.getResource(testCaseBundle, "Patient");
+    Date originalBirthDate = (Date) patient.getBirthDate().clone();
+    DateShiftPlan plan =
+        DateShiftPlan.builder().amount(7).granularity(DateShiftPlan.Granularity.MONTHS).build();
+    testCaseDateShifterService.shiftDates(patient, plan);
+    assertEquals(DateUtils.addMonths(originalBirthDate, 7), patient.getBirthDate());
+  }
+
+  @Test
+  void matchesReflectiveDateShiftOnTestBundles() {
+    List<String> bundles = new ArrayList<>();
+    measure.getTestCases().forEach(testCase -> bundles.add(testCase.getJson()));
+    bundles.add(getStringFromTestResource("/testCaseBundles/validTestCase.json"));
+    bundles.add(getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json"));
+    bundles.add(getStringFromTestResource("/bundles/export_test.json"));
+
+    for (String json : bundles) {
+      for (int shiftBy : new int[] {3, -2}) {
+        Bundle indexed = fhirParser.parseResource(Bundle.class, json);
+        Bundle reflective = fhirParser.parseResource(Bundle.class, json);
+        indexed
+            .getEntry()
+            .forEach(e -> testCaseDateShifterService.shiftDates(e.getResource(), shiftBy));
+        reflective.getEntry().forEach(e -> reflectiveShiftDates(e.getResource(), shiftBy));
+        assertEquals(
+            fhirParser.encodeResourceToString(reflective),
+            fhirParser.encodeResourceToString(indexed));
+      }
+    }
+  }
+
+  @Test
+  void matchesReflectiveDateShiftForExtensionsAndContainedResources() {
+    Observation observation = new Observation();
+    observation.getMeta().setLastUpdated(Date.from(Instant.parse("2022-01-01T10:00:00Z")));
+    observation.setEffective(new DateTimeType("2022-03-04T05:06:07-05:00"));
+    observation.addExtension("http://example.org/recorded", new DateTimeType("2021-12-31"));
+    observation
+        .getCode()
+        .addCoding()
+        .addExtension(
+            "http://example.org/coded", new Period().setStartElement(new DateTimeType("2020")));
+    Encounter encounter = new Encounter();
+    encounter.setId("enc");
+    encounter.getPeriod().setEndElement(new DateTimeType("2022-02-28T23:59:59Z"));
+    encounter.getClass_().addExtension("http://example.org/class", new DateTimeType("2019-01-01"));
+    observation.addContained(encounter);
+
+    Observation indexed = observation.copy();
+    testCaseDateShifterService.shiftDates(indexed, 5);
+    reflectiveShiftDates(observation, 5);
+
+    assertEquals(
+        fhirParser.encodeResourceToString(observation), fhirParser.encodeResourceToString(indexed));
+  }
+
+  /** The field-walking implementation the date path index replaced, kept as a reference. */
+  private void reflectiveShiftDates(Base baseResource, int shiftBy) {
+    List<Field> fields = new ArrayList<>();
+    for (Class<?> type = baseResource.getClass(); type != null; type = type.getSuperclass()) {
+      fields.addAll(List.of(type.getDeclaredFields()));
+    }
+    for (Field field : fields) {
+      Property property = baseResource.getNamedProperty(field.getName());
+      if (property != null) {
+        for (Base value : property.getValues()) {
+          if (value.isPrimitive()) {
+            if (value.isDateTime() && ((BaseDateTimeType) value).getValue() != null) {
+              ((BaseDateTimeType) value).add(1, shiftBy);
+            }
+          } else {
+            reflectiveShiftDates(value, shiftBy);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void tokenDateShiftMatchesHapiDateShiftOnTestBundles() {
+    List<String> bundles = new ArrayList<>();
+    measure.getTestCases().forEach(testCase -> bundles.add(testCase.getJson()));
+    bundles.add(getStringFromTestResource("/testCaseBundles/validTestCase.json"));
+    bundles.add(getStringFromTestResource("/testCaseBundles/testCaseInvalidEncounter.json"));
+    bundles.add(getStringFromTestResource("/bundles/export_test.json"));
+    bundles.add(fhirParser.encodeResourceToString(richBundle()));
+
+    for (String json : bundles) {
+      for (int shiftBy : new int[] {1, -3, 150, -1000}) {
+        assertMatchesHapi(json, shiftBy);
+      }
+    }
+  }
+
+  private void assertMatchesHapi(String json, int shiftBy) {
+    Bundle expected = fhirParser.parseResource(Bundle.class, json);
+    expected
+        .getEntry()
+        .forEach(e -> testCaseDateShifterService.shiftDates(e.getResource(), shiftBy));
+
+    Bundle actual =
+        fhirParser.parseResource(Bundle.class, jsonDateShifter.shiftDates(json, shiftBy));
+
+    assertEquals(
+        fhirParser.encodeResourceToString(expected), fhirParser.encodeResourceToString(actual));
+  }
+
+  private Bundle richBundle() {
+    Observation observation = new Observation();
+    observation.setId("obs");
+    observation.getMeta().setLastUpdated(new DateTimeType("2022-01-01T10:00:00Z").getValue());
+    observation.setEffective(
+        new Timing().addEvent(new DateTimeType("2020-02-29T08:00:00Z").getValue()));
+    observation.setIssuedElement(new InstantType("2022-03-04T05:06:07.250-05:00"));
+    observation.addExtension("http://example.org/recorded", new DateTimeType("2021-12-31"));
+    observation
+        .getCode()
+        .addCoding()
+        .addExtension(
+            "http://example.org/coded", new Period().setStartElement(new DateTimeType("2020")));
+    Encounter encounter = new Encounter();
+    encounter.setId("enc");
+    encounter.getPeriod().setEndElement(new DateTimeType("2022-02-28T23:59:59+10:00"));
+    encounter.getClass_().addExtension("http://example.org/class", new DateTimeType("2019-01-01"));
+    observation.addContained(encounter);
+    Patient patient = new Patient();
+    patient.setId("pat");
+    patient.setBirthDateElement(new DateType("1999-07"));
+    patient.setDeceased(new DateTimeType("2023-11-05T01:30:00-04:00"));
+
+    Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+    bundle.setTimestampElement(new InstantType("2020-01-01T00:00:00Z"));
+    bundle.addEntry().setResource(observation);
+    bundle.addEntry().setResource(patient);
+    return bundle;
+  }
 }
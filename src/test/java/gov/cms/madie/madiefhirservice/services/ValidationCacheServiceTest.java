@@ -0,0 +1,97 @@
+package gov.cms.madie.madiefhirservice.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.madie.madiefhirservice.config.ValidationConfig;
+import gov.cms.madie.models.measure.HapiOperationOutcome;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ValidationCacheServiceTest {
+
+  @Mock private ValidationConfig validationConfig;
+
+  private MeterRegistry meterRegistry;
+  private ValidationCacheService validationCacheService;
+
+  @BeforeEach
+  void setUp() {
+    when(validationConfig.getCacheMaxSize()).thenReturn(100L);
+    when(validationConfig.getCacheTtlMillis()).thenReturn(60000L);
+    meterRegistry = new SimpleMeterRegistry();
+    validationCacheService =
+        new ValidationCacheService(validationConfig, new ObjectMapper(), meterRegistry);
+  }
+
+  @Test
+  void cacheKeyIgnoresWhitespaceAndMemberOrder() {
+    Optional<String> key =
+        validationCacheService.cacheKey(
+            "{\"resourceType\":\"Bundle\",\"id\":\"b1\",\"entry\":[{\"fullUrl\":\"a\"}]}");
+    Optional<String> reordered =
+        validationCacheService.cacheKey(
+            "{\n  \"id\" : \"b1\",\n  \"entry\" : [ { \"fullUrl\" : \"a\" } ],\n"
+                + "  \"resourceType\" : \"Bundle\"\n}");
+    assertThat(key.isPresent(), is(true));
+    assertThat(reordered, is(equalTo(key)));
+  }
+
+  @Test
+  void cacheKeyChangesWithContent() {
+    Optional<String> key =
+        validationCacheService.cacheKey("{\"value\":1.50,\"list\":[\"a\",\"b\"]}");
+    assertThat(
+        validationCacheService.cacheKey("{\"value\":1.5,\"list\":[\"a\",\"b\"]}"), is(not(key)));
+    assertThat(
+        validationCacheService.cacheKey("{\"value\":1.50,\"list\":[\"b\",\"a\"]}"), is(not(key)));
+    assertThat(
+        validationCacheService.cacheKey("{\"value\":\"1.50\",\"list\":[\"a\",\"b\"]}"),
+        is(not(key)));
+  }
+
+  @Test
+  void cacheKeyIsEmptyForBlankOrInvalidJson() {
+    assertThat(validationCacheService.cacheKey(null).isPresent(), is(false));
+    assertThat(validationCacheService.cacheKey(" ").isPresent(), is(false));
+    assertThat(validationCacheService.cacheKey("{ not json").isPresent(), is(false));
+  }
+
+  @Test
+  void getReturnsStoredOutcomeAndRecordsHits() {
+    HapiOperationOutcome outcome = HapiOperationOutcome.builder().code(200).build();
+    assertThat(validationCacheService.get("key").isPresent(), is(false));
+
+    validationCacheService.put("key", outcome);
+
+    assertThat(validationCacheService.get("key"), is(equalTo(Optional.of(outcome))));
+    assertThat(
+        meterRegistry
+            .get("cache.gets")
+            .tag("cache", ValidationCacheService.CACHE_NAME)
+            .tag("result", "hit")
+            .functionCounter()
+            .count(),
+        is(equalTo(1.0)));
+    assertThat(
+        meterRegistry
+            .get("cache.gets")
+            .tag("cache", ValidationCacheService.CACHE_NAME)
+            .tag("result", "miss")
+            .functionCounter()
+            .count(),
+        is(equalTo(1.0)));
+  }
+}
@@ -0,0 +1,52 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+class DatePathIndexTest {
+  private final DatePathIndex datePathIndex = new DatePathIndex(FhirContext.forR4());
+
+  @Test
+  void includesDateElementsAndComposites() {
+    List<String> paths = datePathIndex.getDatePaths(Patient.class);
+    assertThat(paths, hasItems("birthDate", "deceased", "meta", "extension", "contained"));
+  }
+
+  @Test
+  void excludesNonDatePrimitives() {
+    List<String> paths = datePathIndex.getDatePaths(Patient.class);
+    assertThat(paths.contains("gender"), is(false));
+    assertThat(paths.contains("active"), is(false));
+    assertThat(paths.contains("id"), is(false));
+  }
+
+  @Test
+  void includesChoiceElementsByBaseName() {
+    assertThat(datePathIndex.getDatePaths(Observation.class), hasItems("effective", "value"));
+  }
+
+  @Test
+  void excludesElementsNamedAfterJavaKeywords() {
+    List<String> paths = datePathIndex.getDatePaths(Encounter.class);
+    assertThat(paths, hasItems("period", "classHistory"));
+    assertThat(paths, not(hasItems("class")));
+  }
+
+  @Test
+  void compilesEachTypeOnce() {
+    assertThat(
+        datePathIndex.getDatePaths(Encounter.class),
+        is(sameInstance(datePathIndex.getDatePaths(Encounter.class))));
+  }
+}
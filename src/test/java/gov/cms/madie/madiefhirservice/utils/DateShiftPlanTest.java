@@ -0,0 +1,163 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.exceptions.InvalidDateShiftException;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.r4.model.BaseDateTimeType;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DateType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DateShiftPlanTest {
+
+  @Test
+  void defaultsToClampedYearShift() {
+    DateShiftPlan plan = DateShiftPlan.ofYears(3);
+    assertThat(plan.getGranularity(), is(equalTo(DateShiftPlan.Granularity.YEARS)));
+    assertThat(plan.getClampPolicy(), is(equalTo(DateShiftPlan.ClampPolicy.CLAMP)));
+    assertThat(plan.getLeapDayPolicy(), is(equalTo(DateShiftPlan.LeapDayPolicy.PREVIOUS_DAY)));
+    assertThat(plan.isYearShift(), is(true));
+    assertThat(plan, is(equalTo(DateShiftPlan.builder().amount(3).build())));
+  }
+
+  @Test
+  void yearShiftMatchesPerValueRangeCheck() {
+    List<String> values =
+        List.of(
+            "1900-01-01",
+            "1899-12-31T23:59:59Z",
+            "1950-06-15T12:00:00-05:00",
+            "2000-02-29",
+            "2024-12-31T23:30:00-02:00",
+            "9998-12-31T23:59:59.999Z",
+            "9999-01-01T00:00:00+01:00",
+            "2020");
+    for (int shiftBy : new int[] {0, 1, -1, 50, -50, 124, -124, 7975, 7976, 1000000, -1000000}) {
+      DateShiftPlan plan = DateShiftPlan.ofYears(shiftBy);
+      for (String value : values) {
+        DateTimeType expected = new DateTimeType(value);
+        shiftWithRangeCheck(expected, shiftBy);
+        DateTimeType actual = new DateTimeType(value);
+        plan.apply(actual);
+        assertThat(value + " by " + shiftBy, actual.getValue(), is(equalTo(expected.getValue())));
+        assertThat(actual.getValueAsString(), is(equalTo(expected.getValueAsString())));
+      }
+    }
+  }
+
+  @Test
+  void shiftsByMonthsAndDays() {
+    DateType date = new DateType("2024-01-31");
+    DateShiftPlan.builder()
+        .amount(1)
+        .granularity(DateShiftPlan.Granularity.MONTHS)
+        .build()
+        .apply(date);
+    assertThat(date.getValueAsString(), is(equalTo("2024-02-29")));
+
+    DateTimeType dateTime = new DateTimeType("2024-03-01T10:00:00Z");
+    DateShiftPlan.builder()
+        .amount(-1)
+        .granularity(DateShiftPlan.Granularity.DAYS)
+        .build()
+        .apply(dateTime);
+    assertThat(dateTime.getValueAsString(), is(equalTo("2024-02-29T10:00:00Z")));
+  }
+
+  @Test
+  void leapDayPolicyDecidesWhereFebruary29Goes() {
+    DateType previous = new DateType("2024-02-29");
+    DateShiftPlan.ofYears(1).apply(previous);
+    assertThat(previous.getValueAsString(), is(equalTo("2025-02-28")));
+
+    DateShiftPlan nextDay =
+        DateShiftPlan.builder()
+            .amount(1)
+            .leapDayPolicy(DateShiftPlan.LeapDayPolicy.NEXT_DAY)
+            .build();
+    DateType next = new DateType("2024-02-29");
+    nextDay.apply(next);
+    assertThat(next.getValueAsString(), is(equalTo("2025-03-01")));
+
+    DateType stillLeap = new DateType("2024-02-29");
+    nextDay.toBuilder().amount(4).build().apply(stillLeap);
+    assertThat(stillLeap.getValueAsString(), is(equalTo("2028-02-29")));
+  }
+
+  @Test
+  void clampPolicyNoneShiftsPastYearRange() {
+    DateType date = new DateType("1950-05-05");
+    DateShiftPlan.builder()
+        .amount(-100)
+        .clampPolicy(DateShiftPlan.ClampPolicy.NONE)
+        .build()
+        .apply(date);
+    assertThat(date.getValueAsString(), is(equalTo("1850-05-05")));
+
+    DateType clamped = new DateType("1950-05-05");
+    DateShiftPlan.ofYears(-100).apply(clamped);
+    assertThat(clamped.getValueAsString(), is(equalTo("1900-05-05")));
+  }
+
+  @Test
+  void ignoresValuesWithoutDate() {
+    DateTimeType empty = new DateTimeType();
+    DateShiftPlan.ofYears(1).apply(empty);
+    assertThat(empty.getValue(), is(nullValue()));
+  }
+
+  @Test
+  void betweenUsesCoarsestExactGranularity() {
+    assertThat(
+        DateShiftPlan.between(LocalDate.of(2023, 1, 1), LocalDate.of(2025, 1, 1)),
+        is(equalTo(DateShiftPlan.ofYears(2))));
+    assertThat(
+        DateShiftPlan.between(LocalDate.of(2024, 2, 29), LocalDate.of(2025, 2, 28)),
+        is(equalTo(DateShiftPlan.ofYears(1))));
+    assertThat(
+        DateShiftPlan.between(LocalDate.of(2024, 10, 1), LocalDate.of(2024, 1, 1)),
+        is(
+            equalTo(
+                DateShiftPlan.builder()
+                    .amount(-9)
+                    .granularity(DateShiftPlan.Granularity.MONTHS)
+                    .build())));
+    assertThat(
+        DateShiftPlan.between(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 15)),
+        is(
+            equalTo(
+                DateShiftPlan.builder()
+                    .amount(14)
+                    .granularity(DateShiftPlan.Granularity.DAYS)
+                    .build())));
+  }
+
+  @Test
+  void betweenRequiresBothDates() {
+    assertThrows(
+        InvalidDateShiftException.class, () -> DateShiftPlan.between(null, LocalDate.now()));
+  }
+
+  /** The per-value range check year shifts used before plans precomputed the bounds. */
+  private void shiftWithRangeCheck(BaseDateTimeType dateType, int shiftBy) {
+    ZonedDateTime shifted =
+        dateType.getValue().toInstant().atZone(ZoneId.of("UTC")).plusYears(shiftBy);
+    if (shifted.getYear() > 9999) {
+      dateType.setValue(DateUtils.setYears(dateType.getValue(), 9999));
+    } else if (shifted.getYear() < 1900) {
+      dateType.setValue(DateUtils.setYears(dateType.getValue(), 1900));
+    } else {
+      dateType.add(1, shiftBy);
+    }
+  }
+}
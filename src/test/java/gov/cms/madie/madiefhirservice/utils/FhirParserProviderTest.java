@@ -0,0 +1,57 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FhirParserProviderTest implements ResourceFileUtil {
+  private final FhirParserProvider parserProvider = new FhirParserProvider(FhirContext.forR4());
+
+  @Test
+  void reusesParserWithinThread() {
+    assertThat(parserProvider.jsonParser(), is(sameInstance(parserProvider.jsonParser())));
+    assertThat(parserProvider.jsonParser(false), is(sameInstance(parserProvider.jsonParser())));
+    assertThat(parserProvider.jsonParser(true), is(not(sameInstance(parserProvider.jsonParser()))));
+    assertThat(parserProvider.xmlParser(true), is(sameInstance(parserProvider.xmlParser(true))));
+  }
+
+  @Test
+  void givesEachThreadItsOwnParser() throws Exception {
+    IParser other = CompletableFuture.supplyAsync(parserProvider::jsonParser).get();
+    assertThat(parserProvider.jsonParser(), is(not(sameInstance(other))));
+  }
+
+  @Test
+  void encodesInternalRoundTripsCompactly() {
+    String json = getStringFromTestResource("/testCaseBundles/validTestCase.json");
+    Bundle bundle = parserProvider.jsonParser().parseResource(Bundle.class, json);
+
+    String compact = parserProvider.jsonParser().encodeResourceToString(bundle);
+    String pretty = parserProvider.jsonParser(true).encodeResourceToString(bundle);
+
+    assertThat(compact, not(containsString("\n")));
+    assertThat(compact.length(), is(lessThan(pretty.length())));
+  }
+
+  @Test
+  void parsesStrictly() {
+    assertThrows(
+        DataFormatException.class,
+        () ->
+            parserProvider
+                .jsonParser()
+                .parseResource(Bundle.class, "{\"resourceType\":\"Bundle\",\"unknown\":1}"));
+  }
+}
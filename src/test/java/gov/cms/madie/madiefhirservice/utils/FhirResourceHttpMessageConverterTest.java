@@ -0,0 +1,105 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class FhirResourceHttpMessageConverterTest implements ResourceFileUtil {
+  private final FhirParserProvider parserProvider = new FhirParserProvider(FhirContext.forR4());
+  private final FhirResourceHttpMessageConverter converter =
+      new FhirResourceHttpMessageConverter(parserProvider);
+
+  @AfterEach
+  void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void supportsR4ResourcesOnly() {
+    assertThat(converter.canWrite(Bundle.class, MediaType.APPLICATION_JSON), is(true));
+    assertThat(converter.canWrite(Patient.class, MediaType.APPLICATION_XML), is(true));
+    assertThat(
+        converter.canWrite(org.hl7.fhir.r5.model.Library.class, MediaType.APPLICATION_JSON),
+        is(false));
+    assertThat(converter.canWrite(String.class, MediaType.APPLICATION_JSON), is(false));
+  }
+
+  @Test
+  void writesPrettyJsonByDefault() throws Exception {
+    Bundle bundle = testBundle();
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+    converter.write(bundle, MediaType.APPLICATION_JSON, output);
+
+    assertThat(
+        output.getBodyAsString(StandardCharsets.UTF_8),
+        is(equalTo(parserProvider.jsonParser(true).encodeResourceToString(bundle))));
+    assertThat(
+        output.getHeaders().getContentType(),
+        is(equalTo(new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8))));
+  }
+
+  @Test
+  void writesCompactXmlWhenPrettyIsFalse() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setParameter(FhirResourceHttpMessageConverter.PRETTY_PARAMETER, "false");
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    Bundle bundle = testBundle();
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+    converter.write(bundle, MediaType.APPLICATION_XML, output);
+
+    assertThat(
+        output.getBodyAsString(StandardCharsets.UTF_8),
+        is(equalTo(parserProvider.xmlParser(false).encodeResourceToString(bundle))));
+  }
+
+  @Test
+  void readsJsonAndXml() throws Exception {
+    Bundle bundle = testBundle();
+    MockHttpInputMessage json =
+        new MockHttpInputMessage(
+            parserProvider
+                .jsonParser()
+                .encodeResourceToString(bundle)
+                .getBytes(StandardCharsets.UTF_8));
+    json.getHeaders().setContentType(FhirResourceHttpMessageConverter.FHIR_JSON);
+    MockHttpInputMessage xml =
+        new MockHttpInputMessage(
+            parserProvider
+                .xmlParser(false)
+                .encodeResourceToString(bundle)
+                .getBytes(StandardCharsets.UTF_8));
+    xml.getHeaders().setContentType(MediaType.APPLICATION_XML);
+
+    Bundle fromJson = (Bundle) converter.read(Bundle.class, json);
+    Bundle fromXml = (Bundle) converter.read(Bundle.class, xml);
+
+    String expected = parserProvider.jsonParser().encodeResourceToString(bundle);
+    assertThat(parserProvider.jsonParser().encodeResourceToString(fromJson), is(equalTo(expected)));
+    assertThat(parserProvider.jsonParser().encodeResourceToString(fromXml), is(equalTo(expected)));
+  }
+
+  private Bundle testBundle() {
+    Bundle bundle = MeasureTestHelper.createTestMeasureBundle();
+    bundle
+        .addEntry()
+        .setResource(
+            new Patient().addName(new org.hl7.fhir.r4.model.HumanName().setFamily("Müller")));
+    return bundle;
+  }
+}
@@ -0,0 +1,83 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.madie.models.measure.HapiOperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+class FhirResourceJsonTest {
+  private final FhirContext fhirContext = FhirContext.forR4();
+  private final FhirParserProvider parserProvider = new FhirParserProvider(fhirContext);
+  private final ObjectMapper mapper = new ObjectMapper();
+  private OperationOutcome outcome;
+
+  @BeforeEach
+  void setUp() {
+    outcome = new OperationOutcome();
+    outcome
+        .addIssue()
+        .setSeverity(OperationOutcome.IssueSeverity.ERROR)
+        .setCode(OperationOutcome.IssueType.INVALID)
+        .setDiagnostics("Bad \"quoted\" value");
+    outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.WARNING).setDiagnostics("Other");
+  }
+
+  @Test
+  void serializesResourceInsideEnvelope() throws Exception {
+    HapiOperationOutcome envelope =
+        HapiOperationOutcome.builder()
+            .code(400)
+            .successful(false)
+            .outcomeResponse(new FhirResourceJson(parserProvider, outcome))
+            .build();
+
+    String json = mapper.writeValueAsString(envelope);
+    JsonNode node = mapper.readTree(json);
+
+    assertThat(node.get("code").asInt(), is(equalTo(400)));
+    assertThat(node.at("/outcomeResponse/resourceType").asText(), is(equalTo("OperationOutcome")));
+    assertThat(
+        node.at("/outcomeResponse/issue/0/diagnostics").asText(),
+        is(equalTo("Bad \"quoted\" value")));
+    assertThat(node.at("/outcomeResponse/issue/1/severity").asText(), is(equalTo("warning")));
+    assertThat(json, not(containsString("\n")));
+  }
+
+  @Test
+  void matchesHapiEncoding() throws Exception {
+    String json = mapper.writeValueAsString(List.of(new FhirResourceJson(parserProvider, outcome)));
+    String expected = fhirContext.newJsonParser().encodeResourceToString(outcome);
+    assertThat(json, is(equalTo("[" + expected + "]")));
+  }
+
+  @Test
+  void serializesPrettyPrintedWhenRequested() throws Exception {
+    FhirResourceJson compact = new FhirResourceJson(parserProvider, outcome);
+    FhirResourceJson pretty = compact.withPrettyPrint(true);
+
+    String json = mapper.writeValueAsString(pretty);
+
+    assertThat(compact.withPrettyPrint(false), is(sameInstance(compact)));
+    assertThat(json, containsString("\n"));
+    assertThat(
+        mapper.readTree(json), is(equalTo(mapper.readTree(mapper.writeValueAsString(compact)))));
+  }
+
+  @Test
+  void serializesIntoBufferingGenerators() {
+    JsonNode node = mapper.valueToTree(new FhirResourceJson(parserProvider, outcome));
+    assertThat(node.at("/issue/0/diagnostics").asText(), is(equalTo("Bad \"quoted\" value")));
+  }
+}
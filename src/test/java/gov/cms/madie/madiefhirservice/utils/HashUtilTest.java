@@ -0,0 +1,29 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class HashUtilTest {
+  private static final String ABC_SHA256 =
+      "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+  @Test
+  void sha256HexHashesUtf8Text() {
+    assertThat(HashUtil.sha256Hex("abc"), is(equalTo(ABC_SHA256)));
+  }
+
+  @Test
+  void sha256DigestMatchesOneShotHash() {
+    var digest = HashUtil.sha256();
+    digest.update("a".getBytes(StandardCharsets.UTF_8));
+    digest.update("bc".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(
+        digest.digest(), is(equalTo(HashUtil.sha256("abc".getBytes(StandardCharsets.UTF_8)))));
+  }
+}
@@ -0,0 +1,88 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonDateShifterTest {
+  private final FhirContext fhirContext = FhirContext.forR4();
+  private final JsonDateShifter jsonDateShifter = new JsonDateShifter(fhirContext);
+
+  @Test
+  void shiftDateKeepsPrecisionAndTimezone() {
+    assertThat(JsonDateShifter.shiftDate("2020", 2), is(equalTo("2022")));
+    assertThat(JsonDateShifter.shiftDate("2020-07", -1), is(equalTo("2019-07")));
+    assertThat(JsonDateShifter.shiftDate("2020-07-04", 1), is(equalTo("2021-07-04")));
+    assertThat(
+        JsonDateShifter.shiftDate("2020-07-04T10:15:00-05:00", 3),
+        is(equalTo("2023-07-04T10:15:00-05:00")));
+    assertThat(
+        JsonDateShifter.shiftDate("2020-07-04T10:15:00.120Z", 1),
+        is(equalTo("2021-07-04T10:15:00.120Z")));
+  }
+
+  @Test
+  void shiftDateUsesMillisecondFractions() {
+    assertThat(
+        JsonDateShifter.shiftDate("2020-07-04T10:15:00.5+00:00", 1),
+        is(equalTo("2021-07-04T10:15:00.500+00:00")));
+    assertThat(
+        JsonDateShifter.shiftDate("2020-07-04T10:15:00.123456Z", 1),
+        is(equalTo("2021-07-04T10:15:00.123Z")));
+  }
+
+  @Test
+  void shiftDateHandlesLeapDays() {
+    assertThat(JsonDateShifter.shiftDate("2020-02-29", 1), is(equalTo("2021-02-28")));
+    assertThat(JsonDateShifter.shiftDate("2020-02-29", 4), is(equalTo("2024-02-29")));
+    assertThat(JsonDateShifter.shiftDate("2020-02-29", 100000), is(equalTo("9999-03-01")));
+  }
+
+  @Test
+  void shiftDateClampsYears() {
+    assertThat(JsonDateShifter.shiftDate("2020-01-01", 100000), is(equalTo("9999-01-01")));
+    assertThat(JsonDateShifter.shiftDate("2020-01-01", -100000), is(equalTo("1900-01-01")));
+  }
+
+  @Test
+  void shiftDateRejectsInvalidValues() {
+    assertThrows(DataFormatException.class, () -> JsonDateShifter.shiftDate("July 4th", 1));
+    assertThrows(DataFormatException.class, () -> JsonDateShifter.shiftDate("2020-07-04T10:15", 1));
+  }
+
+  @Test
+  void shiftDatesRejectsNonBundles() {
+    assertThrows(DataFormatException.class, () -> jsonDateShifter.shiftDates(" ", 1));
+    assertThrows(DataFormatException.class, () -> jsonDateShifter.shiftDates("[]", 1));
+    assertThrows(DataFormatException.class, () -> jsonDateShifter.shiftDates("{\"a\":", 1));
+    assertThrows(
+        DataFormatException.class,
+        () -> jsonDateShifter.shiftDates("{\"resourceType\":\"Patient\"}", 1));
+  }
+
+  @Test
+  void shiftDatesCopiesEverythingElseVerbatim() {
+    String json =
+        "{\"resourceType\":\"Bundle\",\"timestamp\":\"2020-01-01T00:00:00Z\",\"entry\":[{"
+            + "\"resource\":{\"birthDate\":\"1980-05-06\",\"resourceType\":\"Patient\","
+            + "\"_birthDate\":{\"extension\":[{\"url\":\"u\",\"valueDateTime\":\"2001\"}]},"
+            + "\"extension\":[{\"url\":\"v\",\"valueDecimal\":1.50}]}},"
+            + "{\"resource\":{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":2.0},"
+            + "\"effectivePeriod\":{\"start\":\"2021-03-04\"}}}]}";
+
+    String shifted = jsonDateShifter.shiftDates(json, 1);
+
+    assertThat(shifted, containsString("\"timestamp\":\"2020-01-01T00:00:00Z\""));
+    assertThat(shifted, containsString("\"birthDate\":\"1981-05-06\""));
+    assertThat(shifted, containsString("\"valueDateTime\":\"2001\""));
+    assertThat(shifted, containsString("\"valueDecimal\":1.50"));
+    assertThat(shifted, containsString("\"value\":2.0"));
+    assertThat(shifted, containsString("\"start\":\"2022-03-04\""));
+  }
+}
@@ -0,0 +1,86 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.packaging.utils.PackagingUtility;
+import gov.cms.madie.packaging.utils.PackagingUtilityFactory;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PackagingUtilityRegistryTest {
+  private static final String MODEL = "QI-Core v4.1.1";
+  private static final String OTHER_MODEL = "QI-Core v6.0.0";
+
+  @Test
+  void createsUtilitiesOnceOnStartup() {
+    PackagingUtility utility = mock(PackagingUtility.class);
+    Bundle bundle = new Bundle();
+    when(utility.getZipBundle(bundle, "export")).thenReturn("zip".getBytes());
+    try (MockedStatic<PackagingUtilityFactory> factory =
+        Mockito.mockStatic(PackagingUtilityFactory.class)) {
+      factory.when(() -> PackagingUtilityFactory.getInstance(MODEL)).thenReturn(utility);
+      PackagingUtilityRegistry registry = new PackagingUtilityRegistry(List.of(MODEL));
+
+      assertThat(registry.getZipBundle(MODEL, bundle, "export"), is(equalTo("zip".getBytes())));
+      assertThat(registry.getZipBundle(MODEL, bundle, "export"), is(equalTo("zip".getBytes())));
+      factory.verify(() -> PackagingUtilityFactory.getInstance(MODEL));
+    }
+  }
+
+  @Test
+  void createsUtilitiesForOtherModelsOnFirstUse() {
+    PackagingUtility utility = mock(PackagingUtility.class);
+    Bundle bundle = new Bundle();
+    when(utility.getZipBundle(bundle, "export")).thenReturn("zip".getBytes());
+    try (MockedStatic<PackagingUtilityFactory> factory =
+        Mockito.mockStatic(PackagingUtilityFactory.class)) {
+      factory.when(() -> PackagingUtilityFactory.getInstance(OTHER_MODEL)).thenReturn(utility);
+      PackagingUtilityRegistry registry = new PackagingUtilityRegistry(List.of());
+
+      assertThat(
+          registry.getZipBundle(OTHER_MODEL, bundle, "export"), is(equalTo("zip".getBytes())));
+      assertThat(
+          registry.getZipBundle(OTHER_MODEL, bundle, "export"), is(equalTo("zip".getBytes())));
+      factory.verify(() -> PackagingUtilityFactory.getInstance(OTHER_MODEL));
+    }
+  }
+
+  @Test
+  void rejectsModelsWithoutUtility() {
+    try (MockedStatic<PackagingUtilityFactory> factory =
+        Mockito.mockStatic(PackagingUtilityFactory.class)) {
+      factory
+          .when(() -> PackagingUtilityFactory.getInstance("Unknown"))
+          .thenThrow(new ClassNotFoundException("Unknown"));
+      PackagingUtilityRegistry registry = new PackagingUtilityRegistry(List.of());
+
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> registry.getZipBundle("Unknown", new Bundle(), "export"));
+      assertThrows(IllegalArgumentException.class, () -> registry.getZipBundle(null, null, null));
+    }
+  }
+
+  @Test
+  void failsOnStartupWhenModelHasNoUtility() {
+    try (MockedStatic<PackagingUtilityFactory> factory =
+        Mockito.mockStatic(PackagingUtilityFactory.class)) {
+      factory
+          .when(() -> PackagingUtilityFactory.getInstance("Unknown"))
+          .thenThrow(new ClassNotFoundException("Unknown"));
+
+      assertThrows(
+          IllegalStateException.class,
+          () -> new PackagingUtilityRegistry(List.of(MODEL, "Unknown")));
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.constants.CompressionLevel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class ParallelZipWriterTest {
+  private static final long TIME = 1_700_000_000_000L;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+  private final ParallelZipWriter writer = new ParallelZipWriter(executor);
+
+  @TempDir Path tempDir;
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void writesEntriesInOrder() throws IOException {
+    List<ParallelZipWriter.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      entries.add(new ParallelZipWriter.Entry("entry-" + i + ".json", json(i, 5_000), TIME));
+    }
+    entries.add(new ParallelZipWriter.Entry("Müller/ReadMe.txt", "ä".getBytes(), TIME));
+
+    byte[] zip = writer.write(entries, CompressionLevel.DEFAULT);
+
+    List<String> names = new ArrayList<>();
+    try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip))) {
+      ZipEntry entry;
+      int i = 0;
+      while ((entry = zis.getNextEntry()) != null) {
+        names.add(entry.getName());
+        assertThat(zis.readAllBytes(), is(equalTo(entries.get(i++).content())));
+      }
+    }
+    assertThat(
+        names,
+        contains(entries.stream().map(ParallelZipWriter.Entry::name).toArray(String[]::new)));
+  }
+
+  @Test
+  void writesCentralDirectory() throws IOException {
+    byte[] random = new byte[10_000];
+    new Random(1).nextBytes(random);
+    List<ParallelZipWriter.Entry> entries =
+        List.of(
+            new ParallelZipWriter.Entry("bundle.json", json(1, 10_000), TIME),
+            new ParallelZipWriter.Entry("random.bin", random, TIME),
+            new ParallelZipWriter.Entry("empty.txt", new byte[0], TIME));
+    Path file = tempDir.resolve("test.zip");
+    Files.write(file, writer.write(entries, CompressionLevel.SMALL));
+
+    try (ZipFile zipFile = new ZipFile(file.toFile())) {
+      assertThat(zipFile.size(), is(equalTo(3)));
+      for (ParallelZipWriter.Entry expected : entries) {
+        ZipEntry entry = zipFile.getEntry(expected.name());
+        assertThat(entry.getSize(), is(equalTo((long) expected.content().length)));
+        assertThat(zipFile.getInputStream(entry).readAllBytes(), is(equalTo(expected.content())));
+        assertThat(Math.abs(entry.getTime() - TIME), is(lessThan(2_001L)));
+      }
+      // data that does not compress is stored
+      assertThat(zipFile.getEntry("random.bin").getMethod(), is(equalTo(ZipEntry.STORED)));
+      assertThat(zipFile.getEntry("bundle.json").getMethod(), is(equalTo(ZipEntry.DEFLATED)));
+    }
+  }
+
+  @Test
+  void outputDoesNotDependOnScheduling() throws IOException {
+    List<ParallelZipWriter.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      entries.add(new ParallelZipWriter.Entry("entry-" + i + ".json", json(i, 2_000), TIME));
+    }
+
+    byte[] parallel = writer.write(entries, CompressionLevel.DEFAULT);
+    byte[] sequential =
+        new ParallelZipWriter(Runnable::run).write(entries, CompressionLevel.DEFAULT);
+
+    assertThat(parallel, is(equalTo(sequential)));
+  }
+
+  @Test
+  void smallLevelWritesSmallerArchivesThanFast() throws IOException {
+    List<ParallelZipWriter.Entry> entries =
+        Collections.nCopies(4, new ParallelZipWriter.Entry("a.json", json(7, 50_000), TIME));
+
+    byte[] fast = writer.write(entries, CompressionLevel.FAST);
+    byte[] small = writer.write(entries, CompressionLevel.SMALL);
+
+    assertThat(small.length, is(lessThan(fast.length)));
+  }
+
+  private static byte[] json(int seed, int size) {
+    Random random = new Random(seed);
+    StringBuilder json = new StringBuilder("[");
+    while (json.length() < size) {
+      json.append("{\"resourceType\":\"Observation\",\"id\":\"")
+          .append(random.nextInt(100_000))
+          .append("\",\"status\":\"")
+          .append(random.nextBoolean() ? "final" : "preliminary")
+          .append("\",\"valueQuantity\":{\"value\":")
+          .append(random.nextInt(1_000))
+          .append(",\"unit\":\"mg\"}},");
+    }
+    return json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,120 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.constants.PipelineStage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PipelineMetricsTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final PipelineMetrics pipelineMetrics = new PipelineMetrics(meterRegistry, 0);
+
+  @Test
+  void timesStagesIncludingFailedOnes() {
+    assertThat(pipelineMetrics.time(PipelineStage.CQL_FORMAT, () -> "formatted"), is("formatted"));
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            pipelineMetrics.run(
+                PipelineStage.CQL_FORMAT,
+                () -> {
+                  throw new IllegalStateException("parse error");
+                }));
+
+    assertThat(stageCount(PipelineStage.CQL_FORMAT), is(equalTo(2L)));
+    assertThat(stageCount(PipelineStage.ENCODING), is(equalTo(0L)));
+  }
+
+  @Test
+  void recordsRunsPerPipelineAndBundleType() {
+    try (PipelineMetrics.Run outer = pipelineMetrics.start("measure_export", "export", "m1")) {
+      try (PipelineMetrics.Run inner = pipelineMetrics.start("measure_bundle", "export", "m1")) {
+        pipelineMetrics.run(PipelineStage.MEASURE_TRANSLATION, () -> {});
+      }
+      pipelineMetrics.run(PipelineStage.PACKAGING, () -> {});
+    }
+    try (PipelineMetrics.Run run = pipelineMetrics.start("measure_bundle", "calculation", "m2")) {
+      pipelineMetrics.run(PipelineStage.ENCODING, () -> {});
+    }
+
+    assertThat(runCount("measure_export", "export"), is(equalTo(1L)));
+    assertThat(runCount("measure_bundle", "export"), is(equalTo(1L)));
+    assertThat(runCount("measure_bundle", "calculation"), is(equalTo(1L)));
+  }
+
+  @Test
+  void recordsBundleSizesAndLibraryCounts() {
+    pipelineMetrics.recordBundleSize("calculation", "json", 2048);
+    pipelineMetrics.recordBundleSize("export", "zip", 1024);
+    pipelineMetrics.recordLibraryCount("calculation", 3);
+
+    assertThat(
+        meterRegistry
+            .get(PipelineMetrics.BUNDLE_SIZE_METER)
+            .tag("bundle_type", "calculation")
+            .tag("format", "json")
+            .summary()
+            .totalAmount(),
+        is(equalTo(2048.0)));
+    assertThat(
+        meterRegistry
+            .get(PipelineMetrics.BUNDLE_SIZE_METER)
+            .tag("bundle_type", "export")
+            .tag("format", "zip")
+            .summary()
+            .count(),
+        is(equalTo(1L)));
+    assertThat(
+        meterRegistry
+            .get(PipelineMetrics.BUNDLE_LIBRARIES_METER)
+            .tag("bundle_type", "calculation")
+            .summary()
+            .max(),
+        is(equalTo(3.0)));
+  }
+
+  @Test
+  void tagsUnknownBundleTypesAsOther() {
+    try (PipelineMetrics.Run run = pipelineMetrics.start("measure_bundle", "Calc<script>", "m1")) {
+      pipelineMetrics.recordLibraryCount("Calc<script>", 1);
+    }
+    pipelineMetrics.recordBundleSize(null, "json", 10);
+
+    assertThat(runCount("measure_bundle", PipelineMetrics.OTHER_BUNDLE_TYPE), is(equalTo(1L)));
+    assertThat(
+        meterRegistry
+            .get(PipelineMetrics.BUNDLE_SIZE_METER)
+            .tag("bundle_type", PipelineMetrics.OTHER_BUNDLE_TYPE)
+            .summary()
+            .count(),
+        is(equalTo(1L)));
+    assertThat(
+        meterRegistry.find(PipelineMetrics.BUNDLE_LIBRARIES_METER).summaries().stream()
+            .map(summary -> summary.getId().getTag("bundle_type"))
+            .toList(),
+        is(equalTo(List.of(PipelineMetrics.OTHER_BUNDLE_TYPE))));
+  }
+
+  private long stageCount(PipelineStage stage) {
+    return meterRegistry
+        .get(PipelineMetrics.STAGE_METER)
+        .tag("stage", stage.getTag())
+        .timer()
+        .count();
+  }
+
+  private long runCount(String pipeline, String bundleType) {
+    return meterRegistry
+        .get(PipelineMetrics.PIPELINE_METER)
+        .tag("pipeline", pipeline)
+        .tag("bundle_type", bundleType)
+        .timer()
+        .count();
+  }
+}
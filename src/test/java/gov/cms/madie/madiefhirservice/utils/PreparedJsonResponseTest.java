@@ -0,0 +1,68 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+class PreparedJsonResponseTest {
+
+  @Test
+  void smallBodiesAreNotCompressed() {
+    byte[] body = "{\"id\":\"qicore-patient\"}".getBytes(StandardCharsets.UTF_8);
+    PreparedJsonResponse prepared = PreparedJsonResponse.of(body);
+
+    ResponseEntity<byte[]> response = prepared.toResponseEntity("gzip", CacheControl.noCache());
+
+    assertThat(response.getBody(), is(equalTo(body)));
+    assertThat(response.getHeaders().getETag(), is(equalTo(prepared.getETag())));
+    assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+  }
+
+  @Test
+  void largeBodiesAreServedCompressedWithTheirOwnETag() throws Exception {
+    byte[] body = ("[" + "{\"id\":\"qicore-patient\"},".repeat(100) + "{}]").getBytes();
+    PreparedJsonResponse prepared = PreparedJsonResponse.of(body);
+
+    ResponseEntity<byte[]> gzip = prepared.toResponseEntity("br, gzip", CacheControl.noCache());
+    ResponseEntity<byte[]> identity = prepared.toResponseEntity(null, CacheControl.noCache());
+
+    assertThat(gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), is(equalTo("gzip")));
+    assertThat(
+        new GZIPInputStream(new ByteArrayInputStream(gzip.getBody())).readAllBytes(),
+        is(equalTo(body)));
+    assertThat(identity.getBody(), is(equalTo(body)));
+    assertThat(gzip.getHeaders().getETag(), is(not(equalTo(identity.getHeaders().getETag()))));
+    assertThat(identity.getHeaders().getVary().contains(HttpHeaders.ACCEPT_ENCODING), is(true));
+  }
+
+  @Test
+  void eTagFollowsContent() {
+    assertThat(
+        PreparedJsonResponse.of("{\"a\":1}".getBytes()).getETag(),
+        is(equalTo(PreparedJsonResponse.of("{\"a\":1}".getBytes()).getETag())));
+    assertThat(
+        PreparedJsonResponse.of("{\"a\":1}".getBytes()).getETag(),
+        is(not(equalTo(PreparedJsonResponse.of("{\"a\":2}".getBytes()).getETag()))));
+  }
+
+  @Test
+  void acceptsGzipHonoursQualityValues() {
+    assertThat(PreparedJsonResponse.acceptsGzip("gzip, deflate"), is(true));
+    assertThat(PreparedJsonResponse.acceptsGzip("deflate, GZIP;q=0.5"), is(true));
+    assertThat(PreparedJsonResponse.acceptsGzip("*"), is(true));
+    assertThat(PreparedJsonResponse.acceptsGzip("gzip;q=0"), is(false));
+    assertThat(PreparedJsonResponse.acceptsGzip("identity"), is(false));
+    assertThat(PreparedJsonResponse.acceptsGzip(null), is(false));
+  }
+}
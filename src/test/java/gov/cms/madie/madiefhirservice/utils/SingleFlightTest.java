@@ -0,0 +1,218 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+  private static final int FOLLOWERS = 4;
+
+  private SimpleMeterRegistry meterRegistry;
+  private SingleFlight<String, StringBuilder> singleFlight;
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    singleFlight = new SingleFlight<>("test", value -> new StringBuilder(value), meterRegistry);
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void concurrentCallersShareOneComputation() throws Exception {
+    AtomicInteger computations = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<StringBuilder> leader =
+        executor.submit(
+            () ->
+                singleFlight.execute(
+                    "key",
+                    () -> {
+                      computations.incrementAndGet();
+                      started.countDown();
+                      await(release);
+                      return new StringBuilder("result");
+                    }));
+    started.await(5, TimeUnit.SECONDS);
+    List<Future<StringBuilder>> followers = submitFollowers(computations);
+    awaitFollowers();
+    release.countDown();
+
+    StringBuilder leaderResult = leader.get(5, TimeUnit.SECONDS);
+    for (Future<StringBuilder> follower : followers) {
+      StringBuilder result = follower.get(5, TimeUnit.SECONDS);
+      assertThat(result.toString(), is(equalTo("result")));
+      // followers get copies they can modify
+      assertThat(result, is(not(sameInstance(leaderResult))));
+    }
+    assertThat(computations.get(), is(equalTo(1)));
+    assertThat(count("executed"), is(equalTo(1.0)));
+    assertThat(count("coalesced"), is(equalTo((double) FOLLOWERS)));
+    assertThat(singleFlight.inFlight(), is(equalTo(0)));
+  }
+
+  @Test
+  void sequentialCallersComputeAgain() {
+    AtomicInteger computations = new AtomicInteger();
+
+    singleFlight.execute("key", () -> new StringBuilder("" + computations.incrementAndGet()));
+    StringBuilder second =
+        singleFlight.execute("key", () -> new StringBuilder("" + computations.incrementAndGet()));
+
+    assertThat(second.toString(), is(equalTo("2")));
+    assertThat(count("executed"), is(equalTo(2.0)));
+    assertThat(count("coalesced"), is(equalTo(0.0)));
+  }
+
+  @Test
+  void followersShareFailures() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<StringBuilder> leader =
+        executor.submit(
+            () ->
+                singleFlight.execute(
+                    "key",
+                    () -> {
+                      started.countDown();
+                      await(release);
+                      throw new IllegalStateException("translation failed");
+                    }));
+    started.await(5, TimeUnit.SECONDS);
+    AtomicInteger followerComputations = new AtomicInteger();
+    List<Future<StringBuilder>> followers = submitFollowers(followerComputations);
+    awaitFollowers();
+    release.countDown();
+
+    assertCause(leader, IllegalStateException.class);
+    for (Future<StringBuilder> follower : followers) {
+      assertCause(follower, IllegalStateException.class);
+    }
+    assertThat(followerComputations.get(), is(equalTo(0)));
+  }
+
+  @Test
+  void followerTakesOverWhenLeaderIsCancelled() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<StringBuilder> leader =
+        executor.submit(
+            () ->
+                singleFlight.execute(
+                    "key",
+                    () -> {
+                      started.countDown();
+                      await(release);
+                      throw new CancellationException("client went away");
+                    }));
+    started.await(5, TimeUnit.SECONDS);
+    AtomicInteger followerComputations = new AtomicInteger();
+    List<Future<StringBuilder>> followers = submitFollowers(followerComputations);
+    awaitFollowers();
+    release.countDown();
+
+    assertCause(leader, CancellationException.class);
+    for (Future<StringBuilder> follower : followers) {
+      assertThat(follower.get(5, TimeUnit.SECONDS).toString(), is(equalTo("follower")));
+    }
+    // the followers did not inherit the cancellation; one of them computed the result again
+    assertThat(followerComputations.get(), is(greaterThanOrEqualTo(1)));
+  }
+
+  @Test
+  void differentKeysDoNotShare() {
+    StringBuilder first = singleFlight.execute("a", () -> new StringBuilder("a"));
+    StringBuilder second = singleFlight.execute("b", () -> new StringBuilder("b"));
+
+    assertThat(first.toString(), is(equalTo("a")));
+    assertThat(second.toString(), is(equalTo("b")));
+  }
+
+  @Test
+  void failedComputationIsNotKept() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            singleFlight.execute(
+                "key",
+                () -> {
+                  throw new IllegalStateException("failed");
+                }));
+
+    assertThat(
+        singleFlight.execute("key", () -> new StringBuilder("ok")).toString(), is(equalTo("ok")));
+  }
+
+  private List<Future<StringBuilder>> submitFollowers(AtomicInteger computations) {
+    List<Future<StringBuilder>> followers = new ArrayList<>();
+    for (int i = 0; i < FOLLOWERS; i++) {
+      followers.add(
+          executor.submit(
+              () ->
+                  singleFlight.execute(
+                      "key",
+                      () -> {
+                        computations.incrementAndGet();
+                        return new StringBuilder("follower");
+                      })));
+    }
+    return followers;
+  }
+
+  private void awaitFollowers() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (count("coalesced") < FOLLOWERS && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+
+  private double count(String result) {
+    return meterRegistry
+        .get(SingleFlight.METER_NAME)
+        .tag("name", "test")
+        .tag("result", result)
+        .counter()
+        .count();
+  }
+
+  private static void assertCause(Future<?> future, Class<? extends Throwable> type) {
+    ExecutionException ex =
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+    assertThat(ex.getCause(), is(instanceOf(type)));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
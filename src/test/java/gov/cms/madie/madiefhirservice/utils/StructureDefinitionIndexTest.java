@@ -0,0 +1,78 @@
+package gov.cms.madie.madiefhirservice.utils;
+
+import gov.cms.madie.madiefhirservice.constants.UriConstants;
+import gov.cms.madie.madiefhirservice.dto.ResourceIdentifier;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StructureDefinitionIndexTest {
+
+  @Test
+  void findByIdKeepsFirstDefinitionForDuplicateIds() {
+    StructureDefinition first = definition("qicore-patient", "Patient", "First");
+    StructureDefinition second = definition("qicore-patient", "Patient", "Second");
+
+    StructureDefinitionIndex index = StructureDefinitionIndex.of(List.of(first, second));
+
+    assertThat(index.findById("qicore-patient").orElseThrow(), is(sameInstance(first)));
+    assertThat(index.findById("missing").isPresent(), is(false));
+    assertThat(index.findById(null).isPresent(), is(false));
+  }
+
+  @Test
+  void findByTypeReturnsBaseAndProfiles() {
+    StructureDefinition base = definition("Patient", "Patient", null);
+    StructureDefinition usCore = definition("us-core-patient", "Patient", "US Core Patient");
+    StructureDefinition encounter = definition("Encounter", "Encounter", null);
+
+    StructureDefinitionIndex index = StructureDefinitionIndex.of(List.of(base, usCore, encounter));
+
+    assertThat(index.findByType("Patient"), contains(base, usCore));
+    assertThat(index.findByType("Observation").isEmpty(), is(true));
+  }
+
+  @Test
+  void qiCoreResourcesCarryCategoryOfBaseType() {
+    StructureDefinition base = definition("Patient", "Patient", null);
+    base.addExtension(
+        new Extension(
+            UriConstants.FhirStructureDefinitions.CATEGORY_URI,
+            new StringType("Base.Individuals")));
+    StructureDefinition qiCore = definition("qicore-patient", "Patient", "QICore Patient");
+    qiCore.setUrl("http://hl7.org/fhir/us/qicore/StructureDefinition/qicore-patient");
+    StructureDefinition extension = definition("qicore-keyelement", "Extension", "Key Element");
+    extension.setKind(StructureDefinition.StructureDefinitionKind.COMPLEXTYPE);
+
+    StructureDefinitionIndex index =
+        StructureDefinitionIndex.of(List.of(qiCore, new Patient(), extension, base));
+
+    List<ResourceIdentifier> resources = index.getQiCoreResources();
+    assertThat(resources.size(), is(equalTo(1)));
+    assertThat(resources.get(0).getCategory(), is(equalTo("Base.Individuals")));
+    assertThat(resources.get(0).getProfile(), is(equalTo(qiCore.getUrl())));
+    assertThat(index.getCategory("Encounter"), is(nullValue()));
+    assertThrows(UnsupportedOperationException.class, resources::clear);
+  }
+
+  private StructureDefinition definition(String id, String type, String title) {
+    StructureDefinition structureDefinition = new StructureDefinition();
+    structureDefinition.setKind(StructureDefinition.StructureDefinitionKind.RESOURCE);
+    structureDefinition.setId(id);
+    structureDefinition.setType(type);
+    structureDefinition.setTitle(title);
+    return structureDefinition;
+  }
+}